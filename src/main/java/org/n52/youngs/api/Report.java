@@ -47,6 +47,18 @@ public interface Report {
 
     public Collection<String> getAddedIds();
 
+    /**
+     * Adds a record that was not mapped and stored because it did not change
+     * since it was last stored.
+     *
+     * @param id the identifier of the record
+     */
+    public void addSkippedRecord(String id);
+
+    public int getNumberOfRecordsSkipped();
+
+    public Collection<String> getSkippedIds();
+
     /**
      *
      * @return a map from ID to failure reason description.
@@ -67,4 +79,19 @@ public interface Report {
      */
     public int getIdentifiedRecordCount();
 
+    /**
+     * Sets a named numeric statistic of the run, e.g. the throughput of a
+     * processing stage. An existing value for the key is replaced.
+     *
+     * @param key the name of the statistic, e.g. "stage.harvest.records"
+     * @param value the value
+     */
+    public void setStatistic(String key, Number value);
+
+    /**
+     *
+     * @return a map from statistic name to value, in insertion order
+     */
+    public Map<String, Number> getStatistics();
+
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.control.impl;
+
+import com.google.common.base.MoreObjects;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.api.Report.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the page size of a harvest from the observed per-page latency,
+ * errors and records per second.
+ *
+ * A failed page, an unexpectedly empty page, or a page slower than the
+ * maximum latency halves the page size. Otherwise the size is changed by a
+ * quarter in the current direction as long as the throughput of the source
+ * does not drop by more than the tolerance, and the direction is reversed if
+ * it does. The size always stays within the configured bounds.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class AdaptivePageSize {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptivePageSize.class);
+
+    private static final double STEP = 0.25;
+
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+
+    private static final long DEFAULT_MAX_LATENCY_MILLIS = 60000;
+
+    private final long min;
+
+    private final long max;
+
+    private final long maxLatencyMillis;
+
+    private long size;
+
+    private boolean growing = true;
+
+    private double lastThroughput = -1d;
+
+    private long smallestUsed = Long.MAX_VALUE;
+
+    private long largestUsed = Long.MIN_VALUE;
+
+    private int changes = 0;
+
+    private int errors = 0;
+
+    private int pages = 0;
+
+    public AdaptivePageSize(long initial, long min, long max) {
+        this(initial, min, max, DEFAULT_MAX_LATENCY_MILLIS);
+    }
+
+    public AdaptivePageSize(long initial, long min, long max, long maxLatencyMillis) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException(String.format("Invalid page size bounds [%s, %s]", min, max));
+        }
+        this.min = min;
+        this.max = max;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.size = clamp(initial);
+    }
+
+    /**
+     * @return the page size to use for the next request
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Update the page size with the result of a page request.
+     *
+     * @param requested the number of requested records
+     * @param returned the number of returned records
+     * @param latencyMillis the duration of the request
+     * @param failed true if the request failed
+     * @param report the report to add page size changes to
+     * @return the page size to use for the next request
+     */
+    public long update(long requested, long returned, long latencyMillis, boolean failed, Report report) {
+        pages++;
+        smallestUsed = Math.min(smallestUsed, requested);
+        largestUsed = Math.max(largestUsed, requested);
+
+        if (failed || (returned == 0 && requested > 0)) {
+            errors++;
+            growing = false;
+            lastThroughput = -1d;
+            return change((long) Math.floor(size / 2d),
+                    String.format("page request %s", failed ? "failed" : "returned no records"), report);
+        }
+        if (latencyMillis > maxLatencyMillis) {
+            growing = false;
+            lastThroughput = -1d;
+            return change((long) Math.floor(size / 2d),
+                    String.format("latency of %sms exceeds %sms", latencyMillis, maxLatencyMillis), report);
+        }
+
+        double throughput = returned * 1000d / Math.max(1, latencyMillis);
+        if (lastThroughput >= 0 && throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+            growing = !growing;
+        }
+        lastThroughput = throughput;
+
+        long next = growing
+                ? (long) Math.ceil(size * (1 + STEP))
+                : (long) Math.floor(size * (1 - STEP));
+        return change(next, String.format("%1$,.1f records/s, error rate %2$,.2f", throughput, getErrorRate()),
+                report);
+    }
+
+    private long change(long next, String reason, Report report) {
+        next = clamp(next);
+        if (next != size) {
+            String msg = String.format("Changing page size from %s to %s: %s", size, next, reason);
+            log.info(msg);
+            report.addMessage(msg, Level.INFO);
+            changes++;
+            size = next;
+        } else {
+            log.debug("Keeping page size {}: {}", size, reason);
+        }
+        return size;
+    }
+
+    private long clamp(long value) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    public double getErrorRate() {
+        return pages == 0 ? 0d : (double) errors / pages;
+    }
+
+    /**
+     * Add the used page sizes as statistics to the report.
+     */
+    public void addStatistics(Report report) {
+        report.setStatistic("paging.size.current", size);
+        report.setStatistic("paging.size.smallest", pages == 0 ? size : smallestUsed);
+        report.setStatistic("paging.size.largest", pages == 0 ? size : largestUsed);
+        report.setStatistic("paging.size.changes", changes);
+        report.setStatistic("paging.error_rate", getErrorRate());
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("size", size)
+                .add("min", min)
+                .add("max", max)
+                .add("growing", growing)
+                .add("changes", changes)
+                .toString();
+    }
+
+}
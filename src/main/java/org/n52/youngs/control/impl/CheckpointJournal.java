@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.control.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.base.MoreObjects;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.joda.time.DateTime;
+import org.n52.youngs.transform.MappingConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local journal of the progress of a harvest, written after each page so
+ * that an aborted run can be resumed. It records the source endpoint, the
+ * mapping name and version, the position of the last stored record, and the
+ * failed records and pages together with the page they were harvested in.
+ *
+ * The last stored position is the end of the last page up to which all pages
+ * were harvested, so a run that continues from it requests failed pages
+ * again. The end of the last processed page is recorded separately.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class CheckpointJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(CheckpointJournal.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Path file;
+
+    private final String endpoint;
+
+    private final String mappingName;
+
+    private final int mappingVersion;
+
+    private final long startPosition;
+
+    private final long limit;
+
+    private long lastStoredPosition;
+
+    private long lastProcessedPosition;
+
+    private final Map<String, FailedRecord> failedRecords = new LinkedHashMap<>();
+
+    private final Map<Long, FailedRecord> failedPages = new LinkedHashMap<>();
+
+    private CheckpointJournal(Path file, String endpoint, String mappingName, int mappingVersion,
+            long startPosition, long limit, long lastStoredPosition, long lastProcessedPosition) {
+        this.file = file;
+        this.endpoint = endpoint;
+        this.mappingName = mappingName;
+        this.mappingVersion = mappingVersion;
+        this.startPosition = startPosition;
+        this.limit = limit;
+        this.lastStoredPosition = lastStoredPosition;
+        this.lastProcessedPosition = lastProcessedPosition;
+    }
+
+    public static CheckpointJournal create(Path file, String endpoint, MappingConfiguration mapping,
+            long startPosition, long limit) {
+        return new CheckpointJournal(file, endpoint, mapping.getName(), mapping.getVersion(),
+                startPosition, limit, startPosition - 1, startPosition - 1);
+    }
+
+    /**
+     * @return the journal stored in the file, or an empty optional if the
+     * file does not exist
+     * @throws IOException if the file cannot be read
+     */
+    public static Optional<CheckpointJournal> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+
+        JsonNode node = objectMapper.readTree(file.toFile());
+        CheckpointJournal journal = new CheckpointJournal(file,
+                node.path("endpoint").asText(),
+                node.path("mapping_name").asText(),
+                node.path("mapping_version").asInt(),
+                node.path("start_position").asLong(),
+                node.path("limit").asLong(),
+                node.path("last_stored_position").asLong(),
+                node.path("last_processed_position").asLong(node.path("last_stored_position").asLong()));
+        for (JsonNode failed : node.path("failed_records")) {
+            FailedRecord record = FailedRecord.fromJson(failed);
+            journal.failedRecords.put(record.getId(), record);
+        }
+        for (JsonNode failed : node.path("failed_pages")) {
+            FailedRecord page = FailedRecord.fromJson(failed);
+            journal.failedPages.put(page.getPageStart(), page);
+        }
+
+        log.info("Read checkpoint from {}: {}", file, journal);
+        return Optional.of(journal);
+    }
+
+    public boolean matches(String endpoint, MappingConfiguration mapping) {
+        return Objects.equals(this.endpoint, endpoint)
+                && Objects.equals(this.mappingName, mapping.getName())
+                && this.mappingVersion == mapping.getVersion();
+    }
+
+    /**
+     * Record a completely processed page and write the journal.
+     *
+     * @param pageStart the start position of the page
+     * @param pageSize the number of requested records
+     * @param failures identifiers and reasons of the records of the page that
+     * could not be stored
+     * @throws IOException if the journal cannot be written
+     */
+    public void pageStored(long pageStart, long pageSize, Map<String, String> failures) throws IOException {
+        failedPages.remove(pageStart);
+        failures.forEach((id, reason) -> failedRecords.put(id, new FailedRecord(id, pageStart, pageSize, reason)));
+        pageProcessed(pageStart, pageSize);
+        write();
+    }
+
+    /**
+     * Record a page that could not be harvested and write the journal.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void pageFailed(long pageStart, long pageSize, String reason) throws IOException {
+        failedPages.put(pageStart, new FailedRecord(null, pageStart, pageSize, reason));
+        pageProcessed(pageStart, pageSize);
+        write();
+    }
+
+    /**
+     * The last stored position does not pass the first failed page, and moves
+     * up to the last processed position once all failed pages are stored.
+     */
+    private void pageProcessed(long pageStart, long pageSize) {
+        this.lastProcessedPosition = Math.max(this.lastProcessedPosition, pageStart + pageSize - 1);
+        this.lastStoredPosition = failedPages.keySet().stream()
+                .min(Long::compare)
+                .map(firstFailed -> Math.min(this.lastProcessedPosition, firstFailed - 1))
+                .orElse(this.lastProcessedPosition);
+    }
+
+    /**
+     * Remove records that were stored successfully in a retry and write the
+     * journal.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void recordsRetried(Collection<String> storedIds) throws IOException {
+        storedIds.forEach(failedRecords::remove);
+        write();
+    }
+
+    public void write() throws IOException {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("endpoint", endpoint);
+        node.put("mapping_name", mappingName);
+        node.put("mapping_version", mappingVersion);
+        node.put("start_position", startPosition);
+        node.put("limit", limit);
+        node.put("last_stored_position", lastStoredPosition);
+        node.put("last_processed_position", lastProcessedPosition);
+        node.put("updated", new DateTime().toString());
+        ArrayNode records = node.putArray("failed_records");
+        failedRecords.values().forEach(r -> records.add(r.toJson()));
+        ArrayNode pages = node.putArray("failed_pages");
+        failedPages.values().forEach(p -> pages.add(p.toJson()));
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        objectMapper.writeValue(tmp.toFile(), node);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.trace("Wrote checkpoint {}", this);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getStartPosition() {
+        return startPosition;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the end of the last page up to which all pages were stored
+     */
+    public long getLastStoredPosition() {
+        return lastStoredPosition;
+    }
+
+    /**
+     * @return the end of the last harvested page, which may be after failed
+     * pages
+     */
+    public long getLastProcessedPosition() {
+        return lastProcessedPosition;
+    }
+
+    public Map<String, FailedRecord> getFailedRecords() {
+        return Collections.unmodifiableMap(failedRecords);
+    }
+
+    public Collection<FailedRecord> getFailedPages() {
+        return Collections.unmodifiableCollection(failedPages.values());
+    }
+
+    /**
+     * @return the pages to request again for retrying the failed records and
+     * pages, as pairs of start position and size
+     */
+    public List<long[]> getPagesToRetry() {
+        Map<Long, Long> pages = new LinkedHashMap<>();
+        failedPages.values().forEach(p -> pages.put(p.getPageStart(), p.getPageSize()));
+        failedRecords.values().forEach(r -> pages.putIfAbsent(r.getPageStart(), r.getPageSize()));
+        return pages.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(e -> new long[]{e.getKey(), e.getValue()})
+                .collect(Collectors.toList());
+    }
+
+    public boolean isFailedPage(long pageStart) {
+        return failedPages.containsKey(pageStart);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("endpoint", endpoint)
+                .add("mapping", mappingName + " v" + mappingVersion)
+                .add("lastStoredPosition", lastStoredPosition)
+                .add("lastProcessedPosition", lastProcessedPosition)
+                .add("limit", limit)
+                .add("failedRecords", failedRecords.size())
+                .add("failedPages", failedPages.size())
+                .toString();
+    }
+
+    public static class FailedRecord {
+
+        private final String id;
+
+        private final long pageStart;
+
+        private final long pageSize;
+
+        private final String reason;
+
+        public FailedRecord(String id, long pageStart, long pageSize, String reason) {
+            this.id = id;
+            this.pageStart = pageStart;
+            this.pageSize = pageSize;
+            this.reason = reason;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getPageStart() {
+            return pageStart;
+        }
+
+        public long getPageSize() {
+            return pageSize;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        private ObjectNode toJson() {
+            ObjectNode node = objectMapper.createObjectNode();
+            if (id != null) {
+                node.put("id", id);
+            }
+            node.put("page_start", pageStart);
+            node.put("page_size", pageSize);
+            node.put("reason", reason);
+            return node;
+        }
+
+        private static FailedRecord fromJson(JsonNode node) {
+            return new FailedRecord(node.hasNonNull("id") ? node.get("id").asText() : null,
+                    node.path("page_start").asLong(),
+                    node.path("page_size").asLong(),
+                    node.path("reason").asText());
+        }
+
+    }
+
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.control.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.MoreObjects;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import net.sf.saxon.s9api.Axis;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmNodeKind;
+import net.sf.saxon.s9api.XdmSequenceIterator;
+import org.n52.youngs.harvest.JsonNodeSourceRecord;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.transform.MappingConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * A local store of the fingerprints of the records stored by previous
+ * harvests, keyed by record identifier. A fingerprint is a SHA-256 hash of the
+ * canonical form of the source record and the name and version of the
+ * mapping, so a record is only unchanged if it was stored with the same
+ * mapping.
+ *
+ * The canonical form of an XML record consists of the namespace and local name
+ * of the elements and attributes, with attributes sorted, and the text of the
+ * elements, so it does not depend on namespace prefixes, the order of
+ * attributes, whitespace-only text, comments or processing instructions. A
+ * DOM and a TinyTree of the same record have the same fingerprint. The
+ * canonical form of a JSON record has the fields of objects sorted.
+ *
+ * The store is a text file with one line per record, the fingerprint followed
+ * by a tab and the identifier. The fingerprints of changed records are only
+ * kept once the records were stored, see {@link #commit(Collection)}.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class FingerprintStore {
+
+    private static final Logger log = LoggerFactory.getLogger(FingerprintStore.class);
+
+    private static final char SEPARATOR = '\t';
+
+    private static final String XMLNS = "http://www.w3.org/2000/xmlns/";
+
+    private final Path file;
+
+    private final Map<String, String> fingerprints;
+
+    private final Map<String, String> pending = new HashMap<>();
+
+    private FingerprintStore(Path file, Map<String, String> fingerprints) {
+        this.file = file;
+        this.fingerprints = fingerprints;
+    }
+
+    /**
+     * @return the store with the fingerprints of the file, which is empty if
+     * the file does not exist
+     * @throws IOException if the file cannot be read
+     */
+    public static FingerprintStore open(Path file) throws IOException {
+        Map<String, String> fingerprints = new HashMap<>();
+        if (Files.exists(file)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int separator = line.indexOf(SEPARATOR);
+                    if (separator > 0) {
+                        fingerprints.put(line.substring(separator + 1), line.substring(0, separator));
+                    }
+                }
+            }
+        }
+
+        FingerprintStore store = new FingerprintStore(file, fingerprints);
+        log.info("Read fingerprints from {}: {}", file, store);
+        return store;
+    }
+
+    /**
+     * @param id the identifier of the record
+     * @param fingerprint the current fingerprint of the record
+     * @return true if the record changed since it was last stored, the
+     * fingerprint is then kept until the record is committed
+     */
+    public synchronized boolean update(String id, String fingerprint) {
+        if (fingerprint.equals(fingerprints.get(id))) {
+            return false;
+        }
+        pending.put(id, fingerprint);
+        return true;
+    }
+
+    /**
+     * Keep the fingerprints of the changed records that were stored, the
+     * fingerprints of all other changed records are discarded, so these are
+     * processed again by the next harvest.
+     *
+     * @param storedIds the identifiers of the records that were stored
+     * @return the number of fingerprints that were added or replaced
+     */
+    public synchronized int commit(Collection<String> storedIds) {
+        int committed = 0;
+        for (String id : storedIds) {
+            String fingerprint = pending.remove(id);
+            if (fingerprint != null) {
+                fingerprints.put(id, fingerprint);
+                committed++;
+            }
+        }
+        pending.clear();
+        return committed;
+    }
+
+    public synchronized void write() throws IOException {
+        List<String> ids = new ArrayList<>(fingerprints.keySet());
+        Collections.sort(ids);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (String id : ids) {
+                if (id.indexOf('\n') >= 0 || id.indexOf('\r') >= 0) {
+                    continue;
+                }
+                writer.append(fingerprints.get(id)).append(SEPARATOR).append(id);
+                writer.newLine();
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Wrote fingerprints {}", this);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * @return the number of records with a fingerprint
+     */
+    public synchronized int size() {
+        return fingerprints.size();
+    }
+
+    /**
+     * @return the fingerprint of the record, or an empty optional if the type
+     * of the record is not supported
+     */
+    public static Optional<String> fingerprint(SourceRecord record, MappingConfiguration mapping) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        putString(hasher, mapping.getName());
+        hasher.putInt(mapping.getVersion());
+
+        if (record instanceof TinyTreeSourceRecord) {
+            putNode(hasher, new XdmNode(((TinyTreeSourceRecord) record).getTree()));
+        } else if (record instanceof NodeSourceRecord) {
+            putNode(hasher, ((NodeSourceRecord) record).getRecord());
+        } else if (record instanceof JsonNodeSourceRecord) {
+            putNode(hasher, ((JsonNodeSourceRecord) record).getRecord());
+        } else {
+            return Optional.empty();
+        }
+        return Optional.of(hasher.hash().toString());
+    }
+
+    private static void putNode(Hasher hasher, Node node) {
+        putElement(hasher, node instanceof Document ? ((Document) node).getDocumentElement() : node);
+    }
+
+    private static void putElement(Hasher hasher, Node element) {
+        hasher.putChar('<');
+        putName(hasher, element.getNamespaceURI(), element.getLocalName(), element.getNodeName());
+
+        NamedNodeMap attributes = element.getAttributes();
+        List<String[]> sorted = new ArrayList<>();
+        for (int i = 0; attributes != null && i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            String name = attribute.getNodeName();
+            if (XMLNS.equals(attribute.getNamespaceURI()) || name.equals("xmlns") || name.startsWith("xmlns:")) {
+                continue;
+            }
+            sorted.add(new String[]{
+                Optional.ofNullable(attribute.getNamespaceURI()).orElse(""),
+                Optional.ofNullable(attribute.getLocalName()).orElse(name),
+                attribute.getValue()});
+        }
+        putAttributes(hasher, sorted);
+
+        StringBuilder text = new StringBuilder();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            switch (child.getNodeType()) {
+                case Node.TEXT_NODE:
+                case Node.CDATA_SECTION_NODE:
+                    text.append(child.getNodeValue());
+                    break;
+                case Node.ELEMENT_NODE:
+                    putText(hasher, text);
+                    putElement(hasher, child);
+                    break;
+                default:
+                    break;
+            }
+        }
+        putText(hasher, text);
+        hasher.putChar('>');
+    }
+
+    private static void putNode(Hasher hasher, XdmNode node) {
+        if (node.getNodeKind() == XdmNodeKind.DOCUMENT) {
+            XdmSequenceIterator<XdmNode> children = node.axisIterator(Axis.CHILD);
+            while (children.hasNext()) {
+                XdmNode child = children.next();
+                if (child.getNodeKind() == XdmNodeKind.ELEMENT) {
+                    putElement(hasher, child);
+                }
+            }
+        } else {
+            putElement(hasher, node);
+        }
+    }
+
+    private static void putElement(Hasher hasher, XdmNode element) {
+        hasher.putChar('<');
+        putName(hasher, element.getNodeName().getNamespaceURI(), element.getNodeName().getLocalName(), null);
+
+        List<String[]> sorted = new ArrayList<>();
+        XdmSequenceIterator<XdmNode> attributes = element.axisIterator(Axis.ATTRIBUTE);
+        while (attributes.hasNext()) {
+            XdmNode attribute = attributes.next();
+            sorted.add(new String[]{
+                attribute.getNodeName().getNamespaceURI(),
+                attribute.getNodeName().getLocalName(),
+                attribute.getStringValue()});
+        }
+        putAttributes(hasher, sorted);
+
+        StringBuilder text = new StringBuilder();
+        XdmSequenceIterator<XdmNode> children = element.axisIterator(Axis.CHILD);
+        while (children.hasNext()) {
+            XdmNode child = children.next();
+            if (child.getNodeKind() == XdmNodeKind.TEXT) {
+                text.append(child.getStringValue());
+            } else if (child.getNodeKind() == XdmNodeKind.ELEMENT) {
+                putText(hasher, text);
+                putElement(hasher, child);
+            }
+        }
+        putText(hasher, text);
+        hasher.putChar('>');
+    }
+
+    private static void putName(Hasher hasher, String namespace, String localName, String nodeName) {
+        putString(hasher, namespace == null ? "" : namespace);
+        putString(hasher, localName == null ? nodeName : localName);
+    }
+
+    private static void putAttributes(Hasher hasher, List<String[]> attributes) {
+        attributes.sort((a, b) -> {
+            int c = a[0].compareTo(b[0]);
+            return c != 0 ? c : a[1].compareTo(b[1]);
+        });
+        for (String[] attribute : attributes) {
+            hasher.putChar('@');
+            putString(hasher, attribute[0]);
+            putString(hasher, attribute[1]);
+            putString(hasher, attribute[2]);
+        }
+    }
+
+    /**
+     * Adds the text collected since the last element, adjacent text and
+     * CDATA nodes are one text, text that is only whitespace is left out.
+     */
+    private static void putText(Hasher hasher, StringBuilder text) {
+        if (text.length() > 0 && !text.toString().trim().isEmpty()) {
+            hasher.putChar('"');
+            putString(hasher, text);
+        }
+        text.setLength(0);
+    }
+
+    private static void putNode(Hasher hasher, JsonNode node) {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                hasher.putChar('{');
+                List<String> names = new ArrayList<>();
+                node.fieldNames().forEachRemaining(names::add);
+                Collections.sort(names);
+                for (String name : names) {
+                    putString(hasher, name);
+                    putNode(hasher, node.get(name));
+                }
+                hasher.putChar('}');
+                break;
+            case ARRAY:
+                hasher.putChar('[');
+                node.forEach(item -> putNode(hasher, item));
+                hasher.putChar(']');
+                break;
+            default:
+                hasher.putInt(node.getNodeType().ordinal());
+                putString(hasher, node.asText());
+                break;
+        }
+    }
+
+    /**
+     * Adds the length before the characters, so that the boundaries of
+     * strings are part of the hash.
+     */
+    private static void putString(Hasher hasher, CharSequence s) {
+        hasher.putInt(s.length());
+        hasher.putUnencodedChars(s);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("file", file)
+                .add("fingerprints", fingerprints.size())
+                .add("pending", pending.size())
+                .toString();
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.control.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.harvest.Source;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Requests pages from a source ahead of time, so that a number of GetRecords
+ * requests are in flight while earlier pages are mapped and stored. The
+ * number of records in requested but not yet consumed pages is capped.
+ *
+ * The source must support concurrent calls of getRecords().
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class PagePrefetcher implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PagePrefetcher.class);
+
+    private final Source source;
+
+    private final int lookahead;
+
+    private final long maxBufferedRecords;
+
+    private final Report report;
+
+    private final ExecutorService executor;
+
+    private final Map<Long, PendingPage> pending = new LinkedHashMap<>();
+
+    private long bufferedRecords = 0;
+
+    /**
+     * @param source the source to request pages from
+     * @param lookahead the number of pages to request ahead, 0 disables
+     * prefetching
+     * @param maxBufferedRecords the maximum number of records in pages that
+     * are requested ahead
+     * @param report the report passed to the source
+     */
+    public PagePrefetcher(Source source, int lookahead, long maxBufferedRecords, Report report) {
+        this.source = source;
+        this.lookahead = lookahead;
+        this.maxBufferedRecords = maxBufferedRecords;
+        this.report = report;
+        this.executor = lookahead > 0
+                ? Executors.newFixedThreadPool(lookahead, new ThreadFactoryBuilder()
+                        .setNameFormat("youngs-prefetch-%d").setDaemon(true).build())
+                : null;
+    }
+
+    /**
+     * Returns the records of the page, using a prefetched response if one
+     * was requested for the same start position and size, and requests the
+     * following pages up to the lookahead.
+     *
+     * @param start the start position of the page
+     * @param size the number of records of the page
+     * @param nextSize the page size to use for prefetching the following pages
+     * @param limit the last record position to prefetch
+     * @return the records of the page
+     * @throws SourceException if the source could not provide the page
+     */
+    public Collection<SourceRecord> getRecords(long start, long size, long nextSize, long limit)
+            throws SourceException {
+        PendingPage page = pending.remove(start);
+        if (page != null) {
+            bufferedRecords -= page.size;
+        }
+        if (page != null && page.size != size) {
+            log.debug("Discarding prefetched page at {} with size {}, requested size is {}",
+                    start, page.size, size);
+            page.future.cancel(true);
+            page = null;
+        }
+
+        prefetch(start + size, nextSize, limit);
+
+        if (page == null) {
+            return source.getRecords(start, size, report);
+        }
+
+        log.debug("Using prefetched page at {} with size {}", start, size);
+        try {
+            return page.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SourceException("Interrupted while waiting for prefetched page", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SourceException) {
+                throw (SourceException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SourceException("Could not prefetch page: " + e.getCause().getMessage(), e);
+        }
+    }
+
+    private void prefetch(long from, long size, long limit) {
+        if (executor == null || size <= 0) {
+            return;
+        }
+
+        // drop pages that will not be requested anymore, e.g. after a page size change
+        Iterator<Map.Entry<Long, PendingPage>> iter = pending.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Long, PendingPage> entry = iter.next();
+            if (entry.getKey() < from) {
+                entry.getValue().future.cancel(true);
+                bufferedRecords -= entry.getValue().size;
+                iter.remove();
+            }
+        }
+
+        long start = from;
+        for (int i = 0; i < lookahead && start <= limit; i++) {
+            long pageSize = Math.min(size, limit - start + 1);
+            if (!pending.containsKey(start)) {
+                if (bufferedRecords + pageSize > maxBufferedRecords) {
+                    log.trace("Not prefetching page at {}, buffer limit of {} records reached",
+                            start, maxBufferedRecords);
+                    break;
+                }
+                final long pageStart = start;
+                log.debug("Prefetching {} records starting at {}", pageSize, pageStart);
+                pending.put(start, new PendingPage(pageSize,
+                        executor.submit(() -> source.getRecords(pageStart, pageSize, report))));
+                bufferedRecords += pageSize;
+            }
+            start += pending.get(start).size;
+        }
+    }
+
+    @Override
+    public void close() {
+        pending.values().forEach(p -> p.future.cancel(true));
+        pending.clear();
+        bufferedRecords = 0;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class PendingPage {
+
+        private final long size;
+
+        private final Future<Collection<SourceRecord>> future;
+
+        PendingPage(long size, Future<Collection<SourceRecord>> future) {
+            this.size = size;
+            this.future = future;
+        }
+
+    }
+
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.control.impl;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.api.Report.Level;
+import org.n52.youngs.control.Runner;
+import org.n52.youngs.exception.SinkError;
+import org.n52.youngs.harvest.Source;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.ReportImpl;
+import org.n52.youngs.load.Sink;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.postprocess.PostProcessor;
+import org.n52.youngs.transform.Mapper;
+import org.n52.youngs.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A harvesting runner that splits the range of requested records into
+ * partitions and harvests them concurrently, each with its own sequence of
+ * page requests to the source. All partitions add to the same report. A
+ * page that fails is retried on its own after a backoff, so that other
+ * partitions are not affected. Records that were already requested, validated
+ * and checked for changes are not requested again if only mapping or storing
+ * failed.
+ *
+ * The source must support concurrent calls of getRecords. Validation of the
+ * partitions is serialized, because validators are in general not safe for
+ * concurrent use, and so is mapping unless the mapper is thread-safe.
+ *
+ * Per-partition results are added to the report as statistics named
+ * <code>partition.&lt;n&gt;.records</code>, the number of valid records of
+ * stored pages, and <code>partition.&lt;n&gt;.attempts</code>, one more than
+ * the number of retries of all pages of the partition.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class PartitionedBulkRunner implements Runner {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionedBulkRunner.class);
+
+    private static final long DEFAULT_BULK_SIZE = 10;
+
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private static final int DEFAULT_PARTITION_RETRIES = 2;
+
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 1000;
+
+    private long bulkSize = DEFAULT_BULK_SIZE;
+
+    private long startPosition = 1;
+
+    private long recordsLimit = Long.MAX_VALUE;
+
+    private int concurrency = DEFAULT_CONCURRENCY;
+
+    private final Map<String, Integer> endpointConcurrency = Maps.newHashMap();
+
+    private int partitions = -1;
+
+    private int partitionRetries = DEFAULT_PARTITION_RETRIES;
+
+    private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+
+    private Path fingerprintFile;
+
+    private Source source;
+
+    private Mapper mapper;
+
+    private PostProcessor postProcessor;
+
+    private List<Validator> validators;
+
+    private Sink sink;
+
+    private volatile Optional<Double> completedPercentage = Optional.empty();
+
+    public PartitionedBulkRunner() {
+        //
+    }
+
+    public PartitionedBulkRunner setBulkSize(long bulkSize) {
+        this.bulkSize = bulkSize;
+        return this;
+    }
+
+    public PartitionedBulkRunner setStartPosition(long startPosition) {
+        this.startPosition = startPosition;
+        return this;
+    }
+
+    public PartitionedBulkRunner setRecordsLimit(long recordsLimit) {
+        this.recordsLimit = recordsLimit;
+        return this;
+    }
+
+    /**
+     * @param concurrency the number of partitions harvested at the same time
+     * for endpoints without a specific concurrency
+     */
+    public PartitionedBulkRunner setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param endpoint the full endpoint URL or only its host name
+     * @param concurrency the number of partitions harvested at the same time
+     * from the endpoint
+     */
+    public PartitionedBulkRunner setConcurrency(String endpoint, int concurrency) {
+        this.endpointConcurrency.put(endpoint, concurrency);
+        return this;
+    }
+
+    /**
+     * @param partitions the number of ranges the records are split into,
+     * defaults to the concurrency of the endpoint
+     */
+    public PartitionedBulkRunner setPartitions(int partitions) {
+        this.partitions = partitions;
+        return this;
+    }
+
+    /**
+     * @param partitionRetries how often a failed page is retried before the
+     * remaining records of its partition are given up, the count starts anew
+     * for every page
+     */
+    public PartitionedBulkRunner setPartitionRetries(int partitionRetries) {
+        this.partitionRetries = partitionRetries;
+        return this;
+    }
+
+    /**
+     * @param backoff the time to wait before the first retry of a page, which
+     * is doubled for every further retry of the same page, defaults to one
+     * second
+     */
+    public PartitionedBulkRunner setRetryBackoff(long backoff, TimeUnit unit) {
+        this.retryBackoffMillis = unit.toMillis(backoff);
+        return this;
+    }
+
+    /**
+     * @param fingerprintFile the file of the fingerprint store, records that
+     * did not change since they were stored by a previous harvest with the
+     * same mapping are skipped
+     */
+    public PartitionedBulkRunner setFingerprintFile(Path fingerprintFile) {
+        this.fingerprintFile = fingerprintFile;
+        return this;
+    }
+
+    @Override
+    public PartitionedBulkRunner harvest(final Source source) {
+        this.source = source;
+        log.debug("Saved source, waiting for load() to be called...", source);
+        return this;
+    }
+
+    @Override
+    public PartitionedBulkRunner transform(final Mapper mapper) {
+        this.mapper = mapper;
+        log.debug("Saved mapper, waiting for load() to be called...", source);
+        return this;
+    }
+
+    @Override
+    public PartitionedBulkRunner postTransformProcess(PostProcessor postProcessor) {
+        this.postProcessor = postProcessor;
+        log.debug("Saved postProcessor, waiting for load() to be called...", source);
+        return this;
+    }
+
+    @Override
+    public PartitionedBulkRunner withValidators(List<Validator> vals) {
+        this.validators = vals;
+        return this;
+    }
+
+    /**
+     * @return the concurrency configured for the endpoint URL, its host, or
+     * the default concurrency
+     */
+    public int getConcurrency(URL endpoint) {
+        if (endpoint != null) {
+            Integer c = endpointConcurrency.get(endpoint.toString());
+            if (c == null) {
+                c = endpointConcurrency.get(endpoint.getHost());
+            }
+            if (c != null) {
+                return c;
+            }
+        }
+        return concurrency;
+    }
+
+    @Override
+    public Report load(final Sink sink) {
+        this.sink = sink;
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(mapper);
+        Objects.requireNonNull(this.sink);
+
+        ReportImpl report = new ReportImpl();
+        try {
+            boolean prepareSink = sink.prepare(mapper.getMapper());
+            if (!prepareSink) {
+                String msg = "The sink could not be prepared. Stopping load, please check the logs.";
+                log.error(msg);
+                report.addMessage(msg, Level.ERROR);
+                return report;
+            }
+        } catch (SinkError e) {
+            log.error("Problem preparing sink", e);
+            report.addMessage(String.format("Problem preparing sink: %s", e.getMessage()), Level.ERROR);
+            return report;
+        }
+
+        final RecordProcessor processor = new RecordProcessor(mapper, postProcessor, validators);
+        try {
+            if (fingerprintFile != null) {
+                processor.setFingerprintStore(FingerprintStore.open(fingerprintFile));
+            }
+        } catch (IOException e) {
+            log.error("Problem opening fingerprint store {}", fingerprintFile, e);
+            report.addMessage(String.format("Problem opening fingerprint store: %s", e.getMessage()), Level.ERROR);
+            return report;
+        }
+        final Stopwatch timer = Stopwatch.createStarted();
+        long count = source.getRecordCount();
+        long limit = recordsLimit == Long.MAX_VALUE ? count : Math.min(recordsLimit + startPosition, count);
+        int threads = Math.max(1, getConcurrency(source.getEndpoint()));
+        List<Partition> parts = split(startPosition, limit, partitions > 0 ? partitions : threads);
+        long pages = parts.stream().mapToLong(p -> (p.end - p.start) / bulkSize + 1).sum();
+        AtomicLong completedPages = new AtomicLong(0);
+
+        log.info("Starting partitioned harvest from {} to {} with {} in {} partitions with {} threads",
+                source, this.sink, mapper, parts.size(), threads);
+        report.addMessage(String.format("Harvesting records %s to %s in %s partitions with %s threads",
+                startPosition, limit, parts.size(), threads));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = Lists.newArrayList();
+        for (Partition part : parts) {
+            futures.add(executor.submit(() -> harvest(part, processor, report, completedPages, pages)));
+        }
+        executor.shutdown();
+        // every partition must be done before the sink is flushed, so a failed one does not end the wait
+        List<Throwable> failures = Lists.newArrayList();
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while waiting for the partitions to complete", e);
+                report.addMessage("Harvest was interrupted: " + e.getMessage(), Level.ERROR);
+                executor.shutdownNow();
+                awaitTermination(executor);
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        for (Throwable failure : failures) {
+            log.error("Unexpected error in partition", failure);
+            report.addMessage("Unexpected error in partition: " + failure.getMessage(), Level.ERROR);
+        }
+
+        processor.flush(sink, report);
+        processor.commitFingerprints(report);
+
+        timer.stop();
+        long identified = 0;
+        for (Partition part : parts) {
+            identified += part.records;
+            report.setStatistic("partition." + part.index + ".records", part.records);
+            report.setStatistic("partition." + part.index + ".attempts", part.attempts);
+        }
+        report.setIdentifiedRecordCount((int) identified);
+        processor.addStatistics(report);
+
+        log.info("Completed partitioned harvesting for {} ({} failed) of {} records in {} minutes",
+                report.getNumberOfRecordsSuccesful(),
+                report.getNumberOfRecordsFailed(),
+                count,
+                timer.elapsed(TimeUnit.MINUTES));
+
+        return report;
+    }
+
+    /**
+     * Waits for the partitions to stop after they were interrupted, the
+     * interrupt status is cleared while waiting and must be restored by the
+     * caller.
+     */
+    private void awaitTermination(ExecutorService executor) {
+        boolean terminated = false;
+        while (!terminated) {
+            try {
+                terminated = executor.awaitTermination(1, TimeUnit.MINUTES);
+                if (!terminated) {
+                    log.warn("Partitions still running after being interrupted, waiting");
+                }
+            } catch (InterruptedException e) {
+                log.debug("Interrupted again while waiting for the partitions to stop");
+            }
+        }
+    }
+
+    private List<Partition> split(long start, long end, int count) {
+        List<Partition> result = Lists.newArrayList();
+        if (end < start) {
+            return result;
+        }
+        // partitions are aligned to pages, so that the page requests are the same as with a single cursor
+        long pages = (end - start) / bulkSize + 1;
+        long pagesPerPartition = Math.max(1, (pages + count - 1) / count);
+        long partitionStart = start;
+        int index = 0;
+        while (partitionStart <= end) {
+            long partitionEnd = Math.min(end, partitionStart + pagesPerPartition * bulkSize - 1);
+            result.add(new Partition(index++, partitionStart, partitionEnd));
+            partitionStart = partitionEnd + 1;
+        }
+        return result;
+    }
+
+    private void harvest(Partition part, RecordProcessor processor, Report report, AtomicLong completedPages,
+            long pages) {
+        part.attempts = 1;
+        long pageStart = part.start;
+        int retries = 0;
+        // kept for the retries of a page, so that records are only validated and checked for changes once
+        Collection<SourceRecord> changed = null;
+        long valid = 0;
+        while (pageStart <= part.end) {
+            long size = Math.min(part.end - pageStart + 1, bulkSize);
+            try {
+                if (changed == null) {
+                    log.info("### [partition {}] Requesting {} records from {} starting at {} ###",
+                            part.index, size, source.getEndpoint(), pageStart);
+                    Collection<SourceRecord> records = source.getRecords(pageStart, size, report);
+
+                    synchronized (processor) {
+                        Collection<SourceRecord> validRecords = processor.validate(records, report);
+                        valid = validRecords.size();
+                        changed = processor.skipUnchanged(validRecords, report);
+                    }
+                }
+
+                List<SinkRecord> mapped;
+                if (mapper.isThreadSafe()) {
+                    mapped = processor.map(changed, report);
+                } else {
+                    synchronized (processor) {
+                        mapped = processor.map(changed, report);
+                    }
+                }
+                processor.store(sink, mapped, report);
+
+                part.records += valid;
+                pageStart += size;
+                retries = 0;
+                changed = null;
+                updateAndLog(completedPages.incrementAndGet(), pages);
+            } catch (SourceException | RuntimeException e) {
+                String msg = String.format("Issue in partition %s while processing records %s to %s (retry %s): %s",
+                        part.index, pageStart, pageStart + size - 1, retries, e.getMessage());
+                log.warn(msg, e);
+                if (retries >= partitionRetries) {
+                    report.addMessage(String.format("%s - giving up records %s to %s", msg, pageStart, part.end),
+                            Level.ERROR);
+                    return;
+                }
+                report.addMessage(msg, Level.WARN);
+                retries++;
+                part.attempts++;
+                try {
+                    Thread.sleep(retryBackoffMillis << Math.min(retries - 1, 16));
+                } catch (InterruptedException ie) {
+                    report.addMessage(String.format("Partition %s was interrupted - giving up records %s to %s",
+                            part.index, pageStart, part.end), Level.ERROR);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public double getCompletedPercentage() {
+        return this.completedPercentage.orElse(Double.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("source", source)
+                .add("mapper", mapper)
+                .add("sink", sink)
+                .add("concurrency", concurrency).toString();
+    }
+
+    private synchronized void updateAndLog(long completed, long total) {
+        double percentageTask = (double) completed / total * 100;
+        this.completedPercentage = Optional.of(percentageTask);
+        log.info("### Completed {}% of task ({} of {} pages) ###",
+                String.format("%1$,.2f", percentageTask), completed, total);
+    }
+
+    /**
+     * A range of records harvested by one thread, the counters are only
+     * changed by that thread.
+     */
+    private static class Partition {
+
+        private final int index;
+
+        private final long start;
+
+        private final long end;
+
+        private volatile long records = 0;
+
+        private volatile int attempts = 0;
+
+        Partition(int index, long start, long end) {
+            this.index = index;
+            this.start = start;
+            this.end = end;
+        }
+
+    }
+
+}
@@ -0,0 +1,484 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.control.impl;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Stopwatch;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.api.Report.Level;
+import org.n52.youngs.control.Runner;
+import org.n52.youngs.exception.SinkError;
+import org.n52.youngs.harvest.Source;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.ReportImpl;
+import org.n52.youngs.load.Sink;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.postprocess.PostProcessor;
+import org.n52.youngs.transform.Mapper;
+import org.n52.youngs.validation.Validator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A harvesting runner that connects the harvest, validation, mapping (including
+ * post processing) and sink stages with bounded queues, so that requesting the
+ * next page from the source overlaps with mapping and storing the previous
+ * ones. Each stage runs its own configurable number of worker threads.
+ *
+ * Per-stage throughput is added to the report as statistics named
+ * <code>stage.&lt;name&gt;.records</code>, <code>stage.&lt;name&gt;.busy_ms</code>
+ * (summed over the stage's workers) and
+ * <code>stage.&lt;name&gt;.records_per_second</code> (records per second of
+ * busy time).
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class PipelinedBulkRunner implements Runner {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedBulkRunner.class);
+
+    private static final long DEFAULT_BULK_SIZE = 10;
+
+    private static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    private static final String STAGE_HARVEST = "harvest";
+
+    private static final String STAGE_VALIDATION = "validation";
+
+    private static final String STAGE_MAPPING = "mapping";
+
+    private static final String STAGE_SINK = "sink";
+
+    private long bulkSize = DEFAULT_BULK_SIZE;
+
+    private long startPosition = 1;
+
+    private long recordsLimit = Long.MAX_VALUE;
+
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    private int harvestWorkers = 1;
+
+    private int validationWorkers = 1;
+
+    private int mappingWorkers = 1;
+
+    private int sinkWorkers = 1;
+
+    private Path fingerprintFile;
+
+    private Source source;
+
+    private Mapper mapper;
+
+    private PostProcessor postProcessor;
+
+    private List<Validator> validators;
+
+    private Sink sink;
+
+    /**
+     * Written by the threads of the sink stage, read by any caller.
+     */
+    private volatile Optional<Double> completedPercentage = Optional.empty();
+
+    public PipelinedBulkRunner() {
+        //
+    }
+
+    public PipelinedBulkRunner setBulkSize(long bulkSize) {
+        this.bulkSize = bulkSize;
+        return this;
+    }
+
+    public PipelinedBulkRunner setStartPosition(long startPosition) {
+        this.startPosition = startPosition;
+        return this;
+    }
+
+    public PipelinedBulkRunner setRecordsLimit(long recordsLimit) {
+        this.recordsLimit = recordsLimit;
+        return this;
+    }
+
+    /**
+     * @param queueCapacity the number of pages that can wait between two
+     * stages, a full queue blocks the preceding stage
+     */
+    public PipelinedBulkRunner setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * @param workers number of threads requesting pages, the source must
+     * support concurrent calls of getRecords if this is larger than one
+     */
+    public PipelinedBulkRunner setHarvestWorkers(int workers) {
+        this.harvestWorkers = workers;
+        return this;
+    }
+
+    public PipelinedBulkRunner setValidationWorkers(int workers) {
+        this.validationWorkers = workers;
+        return this;
+    }
+
+    /**
+     * @param workers number of threads mapping pages, the mapper and post
+     * processor must be safe for concurrent use if this is larger than one
+     */
+    public PipelinedBulkRunner setMappingWorkers(int workers) {
+        this.mappingWorkers = workers;
+        return this;
+    }
+
+    public PipelinedBulkRunner setSinkWorkers(int workers) {
+        this.sinkWorkers = workers;
+        return this;
+    }
+
+    /**
+     * @param fingerprintFile the file of the fingerprint store, records that
+     * did not change since they were stored by a previous harvest with the
+     * same mapping are skipped
+     */
+    public PipelinedBulkRunner setFingerprintFile(Path fingerprintFile) {
+        this.fingerprintFile = fingerprintFile;
+        return this;
+    }
+
+    @Override
+    public PipelinedBulkRunner harvest(final Source source) {
+        this.source = source;
+        log.debug("Saved source, waiting for load() to be called...", source);
+        return this;
+    }
+
+    @Override
+    public PipelinedBulkRunner transform(final Mapper mapper) {
+        this.mapper = mapper;
+        log.debug("Saved mapper, waiting for load() to be called...", source);
+        return this;
+    }
+
+    @Override
+    public PipelinedBulkRunner postTransformProcess(PostProcessor postProcessor) {
+        this.postProcessor = postProcessor;
+        log.debug("Saved postProcessor, waiting for load() to be called...", source);
+        return this;
+    }
+
+    @Override
+    public PipelinedBulkRunner withValidators(List<Validator> vals) {
+        this.validators = vals;
+        return this;
+    }
+
+    @Override
+    public Report load(final Sink sink) {
+        this.sink = sink;
+        Objects.requireNonNull(source);
+        Objects.requireNonNull(mapper);
+        Objects.requireNonNull(this.sink);
+
+        log.info("Starting pipelined harvest from {} to {} with {}", source, this.sink, mapper);
+        ReportImpl report = new ReportImpl();
+
+        try {
+            boolean prepareSink = sink.prepare(mapper.getMapper());
+            if (!prepareSink) {
+                String msg = "The sink could not be prepared. Stopping load, please check the logs.";
+                log.error(msg);
+                report.addMessage(msg, Level.ERROR);
+                return report;
+            }
+        } catch (SinkError e) {
+            log.error("Problem preparing sink", e);
+            report.addMessage(String.format("Problem preparing sink: %s", e.getMessage()), Level.ERROR);
+            return report;
+        }
+
+        final RecordProcessor processor = new RecordProcessor(mapper, postProcessor, validators);
+        try {
+            if (fingerprintFile != null) {
+                processor.setFingerprintStore(FingerprintStore.open(fingerprintFile));
+            }
+        } catch (IOException e) {
+            log.error("Problem opening fingerprint store {}", fingerprintFile, e);
+            report.addMessage(String.format("Problem opening fingerprint store: %s", e.getMessage()), Level.ERROR);
+            return report;
+        }
+        final Stopwatch timer = Stopwatch.createStarted();
+        long count = source.getRecordCount();
+        final long limit = recordsLimit == Long.MAX_VALUE ? count : Math.min(recordsLimit + startPosition, count);
+        final long pages = limit < startPosition ? 0 : (limit - startPosition) / bulkSize + 1;
+
+        BlockingQueue<Page> harvested = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Page> validated = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Page> mapped = new ArrayBlockingQueue<>(queueCapacity);
+
+        AtomicLong nextPage = new AtomicLong(0);
+        AtomicLong completedPages = new AtomicLong(0);
+
+        Stage harvest = new Stage(STAGE_HARVEST, harvestWorkers, null, harvested, validationWorkers, report) {
+            @Override
+            Page next() throws InterruptedException {
+                long page = nextPage.getAndIncrement();
+                if (page >= pages) {
+                    return null;
+                }
+                long pageStart = startPosition + page * bulkSize;
+                return new Page(pageStart, Math.min(limit - pageStart + 1, bulkSize));
+            }
+
+            @Override
+            long process(Page page) throws SourceException {
+                log.info("### Requesting {} records from {} starting at {}, last requested record will be {} ###",
+                        page.size, source.getEndpoint(), page.start, limit);
+                page.records = source.getRecords(page.start, page.size, report);
+                return page.records.size();
+            }
+        };
+        Stage validation = new Stage(STAGE_VALIDATION, validationWorkers, harvested, validated, mappingWorkers, report) {
+            @Override
+            long process(Page page) {
+                page.records = processor.validate(page.records, report);
+                return page.records.size();
+            }
+        };
+        Stage mapping = new Stage(STAGE_MAPPING, mappingWorkers, validated, mapped, sinkWorkers, report) {
+            @Override
+            long process(Page page) {
+                Collection<SourceRecord> changed = processor.skipUnchanged(page.records, report);
+                log.debug("Mapping {} retrieved valid and changed records.", changed.size());
+                page.mapped = processor.map(changed, report);
+                return page.mapped.size();
+            }
+        };
+        Stage store = new Stage(STAGE_SINK, sinkWorkers, mapped, null, 0, report) {
+            @Override
+            long process(Page page) {
+                log.debug("Storing {} mapped records.", page.mapped.size());
+                processor.store(sink, page.mapped, report);
+                updateAndLog(completedPages.incrementAndGet(), pages);
+                return page.mapped.size();
+            }
+        };
+
+        Stage[] stages = new Stage[]{harvest, validation, mapping, store};
+        int threads = harvestWorkers + validationWorkers + mappingWorkers + sinkWorkers;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Stage stage : stages) {
+                for (int i = 0; i < stage.workers; i++) {
+                    executor.submit(stage);
+                }
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for the pipeline to complete", e);
+            report.addMessage("Harvest was interrupted: " + e.getMessage(), Level.ERROR);
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        processor.flush(sink, report);
+        processor.commitFingerprints(report);
+
+        timer.stop();
+        report.setIdentifiedRecordCount((int) validation.records.get());
+        for (Stage stage : stages) {
+            stage.addStatistics();
+        }
+        processor.addStatistics(report);
+
+        log.info("Completed pipelined harvesting for {} ({} failed) of {} records in {} minutes",
+                report.getNumberOfRecordsSuccesful(),
+                report.getNumberOfRecordsFailed(),
+                count,
+                timer.elapsed(TimeUnit.MINUTES));
+        log.info("Stage statistics: {}", report.getStatistics());
+
+        return report;
+    }
+
+    @Override
+    public double getCompletedPercentage() {
+        return this.completedPercentage.orElse(Double.NEGATIVE_INFINITY);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("source", source)
+                .add("mapper", mapper)
+                .add("sink", sink)
+                .add("workers", String.format("%s/%s/%s/%s", harvestWorkers, validationWorkers,
+                        mappingWorkers, sinkWorkers)).toString();
+    }
+
+    private synchronized void updateAndLog(long completed, long total) {
+        double percentageTask = (double) completed / total * 100;
+        // sink threads can get here in a different order than they completed their pages
+        if (percentageTask > this.completedPercentage.orElse(Double.NEGATIVE_INFINITY)) {
+            this.completedPercentage = Optional.of(percentageTask);
+        }
+        log.info("### Completed {}% of task ({} of {} pages) ###",
+                String.format("%1$,.2f", percentageTask), completed, total);
+    }
+
+    private static class Page {
+
+        private static final Page END = new Page(-1, -1);
+
+        private final long start;
+
+        private final long size;
+
+        private Collection<SourceRecord> records;
+
+        private List<SinkRecord> mapped;
+
+        Page(long start, long size) {
+            this.start = start;
+            this.size = size;
+        }
+
+    }
+
+    /**
+     * A stage takes pages from its input queue, processes them and hands them
+     * to the next stage. The last worker of a stage to finish sends one end
+     * marker per worker of the following stage.
+     */
+    private abstract static class Stage implements Runnable {
+
+        private final String name;
+
+        private final int workers;
+
+        private final BlockingQueue<Page> input;
+
+        private final BlockingQueue<Page> output;
+
+        private final int downstreamWorkers;
+
+        private final Report report;
+
+        private final AtomicInteger running;
+
+        private final AtomicLong records = new AtomicLong(0);
+
+        private final AtomicLong busyNanos = new AtomicLong(0);
+
+        Stage(String name, int workers, BlockingQueue<Page> input, BlockingQueue<Page> output,
+                int downstreamWorkers, Report report) {
+            this.name = name;
+            this.report = report;
+            this.workers = workers;
+            this.input = input;
+            this.output = output;
+            this.downstreamWorkers = downstreamWorkers;
+            this.running = new AtomicInteger(workers);
+        }
+
+        /**
+         * @return the next page to process, or null if the stage is done
+         */
+        Page next() throws InterruptedException {
+            Page page = input.take();
+            return page == Page.END ? null : page;
+        }
+
+        /**
+         * @return the number of records the stage handed on
+         */
+        abstract long process(Page page) throws SourceException;
+
+        @Override
+        public void run() {
+            try {
+                Page page;
+                while ((page = next()) != null) {
+                    Stopwatch busy = Stopwatch.createStarted();
+                    boolean processed = false;
+                    try {
+                        records.addAndGet(process(page));
+                        processed = true;
+                    } catch (SourceException e) {
+                        log.info(String.format("Issue while processing records %s to %s: %s",
+                                page.start, page.size, e.getMessage()), e);
+                        reportError(page, e);
+                    } catch (RuntimeException e) {
+                        log.error(String.format("Unexpected error in stage %s while processing records %s to %s",
+                                name, page.start, page.size), e);
+                        reportError(page, e);
+                    }
+                    busyNanos.addAndGet(busy.elapsed(TimeUnit.NANOSECONDS));
+
+                    if (processed && output != null) {
+                        output.put(page);
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.warn("Stage {} was interrupted", name);
+                Thread.currentThread().interrupt();
+            } finally {
+                if (running.decrementAndGet() == 0 && output != null) {
+                    for (int i = 0; i < downstreamWorkers; i++) {
+                        try {
+                            output.put(Page.END);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                }
+            }
+        }
+
+        private void reportError(Page page, Exception e) {
+            report.addMessage(String.format("Issue in stage %s while processing records %s to %s: %s",
+                    name, page.start, page.size, e.getMessage()), Level.ERROR);
+        }
+
+        void addStatistics() {
+            long busyMillis = TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+            report.setStatistic("stage." + name + ".workers", workers);
+            report.setStatistic("stage." + name + ".records", records.get());
+            report.setStatistic("stage." + name + ".busy_ms", busyMillis);
+            report.setStatistic("stage." + name + ".records_per_second",
+                    busyMillis == 0 ? 0d : records.get() * 1000d / busyMillis);
+        }
+
+    }
+
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.control.impl;
+
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.xml.xpath.XPathExpressionException;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.api.Report.Level;
+import org.n52.youngs.exception.MappingError;
+import org.n52.youngs.exception.SinkError;
+import org.n52.youngs.exception.SinkException;
+import org.n52.youngs.harvest.JsonNodeSourceRecord;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.json.JsonConstants;
+import org.n52.youngs.load.BulkSink;
+import org.n52.youngs.load.Sink;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.postprocess.PostProcessor;
+import org.n52.youngs.transform.Mapper;
+import org.n52.youngs.transform.MappingConfiguration;
+import org.n52.youngs.transform.MappingEntry;
+import org.n52.youngs.validation.JsonSchemaValidator;
+import org.n52.youngs.validation.Validator;
+import org.n52.youngs.validation.XmlSchemaValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * The validation, mapping and storing steps that runners apply to the records
+ * of a page. The processor holds no state of a run, so it can be shared by the
+ * workers of a runner if the mapper, post processor and validators can.
+ * Runners must close the processor at the end of a run to stop the threads of
+ * concurrent mapping.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class RecordProcessor implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordProcessor.class);
+
+    private final Mapper mapper;
+
+    private final PostProcessor postProcessor;
+
+    private final List<Validator> validators;
+
+    private int mappingParallelism = 1;
+
+    private ForkJoinPool mappingPool;
+
+    private FingerprintStore fingerprints;
+
+    private final MappingEntry identifierEntry;
+
+    public RecordProcessor(Mapper mapper, PostProcessor postProcessor, List<Validator> validators) {
+        this.mapper = mapper;
+        this.postProcessor = postProcessor;
+        this.validators = validators;
+        this.identifierEntry = identifierEntry(mapper.getMapper());
+    }
+
+    private static MappingEntry identifierEntry(MappingConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        String identifierField = configuration.getIdentifierField();
+        return configuration.getEntries().stream()
+                .filter(e -> Objects.equals(e.getFieldName(), identifierField))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * @param mappingParallelism the number of threads mapping the records of
+     * a page, only used if the mapper is thread-safe, the post processor must
+     * then be thread-safe as well
+     */
+    public synchronized RecordProcessor setMappingParallelism(int mappingParallelism) {
+        this.mappingParallelism = mappingParallelism;
+        if (this.mappingPool != null) {
+            this.mappingPool.shutdown();
+            this.mappingPool = null;
+        }
+        return this;
+    }
+
+    /**
+     * @param fingerprints the fingerprints of the records stored by previous
+     * harvests, records that did not change are neither mapped nor stored
+     */
+    public RecordProcessor setFingerprintStore(FingerprintStore fingerprints) {
+        this.fingerprints = fingerprints;
+        return this;
+    }
+
+    /**
+     * @return true if the records of a page are mapped concurrently
+     */
+    public boolean isMappingParallel() {
+        return mappingParallelism > 1 && mapper.isThreadSafe();
+    }
+
+    public boolean isValidating() {
+        return this.validators != null;
+    }
+
+    /**
+     * @return the valid records, or all records if no validators are set
+     */
+    public Collection<SourceRecord> validate(Collection<SourceRecord> records, Report report) {
+        if (!isValidating()) {
+            return records;
+        }
+
+        Collection<SourceRecord> validRecords = Lists.newArrayList();
+        int index = 0;
+        for (SourceRecord record : records) {
+            try {
+                List<String> messages = validate(record);
+                if (!messages.isEmpty()) {
+                    messages.forEach(m -> report.addMessage(m, Level.INFO));
+                }
+                log.debug("File #{} is schema valid", index++);
+                validRecords.add(record);
+            } catch (SourceException e) {
+                String msg = String.format("Issue while processing record %s: %s",
+                        index, e.getMessage());
+                log.info(msg, e);
+                report.addMessage(msg, Level.ERROR);
+            }
+        }
+        return validRecords;
+    }
+
+    /**
+     * @return the records that changed since they were last stored, or all
+     * records if no fingerprint store is set, unchanged records are added to
+     * the report as skipped
+     */
+    public Collection<SourceRecord> skipUnchanged(Collection<SourceRecord> records, Report report) {
+        if (fingerprints == null) {
+            return records;
+        }
+
+        Collection<SourceRecord> changedRecords = Lists.newArrayList();
+        for (SourceRecord record : records) {
+            Optional<String> id = resolveIdentifier(record);
+            Optional<String> fingerprint = id.isPresent()
+                    ? FingerprintStore.fingerprint(record, mapper.getMapper())
+                    : Optional.empty();
+            if (fingerprint.isPresent() && !fingerprints.update(id.get(), fingerprint.get())) {
+                log.trace("Skipping unchanged record {}", id.get());
+                report.addSkippedRecord(id.get());
+            } else {
+                changedRecords.add(record);
+            }
+        }
+        return changedRecords;
+    }
+
+    /**
+     * Keeps the fingerprints of the changed records that were stored and
+     * writes the fingerprint store, must be called after the sink was
+     * flushed.
+     */
+    public void commitFingerprints(Report report) {
+        if (fingerprints == null) {
+            return;
+        }
+
+        int committed = fingerprints.commit(report.getAddedIds());
+        report.setStatistic("fingerprints.updated", committed);
+        report.setStatistic("fingerprints.records", fingerprints.size());
+        try {
+            fingerprints.write();
+        } catch (IOException e) {
+            log.warn("Could not write fingerprints {}", fingerprints.getFile(), e);
+            report.addMessage(String.format("Could not write fingerprints: %s", e.getMessage()), Level.WARN);
+        }
+    }
+
+    /**
+     * @return the identifier of the record as the mapper resolves it, or an
+     * empty optional if the record has none
+     */
+    public Optional<String> resolveIdentifier(SourceRecord record) {
+        String id = null;
+        if (record instanceof JsonNodeSourceRecord) {
+            id = ((JsonNodeSourceRecord) record).getRecord().path(JsonConstants.FIELDNAME_ID).asText();
+        } else if (record instanceof NodeSourceRecord && identifierEntry != null) {
+            Object context = record instanceof TinyTreeSourceRecord && mapper.getMapper().isTinyTreeSupported()
+                    ? ((TinyTreeSourceRecord) record).getTree()
+                    : ((NodeSourceRecord) record).getRecord();
+            try {
+                id = identifierEntry.getXPath().evaluate(context);
+            } catch (XPathExpressionException e) {
+                log.debug("Could not resolve identifier of record {}: {}", record, e.getMessage());
+            }
+        }
+        return id == null || id.trim().isEmpty() ? Optional.empty() : Optional.of(id.trim());
+    }
+
+    /**
+     * @return the mapped and post processed records, records that could not be
+     * mapped are added to the report as failed
+     */
+    public List<SinkRecord> map(Collection<SourceRecord> records, Report report) {
+        if (isMappingParallel() && records.size() > 1) {
+            // a parallel stream started from within a pool runs in that pool, the order of records is kept
+            return getMappingPool().submit(() -> records.parallelStream()
+                    .map(record -> map(record, report))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList()))
+                    .join();
+        }
+
+        return records.stream()
+                .map(record -> map(record, report))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    private synchronized ForkJoinPool getMappingPool() {
+        if (mappingPool == null) {
+            mappingPool = new ForkJoinPool(mappingParallelism);
+        }
+        return mappingPool;
+    }
+
+    /**
+     * Shuts down the threads of concurrent mapping, a later call of map
+     * starts new ones.
+     */
+    @Override
+    public synchronized void close() {
+        if (mappingPool != null) {
+            mappingPool.shutdown();
+            mappingPool = null;
+        }
+    }
+
+    public SinkRecord map(SourceRecord record, Report report) {
+        try {
+            SinkRecord r = mapper.map(record);
+            if (this.postProcessor != null && r != null) {
+                return this.postProcessor.process(r);
+            }
+            return r;
+        } catch (MappingError e) {
+            report.addFailedRecord(resolveIdentifier(record).orElse(record.toString()),
+                    "Problem during mapping: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void store(Sink sink, Collection<SinkRecord> records, Report report) {
+        records.forEach(record -> store(sink, record, report));
+    }
+
+    public void store(Sink sink, SinkRecord record, Report report) {
+        if (sink instanceof BulkSink && ((BulkSink) sink).isBulkEnabled()) {
+            try {
+                ((BulkSink) sink).storeBulk(record, report);
+            } catch (SinkError e) {
+                log.warn("Problem during bulk storing: ", e);
+                report.addFailedRecord(failureKey(record), "Problem during bulk storing: " + createMeaningfulErrorMessage(e));
+            }
+            return;
+        }
+
+        try {
+            sink.storeWithExceptions(record);
+            report.addSuccessfulRecord(record.getId());
+        } catch (SinkException e) {
+            log.warn("Problem during mapping: ", e);
+            report.addFailedRecord(record.getId(), createMeaningfulErrorMessage(e));
+        } catch (SinkError e) {
+            log.warn("Problem during mapping: ", e);
+            report.addFailedRecord(failureKey(record), "Problem during mapping: " + createMeaningfulErrorMessage(e));
+        }
+    }
+
+    /**
+     * @return the key of a failed record in the report, the identifier if the
+     * record has one, so that the failure can be matched when retrying it
+     */
+    private static String failureKey(SinkRecord record) {
+        return record.hasId() ? record.getId() : record.toString();
+    }
+
+    /**
+     * Wait for records that are still stored asynchronously, their results are
+     * added to the report that was passed with them.
+     */
+    public void flush(Sink sink, Report report) {
+        if (sink instanceof BulkSink && ((BulkSink) sink).isBulkEnabled()) {
+            if (!((BulkSink) sink).flush(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                report.addMessage("Not all bulk requests completed, see log for details.", Level.ERROR);
+            }
+        }
+    }
+
+    /**
+     * Adds the statistics of the mapper to the report.
+     */
+    public void addStatistics(Report report) {
+        mapper.getStatistics().forEach(report::setStatistic);
+    }
+
+    public static String createMeaningfulErrorMessage(Throwable e) {
+        String result = e.getMessage();
+
+        Throwable current = e.getCause();
+        int maxDepth = 2;
+        for (int index = 0; index < maxDepth; index++) {
+            if (current != null) {
+                result = String.format("%s: %s", result, current.getMessage());
+                current = current.getCause();
+            } else {
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    private List<String> validate(SourceRecord sourceRecord) throws SourceException {
+        if (sourceRecord instanceof NodeSourceRecord) {
+            NodeSourceRecord nsr = (NodeSourceRecord) sourceRecord;
+
+            try {
+                Validator val = resolveValidator(nsr.getRecord());
+                if (val != null) {
+                    if(val instanceof XmlSchemaValidator) {
+                        return ((XmlSchemaValidator)val).validate(nsr.getRecord());
+                    } else {
+                        return Collections.singletonList("No schema validator available for namespace: " +
+                                nsr.getRecord().getNamespaceURI());
+                    }
+                } else {
+                    return Collections.singletonList("No schema validator available for namespace: " +
+                            nsr.getRecord().getNamespaceURI());
+                }
+            } catch (SAXException | IOException | RuntimeException ex) {
+                String recordId = tryRecordIdExtraction((NodeSourceRecord) sourceRecord);
+                throw new SourceException("Validation failed for record '" + recordId + "': " + ex.getMessage(), ex);
+            }
+        } else if (sourceRecord instanceof JsonNodeSourceRecord) {
+            JsonNodeSourceRecord nsr = (JsonNodeSourceRecord) sourceRecord;
+
+            try {
+                Validator val = resolveJsonValidator();
+                if (val != null) {
+                    if (val instanceof JsonSchemaValidator) {
+                        return ((JsonSchemaValidator) val).validate(nsr.getRecord());
+                    } else {
+                        return Collections.singletonList("No schema validator available for JSON.");
+                    }
+                } else {
+                    return Collections.singletonList("No schema validator available for JSON.");
+                }
+            } catch (RuntimeException ex) {
+                String recordId = tryRecordIdExtraction((JsonNodeSourceRecord) sourceRecord);
+                throw new SourceException("Validation failed for record '" + recordId + "': " + ex.getMessage(), ex);
+            }
+
+        } else {
+            log.warn("The SourceRecord class {} is not supported", sourceRecord.getClass().getName());
+        }
+
+        return Collections.emptyList();
+    }
+
+    private Validator resolveJsonValidator() {
+        if (this.validators != null && !this.validators.isEmpty()) {
+            for (Validator validator : validators) {
+                if(validator instanceof JsonSchemaValidator) {
+                   return validator;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Validator resolveValidator(Node record) {
+        if (this.validators != null && !this.validators.isEmpty()) {
+            for (Validator validator : validators) {
+                if(validator instanceof XmlSchemaValidator) {
+                    XmlSchemaValidator xmlSchemavalidator = (XmlSchemaValidator)validator;
+                    if (xmlSchemavalidator.matchesNamespace(record.getNamespaceURI())) {
+                        return validator;
+                    }
+
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private String tryRecordIdExtraction(NodeSourceRecord nodeSourceRecord) {
+        String idField = this.mapper.getMapper().getIdentifierField();
+        MappingEntry idMapping = this.mapper.getMapper().getEntry(idField);
+        try {
+            String result = idMapping.getXPath().evaluate(nodeSourceRecord.getRecord());
+            return String.format("[identifier] %s", result);
+        } catch (XPathExpressionException ex) {
+            log.debug("Could not extract identifier field: " + ex.getMessage(), ex);
+        }
+
+        return String.format("[protocolIdentifier] %s", nodeSourceRecord.getProtocolIdentifier());
+    }
+
+    private String tryRecordIdExtraction(JsonNodeSourceRecord sourceRecord) {
+        try {
+            return sourceRecord.getRecord().get("id").asText();
+        } catch (Exception e) {
+            log.debug("Could not get id from JsonNodeSourceRecord: " + sourceRecord);
+        }
+        return "";
+    }
+
+}
@@ -17,28 +17,26 @@ package org.n52.youngs.control.impl;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Stopwatch;
-import com.google.common.collect.Lists;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import javax.xml.xpath.XPathExpressionException;
+import java.util.stream.Stream;
 
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.n52.youngs.api.Report;
 import org.n52.youngs.api.Report.Level;
 import org.n52.youngs.control.Runner;
-import org.n52.youngs.exception.MappingError;
 import org.n52.youngs.exception.SinkError;
-import org.n52.youngs.exception.SinkException;
-import org.n52.youngs.harvest.JsonNodeSourceRecord;
-import org.n52.youngs.harvest.NodeSourceRecord;
 import org.n52.youngs.harvest.Source;
 import org.n52.youngs.harvest.SourceException;
 import org.n52.youngs.harvest.SourceRecord;
@@ -47,14 +45,9 @@ import org.n52.youngs.load.Sink;
 import org.n52.youngs.load.SinkRecord;
 import org.n52.youngs.postprocess.PostProcessor;
 import org.n52.youngs.transform.Mapper;
-import org.n52.youngs.transform.MappingEntry;
-import org.n52.youngs.validation.JsonSchemaValidator;
 import org.n52.youngs.validation.Validator;
-import org.n52.youngs.validation.XmlSchemaValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Node;
-import org.xml.sax.SAXException;
 
 /**
  * A harvesting runner that downloads a fixed number of records at a time from
@@ -71,6 +64,8 @@ public class SingleThreadBulkRunner implements Runner {
 
     private static final long DEFAULT_BULK_SIZE = 10;
 
+    private static final long DEFAULT_MAX_BUFFERED_RECORDS = 5000;
+
     private long bulkSize = DEFAULT_BULK_SIZE;
 
     private Source source;
@@ -89,6 +84,34 @@ public class SingleThreadBulkRunner implements Runner {
     private PostProcessor postProcessor;
     private boolean validate;
     private List<Validator> validators;
+    private int pageLookahead = 0;
+    private long maxBufferedRecords = DEFAULT_MAX_BUFFERED_RECORDS;
+    private Path checkpointFile;
+    private ResumeMode resumeMode = ResumeMode.NONE;
+    private long minBulkSize = -1;
+    private long maxBulkSize = -1;
+    private int mappingParallelism = 1;
+    private Path fingerprintFile;
+
+    /**
+     * How to use an existing checkpoint journal.
+     */
+    public enum ResumeMode {
+        /**
+         * start at the configured start position, the journal is overwritten
+         */
+        NONE,
+        /**
+         * continue after the last page up to which all pages were stored,
+         * so failed pages and the pages after them are harvested again
+         */
+        CONTINUE,
+        /**
+         * only request the pages of the journal's failed records and pages
+         * again and store these records
+         */
+        RETRY_FAILED
+    }
 
     public SingleThreadBulkRunner() {
         //
@@ -99,6 +122,29 @@ public class SingleThreadBulkRunner implements Runner {
         return this;
     }
 
+    /**
+     * Enable adaptive paging: the page size starts at the bulk size and is
+     * adjusted after every page from the observed latency, errors and records
+     * per second of the source.
+     *
+     * @param minBulkSize the smallest page size
+     * @param maxBulkSize the largest page size
+     */
+    public SingleThreadBulkRunner setAdaptiveBulkSize(long minBulkSize, long maxBulkSize) {
+        this.minBulkSize = minBulkSize;
+        this.maxBulkSize = maxBulkSize;
+        return this;
+    }
+
+    /**
+     * @param mappingParallelism number of threads mapping the records of a
+     * page, only used if the mapper is thread-safe
+     */
+    public SingleThreadBulkRunner setMappingParallelism(int mappingParallelism) {
+        this.mappingParallelism = mappingParallelism;
+        return this;
+    }
+
     public SingleThreadBulkRunner setStartPosition(long startPosition) {
         this.startPosition = startPosition;
         return this;
@@ -109,6 +155,50 @@ public class SingleThreadBulkRunner implements Runner {
         return this;
     }
 
+    /**
+     * @param pageLookahead number of pages requested from the source while
+     * the current page is processed, the source must support concurrent calls
+     * of getRecords if this is larger than zero
+     */
+    public SingleThreadBulkRunner setPageLookahead(int pageLookahead) {
+        this.pageLookahead = pageLookahead;
+        return this;
+    }
+
+    /**
+     * @param maxBufferedRecords the maximum number of records in pages
+     * requested ahead, no further pages are requested while the limit is
+     * reached
+     */
+    public SingleThreadBulkRunner setMaxBufferedRecords(long maxBufferedRecords) {
+        this.maxBufferedRecords = maxBufferedRecords;
+        return this;
+    }
+
+    /**
+     * @param checkpointFile the file of the checkpoint journal which is
+     * written after each page
+     */
+    public SingleThreadBulkRunner setCheckpointFile(Path checkpointFile) {
+        this.checkpointFile = checkpointFile;
+        return this;
+    }
+
+    /**
+     * @param fingerprintFile the file of the fingerprint store, records that
+     * did not change since they were stored by a previous harvest with the
+     * same mapping are skipped
+     */
+    public SingleThreadBulkRunner setFingerprintFile(Path fingerprintFile) {
+        this.fingerprintFile = fingerprintFile;
+        return this;
+    }
+
+    public SingleThreadBulkRunner setResumeMode(ResumeMode resumeMode) {
+        this.resumeMode = resumeMode;
+        return this;
+    }
+
     @Override
     public SingleThreadBulkRunner harvest(final Source source) {
         this.source = source;
@@ -161,10 +251,52 @@ public class SingleThreadBulkRunner implements Runner {
             return report;
         }
 
+        final RecordProcessor processor = new RecordProcessor(mapper, postProcessor, validate ? validators : null)
+                .setMappingParallelism(mappingParallelism);
+        try {
+            if (fingerprintFile != null) {
+                processor.setFingerprintStore(FingerprintStore.open(fingerprintFile));
+            }
+        } catch (IOException e) {
+            log.error("Problem opening fingerprint store {}", fingerprintFile, e);
+            report.addMessage(String.format("Problem opening fingerprint store: %s", e.getMessage()), Level.ERROR);
+            return report;
+        }
+
+        try {
+            return load(processor, report);
+        } finally {
+            processor.close();
+        }
+    }
+
+    private Report load(RecordProcessor processor, ReportImpl report) {
         final Stopwatch timer = Stopwatch.createStarted();
         long pageStart = startPosition;
         long count = source.getRecordCount();
-        final long limit = recordsLimit == Long.MAX_VALUE ? count : Math.min(recordsLimit + startPosition, count);
+        long limit = recordsLimit == Long.MAX_VALUE ? count : Math.min(recordsLimit + startPosition, count);
+
+        Optional<CheckpointJournal> journal;
+        try {
+            journal = openJournal(limit);
+        } catch (IOException | IllegalStateException e) {
+            log.error("Problem opening checkpoint journal {}", checkpointFile, e);
+            report.addMessage(String.format("Problem opening checkpoint journal: %s", e.getMessage()), Level.ERROR);
+            return report;
+        }
+        if (journal.isPresent() && resumeMode == ResumeMode.RETRY_FAILED) {
+            retryFailed(journal.get(), processor, report);
+            processor.flush(sink, report);
+            processor.commitFingerprints(report);
+            processor.addStatistics(report);
+            return report;
+        }
+        if (journal.isPresent() && resumeMode == ResumeMode.CONTINUE) {
+            pageStart = journal.get().getLastStoredPosition() + 1;
+            limit = journal.get().getLimit();
+            log.info("Resuming harvest at {} from checkpoint {}", pageStart, journal.get());
+            report.addMessage(String.format("Resumed at record %s from checkpoint %s", pageStart, checkpointFile));
+        }
 
         final Stopwatch sourceTimer = Stopwatch.createUnstarted();
         final Stopwatch mappingTimer = Stopwatch.createUnstarted();
@@ -172,99 +304,81 @@ public class SingleThreadBulkRunner implements Runner {
         final Stopwatch currentBulkTimer = Stopwatch.createUnstarted();
         double bulkTimeAvg = 0d;
         long runNumber = 0;
+        long recordsDone = 0;
+        final PagePrefetcher prefetcher = new PagePrefetcher(source, pageLookahead, maxBufferedRecords, report);
+        final Optional<AdaptivePageSize> adaptive = minBulkSize > 0
+                ? Optional.of(new AdaptivePageSize(bulkSize, minBulkSize, maxBulkSize))
+                : Optional.empty();
+        adaptive.ifPresent(a -> report.addMessage(String.format("Adaptive paging between %s and %s records, starting at %s",
+                minBulkSize, maxBulkSize, a.getSize())));
 
         while (pageStart <= limit) {
             currentBulkTimer.start();
 
             long recordsLeft = limit - pageStart + 1;
-            long size = Math.min(recordsLeft, bulkSize);
+            long pageSize = adaptive.map(AdaptivePageSize::getSize).orElse(bulkSize);
+            long size = Math.min(recordsLeft, pageSize);
             if (size <= 0) {
                 break;
             }
+            final long currentStart = pageStart;
             log.info("### [{}] Requesting {} records from {} starting at {}, last requested record will be {} ###",
                     runNumber, size, source.getEndpoint(), pageStart, limit);
 
+            Set<String> failedBefore = journal.isPresent()
+                    ? new HashSet<>(report.getFailedIds().keySet()) : Collections.emptySet();
+            final Stopwatch pageTimer = Stopwatch.createUnstarted();
+            long returned = 0;
+            boolean failed = true;
             try {
                 sourceTimer.start();
-                Collection<SourceRecord> records = source.getRecords(pageStart, size, report);
+                pageTimer.start();
+                Collection<SourceRecord> records = prefetcher.getRecords(pageStart, size, pageSize, limit);
+                pageTimer.stop();
                 sourceTimer.stop();
+                returned = records.size();
+                failed = false;
 
-                Collection<SourceRecord> validRecords;
-                if (this.validate) {
-                    validRecords = Lists.newArrayList();
-                    int index = 0;
-                    for (SourceRecord record : records) {
-                        try {
-                            List<String> messages = validate(record);
-                            if (!messages.isEmpty()) {
-                                messages.forEach(m -> report.addMessage(m, Level.INFO));
-                            }
-                            log.debug("File #{} is schema valid", index++);
-                            validRecords.add(record);
-                        } catch (SourceException e) {
-                            String msg = String.format("Issue while processing record %s: %s",
-                                    index, e.getMessage());
-                            log.info(msg, e);
-                            report.addMessage(msg, Level.ERROR);
-                        }
-                    }
-                } else {
-                    validRecords = records;
-                }
+                Collection<SourceRecord> validRecords = processor.validate(records, report);
+                Collection<SourceRecord> changedRecords = processor.skipUnchanged(validRecords, report);
 
-                log.debug("Mapping {} retrieved valid records.", validRecords.size());
+                log.debug("Mapping {} retrieved valid and changed records.", changedRecords.size());
                 mappingTimer.start();
-                AtomicInteger totalIdenfiedCount = new AtomicInteger(0);
-                List<SinkRecord> mappedRecords = validRecords.stream()
-                        .map(record -> {
-                            totalIdenfiedCount.incrementAndGet();
-                            try {
-                                SinkRecord r = mapper.map(record);
-                                if (this.postProcessor != null && r != null) {
-                                    return this.postProcessor.process(r);
-                                }
-                                return r;
-                            } catch (MappingError e) {
-                                report.addFailedRecord(record.toString(), "Problem during mapping: " + e.getMessage());
-                                return null;
-                            }
-                        })
-                        .filter(Objects::nonNull)
-                        .collect(Collectors.toList());
+                List<SinkRecord> mappedRecords = processor.map(changedRecords, report);
                 mappingTimer.stop();
-                report.setIdentifiedRecordCount(totalIdenfiedCount.get());
+                report.setIdentifiedRecordCount(validRecords.size());
 
                 log.debug("Storing {} mapped records.", mappedRecords.size());
                 if (!testRun) {
                     sinkTimer.start();
-                    mappedRecords.forEach(record -> {
-                        try {
-                            sink.storeWithExceptions(record);
-                            report.addSuccessfulRecord(record.getId());
-                        } catch (SinkException e) {
-                            log.warn("Problem during mapping: ", e);
-                            report.addFailedRecord(record.getId(), this.createMeaningfulErrorMessage(e));
-                        } catch (SinkError e) {
-                            log.warn("Problem during mapping: ", e);
-                            report.addFailedRecord(record.toString(), "Problem during mapping: " + this.createMeaningfulErrorMessage(e));
-                        }
-                    });
+                    processor.store(sink, mappedRecords, report);
                     sinkTimer.stop();
                 } else {
                     log.info("TESTRUN, created documents are:\n{}", Arrays.toString(mappedRecords.toArray()));
                 }
 
+                if (journal.isPresent()) {
+                    // the checkpoint must only cover records that are actually stored
+                    processor.flush(sink, report);
+                    writeJournal(report, () -> journal.get().pageStored(currentStart, size,
+                            newFailures(report, failedBefore)));
+                }
             } catch (SourceException e) {
                 String msg = String.format("Issue while processing records %s to %s: %s",
                         pageStart, size, e.getMessage());
                 log.info(msg, e);
                 report.addMessage(msg, Level.ERROR);
+                journal.ifPresent(j -> writeJournal(report, () -> j.pageFailed(currentStart, size, msg)));
             } catch (RuntimeException e) {
                 String msg = String.format("Unexpected error while processing records %s to %s: %s",
                         pageStart, size, e.getMessage());
                 log.error(msg, e);
                 report.addMessage(msg, Level.ERROR);
+                journal.ifPresent(j -> writeJournal(report, () -> j.pageFailed(currentStart, size, msg)));
             } finally {
+                if (pageTimer.isRunning()) {
+                    pageTimer.stop();
+                }
                 if (sourceTimer.isRunning()) {
                     sourceTimer.stop();
                 }
@@ -276,21 +390,37 @@ public class SingleThreadBulkRunner implements Runner {
                 }
             }
 
-            pageStart += bulkSize;
+            pageStart += size;
+            recordsDone += size;
+            if (adaptive.isPresent()) {
+                adaptive.get().update(size, returned, pageTimer.elapsed(TimeUnit.MILLISECONDS), failed, report);
+            }
 
             currentBulkTimer.stop();
             bulkTimeAvg = ((bulkTimeAvg * runNumber) + currentBulkTimer.elapsed(TimeUnit.SECONDS)) / (runNumber + 1);
-            updateAndLog(runNumber, (runNumber + 1) * bulkSize,
+            updateAndLog(runNumber, recordsDone,
                     currentBulkTimer.elapsed(TimeUnit.SECONDS), bulkTimeAvg);
             currentBulkTimer.reset();
 
             runNumber++;
         }
+        prefetcher.close();
+        adaptive.ifPresent(a -> {
+            a.addStatistics(report);
+            log.info("Adaptive paging finished with {}", a);
+        });
+
+        sinkTimer.start();
+        processor.flush(sink, report);
+        sinkTimer.stop();
+        processor.commitFingerprints(report);
+        processor.addStatistics(report);
 
         timer.stop();
-        log.info("Completed harvesting for {} ({} failed) of {} records in {} minutes",
+        log.info("Completed harvesting for {} ({} failed, {} unchanged) of {} records in {} minutes",
                 report.getNumberOfRecordsAdded(),
                 report.getNumberOfRecordsFailed(),
+                report.getNumberOfRecordsSkipped(),
                 source.getRecordCount(),
                 timer.elapsed(TimeUnit.MINUTES));
         log.info("Time spent (minutes): source={}, mapping={}, sink={}", sourceTimer.elapsed(TimeUnit.MINUTES),
@@ -299,21 +429,96 @@ public class SingleThreadBulkRunner implements Runner {
         return report;
     }
 
-    private String createMeaningfulErrorMessage(Throwable e) {
-        String result = e.getMessage();
+    private Optional<CheckpointJournal> openJournal(long limit) throws IOException {
+        if (checkpointFile == null) {
+            return Optional.empty();
+        }
 
-        Throwable current = e.getCause();
-        int maxDepth = 2;
-        for (int index = 0; index < maxDepth; index++) {
-            if (current != null) {
-                result = String.format("%s: %s", result, current.getMessage());
-                current = current.getCause();
-            } else {
-                break;
+        String endpoint = source.getEndpoint().toString();
+        if (resumeMode != ResumeMode.NONE) {
+            Optional<CheckpointJournal> existing = CheckpointJournal.read(checkpointFile);
+            if (existing.isPresent()) {
+                if (!existing.get().matches(endpoint, mapper.getMapper())) {
+                    throw new IllegalStateException(String.format(
+                            "Checkpoint %s does not match endpoint %s and mapping %s v%s",
+                            existing.get(), endpoint, mapper.getMapper().getName(), mapper.getMapper().getVersion()));
+                }
+                return existing;
+            }
+            log.info("No checkpoint found at {}, starting new journal", checkpointFile);
+        }
+
+        CheckpointJournal journal = CheckpointJournal.create(checkpointFile, endpoint, mapper.getMapper(),
+                startPosition, limit);
+        journal.write();
+        return Optional.of(journal);
+    }
+
+    private void retryFailed(CheckpointJournal journal, RecordProcessor processor, ReportImpl report) {
+        List<long[]> pages = journal.getPagesToRetry();
+        log.info("Retrying {} failed records and {} failed pages in {} page requests",
+                journal.getFailedRecords().size(), journal.getFailedPages().size(), pages.size());
+
+        Set<String> failedIds = new HashSet<>(journal.getFailedRecords().keySet());
+        for (long[] page : pages) {
+            long pageStart = page[0];
+            long size = page[1];
+            boolean wholePage = journal.isFailedPage(pageStart);
+            Set<String> failedBefore = new HashSet<>(report.getFailedIds().keySet());
+
+            try {
+                // failures are keyed by the identifier the mapper resolves, see RecordProcessor
+                Collection<SourceRecord> records = processor.validate(
+                        source.getRecords(pageStart, size, report), report).stream()
+                        .filter(r -> wholePage
+                                || processor.resolveIdentifier(r).map(failedIds::contains).orElse(false))
+                        .collect(Collectors.toList());
+                Set<String> skippedBefore = new HashSet<>(report.getSkippedIds());
+                List<SinkRecord> retried = processor.map(processor.skipUnchanged(records, report), report);
+                log.debug("Retrying {} records of page {}", retried.size(), pageStart);
+                processor.store(sink, retried, report);
+                processor.flush(sink, report);
+
+                // records that did not change since they were stored are not failed anymore
+                Map<String, String> failures = newFailures(report, failedBefore);
+                List<String> stored = Stream.concat(
+                        retried.stream().map(SinkRecord::getId),
+                        report.getSkippedIds().stream().filter(id -> !skippedBefore.contains(id)))
+                        .filter(id -> !failures.containsKey(id))
+                        .collect(Collectors.toList());
+                writeJournal(report, () -> {
+                    journal.recordsRetried(stored);
+                    journal.pageStored(pageStart, size, failures);
+                });
+            } catch (SourceException | RuntimeException e) {
+                String msg = String.format("Issue while retrying records %s to %s: %s",
+                        pageStart, size, e.getMessage());
+                log.info(msg, e);
+                report.addMessage(msg, Level.ERROR);
             }
         }
+    }
+
+    private Map<String, String> newFailures(Report report, Set<String> failedBefore) {
+        return report.getFailedIds().entrySet().stream()
+                .filter(e -> !failedBefore.contains(e.getKey()))
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private void writeJournal(Report report, JournalUpdate update) {
+        try {
+            update.apply();
+        } catch (IOException e) {
+            log.warn("Could not write checkpoint journal {}", checkpointFile, e);
+            report.addMessage(String.format("Could not write checkpoint journal: %s", e.getMessage()), Level.WARN);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JournalUpdate {
+
+        void apply() throws IOException;
 
-        return result;
     }
 
     @Override
@@ -329,8 +534,8 @@ public class SingleThreadBulkRunner implements Runner {
                 .add("sink", sink).toString();
     }
 
-    private void updateAndLog(long run, long pageStart, long bulkSeconds, double bulkAverageSeconds) {
-        double percentageTask = (double) pageStart / this.recordsLimit * 100;
+    private void updateAndLog(long run, long recordsDone, long bulkSeconds, double bulkAverageSeconds) {
+        double percentageTask = (double) recordsDone / this.recordsLimit * 100;
         this.completedPercentage = Optional.of(percentageTask);
         log.info("### [{}] Completed {}% of task in {} seconds (avg: {} seconds) ###",
                 run,
@@ -339,100 +544,4 @@ public class SingleThreadBulkRunner implements Runner {
                 String.format("%1$,.2f", bulkAverageSeconds));
     }
 
-    private List<String> validate(SourceRecord sourceRecord) throws SourceException {
-        if (sourceRecord instanceof NodeSourceRecord) {
-            NodeSourceRecord nsr = (NodeSourceRecord) sourceRecord;
-
-            try {
-                Validator val = resolveValidator(nsr.getRecord());
-                if (val != null) {
-                    if(val instanceof XmlSchemaValidator) {
-                        return ((XmlSchemaValidator)val).validate(nsr.getRecord());
-                    } else {
-                        return Collections.singletonList("No schema validator available for namespace: " +
-                                nsr.getRecord().getNamespaceURI());
-                    }
-                } else {
-                    return Collections.singletonList("No schema validator available for namespace: " +
-                            nsr.getRecord().getNamespaceURI());
-                }
-            } catch (SAXException | IOException | RuntimeException ex) {
-                String recordId = tryRecordIdExtraction((NodeSourceRecord) sourceRecord);
-                throw new SourceException("Validation failed for record '" + recordId + "': " + ex.getMessage(), ex);
-            }
-        } else if (sourceRecord instanceof JsonNodeSourceRecord) {
-            JsonNodeSourceRecord nsr = (JsonNodeSourceRecord) sourceRecord;
-
-            try {
-                Validator val = resolveJsonValidator();
-                if (val != null) {
-                    if (val instanceof JsonSchemaValidator) {
-                        return ((JsonSchemaValidator) val).validate(nsr.getRecord());
-                    } else {
-                        return Collections.singletonList("No schema validator available for JSON.");
-                    }
-                } else {
-                    return Collections.singletonList("No schema validator available for JSON.");
-                }
-            } catch (RuntimeException ex) {
-                String recordId = tryRecordIdExtraction((JsonNodeSourceRecord) sourceRecord);
-                throw new SourceException("Validation failed for record '" + recordId + "': " + ex.getMessage(), ex);
-            }
-
-        } else {
-            log.warn("The SourceRecord class {} is not supported", sourceRecord.getClass().getName());
-        }
-
-        return Collections.emptyList();
-    }
-
-    private Validator resolveJsonValidator() {
-        if (this.validators != null && !this.validators.isEmpty()) {
-            for (Validator validator : validators) {
-                if(validator instanceof JsonSchemaValidator) {
-                   return validator;
-                }
-            }
-        }
-        return null;
-    }
-
-    private Validator resolveValidator(Node record) {
-        if (this.validators != null && !this.validators.isEmpty()) {
-            for (Validator validator : validators) {
-                if(validator instanceof XmlSchemaValidator) {
-                    XmlSchemaValidator xmlSchemavalidator = (XmlSchemaValidator)validator;
-                    if (xmlSchemavalidator.matchesNamespace(record.getNamespaceURI())) {
-                        return validator;
-                    }
-
-                }
-            }
-        }
-
-        return null;
-    }
-
-    private String tryRecordIdExtraction(NodeSourceRecord nodeSourceRecord) {
-        String idField = this.mapper.getMapper().getIdentifierField();
-        MappingEntry idMapping = this.mapper.getMapper().getEntry(idField);
-        try {
-            String result = idMapping.getXPath().evaluate(nodeSourceRecord.getRecord());
-            return String.format("[identifier] %s", result);
-        } catch (XPathExpressionException ex) {
-            log.debug("Could not extract identifier field: " + ex.getMessage(), ex);
-        }
-
-        return String.format("[protocolIdentifier] %s", nodeSourceRecord.getProtocolIdentifier());
-    }
-
-    private String tryRecordIdExtraction(JsonNodeSourceRecord sourceRecord) {
-        try {
-            return sourceRecord.getRecord().get("id").asText();
-        } catch (Exception e) {
-            log.debug("Could not get id from JsonNodeSourceRecord: " + sourceRecord);
-        }
-        return "";
-    }
-
 }
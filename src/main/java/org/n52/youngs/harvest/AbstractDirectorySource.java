@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.harvest;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.exception.SourceError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base class for sources reading one record per file from a directory. The
+ * files are listed and sorted by name once, and only the files of a requested
+ * page are parsed, so that memory is proportional to the page size and not to
+ * the number of files. Pages can be parsed in parallel.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public abstract class AbstractDirectorySource implements Source {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractDirectorySource.class);
+
+    protected static final FileFilter DEFAULT_FILTER = (File pathname) -> true;
+
+    private final Path directory;
+
+    private final FileFilter filter;
+
+    private volatile List<File> files;
+
+    private int parallelism = 1;
+
+    private ExecutorService executor;
+
+    public AbstractDirectorySource(Path directory, FileFilter filter) {
+        Objects.nonNull(directory);
+        if (!directory.toFile().isDirectory() && !directory.toFile().exists()) {
+            throw new IllegalArgumentException(String.format("Provided path %s is not an (existing) directory", directory));
+        }
+
+        Objects.nonNull(filter);
+        this.filter = filter;
+        this.directory = directory;
+    }
+
+    /**
+     * @param parallelism the number of threads parsing the files of a page
+     */
+    public AbstractDirectorySource setParallelism(int parallelism) {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+            this.parallelism = parallelism;
+        }
+        return this;
+    }
+
+    @Override
+    public URL getEndpoint() {
+        try {
+            return directory.toFile().toURI().toURL();
+        } catch (MalformedURLException e) {
+            throw new SourceError(e, "Could not create URL from directory %s", directory);
+        }
+    }
+
+    @Override
+    public long getRecordCount() {
+        return getFiles().size();
+    }
+
+    @Override
+    public Collection<SourceRecord> getRecords(Report report) throws SourceException {
+        return getRecords(1, Long.MAX_VALUE, report);
+    }
+
+    @Override
+    public Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report) throws SourceException {
+        List<File> sorted = getFiles();
+        int calculatedBegin = (int) Math.min(sorted.size(), startPosition - 1);
+        int calculatedEnd = (int) Math.min(sorted.size(), calculatedBegin + maxRecords);
+        log.trace("Mapped subsetting from start={} max={} to [{}, {}[(exclusive) for {} files",
+                startPosition, maxRecords, calculatedBegin, calculatedEnd, sorted.size());
+        return readRecords(sorted.subList(calculatedBegin, // java starts at 0
+                calculatedEnd)); // end is exclusive
+    }
+
+    /**
+     * @return the files of the directory sorted by name, listed on first use
+     */
+    protected List<File> getFiles() {
+        if (files == null) {
+            synchronized (this) {
+                if (files == null) {
+                    File[] listed = this.directory.toFile().listFiles(filter);
+                    List<File> list = listed == null ? Collections.emptyList() : Arrays.asList(listed);
+                    list.sort(Comparator.comparing(File::getName));
+                    log.debug("Listed {} files in {}", list.size(), directory);
+                    files = Collections.unmodifiableList(list);
+                }
+            }
+        }
+        return files;
+    }
+
+    private List<SourceRecord> readRecords(List<File> page) throws SourceException {
+        List<SourceRecord> records = Lists.newArrayListWithCapacity(page.size());
+        ExecutorService pool = getExecutor();
+        if (pool == null || page.size() < 2) {
+            for (File file : page) {
+                records.add(readRecord(file));
+            }
+            return records;
+        }
+
+        List<Callable<SourceRecord>> tasks = Lists.newArrayListWithCapacity(page.size());
+        page.forEach(file -> tasks.add(() -> readRecord(file)));
+        try {
+            for (Future<SourceRecord> future : pool.invokeAll(tasks)) {
+                records.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SourceException("Interrupted while reading files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SourceException) {
+                throw (SourceException) e.getCause();
+            }
+            throw new SourceException("Issue reading files: " + e.getCause().getMessage(), e);
+        }
+        return records;
+    }
+
+    private SourceRecord readRecord(File file) throws SourceException {
+        try {
+            SourceRecord record = readRecordFromFile(file);
+            log.trace("Parsed record: {}", record);
+            return record;
+        } catch (IOException e) {
+            log.warn("Could not parse file {}: {} (turn on debug for full trace)", file, e.getMessage());
+            log.debug("Error reading file {}", file, e);
+            throw new SourceException("Issue with file '" + file.getName() + "': " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (parallelism > 1 && executor == null) {
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactoryBuilder()
+                    .setNameFormat("youngs-directory-%d")
+                    .setDaemon(true)
+                    .build());
+        }
+        return executor;
+    }
+
+    /**
+     * @throws IOException if the file cannot be read or parsed
+     */
+    protected abstract SourceRecord readRecordFromFile(File f) throws IOException;
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("directory", this.directory)
+                .add("filter", this.filter)
+                .omitNullValues()
+                .toString();
+    }
+
+}
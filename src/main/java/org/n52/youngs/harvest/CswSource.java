@@ -25,20 +25,12 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.function.Supplier;
 import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
-import javax.xml.bind.Unmarshaller;
 import javax.xml.namespace.NamespaceContext;
-import javax.xml.parsers.DocumentBuilder;
-import net.opengis.csw.v_2_0_2.AbstractRecordType;
 import org.n52.youngs.api.Report;
 import org.n52.youngs.impl.ContextHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
 
 /**
  *
@@ -62,7 +54,9 @@ public abstract class CswSource implements Source {
 
     protected JAXBContext context;
 
-    protected Unmarshaller unmarshaller;
+    protected GetRecordsResponseReader responseReader = new GetRecordsResponseReader();
+
+    private HttpTransport transport = HttpTransport.getShared();
 
     private NamespaceContext namespaceContext;
 
@@ -98,7 +92,32 @@ public abstract class CswSource implements Source {
 
     private void init() throws JAXBException {
         context = ContextHelper.getContextForNamespace(this.outputSchema);
-        unmarshaller = context.createUnmarshaller();
+    }
+
+    /**
+     * @param transport the transport for requests to the catalog, the shared
+     * transport is used by default
+     */
+    public CswSource setTransport(HttpTransport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param tinyTree true to build the harvested records into Saxon TinyTrees
+     * instead of DOM documents, see {@link TinyTreeSourceRecord}
+     */
+    public CswSource setTinyTree(boolean tinyTree) {
+        this.responseReader = new GetRecordsResponseReader(tinyTree);
+        return this;
+    }
+
+    public boolean isTinyTree() {
+        return responseReader.isTinyTree();
     }
 
     @Override
@@ -112,28 +131,20 @@ public abstract class CswSource implements Source {
     }
 
     @Override
-    public Collection<SourceRecord> getRecords(Report report) {
+    public Collection<SourceRecord> getRecords(Report report) throws SourceException {
         return getRecords(1, Long.MAX_VALUE, report);
     }
 
+    /**
+     * @throws SourceException if the request fails or the response cannot be
+     * read, so that callers can retry the page instead of taking it as empty
+     */
     @Override
-    public abstract Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report);
+    public abstract Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report)
+            throws SourceException;
 
     protected abstract Supplier<? extends Long> getAndStoreRecordCount();
 
-    protected Node getNode(JAXBElement<? extends AbstractRecordType> record, JAXBContext context, DocumentBuilder db) {
-        try {
-            Document document = db.newDocument();
-            Marshaller marshaller = context.createMarshaller();
-            marshaller.marshal(record, document);
-            Element elem = document.getDocumentElement();
-            return elem;
-        } catch (JAXBException e) {
-            log.warn("Error getting node from record {}: {} > {}", record, e, e.getMessage());
-            return null;
-        }
-    }
-
     protected String getNamespacesParameter() {
         return namespacesParameter.orElseGet(new NamespacesParameterSupplier(
                 namespaces.orElse(DEFAULT_NAMESPACES), namespaceContext));
@@ -15,28 +15,21 @@
  */
 package org.n52.youngs.harvest;
 
-import com.google.common.base.MoreObjects;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.stream.Collectors;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import org.n52.youngs.api.Report;
-import org.n52.youngs.exception.SourceError;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.SaxonApiException;
+import org.n52.youngs.impl.SaxonHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -44,110 +37,76 @@ import org.w3c.dom.Element;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
-public class DirectorySource implements Source {
+public class DirectorySource extends AbstractDirectorySource {
 
     private static final Logger log = LoggerFactory.getLogger(DirectorySource.class);
 
-    private static final FileFilter DEFAULT_FILTER = (File pathname) -> true;
+    private final DocumentBuilderFactory docBuilderFactory;
 
-    private final Path directory;
+    /**
+     * Document builders are not thread-safe, so every thread parsing files
+     * reuses its own.
+     */
+    private final ThreadLocal<DocumentBuilder> documentBuilder;
 
-    private Optional<List<SourceRecord>> records = Optional.empty();
-
-    private FileFilter filter;
-
-    private DocumentBuilderFactory docBuilderFactory;
+    private boolean tinyTree = false;
 
     public DirectorySource(Path directory) {
         this(directory, DEFAULT_FILTER);
     }
 
     public DirectorySource(Path directory, FileFilter filter) {
-        Objects.nonNull(directory);
-        if (!directory.toFile().isDirectory() && !directory.toFile().exists()) {
-            throw new IllegalArgumentException(String.format("Provided path %s is not an (existing) directory", directory));
-        }
-
-        Objects.nonNull(filter);
-        this.filter = filter;
-        this.directory = directory;
+        super(directory, filter);
 
         docBuilderFactory = DocumentBuilderFactory.newInstance();
         docBuilderFactory.setNamespaceAware(true);
+        documentBuilder = ThreadLocal.withInitial(() -> {
+            try {
+                return docBuilderFactory.newDocumentBuilder();
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException("Could not create document builder", e);
+            }
+        });
     }
 
-    @Override
-    public URL getEndpoint() {
-        try {
-            return directory.toFile().toURI().toURL();
-        } catch (MalformedURLException e) {
-            throw new SourceError(e, "Could not create URL from directory %s", directory);
-        }
+    /**
+     * @param tinyTree true to parse records into Saxon TinyTrees instead of
+     * DOM documents, see {@link TinyTreeSourceRecord}
+     */
+    public DirectorySource setTinyTree(boolean tinyTree) {
+        this.tinyTree = tinyTree;
+        return this;
     }
 
-    @Override
-    public long getRecordCount() {
-        return getFiles().length;
+    public boolean isTinyTree() {
+        return tinyTree;
     }
 
     @Override
-    public Collection<SourceRecord> getRecords(Report report) throws SourceException {
-        return readRecordsFromDirectory();
-    }
-
-    @Override
-    public Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report) throws SourceException {
-        List<SourceRecord> sorted = readRecordsFromDirectory();
-        int calculatedBegin = (int) (startPosition - 1);
-        int calculatedEnd = (int) Math.min(sorted.size(), (calculatedBegin + maxRecords));
-        log.trace("Mapped subsetting from start={} max={} to [{}, {}[(exclusive) for {} records",
-                startPosition, maxRecords, calculatedBegin, calculatedEnd, sorted.size());
-        return sorted.subList(calculatedBegin, // java starts at 0
-                calculatedEnd); // end is exclusive
-    }
-
-    private File[] getFiles() {
-        return this.directory.toFile().listFiles(filter);
-    }
+    protected SourceRecord readRecordFromFile(File f) throws IOException {
+        log.debug("Reading record from file {}", f);
 
-    private List<SourceRecord> readRecordsFromDirectory() throws SourceException {
-        if (this.records.isPresent()) {
-            return this.records.get();
+        Charset cs = Charset.forName("utf-8");
+        if (tinyTree) {
+            try (InputStream is = new FileInputStream(f)) {
+                NodeInfo tree = SaxonHelper.buildTree(new StreamSource(new InputStreamReader(is, cs)));
+                log.trace("Read tree: {}", tree);
+                return new TinyTreeSourceRecord(tree, f.getName());
+            } catch (SaxonApiException e) {
+                throw new IOException(e.getMessage(), e);
+            }
         }
 
-        List<SourceException> exceptions = new ArrayList<>();
-
-        List<SourceRecord> recs = Arrays.stream(getFiles())
-                .map(file -> {
-                    try {
-                        SourceRecord record = readRecordFromFile(file);
-                        log.trace("Parsed record: {}", record);
-                        return record;
-                    } catch (SAXException | IOException | ParserConfigurationException e) {
-                        log.warn("Could not parse file {}: {} (turn on debug for full trace)", file, e.getMessage());
-                        log.debug("Error reading file {}", file, e);
-                        exceptions.add(new SourceException("Issue with file '" + file.getName() + "': " + e.getMessage(), e));
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-
-        if (!exceptions.isEmpty()) {
-            throw exceptions.get(0);
+        DocumentBuilder builder = documentBuilder.get();
+        Document doc;
+        try (InputStream is = new FileInputStream(f)) {
+            doc = builder.parse(new InputSource(new InputStreamReader(is, cs)));
+        } catch (SAXException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            builder.reset();
         }
 
-        this.records = Optional.of(recs);
-        return this.records.get();
-    }
-
-    private SourceRecord readRecordFromFile(File f) throws ParserConfigurationException, SAXException, IOException {
-        log.debug("Reading record from file {}", f);
-
-        DocumentBuilder documentBuilder = docBuilderFactory.newDocumentBuilder();
-        Charset cs = Charset.forName("utf-8");
-        Document doc = documentBuilder.parse(new InputSource(new InputStreamReader(new FileInputStream(f), cs)));
-
         Element elem = doc.getDocumentElement();
         elem.normalize();
         log.trace("Read document: {}", elem);
@@ -156,15 +115,4 @@ public class DirectorySource implements Source {
         return record;
     }
 
-    @Override
-    public String toString() {
-        return MoreObjects.toStringHelper(this)
-                .add("directory", this.directory)
-                .add("filter", this.filter)
-                .omitNullValues()
-                .toString();
-    }
-
-
-
 }
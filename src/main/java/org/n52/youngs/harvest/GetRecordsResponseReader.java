@@ -0,0 +1,483 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.harvest;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import net.sf.saxon.event.Builder;
+import net.sf.saxon.event.ReceivingContentHandler;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.tree.tiny.TinyBuilder;
+import org.n52.youngs.impl.SaxonHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Streaming decoder for CSW GetRecords responses. The attributes of
+ * <code>csw:SearchResults</code> are read with StAX and every child record is
+ * built directly from the stream into its own DOM document, so that neither
+ * the response nor an object model of it are held in memory. Records can also
+ * be built into Saxon TinyTrees instead. The reader can be used concurrently.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class GetRecordsResponseReader {
+
+    private static final Logger log = LoggerFactory.getLogger(GetRecordsResponseReader.class);
+
+    public static final String CSW_NAMESPACE = "http://www.opengis.net/cat/csw/2.0.2";
+
+    private static final String SEARCH_RESULTS = "SearchResults";
+
+    private static final String EXCEPTION_REPORT = "ExceptionReport";
+
+    private static final String EXCEPTION_TEXT = "ExceptionText";
+
+    private static final XMLInputFactory inputFactory = createInputFactory();
+
+    private static final DocumentBuilderFactory documentBuilderFactory = createDocumentBuilderFactory();
+
+    /**
+     * The attributes of a search result.
+     */
+    public static class SearchResults {
+
+        private long numberOfRecordsMatched = -1;
+
+        private long numberOfRecordsReturned = -1;
+
+        private long nextRecord = -1;
+
+        private int records = 0;
+
+        public long getNumberOfRecordsMatched() {
+            return numberOfRecordsMatched;
+        }
+
+        public long getNumberOfRecordsReturned() {
+            return numberOfRecordsReturned;
+        }
+
+        public long getNextRecord() {
+            return nextRecord;
+        }
+
+        /**
+         * @return the number of records actually contained in the response
+         */
+        public int getRecords() {
+            return records;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("matched", numberOfRecordsMatched)
+                    .add("returned", numberOfRecordsReturned)
+                    .add("nextRecord", nextRecord)
+                    .add("records", records).toString();
+        }
+
+    }
+
+    /**
+     * Builds the records of a response from the stream.
+     *
+     * @param <T> the type of the built records
+     */
+    @FunctionalInterface
+    private interface RecordBuilder<T> {
+
+        /**
+         * @param reader the reader at the start tag of a record, it must be
+         * left at the end tag of the record
+         * @param inherited the namespaces declared on ancestors of the record
+         */
+        T build(XMLStreamReader reader, Map<String, String> inherited) throws XMLStreamException;
+
+    }
+
+    private final boolean tinyTree;
+
+    public GetRecordsResponseReader() {
+        this(false);
+    }
+
+    /**
+     * @param tinyTree true if {@link #readRecords(InputStream)} builds
+     * Saxon TinyTrees instead of DOM documents, see
+     * {@link TinyTreeSourceRecord}
+     */
+    public GetRecordsResponseReader(boolean tinyTree) {
+        this.tinyTree = tinyTree;
+    }
+
+    public boolean isTinyTree() {
+        return tinyTree;
+    }
+
+    /**
+     * @return the records of the response, identified as
+     * <code>csw-record-&lt;index&gt;</code>
+     */
+    public Collection<SourceRecord> readRecords(InputStream input) throws SourceException {
+        List<SourceRecord> records = Lists.newArrayList();
+        SearchResults results;
+        if (tinyTree) {
+            results = readTrees(input,
+                    record -> records.add(new TinyTreeSourceRecord(record, "csw-record-" + records.size())));
+        } else {
+            results = read(input,
+                    record -> records.add(new NodeSourceRecord(record, "csw-record-" + records.size())));
+        }
+        log.debug("Decoded {}", results);
+        return records;
+    }
+
+    /**
+     * Reads only up to the <code>csw:SearchResults</code> element, so the
+     * remainder of the response is not parsed.
+     *
+     * @return the number of matched records
+     */
+    public long readRecordsMatched(InputStream input) throws SourceException {
+        return read(input, null, null).getNumberOfRecordsMatched();
+    }
+
+    /**
+     * @param input the response, it is not closed
+     * @param recordHandler is called with the root element of each record as
+     * soon as it is read, or null to stop after the search result attributes
+     * @return the search result attributes
+     * @throws SourceException if the response cannot be parsed, is an
+     * exception report, or has no search results
+     */
+    public SearchResults read(InputStream input, Consumer<Element> recordHandler) throws SourceException {
+        if (recordHandler == null) {
+            return read(input, null, null);
+        }
+
+        DocumentBuilder builder;
+        try {
+            builder = newDocumentBuilder();
+        } catch (ParserConfigurationException e) {
+            throw new SourceException("Could not read GetRecords response: " + e.getMessage(), e);
+        }
+        return read(input, (reader, inherited) -> {
+            Document document = builder.newDocument();
+            Element record = readElement(reader, document);
+            inherited.forEach((prefix, uri) -> {
+                String name = prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE : prefix;
+                if (!record.hasAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name)) {
+                    declareNamespace(record, prefix, uri);
+                }
+            });
+            document.appendChild(record);
+            return record;
+        }, recordHandler);
+    }
+
+    /**
+     * Same as {@link #read(InputStream, Consumer)}, but every record is built
+     * into its own Saxon TinyTree.
+     *
+     * @param input the response, it is not closed
+     * @param recordHandler is called with the root element of each record as
+     * soon as it is read
+     * @return the search result attributes
+     * @throws SourceException if the response cannot be parsed, is an
+     * exception report, or has no search results
+     */
+    public SearchResults readTrees(InputStream input, Consumer<NodeInfo> recordHandler) throws SourceException {
+        return read(input, GetRecordsResponseReader::readTree, recordHandler);
+    }
+
+    private <T> SearchResults read(InputStream input, RecordBuilder<T> recordBuilder, Consumer<T> recordHandler)
+            throws SourceException {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(input);
+            reader.nextTag();
+            if (EXCEPTION_REPORT.equals(reader.getLocalName())) {
+                throw new SourceException("Exception report received: " + readExceptionText(reader), null);
+            }
+
+            // namespaces declared on the response and the search results are declared again on each record,
+            // so that the records are self-contained
+            Map<String, String> inherited = Maps.newLinkedHashMap();
+            collectNamespaces(reader, inherited);
+            while (!isSearchResults(reader)) {
+                if (!reader.hasNext()) {
+                    throw new SourceException("Response does not contain search results", null);
+                }
+                reader.next();
+            }
+            collectNamespaces(reader, inherited);
+
+            SearchResults results = new SearchResults();
+            results.numberOfRecordsMatched = longAttribute(reader, "numberOfRecordsMatched");
+            results.numberOfRecordsReturned = longAttribute(reader, "numberOfRecordsReturned");
+            results.nextRecord = longAttribute(reader, "nextRecord");
+            if (recordHandler == null) {
+                return results;
+            }
+
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                T record = recordBuilder.build(reader, inherited);
+                results.records++;
+                recordHandler.accept(record);
+            }
+            return results;
+        } catch (XMLStreamException e) {
+            throw new SourceException("Could not read GetRecords response: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    log.debug("Could not close reader", e);
+                }
+            }
+        }
+    }
+
+    private static boolean isSearchResults(XMLStreamReader reader) {
+        return reader.isStartElement() && SEARCH_RESULTS.equals(reader.getLocalName())
+                && CSW_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    private static long longAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value of attribute {}: {}", name, value);
+            return -1;
+        }
+    }
+
+    private static String readExceptionText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT && EXCEPTION_TEXT.equals(reader.getLocalName())) {
+                if (sb.length() > 0) {
+                    sb.append("; ");
+                }
+                sb.append(reader.getElementText().trim());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Builds the element at the current start tag, the reader is left at its
+     * end tag.
+     */
+    private static Element readElement(XMLStreamReader reader, Document document) throws XMLStreamException {
+        Element root = createElement(reader, document);
+        Node current = root;
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element child = createElement(reader, document);
+                    current.appendChild(child);
+                    current = child;
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    current = current.getParentNode();
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    current.appendChild(document.createTextNode(reader.getText()));
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    current.appendChild(document.createComment(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    current.appendChild(document.createProcessingInstruction(reader.getPITarget(),
+                            reader.getPIData()));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return root;
+    }
+
+    private static Element createElement(XMLStreamReader reader, Document document) {
+        Element element = document.createElementNS(emptyToNull(reader.getNamespaceURI()),
+                qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            declareNamespace(element, reader.getNamespacePrefix(i), reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)),
+                    qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+                    reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    /**
+     * Builds a TinyTree of the element at the current start tag and the
+     * inherited namespaces it does not declare itself, the reader is left at
+     * its end tag.
+     */
+    private static NodeInfo readTree(XMLStreamReader reader, Map<String, String> inherited)
+            throws XMLStreamException {
+        Builder builder = new TinyBuilder(SaxonHelper.getConfiguration().makePipelineConfiguration());
+        ReceivingContentHandler handler = new ReceivingContentHandler();
+        handler.setPipelineConfiguration(builder.getPipelineConfiguration());
+        handler.setReceiver(builder);
+
+        try {
+            handler.startDocument();
+            Map<String, String> declared = Maps.newHashMap();
+            collectNamespaces(reader, declared);
+            inherited.forEach((prefix, uri) -> {
+                if (!declared.containsKey(prefix)) {
+                    handler.startPrefixMapping(prefix, uri);
+                }
+            });
+
+            int depth = 0;
+            do {
+                switch (reader.getEventType()) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        startElement(reader, handler);
+                        depth++;
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        handler.endElement(nullToEmpty(reader.getNamespaceURI()), reader.getLocalName(),
+                                qualifiedName(reader.getPrefix(), reader.getLocalName()));
+                        depth--;
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                    case XMLStreamConstants.SPACE:
+                        handler.characters(reader.getTextCharacters(), reader.getTextStart(),
+                                reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.COMMENT:
+                        handler.comment(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                        break;
+                    case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                        handler.processingInstruction(reader.getPITarget(), reader.getPIData());
+                        break;
+                    default:
+                        break;
+                }
+                if (depth > 0) {
+                    reader.next();
+                }
+            } while (depth > 0);
+            handler.endDocument();
+        } catch (SAXException e) {
+            throw new XMLStreamException("Could not build record tree: " + e.getMessage(), e);
+        }
+        return SaxonHelper.documentElement(builder.getCurrentRoot());
+    }
+
+    private static void startElement(XMLStreamReader reader, ReceivingContentHandler handler) throws SAXException {
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            handler.startPrefixMapping(nullToEmpty(reader.getNamespacePrefix(i)), reader.getNamespaceURI(i));
+        }
+        AttributesImpl attributes = new AttributesImpl();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            attributes.addAttribute(nullToEmpty(reader.getAttributeNamespace(i)), reader.getAttributeLocalName(i),
+                    qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), "CDATA",
+                    reader.getAttributeValue(i));
+        }
+        handler.startElement(nullToEmpty(reader.getNamespaceURI()), reader.getLocalName(),
+                qualifiedName(reader.getPrefix(), reader.getLocalName()), attributes);
+    }
+
+    private static void collectNamespaces(XMLStreamReader reader, Map<String, String> namespaces) {
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            namespaces.put(prefix == null ? "" : prefix, reader.getNamespaceURI(i));
+        }
+    }
+
+    private static void declareNamespace(Element element, String prefix, String uri) {
+        if (prefix == null || prefix.isEmpty()) {
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE, uri);
+        } else {
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix,
+                    uri);
+        }
+    }
+
+    private static String qualifiedName(String prefix, String localName) {
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        synchronized (documentBuilderFactory) {
+            return documentBuilderFactory.newDocumentBuilder();
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
+}
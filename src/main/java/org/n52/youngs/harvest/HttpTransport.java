@@ -0,0 +1,258 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.harvest;
+
+import com.google.common.base.MoreObjects;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.protocol.ResponseContentEncoding;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP transport for catalog requests with a pool of persistent connections,
+ * connect and read timeouts, per-host connection limits and gzip/deflate
+ * compressed responses, which are decompressed while they are read. All
+ * settings can be changed while the transport is in use and apply to the
+ * following requests.
+ *
+ * By default all CSW sources share one transport, so that connections to the
+ * same catalog are reused across sources and runs.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class HttpTransport implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpTransport.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    public static final int DEFAULT_READ_TIMEOUT = 120000;
+
+    public static final long DEFAULT_KEEP_ALIVE = 30000;
+
+    private static final HttpTransport shared = new HttpTransport();
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient client;
+
+    private volatile int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+
+    private volatile int readTimeout = DEFAULT_READ_TIMEOUT;
+
+    private volatile long keepAlive = DEFAULT_KEEP_ALIVE;
+
+    private volatile boolean compression = true;
+
+    public HttpTransport() {
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        this.connectionManager.setMaxTotal(DEFAULT_MAX_CONNECTIONS);
+        this.connectionManager.setDefaultMaxPerRoute(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        this.client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> {
+                    long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                            .getKeepAliveDuration(response, context);
+                    return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAlive) : keepAlive;
+                })
+                // the request header is set per request, the response is decoded regardless
+                .disableContentCompression()
+                .addInterceptorLast(new ResponseContentEncoding())
+                .evictExpiredConnections()
+                .evictIdleConnections(DEFAULT_KEEP_ALIVE, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * @return the transport used by all sources that have no other transport
+     * set
+     */
+    public static HttpTransport getShared() {
+        return shared;
+    }
+
+    public HttpTransport setMaxConnections(int maxConnections) {
+        this.connectionManager.setMaxTotal(maxConnections);
+        return this;
+    }
+
+    /**
+     * @param maxConnections the default number of concurrent connections to a
+     * host
+     */
+    public HttpTransport setMaxConnectionsPerHost(int maxConnections) {
+        this.connectionManager.setDefaultMaxPerRoute(maxConnections);
+        return this;
+    }
+
+    /**
+     * @param endpoint a URL of the host, only protocol, host and port are used
+     * @param maxConnections the number of concurrent connections to the host
+     */
+    public HttpTransport setMaxConnectionsPerHost(URL endpoint, int maxConnections) {
+        int port = endpoint.getPort() == -1 ? endpoint.getDefaultPort() : endpoint.getPort();
+        HttpHost host = new HttpHost(endpoint.getHost(), port, endpoint.getProtocol());
+        this.connectionManager.setMaxPerRoute(new HttpRoute(host), maxConnections);
+        return this;
+    }
+
+    /**
+     * @param connectTimeout timeout in milliseconds for establishing a
+     * connection
+     */
+    public HttpTransport setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    /**
+     * @param readTimeout timeout in milliseconds between two packets of a
+     * response
+     */
+    public HttpTransport setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    /**
+     * @param keepAlive the maximum time in milliseconds an idle connection is
+     * kept open
+     */
+    public HttpTransport setKeepAlive(long keepAlive) {
+        this.keepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * @param compression if true, compressed responses are requested
+     */
+    public HttpTransport setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * @return the response body, the connection is returned to the pool when
+     * the stream is closed
+     * @throws IOException if the request fails or the response status is not
+     * successful
+     */
+    public InputStream get(String uri) throws IOException {
+        return execute(new HttpGet(uri));
+    }
+
+    /**
+     * @return the response body, the connection is returned to the pool when
+     * the stream is closed
+     * @throws IOException if the request fails or the response status is not
+     * successful
+     */
+    public InputStream post(String uri, HttpEntity body, Header... headers) throws IOException {
+        HttpPost post = new HttpPost(uri);
+        post.setEntity(body);
+        post.setHeaders(headers);
+        return execute(post);
+    }
+
+    private InputStream execute(HttpRequestBase request) throws IOException {
+        request.setConfig(RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(readTimeout)
+                .setSocketTimeout(readTimeout)
+                .build());
+        if (compression) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        }
+
+        log.trace("Executing {}", request.getRequestLine());
+        CloseableHttpResponse response = client.execute(request);
+        StatusLine status = response.getStatusLine();
+        HttpEntity entity = response.getEntity();
+        if (status.getStatusCode() >= 300 || entity == null) {
+            try {
+                EntityUtils.consume(entity);
+            } finally {
+                response.close();
+            }
+            throw new HttpResponseException(status.getStatusCode(),
+                    String.format("%s for %s", status.getReasonPhrase(), request.getRequestLine()));
+        }
+
+        return new FilterInputStream(entity.getContent()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    response.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("pool", connectionManager.getTotalStats())
+                .add("connectTimeout", connectTimeout)
+                .add("readTimeout", readTimeout)
+                .add("compression", compression).toString();
+    }
+
+}
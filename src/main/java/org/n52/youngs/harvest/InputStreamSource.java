@@ -24,7 +24,11 @@ import java.util.Collections;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.SaxonApiException;
 import org.n52.youngs.api.Report;
+import org.n52.youngs.impl.SaxonHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -40,12 +44,26 @@ public abstract class InputStreamSource implements Source {
 
     private static final Logger LOG = LoggerFactory.getLogger(InputStreamSource.class.getName());
     private final DocumentBuilderFactory docBuilderFactory;
+    private boolean tinyTree = false;
 
     public InputStreamSource() {
         this.docBuilderFactory = DocumentBuilderFactory.newInstance();
         this.docBuilderFactory.setNamespaceAware(true);
     }
 
+    /**
+     * @param tinyTree true to parse the record into a Saxon TinyTree instead
+     * of a DOM document, see {@link TinyTreeSourceRecord}
+     */
+    public InputStreamSource setTinyTree(boolean tinyTree) {
+        this.tinyTree = tinyTree;
+        return this;
+    }
+
+    public boolean isTinyTree() {
+        return tinyTree;
+    }
+
     @Override
     public long getRecordCount() {
         return 1;
@@ -53,6 +71,16 @@ public abstract class InputStreamSource implements Source {
 
     @Override
     public Collection<SourceRecord> getRecords(Report report) {
+        if (tinyTree) {
+            try (InputStream is = resolveSourceInputStream()) {
+                NodeInfo tree = SaxonHelper.buildTree(new StreamSource(new InputStreamReader(is, sourceCharset())));
+                LOG.trace("Read tree: {}", tree);
+                return Collections.singletonList(new TinyTreeSourceRecord(tree, resolveProtocolIdentifier()));
+            } catch (SaxonApiException | IOException ex) {
+                LOG.warn("Could not read file:" + ex.getMessage(), ex);
+            }
+            return Collections.emptyList();
+        }
 
         try {
             DocumentBuilder documentBuilder = docBuilderFactory.newDocumentBuilder();
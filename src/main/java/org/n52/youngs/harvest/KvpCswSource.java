@@ -20,30 +20,16 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
-import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.namespace.NamespaceContext;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.stream.StreamSource;
-import net.opengis.csw.v_2_0_2.AbstractRecordType;
-import net.opengis.csw.v_2_0_2.GetRecordsResponseType;
-import org.apache.http.client.fluent.Request;
 import org.n52.youngs.api.Report;
-import org.n52.youngs.api.Report.Level;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Node;
 
 /**
  *
@@ -72,48 +58,19 @@ public class KvpCswSource extends CswSource {
     }
 
     @Override
-    public Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report) {
+    public Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report)
+            throws SourceException {
         log.debug("Requesting {} records from catalog starting at {}", maxRecords, startPosition);
         Collection<SourceRecord> records = Lists.newArrayList();
 
         String recordsRequest = createRequest(startPosition, maxRecords);
         log.trace("GetRecords request: {}", recordsRequest);
 
-        try {
-            InputStream response = Request.Get(recordsRequest).execute().returnContent().asStream();
-
-            JAXBElement<GetRecordsResponseType> jaxb_response = unmarshaller.unmarshal(new StreamSource(response),
-                    GetRecordsResponseType.class);
-            BigInteger numberOfRecordsReturned = jaxb_response.getValue().getSearchResults().getNumberOfRecordsReturned();
-            log.debug("Got response with {} records", numberOfRecordsReturned);
-
-            List<Object> nodes = jaxb_response.getValue().getSearchResults().getAny();
-            if (!nodes.isEmpty()) {
-                log.trace("Found {} \"any\" nodes.", nodes.size());
-                AtomicInteger streamIndex = new AtomicInteger(0);
-                nodes.stream()
-                        .filter(n -> n instanceof Node)
-                        .map(n -> (Node) n)
-                        .map(n -> new NodeSourceRecord(n, "csw-record-" + streamIndex.getAndIncrement()))
-                        .forEach(records::add);
-            }
-
-            List<JAXBElement<? extends AbstractRecordType>> jaxb_records = jaxb_response.getValue().getSearchResults().getAbstractRecord();
-            if (!jaxb_records.isEmpty()) {
-                log.trace("Found {} \"AbstractRecordType\" records.", jaxb_records.size());
-                DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-                AtomicInteger streamIndex = new AtomicInteger(0);
-                jaxb_records.stream()
-                        .map(type -> {
-                            return getNode(type, context, db);
-                        })
-                        .filter(Objects::nonNull)
-                        .map(n -> new NodeSourceRecord(n, "csw-record-" + streamIndex.getAndIncrement()))
-                        .forEach(records::add);
-            }
-        } catch (IOException | JAXBException | ParserConfigurationException e) {
+        try (InputStream response = getTransport().get(recordsRequest)) {
+            records.addAll(responseReader.readRecords(response));
+        } catch (IOException e) {
             log.error("Could not retrieve records using url {}", recordsRequest, e);
-            report.addMessage(String.format("Error retrieving record from endpoint %s: %s", this, e), Level.ERROR);
+            throw new SourceException(String.format("Error retrieving records from endpoint %s: %s", this, e), e);
         }
 
         return records;
@@ -183,14 +140,10 @@ public class KvpCswSource extends CswSource {
                             "typeNames", getTypeNamesParameter()));
             hitsRequest.append("&").append(parameters);
 
-            try {
-                InputStream response = Request.Get(hitsRequest.toString()).execute().returnContent().asStream();
-
-                GetRecordsResponseType getRecordsResponse = unmarshaller.unmarshal(new StreamSource(response), GetRecordsResponseType.class).getValue();
-                BigInteger numberOfRecordsMatched = getRecordsResponse.getSearchResults().getNumberOfRecordsMatched();
-                count = numberOfRecordsMatched.longValue();
+            try (InputStream response = getTransport().get(hitsRequest.toString())) {
+                count = responseReader.readRecordsMatched(response);
                 log.debug("Found {} records", count);
-            } catch (IOException | JAXBException e) {
+            } catch (IOException | SourceException e) {
                 log.error("Could not retrieve record count using url {}", hitsRequest, e);
             }
 
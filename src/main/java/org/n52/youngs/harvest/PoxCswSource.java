@@ -19,45 +19,33 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.math.BigInteger;
 import java.net.URL;
 import java.util.Collection;
-import java.util.List;
-import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.stream.StreamSource;
-import net.opengis.csw.v_2_0_2.AbstractRecordType;
 import net.opengis.csw.v_2_0_2.ElementSetNameType;
 import net.opengis.csw.v_2_0_2.ElementSetType;
-import net.opengis.csw.v_2_0_2.GetRecordsResponseType;
 import net.opengis.csw.v_2_0_2.GetRecordsType;
 import net.opengis.csw.v_2_0_2.ObjectFactory;
 import net.opengis.csw.v_2_0_2.QueryType;
 import net.opengis.csw.v_2_0_2.ResultType;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
-import org.apache.http.client.fluent.Request;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHeader;
 import org.apache.http.util.EntityUtils;
 import org.n52.youngs.api.Report;
-import org.n52.youngs.api.Report.Level;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Node;
 
 /**
  *
@@ -67,14 +55,13 @@ public class PoxCswSource extends CswSource {
 
     private static final Logger log = LoggerFactory.getLogger(PoxCswSource.class);
 
-    private Optional<Marshaller> marshaller = Optional.empty();
-
     public PoxCswSource(URL url, Collection<String> namespaces, NamespaceContext nsContext, String typeName, String outputSchema) throws JAXBException {
         super(url, namespaces, nsContext, typeName, outputSchema);
     }
 
     @Override
-    public Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report) {
+    public Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report)
+            throws SourceException {
         log.debug("Requesting {} records from catalog starting at {}", maxRecords, startPosition);
         Collection<SourceRecord> records = Lists.newArrayList();
 
@@ -83,44 +70,14 @@ public class PoxCswSource extends CswSource {
         try {
             log.debug("GetRecords request: {}", EntityUtils.toString(entity));
 
-            String response = Request.Post(getEndpoint().toString()).body(entity)
-                    .addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_XML.getMimeType())
-                    .addHeader(HttpHeaders.ACCEPT_CHARSET, Charsets.UTF_8.name())
-                    .execute().returnContent().asString(Charsets.UTF_8);
-            log.trace("Response: {}", response);
-            JAXBElement<GetRecordsResponseType> jaxb_response = unmarshaller.unmarshal(
-                    new StreamSource(new StringReader(response)),
-                    GetRecordsResponseType.class);
-            BigInteger numberOfRecordsReturned = jaxb_response.getValue().getSearchResults().getNumberOfRecordsReturned();
-            log.debug("Got response with {} records", numberOfRecordsReturned);
-
-            List<Object> nodes = jaxb_response.getValue().getSearchResults().getAny();
-            if (!nodes.isEmpty()) {
-                log.debug("Found {} \"any\" nodes.", nodes.size());
-                AtomicInteger streamIndex = new AtomicInteger(0);
-                nodes.stream()
-                        .filter(n -> n instanceof Node)
-                        .map(n -> (Node) n)
-                        .map(n -> new NodeSourceRecord(n, "csw-record-" + streamIndex.getAndIncrement()))
-                        .forEach(records::add);
-            }
-
-            List<JAXBElement<? extends AbstractRecordType>> jaxb_records = jaxb_response.getValue().getSearchResults().getAbstractRecord();
-            if (!jaxb_records.isEmpty()) {
-                log.debug("Found {} \"AbstractRecordType\" records.", jaxb_records.size());
-                DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
-                AtomicInteger streamIndex = new AtomicInteger(0);
-                jaxb_records.stream()
-                        .map(type -> {
-                            return getNode(type, context, db);
-                        })
-                        .filter(Objects::nonNull)
-                        .map(n -> new NodeSourceRecord(n, "csw-record-" + streamIndex.getAndIncrement()))
-                        .forEach(records::add);
+            try (InputStream response = getTransport().post(getEndpoint().toString(), entity,
+                    new BasicHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_XML.getMimeType()),
+                    new BasicHeader(HttpHeaders.ACCEPT_CHARSET, Charsets.UTF_8.name()))) {
+                records.addAll(responseReader.readRecords(response));
             }
-        } catch (IOException | JAXBException | ParserConfigurationException e) {
+        } catch (IOException e) {
             log.error("Could not retrieve records from endpoint {}", getEndpoint(), e);
-            report.addMessage(String.format("Error retrieving record from endpoint %s: %s", this, e), Level.ERROR);
+            throw new SourceException(String.format("Error retrieving records from endpoint %s: %s", this, e), e);
         }
 
         log.debug("Decoded {} records", records.size());
@@ -136,12 +93,14 @@ public class PoxCswSource extends CswSource {
         return s;
     }
 
+    /**
+     * Marshallers are not thread-safe, so every request creates its own to
+     * allow concurrent calls of getRecords().
+     */
     private Marshaller getMarshaller() throws JAXBException {
-        if (!marshaller.isPresent()) {
-            marshaller = Optional.of(context.createMarshaller());
-            marshaller.get().setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        }
-        return marshaller.get();
+        Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        return marshaller;
     }
 
     private HttpEntity createRequest(long startPosition, long maxRecords) {
@@ -228,16 +187,11 @@ public class PoxCswSource extends CswSource {
             }
 
             log.debug("Sending GetRecords request:\n{}", w.toString());
-            try {
-                InputStream response = Request.Post(getEndpoint().toString())
-                        .bodyString(w.toString(), ContentType.APPLICATION_XML)
-                        .execute().returnContent().asStream();
-
-                GetRecordsResponseType getRecordsResponse = unmarshaller.unmarshal(new StreamSource(response), GetRecordsResponseType.class).getValue();
-                BigInteger numberOfRecordsMatched = getRecordsResponse.getSearchResults().getNumberOfRecordsMatched();
-                count = numberOfRecordsMatched.longValue();
+            try (InputStream response = getTransport().post(getEndpoint().toString(),
+                    new StringEntity(w.toString(), ContentType.APPLICATION_XML))) {
+                count = responseReader.readRecordsMatched(response);
                 log.debug("Found {} records", count);
-            } catch (IOException | JAXBException e) {
+            } catch (IOException | SourceException e) {
                 log.error("Could not retrieve record count using request {}", w.toString(), e);
             }
 
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.harvest;
+
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.SaxonApiException;
+import org.n52.youngs.exception.SourceError;
+import org.n52.youngs.impl.SaxonHelper;
+import org.w3c.dom.Node;
+
+/**
+ * A record parsed into a Saxon TinyTree, which needs less memory than a DOM
+ * and is evaluated natively by mappers using the XPath factories of
+ * {@link SaxonHelper}. A DOM copy of the record is only built if it is
+ * requested, e.g. by validators.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class TinyTreeSourceRecord extends NodeSourceRecord {
+
+    private final NodeInfo tree;
+
+    private volatile Node dom;
+
+    public TinyTreeSourceRecord(NodeInfo tree, String protocolIdentifier) {
+        super(null, protocolIdentifier);
+        this.tree = tree;
+    }
+
+    /**
+     * @return the root element of the record
+     */
+    public NodeInfo getTree() {
+        return tree;
+    }
+
+    /**
+     * @return a DOM copy of the record, created on the first call
+     */
+    @Override
+    public Node getRecord() {
+        Node result = dom;
+        if (result == null) {
+            synchronized (this) {
+                result = dom;
+                if (result == null) {
+                    try {
+                        result = SaxonHelper.toDom(tree);
+                    } catch (SaxonApiException e) {
+                        throw new SourceError(e, "Could not copy record %s to DOM", getProtocolIdentifier());
+                    }
+                    dom = result;
+                }
+            }
+        }
+        return result;
+    }
+
+}
@@ -77,6 +77,13 @@ public class NamespaceContextImpl implements NamespaceContext {
                 put("inspire_c", "http://inspire.ec.europa.eu/schemas/common/1.0").build());
     }
 
+    /**
+     * @return the namespace prefixes and namespaces of this context
+     */
+    public Map<String, String> getNamespaces() {
+        return Collections.unmodifiableMap(prefixToNamespace);
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -26,6 +26,8 @@ import org.joda.time.DateTime;
 import org.n52.youngs.api.Report;
 
 /**
+ * A report that can be shared between the threads of a runner, all methods
+ * are synchronized.
  *
  * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
  */
@@ -35,90 +37,120 @@ public class ReportImpl implements Report {
 
     private final Map<String, String> failed = Maps.newHashMap();
 
+    private final Collection<String> skipped = Lists.newArrayList();
+
     private final Collection<MessageWithDate> messages = Lists.newArrayList();
+
+    private final Map<String, Number> statistics = Maps.newLinkedHashMap();
+
     private int identifiedRecordCount;
 
     @Override
-    public int getNumberOfRecordsAdded() {
+    public synchronized int getNumberOfRecordsAdded() {
         return getNumberOfRecordsSuccesful();
     }
 
     @Override
-    public int getNumberOfRecordsSuccesful() {
+    public synchronized int getNumberOfRecordsSuccesful() {
         return added.size();
     }
 
     @Override
-    public int getNumberOfRecordsFailed() {
+    public synchronized int getNumberOfRecordsFailed() {
         return failed.size();
     }
 
     @Override
-    public void addSuccessfulRecord(String id) {
+    public synchronized int getNumberOfRecordsSkipped() {
+        return skipped.size();
+    }
+
+    @Override
+    public synchronized void addSuccessfulRecord(String id) {
         added.add(id);
     }
 
     @Override
-    public void addFailedRecord(String id, String reason) {
+    public synchronized void addFailedRecord(String id, String reason) {
         failed.put(id, reason);
     }
 
-    public void addFailedRecord(String id) {
+    public synchronized void addFailedRecord(String id) {
         failed.put(id, "");
     }
 
     @Override
-    public Collection<String> getAddedIds() {
+    public synchronized void addSkippedRecord(String id) {
+        skipped.add(id);
+    }
+
+    @Override
+    public synchronized Collection<String> getAddedIds() {
         return added;
     }
 
     @Override
-    public Map<String, String> getFailedIds() {
+    public synchronized Map<String, String> getFailedIds() {
         return failed;
     }
 
     @Override
-    public void addMessage(String message) {
+    public synchronized Collection<String> getSkippedIds() {
+        return skipped;
+    }
+
+    @Override
+    public synchronized void addMessage(String message) {
         this.messages.add(new MessageWithDate(new DateTime(), message));
     }
 
     @Override
-    public void addMessage(String message, Level level) {
+    public synchronized void addMessage(String message, Level level) {
         this.messages.add(new MessageWithDate(new DateTime(), message, level));
     }
 
-    public void addMessageWithDate(MessageWithDate msg) {
+    public synchronized void addMessageWithDate(MessageWithDate msg) {
         this.messages.add(msg);
     }
 
     @Override
-    public Collection<MessageWithDate> getMessages() {
+    public synchronized Collection<MessageWithDate> getMessages() {
         return Collections.unmodifiableCollection(this.messages);
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         StringBuilder sb = new StringBuilder();
 
         sb.append("### Report ###\n");
         sb.append(" Added: ").append(getNumberOfRecordsAdded()).append("\n");
-        sb.append(" Failed: ").append(getNumberOfRecordsFailed()).append("\n").append("\n");
+        sb.append(" Failed: ").append(getNumberOfRecordsFailed()).append("\n");
+        sb.append(" Skipped: ").append(getNumberOfRecordsSkipped()).append("\n").append("\n");
         sb.append(" Added IDs: ").append(Joiner.on(", ").join(added)).append("\n");
         sb.append(" Faild IDs: ").append(Joiner.on(", ").withKeyValueSeparator(": ").join(failed)).append("\n");
         sb.append(" Messages: ").append(Joiner.on("; ").join(messages)).append("\n");
+        sb.append(" Statistics: ").append(Joiner.on(", ").withKeyValueSeparator(": ").join(statistics)).append("\n");
 
         return sb.toString();
     }
 
     @Override
-    public int getIdentifiedRecordCount() {
+    public synchronized int getIdentifiedRecordCount() {
         return this.identifiedRecordCount;
     }
 
-    public void setIdentifiedRecordCount(int identifiedRecordCount) {
+    public synchronized void setIdentifiedRecordCount(int identifiedRecordCount) {
         this.identifiedRecordCount = identifiedRecordCount;
     }
 
+    @Override
+    public synchronized void setStatistic(String key, Number value) {
+        this.statistics.put(key, value);
+    }
 
+    @Override
+    public synchronized Map<String, Number> getStatistics() {
+        return Collections.unmodifiableMap(Maps.newLinkedHashMap(this.statistics));
+    }
 
 }
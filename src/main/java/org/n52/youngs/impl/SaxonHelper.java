@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.impl;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.xpath.XPathFactory;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.TransformerFactoryImpl;
+import net.sf.saxon.om.AxisInfo;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.pattern.NodeKindTest;
+import net.sf.saxon.s9api.DOMDestination;
+import net.sf.saxon.s9api.DocumentBuilder;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.type.Type;
+import net.sf.saxon.xpath.XPathFactoryImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Holds the Saxon configuration that is shared by the trees built for records
+ * and the XPath factories and transformers applied to them. Saxon only
+ * evaluates expressions on trees built with the same configuration.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class SaxonHelper {
+
+    private static final Processor processor = new Processor(false);
+
+    private static final DocumentBuilderFactory documentBuilderFactory = createDocumentBuilderFactory();
+
+    public static Processor getProcessor() {
+        return processor;
+    }
+
+    public static Configuration getConfiguration() {
+        return processor.getUnderlyingConfiguration();
+    }
+
+    /**
+     * @return true if the factory evaluates expressions on trees built by
+     * this helper
+     */
+    public static boolean isSharedConfiguration(XPathFactory factory) {
+        return factory instanceof XPathFactoryImpl
+                && ((XPathFactoryImpl) factory).getConfiguration() == getConfiguration();
+    }
+
+    /**
+     * @return a transformer factory that accepts trees built by this helper as
+     * the source of a transformation
+     */
+    public static TransformerFactory newTransformerFactory() {
+        return new TransformerFactoryImpl(getConfiguration());
+    }
+
+    /**
+     * @param source the XML document
+     * @return the root element of the document as a TinyTree node
+     * @throws SaxonApiException if the document cannot be parsed
+     */
+    public static NodeInfo buildTree(Source source) throws SaxonApiException {
+        DocumentBuilder builder = processor.newDocumentBuilder();
+        return documentElement(builder.build(source).getUnderlyingNode());
+    }
+
+    /**
+     * @return the first element child of the given document, or the node
+     * itself if it is not a document
+     */
+    public static NodeInfo documentElement(NodeInfo node) {
+        if (node.getNodeKind() != Type.DOCUMENT) {
+            return node;
+        }
+        NodeInfo element = node.iterateAxis(AxisInfo.CHILD, NodeKindTest.ELEMENT).next();
+        return element == null ? node : element;
+    }
+
+    /**
+     * @return a DOM copy of the given element in its own document
+     * @throws SaxonApiException if the tree cannot be copied
+     */
+    public static Element toDom(NodeInfo node) throws SaxonApiException {
+        Document document;
+        try {
+            synchronized (documentBuilderFactory) {
+                document = documentBuilderFactory.newDocumentBuilder().newDocument();
+            }
+        } catch (ParserConfigurationException e) {
+            throw new SaxonApiException(e);
+        }
+        processor.writeXdmValue(new XdmNode(node), new DOMDestination(document));
+        return document.getDocumentElement();
+    }
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+
+}
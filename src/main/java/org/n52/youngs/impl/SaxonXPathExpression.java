@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.impl;
+
+import com.google.common.base.MoreObjects;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.namespace.QName;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import net.sf.saxon.functions.Number_1;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.ItemType;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathExecutable;
+import net.sf.saxon.s9api.XPathSelector;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmValue;
+import net.sf.saxon.tree.wrapper.VirtualNode;
+import net.sf.saxon.value.UntypedAtomicValue;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+
+/**
+ * A JAXP view of an XPath expression compiled with a s9api
+ * {@link XPathCompiler}. The compiled expression is immutable, so the
+ * expression can be evaluated concurrently without compiling it per thread.
+ * <p>
+ * The results follow the JAXP conventions of Saxon: nodes of a DOM context
+ * are returned as DOM nodes and node lists, nodes of a Saxon tree as
+ * {@link NodeInfo}s and lists of them. A sequence that contains atomic values
+ * cannot be returned as a node set.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class SaxonXPathExpression implements XPathExpression {
+
+    private final String expression;
+
+    private final XPathExecutable executable;
+
+    /**
+     * @param expression the XPath expression
+     * @param compiler the compiler with the namespaces of the expression
+     * declared, it is not used after construction
+     * @throws XPathExpressionException if the expression cannot be compiled
+     */
+    public SaxonXPathExpression(String expression, XPathCompiler compiler) throws XPathExpressionException {
+        this.expression = expression;
+        try {
+            this.executable = compiler.compile(expression);
+        } catch (SaxonApiException e) {
+            throw new XPathExpressionException(e);
+        }
+    }
+
+    /**
+     * @param expression the XPath expression that is equivalent to the
+     * executable
+     * @param executable the compiled expression that is evaluated
+     */
+    protected SaxonXPathExpression(String expression, XPathExecutable executable) {
+        this.expression = expression;
+        this.executable = executable;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    /**
+     * @return true if the static type of the expression is a sequence of
+     * nodes, false if it is a sequence of atomic values, or null if it can be
+     * both
+     */
+    public Boolean isNodeSequence() {
+        ItemType type = executable.getResultItemType();
+        if (ItemType.ANY_NODE.subsumes(type)) {
+            return true;
+        }
+        if (ItemType.ANY_ATOMIC_VALUE.subsumes(type)) {
+            return false;
+        }
+        return null;
+    }
+
+    @Override
+    public Object evaluate(Object item, QName returnType) throws XPathExpressionException {
+        if (item == null) {
+            throw new XPathExpressionException("No context item given for " + expression);
+        }
+        try {
+            XPathSelector selector = executable.load();
+            XdmItem context = contextItem(item);
+            selector.setContextItem(context);
+            bind(selector, item, context);
+            return convert(selector, returnType, item instanceof Node);
+        } catch (SaxonApiException | IllegalArgumentException e) {
+            throw new XPathExpressionException(e);
+        }
+    }
+
+    @Override
+    public String evaluate(Object item) throws XPathExpressionException {
+        return (String) evaluate(item, XPathConstants.STRING);
+    }
+
+    @Override
+    public Object evaluate(InputSource source, QName returnType) throws XPathExpressionException {
+        XdmNode document;
+        try {
+            document = SaxonHelper.getProcessor().newDocumentBuilder().build(new SAXSource(source));
+        } catch (SaxonApiException e) {
+            throw new XPathExpressionException(e);
+        }
+        return evaluate(document, returnType);
+    }
+
+    @Override
+    public String evaluate(InputSource source) throws XPathExpressionException {
+        return (String) evaluate(source, XPathConstants.STRING);
+    }
+
+    /**
+     * Sets the variables of the executable before it is evaluated, does
+     * nothing by default.
+     *
+     * @param selector the loaded executable
+     * @param item the context item as given to evaluate
+     * @param context the context item of the selector
+     * @throws SaxonApiException if a variable cannot be evaluated
+     */
+    protected void bind(XPathSelector selector, Object item, XdmItem context) throws SaxonApiException {
+        // no variables
+    }
+
+    static XdmItem contextItem(Object item) {
+        if (item instanceof XdmItem) {
+            return (XdmItem) item;
+        }
+        if (item instanceof NodeInfo) {
+            return new XdmNode((NodeInfo) item);
+        }
+        if (item instanceof Node) {
+            return SaxonHelper.getProcessor().newDocumentBuilder().wrap(item);
+        }
+        throw new IllegalArgumentException("Unsupported context item " + item.getClass().getName());
+    }
+
+    private static Object convert(XPathSelector selector, QName returnType, boolean dom)
+            throws SaxonApiException, XPathExpressionException {
+        if (XPathConstants.BOOLEAN.equals(returnType)) {
+            return selector.effectiveBooleanValue();
+        }
+        if (XPathConstants.STRING.equals(returnType)) {
+            XdmItem first = selector.evaluateSingle();
+            return first == null ? "" : first.getStringValue();
+        }
+        if (XPathConstants.NUMBER.equals(returnType)) {
+            XdmItem first = selector.evaluateSingle();
+            if (first == null) {
+                return Double.NaN;
+            }
+            return Number_1.convert(first.isAtomicValue()
+                    ? ((XdmAtomicValue) first).getUnderlyingValue()
+                    : new UntypedAtomicValue(first.getStringValue()),
+                    SaxonHelper.getConfiguration()).getDoubleValue();
+        }
+        if (XPathConstants.NODE.equals(returnType)) {
+            XdmItem first = selector.evaluateSingle();
+            if (first == null) {
+                return null;
+            }
+            return toNode(first, dom);
+        }
+        if (XPathConstants.NODESET.equals(returnType)) {
+            XdmValue value = selector.evaluate();
+            List<Object> nodes = new ArrayList<>(value.size());
+            for (XdmItem item : value) {
+                nodes.add(toNode(item, dom));
+            }
+            return dom ? new DomNodeList(nodes) : nodes;
+        }
+        throw new IllegalArgumentException("Unsupported return type " + returnType);
+    }
+
+    private static Object toNode(XdmItem item, boolean dom) throws XPathExpressionException {
+        if (!(item instanceof XdmNode)) {
+            throw new XPathExpressionException("Expression result is not a node: " + item);
+        }
+        NodeInfo node = ((XdmNode) item).getUnderlyingNode();
+        if (dom && node instanceof VirtualNode) {
+            return ((VirtualNode) node).getRealNode();
+        }
+        return node;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("expression", expression)
+                .toString();
+    }
+
+    /**
+     * The nodes of a DOM selected by an expression.
+     */
+    private static class DomNodeList implements NodeList {
+
+        private final List<Object> nodes;
+
+        DomNodeList(List<Object> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Node item(int index) {
+            return index < nodes.size() ? (Node) nodes.get(index) : null;
+        }
+
+        @Override
+        public int getLength() {
+            return nodes.size();
+        }
+
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.impl;
+
+import com.google.common.base.MoreObjects;
+import java.lang.ref.WeakReference;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import net.sf.saxon.s9api.ItemType;
+import net.sf.saxon.s9api.OccurrenceIndicator;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.s9api.XPathExecutable;
+import net.sf.saxon.s9api.XPathSelector;
+import net.sf.saxon.s9api.XdmEmptySequence;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmValue;
+import org.w3c.dom.Node;
+
+/**
+ * A path expression that is evaluated as the rest of the path relative to the
+ * nodes selected by a {@link Prefix} shared with other expressions. The path
+ * operator sorts and deduplicates its result, so <code>$prefix/rest</code>
+ * selects the same nodes as <code>prefix/rest</code>, while the prefix is
+ * evaluated only once per context item and thread.
+ * <p>
+ * Only DOM contexts are evaluated relative to the prefix. Navigating a Saxon
+ * tree is cheaper than binding the nodes of the prefix, so other contexts are
+ * evaluated with the complete path.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class SharedPrefixXPathExpression extends SaxonXPathExpression {
+
+    private static final QName PREFIX_VARIABLE = new QName("youngs-prefix");
+
+    private final Prefix prefix;
+
+    private final XPathExpression completePath;
+
+    /**
+     * @param expression the complete path
+     * @param prefix the shared prefix of the path
+     * @param relativePath the rest of the path after the prefix
+     * @param compiler the compiler with the namespaces of the path declared,
+     * the variable of the prefix is declared on it
+     * @param completePath the complete path compiled on its own, evaluated
+     * for contexts that are not DOM nodes
+     * @throws XPathExpressionException if the rest of the path cannot be
+     * compiled
+     */
+    public SharedPrefixXPathExpression(String expression, Prefix prefix, String relativePath,
+            XPathCompiler compiler, XPathExpression completePath) throws XPathExpressionException {
+        super(expression, compileRelative(relativePath, compiler));
+        this.prefix = prefix;
+        this.completePath = completePath;
+    }
+
+    public Prefix getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public Object evaluate(Object item, javax.xml.namespace.QName returnType) throws XPathExpressionException {
+        if (!(item instanceof Node)) {
+            return completePath.evaluate(item, returnType);
+        }
+        return super.evaluate(item, returnType);
+    }
+
+    @Override
+    protected void bind(XPathSelector selector, Object item, XdmItem context) throws SaxonApiException {
+        selector.setVariable(PREFIX_VARIABLE, prefix.evaluate(item, context));
+    }
+
+    private static XPathExecutable compileRelative(String relativePath, XPathCompiler compiler)
+            throws XPathExpressionException {
+        declareVariable(compiler);
+        try {
+            return compiler.compile("$" + PREFIX_VARIABLE.getLocalName() + "/" + relativePath);
+        } catch (SaxonApiException e) {
+            throw new XPathExpressionException(e);
+        }
+    }
+
+    /**
+     * Declares the variable of the prefixes, an executable requires a value
+     * for every variable that was declared on the compiler before it was
+     * compiled, so it is declared for every expression of the compiler.
+     */
+    private static void declareVariable(XPathCompiler compiler) {
+        compiler.declareVariable(PREFIX_VARIABLE, ItemType.ANY_NODE, OccurrenceIndicator.ZERO_OR_MORE);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("expression", getExpression())
+                .add("prefix", prefix.getPath())
+                .toString();
+    }
+
+    /**
+     * The nodes selected by the start of a path that several expressions
+     * share. The nodes of the last context item are kept per thread, so the
+     * expressions of a record must be evaluated by the same thread to share
+     * them. The prefix itself may be relative to a shorter shared prefix.
+     */
+    public static class Prefix {
+
+        private final String path;
+
+        private final Prefix parent;
+
+        private final XPathExecutable executable;
+
+        private final ThreadLocal<Evaluation> last = new ThreadLocal<>();
+
+        /**
+         * @param path the absolute path of the prefix
+         * @param compiler the compiler with the namespaces of the path declared
+         * @throws XPathExpressionException if the path cannot be compiled
+         */
+        public Prefix(String path, XPathCompiler compiler) throws XPathExpressionException {
+            this.path = path;
+            this.parent = null;
+            declareVariable(compiler);
+            try {
+                this.executable = compiler.compile(path);
+            } catch (SaxonApiException e) {
+                throw new XPathExpressionException(e);
+            }
+        }
+
+        /**
+         * @param path the absolute path of the prefix
+         * @param parent the shorter prefix the path starts with
+         * @param relativePath the rest of the path after the shorter prefix
+         * @param compiler the compiler with the namespaces of the path declared
+         * @throws XPathExpressionException if the path cannot be compiled
+         */
+        public Prefix(String path, Prefix parent, String relativePath, XPathCompiler compiler)
+                throws XPathExpressionException {
+            this.path = path;
+            this.parent = parent;
+            this.executable = compileRelative(relativePath, compiler);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Prefix getParent() {
+            return parent;
+        }
+
+        XdmValue evaluate(Object item, XdmItem context) throws SaxonApiException {
+            Evaluation evaluation = last.get();
+            if (evaluation != null && evaluation.item.get() == item) {
+                return evaluation.value;
+            }
+
+            XPathSelector selector = executable.load();
+            selector.setContextItem(context);
+            // the variable is declared for every expression of the compiler, so it must be set even if unused
+            selector.setVariable(PREFIX_VARIABLE, parent == null
+                    ? XdmEmptySequence.getInstance()
+                    : parent.evaluate(item, context));
+            XdmValue value = selector.evaluate();
+            last.set(new Evaluation(item, value));
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("path", path)
+                    .toString();
+        }
+
+    }
+
+    private static class Evaluation {
+
+        private final WeakReference<Object> item;
+
+        private final XdmValue value;
+
+        Evaluation(Object item, XdmValue value) {
+            this.item = new WeakReference<>(item);
+            this.value = value;
+        }
+
+    }
+
+}
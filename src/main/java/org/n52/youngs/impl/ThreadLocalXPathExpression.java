@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.impl;
+
+import com.google.common.base.MoreObjects;
+import java.util.function.Supplier;
+import javax.xml.namespace.QName;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import org.xml.sax.InputSource;
+
+/**
+ * An XPath expression that can be evaluated concurrently. JAXP expressions are
+ * not thread-safe, so every thread evaluating the expression compiles and
+ * keeps its own copy. The expression is compiled once on construction to
+ * report syntax errors right away.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class ThreadLocalXPathExpression implements XPathExpression {
+
+    private final String expression;
+
+    private final ThreadLocal<XPathExpression> compiled;
+
+    /**
+     * @param expression the XPath expression
+     * @param xpathSupplier creates a configured XPath for compiling the
+     * expression, it is called from the evaluating threads
+     * @throws XPathExpressionException if the expression cannot be compiled
+     */
+    public ThreadLocalXPathExpression(String expression, Supplier<XPath> xpathSupplier)
+            throws XPathExpressionException {
+        this.expression = expression;
+        XPathExpression first = xpathSupplier.get().compile(expression);
+        this.compiled = ThreadLocal.withInitial(() -> {
+            try {
+                return xpathSupplier.get().compile(expression);
+            } catch (XPathExpressionException e) {
+                // was compiled successfully before
+                throw new IllegalStateException("Could not compile " + expression, e);
+            }
+        });
+        this.compiled.set(first);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public Object evaluate(Object item, QName returnType) throws XPathExpressionException {
+        return compiled.get().evaluate(item, returnType);
+    }
+
+    @Override
+    public String evaluate(Object item) throws XPathExpressionException {
+        return compiled.get().evaluate(item);
+    }
+
+    @Override
+    public Object evaluate(InputSource source, QName returnType) throws XPathExpressionException {
+        return compiled.get().evaluate(source, returnType);
+    }
+
+    @Override
+    public String evaluate(InputSource source) throws XPathExpressionException {
+        return compiled.get().evaluate(source);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("expression", expression)
+                .toString();
+    }
+
+}
@@ -16,10 +16,13 @@
 package org.n52.youngs.impl;
 
 import java.io.StringReader;
+import java.util.Map;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 import javax.xml.xpath.XPathFactoryConfigurationException;
+import net.sf.saxon.s9api.XPathCompiler;
+import net.sf.saxon.xpath.XPathFactoryImpl;
 import org.n52.youngs.api.XPathConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,6 +30,11 @@ import org.xml.sax.InputSource;
 
 /**
  * test factories for support for XPath versions and create factories in an non-invasive manner.
+ * <p>
+ * The default helper uses the shared Saxon processor of {@link SaxonHelper}:
+ * factories are created without a lookup, so that neither system properties
+ * are changed nor a configuration is created per mapping, and configurations
+ * compile their expressions with an {@link XPathCompiler} of the processor.
  *
  * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
  */
@@ -41,19 +49,32 @@ public class XPathHelper {
     private final String objectModel;
 
     public XPathHelper() {
-        this("javax.xml.xpath.XPathFactory:"
-                //+ NamespaceConstant.OBJECT_MODEL_SAXON;
-                + "http://saxon.sf.net/jaxp/xpath/om",
-                "net.sf.saxon.xpath.XPathFactoryImpl",
-                "http://saxon.sf.net/jaxp/xpath/om");
+        this(null, null, null);
     }
 
+    /**
+     * @param systemSettingKey the system property that selects the factory
+     * implementation during the lookup, or null to use the shared processor
+     * @param systemSettingValue the factory implementation
+     * @param objectModel the object model of the factory lookup
+     */
     public XPathHelper(String systemSettingKey, String systemSettingValue, String objectModel) {
         this.systemSettingKey = systemSettingKey;
         this.systemSettingValue = systemSettingValue;
         this.objectModel = objectModel;
     }
 
+    /**
+     * @param namespaces the prefixes and namespaces used in expressions
+     * @return a compiler of the shared processor, which supports XPath 1.0
+     * and 2.0 expressions
+     */
+    public XPathCompiler newXPathCompiler(Map<String, String> namespaces) {
+        XPathCompiler compiler = SaxonHelper.getProcessor().newXPathCompiler();
+        namespaces.forEach(compiler::declareNamespace);
+        return compiler;
+    }
+
     private void setSystemSetting() {
         System.setProperty(systemSettingKey, systemSettingValue);
         log.info("Setting system property {} to {}", systemSettingKey, systemSettingValue);
@@ -64,7 +85,18 @@ public class XPathHelper {
         log.info("Unsetting system property {}", systemSettingKey);
     }
 
-    public synchronized XPathFactory newXPathFactory() {
+    /**
+     * @return a factory of the shared processor for the default helper,
+     * otherwise a factory looked up with the system property of the helper
+     */
+    public XPathFactory newXPathFactory() {
+        if (systemSettingKey == null) {
+            return new XPathFactoryImpl(SaxonHelper.getConfiguration());
+        }
+        return lookupXPathFactory();
+    }
+
+    private synchronized XPathFactory lookupXPathFactory() {
         setSystemSetting();
         XPathFactory factory = null;
         try {
@@ -74,6 +106,11 @@ public class XPathHelper {
             log.error("Could not create new instance of XPathFactory", e);
         }
         unsetSystemSetting();
+
+        // Saxon only evaluates expressions on trees built with the same configuration
+        if (factory instanceof XPathFactoryImpl) {
+            ((XPathFactoryImpl) factory).setConfiguration(SaxonHelper.getConfiguration());
+        }
         return factory;
     }
 
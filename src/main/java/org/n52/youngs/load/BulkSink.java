@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.load;
+
+import java.util.concurrent.TimeUnit;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.exception.SinkError;
+
+/**
+ * A sink that can collect records and store them asynchronously in bulk
+ * requests. The result for every record is added to the report once the bulk
+ * it was sent with completes.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public interface BulkSink extends Sink {
+
+    /**
+     * @return true if records passed to storeBulk() are stored in bulk
+     * requests, false if they are stored one by one
+     */
+    public boolean isBulkEnabled();
+
+    /**
+     * Queue the record for storing, blocks if the configured number of bulk
+     * requests is in flight.
+     *
+     * @param record the record to store
+     * @param report the report to add the record's result to
+     * @throws SinkError on no-recoverable errors
+     */
+    public void storeBulk(SinkRecord record, Report report) throws SinkError;
+
+    /**
+     * Send all queued records and wait until all bulk requests completed.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return true if all requests completed before the timeout elapsed
+     */
+    public boolean flush(long timeout, TimeUnit unit);
+
+}
@@ -29,12 +29,20 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.action.admin.indices.create.CreateIndexRequestBuilder;
 import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
 import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
 import org.elasticsearch.action.admin.indices.mapping.put.PutMappingRequestBuilder;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.index.IndexResponse;
@@ -42,6 +50,9 @@ import org.elasticsearch.action.support.master.AcknowledgedResponse;
 import org.elasticsearch.action.update.UpdateResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.client.IndicesAdminClient;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.joda.time.DateTimeZone;
 import org.n52.iceland.statistics.api.mappings.MetadataDataMapping;
@@ -49,10 +60,11 @@ import org.n52.iceland.statistics.api.parameters.AbstractEsParameter;
 import org.n52.iceland.statistics.api.parameters.ElasticsearchTypeRegistry;
 import org.n52.iceland.statistics.api.parameters.ObjectEsParameter;
 import org.n52.iceland.statistics.api.parameters.SingleEsParameter;
+import org.n52.youngs.api.Report;
 import org.n52.youngs.exception.SinkError;
 import org.n52.youngs.exception.SinkException;
+import org.n52.youngs.load.BulkSink;
 import org.n52.youngs.load.SchemaGenerator;
-import org.n52.youngs.load.Sink;
 import org.n52.youngs.load.SinkRecord;
 import org.n52.youngs.transform.MappingConfiguration;
 import org.n52.youngs.transform.MappingEntry;
@@ -61,10 +73,14 @@ import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 
 /**
+ * A sink storing records in an Elasticsearch index. Records are indexed one
+ * request at a time unless bulk mode is enabled, then storeBulk() sends them
+ * with a BulkProcessor that flushes on number of documents, payload size and
+ * time.
  *
  * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
  */
-public abstract class ElasticsearchSink implements Sink {
+public abstract class ElasticsearchSink implements BulkSink {
 
     private static final Logger log = LoggerFactory.getLogger(ElasticsearchSink.class);
 
@@ -74,8 +90,37 @@ public abstract class ElasticsearchSink implements Sink {
 
     private final String type;
 
+    private static final int DEFAULT_BULK_ACTIONS = 1000;
+
+    private static final long DEFAULT_BULK_SIZE_BYTES = new ByteSizeValue(5, ByteSizeUnit.MB).getBytes();
+
+    private static final long DEFAULT_BULK_FLUSH_INTERVAL_MILLIS = 5000;
+
+    private static final int DEFAULT_BULK_CONCURRENT_REQUESTS = 1;
+
     protected SchemaGenerator schemaGenerator = new SchemaGeneratorImpl();
 
+    private boolean bulkEnabled = false;
+
+    private int bulkActions = DEFAULT_BULK_ACTIONS;
+
+    private long bulkSizeBytes = DEFAULT_BULK_SIZE_BYTES;
+
+    private long bulkFlushIntervalMillis = DEFAULT_BULK_FLUSH_INTERVAL_MILLIS;
+
+    private int bulkConcurrentRequests = DEFAULT_BULK_CONCURRENT_REQUESTS;
+
+    /**
+     * Guards the bulk processor: records are added holding the read lock, the
+     * processor is replaced or detached holding the write lock, so no record
+     * is added to a processor that is being closed.
+     */
+    private final ReadWriteLock bulkLock = new ReentrantReadWriteLock();
+
+    private BulkProcessor bulkProcessor;
+
+    private Report bulkReport;
+
     public ElasticsearchSink(String cluster, String index, String type) {
         this.cluster = cluster;
         this.index = index;
@@ -146,6 +191,140 @@ public abstract class ElasticsearchSink implements Sink {
         return this;
     }
 
+    public ElasticsearchSink setBulkEnabled(boolean bulkEnabled) {
+        this.bulkEnabled = bulkEnabled;
+        return this;
+    }
+
+    /**
+     * @param bulkActions number of documents after which a bulk is sent, -1
+     * to disable
+     */
+    public ElasticsearchSink setBulkActions(int bulkActions) {
+        this.bulkActions = bulkActions;
+        return this;
+    }
+
+    /**
+     * @param bulkSizeBytes payload size after which a bulk is sent, -1 to
+     * disable
+     */
+    public ElasticsearchSink setBulkSizeBytes(long bulkSizeBytes) {
+        this.bulkSizeBytes = bulkSizeBytes;
+        return this;
+    }
+
+    /**
+     * @param bulkFlushIntervalMillis time after which pending documents are
+     * sent regardless of their number and size, -1 to disable
+     */
+    public ElasticsearchSink setBulkFlushInterval(long bulkFlushIntervalMillis) {
+        this.bulkFlushIntervalMillis = bulkFlushIntervalMillis;
+        return this;
+    }
+
+    /**
+     * @param bulkConcurrentRequests number of bulk requests that may be in
+     * flight while new documents are collected, 0 for synchronous bulks
+     */
+    public ElasticsearchSink setBulkConcurrentRequests(int bulkConcurrentRequests) {
+        this.bulkConcurrentRequests = bulkConcurrentRequests;
+        return this;
+    }
+
+    @Override
+    public boolean isBulkEnabled() {
+        return bulkEnabled;
+    }
+
+    @Override
+    public void storeBulk(SinkRecord record, Report report) throws SinkError {
+        Objects.nonNull(record);
+        if (!(record instanceof BuilderRecord)) {
+            throw new SinkError("The provided record class '%s' is not supported", record.getClass());
+        }
+
+        BuilderRecord builderRecord = (BuilderRecord) record;
+        IndexRequestBuilder request = getClient().prepareIndex(index, type)
+                .setSource(builderRecord.getBuilder());
+        if (record.hasId()) {
+            request.setId(builderRecord.getId());
+        }
+
+        log.trace("Adding record to bulk: {}", record);
+        bulkLock.readLock().lock();
+        try {
+            if (this.bulkProcessor != null && this.bulkReport == report) {
+                this.bulkProcessor.add(request.request());
+                return;
+            }
+        } finally {
+            bulkLock.readLock().unlock();
+        }
+
+        BulkProcessor previous = null;
+        bulkLock.writeLock().lock();
+        try {
+            if (this.bulkReport != report) {
+                // results of pending requests go to the previous report
+                previous = this.bulkProcessor;
+                this.bulkProcessor = null;
+            }
+            if (this.bulkProcessor == null) {
+                this.bulkReport = report;
+                this.bulkProcessor = createBulkProcessor(report);
+            }
+            this.bulkProcessor.add(request.request());
+        } finally {
+            bulkLock.writeLock().unlock();
+        }
+        if (previous != null) {
+            awaitClose(previous, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean flush(long timeout, TimeUnit unit) {
+        BulkProcessor processor;
+        bulkLock.writeLock().lock();
+        try {
+            processor = this.bulkProcessor;
+            this.bulkProcessor = null;
+            this.bulkReport = null;
+        } finally {
+            bulkLock.writeLock().unlock();
+        }
+        if (processor == null) {
+            return true;
+        }
+
+        log.debug("Flushing bulk processor and waiting for in-flight requests...");
+        return awaitClose(processor, timeout, unit);
+    }
+
+    private boolean awaitClose(BulkProcessor processor, long timeout, TimeUnit unit) {
+        try {
+            return processor.awaitClose(timeout, unit);
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for bulk requests to complete", e);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private BulkProcessor createBulkProcessor(Report report) {
+        BulkProcessor processor = BulkProcessor.builder(getClient(), new ReportingBulkListener(report))
+                .setBulkActions(bulkActions)
+                .setBulkSize(new ByteSizeValue(bulkSizeBytes))
+                .setFlushInterval(bulkFlushIntervalMillis < 0 ? null
+                        : TimeValue.timeValueMillis(bulkFlushIntervalMillis))
+                .setConcurrentRequests(bulkConcurrentRequests)
+                .build();
+        log.debug("Created bulk processor: actions={}, bytes={}, interval={}ms, concurrent requests={}",
+                bulkActions, bulkSizeBytes, bulkFlushIntervalMillis, bulkConcurrentRequests);
+        return processor;
+    }
+
     @Override
     public boolean prepare(MappingConfiguration mapping) {
         if (!mapping.isIndexCreationEnabled()) {
@@ -373,6 +552,47 @@ public abstract class ElasticsearchSink implements Sink {
                 .toString();
     }
 
+    /**
+     * Maps the item responses of a bulk back to the records of the report.
+     */
+    private static class ReportingBulkListener implements BulkProcessor.Listener {
+
+        private final Report report;
+
+        ReportingBulkListener(Report report) {
+            this.report = report;
+        }
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request) {
+            log.debug("Sending bulk #{} with {} records ({} bytes)", executionId, request.numberOfActions(),
+                    request.estimatedSizeInBytes());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+            log.debug("Bulk #{} completed in {}ms, failures: {}", executionId, response.getTook().millis(),
+                    response.hasFailures());
+            for (BulkItemResponse item : response.getItems()) {
+                if (item.isFailed()) {
+                    log.warn("Could not store record {}: {}", item.getId(), item.getFailureMessage());
+                    report.addFailedRecord(item.getId(), item.getFailureMessage());
+                } else {
+                    report.addSuccessfulRecord(item.getId());
+                }
+            }
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+            log.error("Bulk #{} with {} records failed", executionId, request.numberOfActions(), failure);
+            for (DocWriteRequest<?> item : request.requests()) {
+                report.addFailedRecord(item.id(), String.format("Bulk request failed: %s", failure.getMessage()));
+            }
+        }
+
+    }
+
     private String deriveMetadataIndexName(String indexId) {
         return indexId + "-meta";
     }
@@ -15,6 +15,8 @@
  */
 package org.n52.youngs.transform;
 
+import java.util.Collections;
+import java.util.Map;
 import org.n52.youngs.harvest.SourceRecord;
 import org.n52.youngs.load.SinkRecord;
 
@@ -28,4 +30,18 @@ public interface Mapper {
 
     public SinkRecord map(SourceRecord record);
 
+    /**
+     * @return true if map can be called concurrently from several threads
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * @return statistics collected while mapping, added to the report of a run
+     */
+    default Map<String, Number> getStatistics() {
+        return Collections.emptyMap();
+    }
+
 }
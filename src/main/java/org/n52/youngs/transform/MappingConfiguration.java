@@ -18,6 +18,9 @@ package org.n52.youngs.transform;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import javax.xml.namespace.QName;
+import net.sf.saxon.om.NodeInfo;
 import org.n52.youngs.api.XPathConstants;
 import org.w3c.dom.Document;
 
@@ -75,6 +78,25 @@ public interface MappingConfiguration {
 
     public boolean isApplicable(Document doc);
 
+    /**
+     * @param tree a record parsed into a Saxon TinyTree, only evaluated if
+     * {@link #isTinyTreeSupported()}
+     * @return the applicability of the mapping to the record, as
+     * {@link #isApplicable(Document)} for the DOM of the record
+     */
+    default boolean isApplicableToTree(NodeInfo tree) {
+        throw new UnsupportedOperationException("Applicability on trees is not supported by " + getClass());
+    }
+
+    /**
+     * @return the names of the root elements of the records that the mapping
+     * is meant for, empty if they are unknown; {@link #isApplicable(Document)}
+     * may also accept records with other root elements
+     */
+    default Set<QName> getRootElements() {
+        return Collections.emptySet();
+    }
+
     public boolean isIndexCreationEnabled();
 
     public boolean isDynamicMappingEnabled();
@@ -83,6 +105,14 @@ public interface MappingConfiguration {
 
     public String getIndexCreationRequest();
 
+    /**
+     * @return true if the XPath expressions of the entries can be evaluated
+     * on the trees of {@link org.n52.youngs.harvest.TinyTreeSourceRecord}s
+     */
+    default boolean isTinyTreeSupported() {
+        return false;
+    }
+
     default boolean hasSuggest() {
         return false;
     }
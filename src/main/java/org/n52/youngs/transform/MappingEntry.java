@@ -18,6 +18,8 @@ package org.n52.youngs.transform;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
 import javax.xml.xpath.XPathExpression;
 
 /**
@@ -58,16 +60,73 @@ public interface MappingEntry {
 
     public String getCoordinatesType();
 
+    /**
+     * @return an expression to be evaluated on the element found by
+     * getXPath() that selects <code>gml:posList</code> or
+     * <code>gml:coordinates</code> elements, each a list of positions, or null
+     * if the coordinates are given as points
+     */
+    public default XPathExpression getCoordinatesListXPath() {
+        return null;
+    }
+
+    /**
+     * @return true if the positions of a coordinate list are in latitude,
+     * longitude order, which is the axis order of EPSG:4326
+     */
+    public default boolean isCoordinatesLatLon() {
+        return true;
+    }
+
+    /**
+     * @return the tolerance to simplify lines and rings of a coordinate list
+     * with, or 0 to keep all positions
+     */
+    public default double getCoordinatesTolerance() {
+        return 0;
+    }
+
+    /**
+     * @return the number of decimal places to round coordinates to, or -1 to
+     * keep them as they are
+     */
+    public default int getCoordinatesPrecision() {
+        return -1;
+    }
+
     public boolean isRawXml();
 
     public boolean hasReplacements();
 
     public Map<String, String> getReplacements();
 
+    /**
+     * @return a function applying the replacements in the iteration order of
+     * {@link #getReplacements()}, implementations may compile it once
+     */
+    public default UnaryOperator<String> getReplacementFunction() {
+        Map<String, String> replacements = getReplacements();
+        return value -> {
+            String out = value;
+            for (Map.Entry<String, String> replacement : replacements.entrySet()) {
+                out = out.replace(replacement.getKey(), replacement.getValue());
+            }
+            return out;
+        };
+    }
+
     public boolean hasSplit();
 
     public String getSplit();
 
+    /**
+     * @return the split expression as a pattern, implementations may compile
+     * it once
+     */
+    public default Pattern getSplitPattern() {
+        return Pattern.compile(getSplit());
+    }
+
     public boolean hasOutputProperties();
 
     public Map<? extends String, ? extends String> getOutputProperties();
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import java.io.IOException;
+import java.util.Objects;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentType;
+
+/**
+ * Creates the content builders of a mapper. The content is compact JSON by
+ * default, pretty printing is only meant for debugging, and a binary content
+ * type such as SMILE or CBOR can be used to reduce the bytes sent to the sink.
+ *
+ * The buffers of the builders are not reused, because the content of a record
+ * is referenced until the bulk request containing it is sent. Instead, each
+ * buffer is allocated with the size of the largest recent record, so that it
+ * is not copied while growing.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+final class ContentBuilderFactory {
+
+    static final int MIN_SIZE_HINT = 1024;
+
+    private XContentType contentType = XContentType.JSON;
+
+    private boolean prettyPrint = false;
+
+    private volatile int sizeHint = MIN_SIZE_HINT;
+
+    XContentType getContentType() {
+        return contentType;
+    }
+
+    void setContentType(XContentType contentType) {
+        this.contentType = Objects.requireNonNull(contentType);
+    }
+
+    boolean isPrettyPrint() {
+        return prettyPrint;
+    }
+
+    void setPrettyPrint(boolean prettyPrint) {
+        this.prettyPrint = prettyPrint;
+    }
+
+    int getSizeHint() {
+        return sizeHint;
+    }
+
+    XContentBuilder newBuilder() throws IOException {
+        XContentBuilder builder = new XContentBuilder(contentType.xContent(), new BytesStreamOutput(sizeHint))
+                .humanReadable(true);
+        if (prettyPrint) {
+            builder.prettyPrint();
+        }
+        return builder;
+    }
+
+    /**
+     * Adapts the size of the next buffers to the content of a closed builder:
+     * the hint grows to a larger record at once and shrinks by an eighth of
+     * the difference to a smaller one.
+     */
+    void completed(XContentBuilder builder) {
+        int size = BytesReference.bytes(builder).length();
+        int hint = sizeHint;
+        sizeHint = Math.max(MIN_SIZE_HINT, size >= hint ? size : hint - (hint - size) / 8);
+    }
+
+    /**
+     * @return the content for logging, binary content is not decoded
+     */
+    String toString(XContentBuilder builder) {
+        BytesReference bytes = BytesReference.bytes(builder);
+        return contentType == XContentType.JSON ? bytes.utf8ToString() : contentType + " (" + bytes.length() + " bytes)";
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("contentType", contentType)
+                .add("prettyPrint", prettyPrint)
+                .add("sizeHint", sizeHint)
+                .toString();
+    }
+
+}
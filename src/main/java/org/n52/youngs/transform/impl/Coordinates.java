@@ -0,0 +1,334 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import net.sf.saxon.om.NodeInfo;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * Operations on coordinates held as a flat array of longitude and latitude
+ * pairs, <code>[lon0, lat0, lon1, lat1, ...]</code>, which is the order of
+ * GeoJSON and of the <code>coordinates</code> of Elasticsearch shapes. The
+ * arrays are parsed from the text of <code>gml:posList</code> and
+ * <code>gml:coordinates</code> elements and written to a builder without
+ * boxing the values.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public final class Coordinates {
+
+    private static final String SRS_DIMENSION = "srsDimension";
+
+    private Coordinates() {
+        //
+    }
+
+    /**
+     * Parses the coordinates of a list. Text with commas is read as
+     * <code>gml:coordinates</code> with tuples separated by whitespace and
+     * values by commas, other text as <code>gml:posList</code> with the given
+     * number of values per position. Values after the second of a position,
+     * e.g. heights, are dropped.
+     *
+     * @param text the text of the list
+     * @param dimension the number of values per position of a
+     * <code>gml:posList</code>
+     * @param latLon true if the positions are in latitude, longitude order
+     * @return the longitude and latitude pairs
+     * @throws NumberFormatException if a value is not a number, or the number
+     * of values is not a multiple of the dimension
+     */
+    public static double[] parse(CharSequence text, int dimension, boolean latLon) {
+        boolean tuples = false;
+        for (int i = 0; i < text.length() && !tuples; i++) {
+            tuples = text.charAt(i) == ',';
+        }
+
+        double[] values = new double[16];
+        int count = 0;
+        int position = 0;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean whitespace = Character.isWhitespace(c);
+            if (!whitespace && c != ',') {
+                if (start < 0) {
+                    start = i;
+                }
+                continue;
+            }
+            if (start >= 0) {
+                if (position < 2) {
+                    if (count == values.length) {
+                        values = Arrays.copyOf(values, values.length * 2);
+                    }
+                    values[count++] = Double.parseDouble(text.subSequence(start, i).toString());
+                }
+                position++;
+                start = -1;
+                if (!tuples && position == dimension) {
+                    position = 0;
+                }
+            }
+            if (tuples && whitespace && position > 0) {
+                if (position < 2) {
+                    throw new NumberFormatException("Tuple with less than two values in " + text);
+                }
+                position = 0;
+            }
+        }
+        if (position != 0 || count % 2 != 0) {
+            throw new NumberFormatException(String.format("Incomplete position in %s values: %s",
+                    count, text));
+        }
+
+        double[] xy = count == values.length ? values : Arrays.copyOf(values, count);
+        if (latLon) {
+            for (int i = 0; i < xy.length; i += 2) {
+                double lat = xy[i];
+                xy[i] = xy[i + 1];
+                xy[i + 1] = lat;
+            }
+        }
+        return xy;
+    }
+
+    /**
+     * @return the value of the <code>srsDimension</code> attribute of the node
+     * or its closest ancestor that has one, or 2
+     */
+    static int srsDimension(Object node) {
+        String dimension = null;
+        if (node instanceof NodeInfo) {
+            for (NodeInfo n = (NodeInfo) node; n != null && dimension == null; n = n.getParent()) {
+                dimension = n.getAttributeValue("", SRS_DIMENSION);
+            }
+        } else {
+            for (Node n = (Node) node; n instanceof Element && dimension == null; n = n.getParentNode()) {
+                Element element = (Element) n;
+                dimension = element.hasAttribute(SRS_DIMENSION) ? element.getAttribute(SRS_DIMENSION) : null;
+            }
+        }
+        try {
+            return dimension == null ? 2 : Math.max(2, Integer.parseInt(dimension.trim()));
+        } catch (NumberFormatException e) {
+            return 2;
+        }
+    }
+
+    /**
+     * @return the closest <code>Polygon</code> or <code>PolygonPatch</code>
+     * element containing the node, or null
+     */
+    static Object polygon(Object node) {
+        if (node instanceof NodeInfo) {
+            for (NodeInfo n = ((NodeInfo) node).getParent(); n != null; n = n.getParent()) {
+                if (isPolygon(n.getLocalPart())) {
+                    return n;
+                }
+            }
+        } else {
+            for (Node n = ((Node) node).getParentNode(); n instanceof Element; n = n.getParentNode()) {
+                if (isPolygon(n.getLocalName())) {
+                    return n;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPolygon(String localName) {
+        return "Polygon".equals(localName) || "PolygonPatch".equals(localName);
+    }
+
+    /**
+     * Simplifies a line with the Douglas-Peucker algorithm, the first and last
+     * positions are always kept.
+     *
+     * @param xy the line
+     * @param tolerance the largest distance of a removed position to the
+     * simplified line, in the units of the coordinates
+     * @return the simplified line, or the given array if no position was
+     * removed
+     */
+    public static double[] simplify(double[] xy, double tolerance) {
+        int n = xy.length / 2;
+        if (tolerance <= 0 || n < 3) {
+            return xy;
+        }
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        int kept = 2;
+        double squaredTolerance = tolerance * tolerance;
+
+        // the sections still to simplify, a split replaces a section by two disjoint ones
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double max = squaredTolerance;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredSegmentDistance(xy, i, first, last);
+                if (distance > max) {
+                    max = distance;
+                    index = i;
+                }
+            }
+            if (index >= 0) {
+                keep[index] = true;
+                kept++;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+
+        if (kept == n) {
+            return xy;
+        }
+        double[] simplified = new double[2 * kept];
+        int j = 0;
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                simplified[j++] = xy[2 * i];
+                simplified[j++] = xy[2 * i + 1];
+            }
+        }
+        return simplified;
+    }
+
+    private static double squaredSegmentDistance(double[] xy, int p, int a, int b) {
+        double ax = xy[2 * a];
+        double ay = xy[2 * a + 1];
+        double dx = xy[2 * b] - ax;
+        double dy = xy[2 * b + 1] - ay;
+        double px = xy[2 * p] - ax;
+        double py = xy[2 * p + 1] - ay;
+        double length = dx * dx + dy * dy;
+        if (length > 0) {
+            double t = Math.max(0, Math.min(1, (px * dx + py * dy) / length));
+            px -= t * dx;
+            py -= t * dy;
+        }
+        return px * px + py * py;
+    }
+
+    /**
+     * @return the coordinates rounded to the given number of decimal places,
+     * in a new array
+     */
+    public static double[] round(double[] xy, int precision) {
+        double scale = Math.pow(10, precision);
+        double[] rounded = new double[xy.length];
+        for (int i = 0; i < xy.length; i++) {
+            rounded[i] = Math.rint(xy[i] * scale) / scale;
+        }
+        return rounded;
+    }
+
+    /**
+     * @return the positions without positions that are equal to the
+     * preceding one, or the given array if there are none
+     */
+    public static double[] removeRepeatedPoints(double[] xy) {
+        int j = 2;
+        for (int i = 2; i < xy.length; i += 2) {
+            if (xy[i] != xy[j - 2] || xy[i + 1] != xy[j - 1]) {
+                xy[j] = xy[i];
+                xy[j + 1] = xy[i + 1];
+                j += 2;
+            }
+        }
+        return j >= xy.length ? xy : Arrays.copyOf(xy, j);
+    }
+
+    /**
+     * Simplifies and rounds a line or ring. A ring keeps at least the four
+     * positions of a closed triangle: if simplification or removing the
+     * positions that became equal by rounding leaves less, that step is
+     * skipped.
+     *
+     * @param xy the positions, rounding might change the array
+     * @param tolerance the tolerance of the simplification, or 0
+     * @param precision the number of decimal places, or -1
+     * @param ring true if the positions form a closed ring
+     */
+    static double[] simplifyLine(double[] xy, double tolerance, int precision, boolean ring) {
+        int minimum = ring ? 8 : 4;
+        double[] result = simplify(xy, tolerance);
+        if (result.length < minimum) {
+            result = xy;
+        }
+        if (precision >= 0) {
+            double[] rounded = round(result, precision);
+            double[] distinct = removeRepeatedPoints(Arrays.copyOf(rounded, rounded.length));
+            result = distinct.length < minimum ? rounded : distinct;
+        }
+        return result;
+    }
+
+    /**
+     * @return the envelope of the positions as its upper left and lower right
+     * corners, or an empty array if there are no positions
+     */
+    static double[] envelope(double[] xy) {
+        if (xy.length < 2) {
+            return new double[0];
+        }
+        double minLon = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < xy.length; i += 2) {
+            minLon = Math.min(minLon, xy[i]);
+            maxLon = Math.max(maxLon, xy[i]);
+            minLat = Math.min(minLat, xy[i + 1]);
+            maxLat = Math.max(maxLat, xy[i + 1]);
+        }
+        return new double[]{minLon, maxLat, maxLon, minLat};
+    }
+
+    /**
+     * Writes the positions as an array of <code>[lon, lat]</code> arrays.
+     */
+    static void writePositions(XContentBuilder builder, double[] xy) throws IOException {
+        builder.startArray();
+        writePositionValues(builder, xy);
+        builder.endArray();
+    }
+
+    /**
+     * Writes the <code>[lon, lat]</code> arrays of the positions into the
+     * current array.
+     */
+    static void writePositionValues(XContentBuilder builder, double[] xy) throws IOException {
+        for (int i = 0; i + 1 < xy.length; i += 2) {
+            builder.startArray().value(xy[i]).value(xy[i + 1]).endArray();
+        }
+    }
+
+}
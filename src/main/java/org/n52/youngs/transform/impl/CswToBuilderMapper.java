@@ -21,15 +21,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Collectors;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerFactory;
@@ -37,12 +35,14 @@ import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
-import org.elasticsearch.common.Strings;
+import net.sf.saxon.om.NodeInfo;
 import org.elasticsearch.common.xcontent.XContentBuilder;
-import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.n52.youngs.load.impl.BuilderRecord;
 import org.n52.youngs.harvest.SourceRecord;
 import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.impl.SaxonHelper;
 import org.n52.youngs.transform.Mapper;
 import org.n52.youngs.transform.MappingConfiguration;
 import org.n52.youngs.transform.MappingEntry;
@@ -61,27 +61,55 @@ public class CswToBuilderMapper implements Mapper {
 
     private final MappingConfiguration mapper;
 
-    private Optional<Transformer> stripspaceTransformer = Optional.empty();
-    private Transformer defaultTransformer;
+    private final TransformerFactory tFactory;
+
+    private Optional<Templates> stripspaceTemplates = Optional.empty();
+
+    /**
+     * Transformers are not thread-safe, so every mapping thread uses its own
+     * created from the compiled stylesheet.
+     */
+    private final ThreadLocal<Optional<Transformer>> stripspaceTransformer;
+    private final ThreadLocal<Transformer> defaultTransformer;
+
+    private final MappingPlan plan;
+
+    private final ContentBuilderFactory builders = new ContentBuilderFactory();
 
     public CswToBuilderMapper(MappingConfiguration mapper) {
         this.mapper = mapper;
 
-        TransformerFactory tFactory = TransformerFactory.newInstance();
+        tFactory = SaxonHelper.newTransformerFactory();
 
         try (InputStream is = Resources.getResource("xslt/stripspace.xslt").openStream();) {
             Source xslt = new StreamSource(is);
-            stripspaceTransformer = Optional.of(tFactory.newTransformer(xslt));
+            stripspaceTemplates = Optional.of(tFactory.newTemplates(xslt));
             log.trace("Will apply stripspace XSLT.");
         } catch (TransformerConfigurationException | IOException e) {
             log.error("Problem loading strip-space XSLT file.", e);
         }
 
-        try {
-            defaultTransformer = tFactory.newTransformer();
-        } catch (TransformerConfigurationException ex) {
-            log.error("Problem loading deault Transformer.", ex);
-        }
+        stripspaceTransformer = ThreadLocal.withInitial(() -> stripspaceTemplates.map(t -> {
+            try {
+                return t.newTransformer();
+            } catch (TransformerConfigurationException e) {
+                log.error("Problem creating strip-space Transformer.", e);
+                return null;
+            }
+        }));
+        defaultTransformer = ThreadLocal.withInitial(() -> {
+            try {
+                synchronized (tFactory) {
+                    return tFactory.newTransformer();
+                }
+            } catch (TransformerConfigurationException ex) {
+                log.error("Problem loading deault Transformer.", ex);
+                return null;
+            }
+        });
+
+        plan = new MappingPlan(mapper, stripspaceTransformer::get, defaultTransformer::get);
+        log.debug("Compiled mapping plan: {}", plan);
     }
 
     @Override
@@ -89,6 +117,44 @@ public class CswToBuilderMapper implements Mapper {
         return mapper;
     }
 
+    /**
+     * @param contentType the type of the content of the records, JSON by
+     * default, SMILE or CBOR reduce the size of the bulk requests
+     * @return this mapper
+     */
+    public CswToBuilderMapper setContentType(XContentType contentType) {
+        builders.setContentType(contentType);
+        return this;
+    }
+
+    /**
+     * @param prettyPrint true to indent the content of the records for
+     * debugging, false by default
+     * @return this mapper
+     */
+    public CswToBuilderMapper setPrettyPrint(boolean prettyPrint) {
+        builders.setPrettyPrint(prettyPrint);
+        return this;
+    }
+
+    /**
+     * @return true, the XPath expressions of a {@link YamlMappingConfiguration}
+     * and the transformers are kept per thread
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * @return the number of fallbacks from node set to string evaluation per
+     * field
+     */
+    @Override
+    public Map<String, Number> getStatistics() {
+        return plan.getStatistics();
+    }
+
     /**
      * @param sourceRecord the record to map
      * @return a record containing a builder of the provided SourceRecord, or null if the mapper could not be completed.
@@ -100,8 +166,7 @@ public class CswToBuilderMapper implements Mapper {
 
         if (sourceRecord instanceof NodeSourceRecord) {
             try {
-                NodeSourceRecord object = (NodeSourceRecord) sourceRecord;
-                IdAndBuilder mappedRecord = mapNodeToBuilder(object.getRecord());
+                IdAndBuilder mappedRecord = mapNodeToBuilder(contextNode((NodeSourceRecord) sourceRecord));
 
                 if (mappedRecord == null) {
                     return null;
@@ -120,21 +185,29 @@ public class CswToBuilderMapper implements Mapper {
         return record;
     }
 
-    private IdAndBuilder mapNodeToBuilder(final Node node) throws IOException {
-        XContentBuilder builder = XContentFactory.jsonBuilder()
-                .humanReadable(true)
-                .prettyPrint()
-                .startObject();
+    /**
+     * @return the tree of the record if the mapping can evaluate it natively,
+     * otherwise the DOM of the record
+     */
+    private Object contextNode(NodeSourceRecord record) {
+        if (record instanceof TinyTreeSourceRecord && plan.isTinyTreeSupported()) {
+            return ((TinyTreeSourceRecord) record).getTree();
+        }
+        return record.getRecord();
+    }
 
-        // evaluate xpaths and save the results in the builder
-        Collection<MappingEntry> entries = mapper.getEntries();
-        log.trace("Mapping node {} using {} entries", node, entries.size());
+    /**
+     * @param node a DOM node or a Saxon tree
+     */
+    private IdAndBuilder mapNodeToBuilder(final Object node) throws IOException {
+        log.trace("Mapping node {} using {}", node, plan);
+        MappingPlan.Scratch scratch = plan.scratch();
 
         String id = null;
         try {
-            Optional<MappingEntry> idEntry = entries.stream().filter(MappingEntry::isIdentifier).findFirst();
-            if (idEntry.isPresent()) {
-                id = idEntry.get().getXPath().evaluate(node);
+            MappingEntry idEntry = plan.getIdentifier();
+            if (idEntry != null) {
+                id = idEntry.getXPath().evaluate(node);
                 id = (id == null || id.trim().isEmpty()) ? null : id.trim();
             }
             if (id == null) {
@@ -148,11 +221,15 @@ public class CswToBuilderMapper implements Mapper {
         }
 
         // handle non-geo entries
-        List<EvalResult> mappedEntries = entries.stream().filter(e -> !e.hasCoordinates() && !e.isRawXml())
-                .map(entry -> mapEntry(entry, node, builder))
-                .filter(entry -> entry.isPresent())
-                .map(entry -> entry.get())
-                .collect(Collectors.toList());
+        List<EvalResult> mappedEntries = scratch.mappedEntries;
+        for (MappingEntry entry : plan.getFieldEntries()) {
+            Optional<EvalResult> result = node instanceof NodeInfo
+                    ? scratch.entryMapper.mapEntry(entry, (NodeInfo) node)
+                    : scratch.entryMapper.mapEntry(entry, (Node) node);
+            if (result.isPresent()) {
+                mappedEntries.add(result.get());
+            }
+        }
 
         // apply a filter for entries (e.g. used by sub-classes)
         if (!assessFilter(mappedEntries)) {
@@ -160,41 +237,46 @@ public class CswToBuilderMapper implements Mapper {
             return null;
         }
 
-        mappedEntries.stream()
-                .forEach(er -> {
-                    try {
-                        Object value = er.value;
-                        builder.field(er.name);
-                        builder.value(value);
-                        log.debug("Added field: {} = {}", er.name, (value instanceof Object[]) ? Arrays.toString((Object[]) value) : value);
-                    } catch (IOException e) {
-                        log.warn("Error adding field {}: {}", er.name, e);
-                    }
-                });
+        XContentBuilder builder = builders.newBuilder()
+                .startObject();
+
+        for (EvalResult er : mappedEntries) {
+            try {
+                Object value = er.value;
+                builder.field(er.name);
+                builder.value(value);
+                log.debug("Added field: {} = {}", er.name, (value instanceof Object[]) ? Arrays.toString((Object[]) value) : value);
+            } catch (IOException e) {
+                log.warn("Error adding field {}: {}", er.name, e);
+            }
+        }
 
         // handle geo types
-        entries.stream().filter(e -> e.hasCoordinates() && !e.isRawXml()).forEach(entry -> {
+        for (MappingEntry entry : plan.getSpatialEntries()) {
             mapSpatialEntry(entry, node, builder);
-        });
+        }
 
         // handle raw types
-        entries.stream().filter(e -> e.isRawXml()).forEach(entry -> {
-            mapRawEntry(entry, node, builder);
-        });
+        for (MappingEntry entry : plan.getRawEntries()) {
+            mapRawEntry(scratch.entryMapper, entry, node, builder);
+        }
 
-        if (mapper.hasSuggest()) {
-            handleSuggest(builder, mapper.getSuggest(), mappedEntries);
+        if (plan.hasSuggest()) {
+            handleSuggest(builder, plan.getSuggest(), scratch);
         }
 
         builder.endObject();
         builder.close();
+        builders.completed(builder);
 
-        log.trace("Created content for id '{}':\n{}", id, Strings.toString(builder));
+        if (log.isTraceEnabled()) {
+            log.trace("Created content for id '{}':\n{}", id, builders.toString(builder));
+        }
 
         return new IdAndBuilder(id, builder);
     }
 
-    private void mapSpatialEntry(MappingEntry entry, final Node node, XContentBuilder builder) {
+    private void mapSpatialEntry(MappingEntry entry, final Object node, XContentBuilder builder) {
         log.trace("Applying field mapping '{}' to node: {}", entry.getFieldName(), node);
         try {
             Object coordsNode = entry.getXPath().evaluate(node, XPathConstants.NODE);
@@ -204,27 +286,38 @@ public class CswToBuilderMapper implements Mapper {
 
                 List<XPathExpression[]> pointsXPaths = entry.getCoordinatesXPaths();
 
-                if (!pointsXPaths.isEmpty() && !geoType.isEmpty() && !field.isEmpty() && entry.hasCoordinatesType()) {
-                    List<Number[]> pointsDoubles = pointsXPaths.stream().map(p -> {
+                if (entry.getCoordinatesListXPath() != null && !geoType.isEmpty() && !field.isEmpty()
+                        && entry.hasCoordinatesType()) {
+                    mapCoordinateLists(entry, coordsNode, builder);
+                } else if (!pointsXPaths.isEmpty() && !geoType.isEmpty() && !field.isEmpty() && entry.hasCoordinatesType()) {
+                    // in arrays: GeoJSON conform as [lon, lat], see https://www.elastic.co/guide/en/elasticsearch/reference/current/mapping-geo-point-type.html
+                    double[] points = new double[2 * pointsXPaths.size()];
+                    int count = 0;
+                    for (XPathExpression[] p : pointsXPaths) {
                         try {
                             Number lat = (Number) p[0].evaluate(coordsNode, XPathConstants.NUMBER);
                             Number lon = (Number) p[1].evaluate(coordsNode, XPathConstants.NUMBER);
-                            return new Number[]{lon, lat}; // in arrays: GeoJSON conform as [lon, lat], see https://www.elastic.co/guide/en/elasticsearch/reference/current/mapping-geo-point-type.html
+                            points[count++] = lon == null ? Double.NaN : lon.doubleValue();
+                            points[count++] = lat == null ? Double.NaN : lat.doubleValue();
                         } catch (XPathExpressionException e) {
                             log.warn("Error evaluating XPath {} for coordinate: {}", p, e);
-                            return null;
                         }
-                    })
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList());
+                    }
+                    if (count < points.length) {
+                        points = Arrays.copyOf(points, count);
+                    }
+                    if (entry.getCoordinatesPrecision() >= 0) {
+                        points = Coordinates.round(points, entry.getCoordinatesPrecision());
+                    }
                     log.trace("Evaluated {} expressions and got {} points: {}", pointsXPaths.size(),
-                            pointsDoubles.size(), Arrays.deepToString(pointsDoubles.toArray()));
+                            points.length / 2, Arrays.toString(points));
 
                     builder.startObject(field)
                             .field(MappingEntry.IndexProperties.TYPE, entry.getCoordinatesType())
-                            .field("coordinates", pointsDoubles)
-                            .endObject();
-                    log.debug("Added points '{}' as {} of type {}", Arrays.deepToString(pointsDoubles.toArray()),
+                            .field("coordinates");
+                    Coordinates.writePositions(builder, points);
+                    builder.endObject();
+                    log.debug("Added points '{}' as {} of type {}", Arrays.toString(points),
                             geoType, entry.getCoordinatesType());
                 } else {
                     log.warn("Mapping '{}' has coordinates but is missing one of the other required settings, not adding field: "
@@ -241,15 +334,108 @@ public class CswToBuilderMapper implements Mapper {
         }
     }
 
-    private Optional<EvalResult> mapEntry(MappingEntry entry, final Node node, XContentBuilder builder) {
-        Optional<EntryMapper.EvalResult> result = new EntryMapper().mapEntry(entry, node);
+    /**
+     * Creates the shape of a spatial entry from coordinate lists, each a
+     * <code>gml:posList</code> or <code>gml:coordinates</code> element, without
+     * evaluating an expression per position. Every list is a line, a ring or
+     * the points of the shape. Lists that cannot be parsed are skipped, no
+     * field is added if none is left.
+     */
+    private void mapCoordinateLists(MappingEntry entry, Object coordsNode, XContentBuilder builder)
+            throws XPathExpressionException, IOException {
+        String type = entry.getCoordinatesType();
+        boolean lines = !"point".equals(type) && !"multipoint".equals(type) && !"envelope".equals(type);
+        boolean rings = "polygon".equals(type) || "multipolygon".equals(type);
+
+        List<?> nodes = EntryMapper.asNodes(entry.getCoordinatesListXPath().evaluate(coordsNode,
+                XPathConstants.NODESET));
+        List<double[]> lists = new ArrayList<>(nodes.size());
+        List<Object> polygons = new ArrayList<>(nodes.size());
+        int positions = 0;
+        for (Object listNode : nodes) {
+            try {
+                double[] xy = Coordinates.parse(EntryMapper.textContent(listNode),
+                        Coordinates.srsDimension(listNode), entry.isCoordinatesLatLon());
+                if (xy.length == 0) {
+                    continue;
+                }
+                if (lines) {
+                    xy = Coordinates.simplifyLine(xy, entry.getCoordinatesTolerance(),
+                            entry.getCoordinatesPrecision(), rings);
+                } else if (entry.getCoordinatesPrecision() >= 0) {
+                    xy = Coordinates.round(xy, entry.getCoordinatesPrecision());
+                }
+                lists.add(xy);
+                polygons.add("multipolygon".equals(type) ? Coordinates.polygon(listNode) : null);
+                positions += xy.length / 2;
+            } catch (NumberFormatException e) {
+                log.warn("Error parsing coordinate list of field {}: {}", entry.getFieldName(), e.getMessage());
+            }
+        }
+        if (lists.isEmpty()) {
+            log.debug("No coordinates found for field {} in {} lists", entry.getFieldName(), nodes.size());
+            return;
+        }
 
-        return result;
+        builder.startObject(entry.getFieldName())
+                .field(MappingEntry.IndexProperties.TYPE, type)
+                .field("coordinates");
+        switch (type) {
+            case "point":
+                double[] point = lists.get(0);
+                builder.startArray().value(point[0]).value(point[1]).endArray();
+                break;
+            case "linestring":
+                Coordinates.writePositions(builder, lists.get(0));
+                break;
+            case "envelope":
+                double[] all = new double[2 * positions];
+                int offset = 0;
+                for (double[] xy : lists) {
+                    System.arraycopy(xy, 0, all, offset, xy.length);
+                    offset += xy.length;
+                }
+                Coordinates.writePositions(builder, Coordinates.envelope(all));
+                break;
+            case "multipoint":
+                builder.startArray();
+                for (double[] xy : lists) {
+                    Coordinates.writePositionValues(builder, xy);
+                }
+                builder.endArray();
+                break;
+            case "multipolygon":
+                // the rings of a polygon element form one polygon, rings outside of one a polygon each
+                builder.startArray();
+                for (int i = 0; i < lists.size(); i++) {
+                    if (i == 0 || polygons.get(i) == null || !polygons.get(i).equals(polygons.get(i - 1))) {
+                        if (i > 0) {
+                            builder.endArray();
+                        }
+                        builder.startArray();
+                    }
+                    Coordinates.writePositions(builder, lists.get(i));
+                }
+                builder.endArray().endArray();
+                break;
+            default:
+                // multilinestring and polygon, a polygon's first ring is the exterior
+                builder.startArray();
+                for (double[] xy : lists) {
+                    Coordinates.writePositions(builder, xy);
+                }
+                builder.endArray();
+        }
+        builder.endObject();
+        log.debug("Added {} positions in {} lists as {} of type {}", positions, lists.size(),
+                entry.getFieldName(), type);
     }
 
-    private void mapRawEntry(MappingEntry entry, Node node, XContentBuilder builder) {
+    private void mapRawEntry(EntryMapper entryMapper, MappingEntry entry, Object node, XContentBuilder builder) {
         try {
-            String xmldoc = new EntryMapper(stripspaceTransformer, defaultTransformer).mapRawEntry(entry, node);
+            String xmldoc = node instanceof NodeInfo
+                    ? entryMapper.mapRawEntry(entry, (NodeInfo) node)
+                    : entryMapper.mapRawEntry(entry, (Node) node);
             builder.field(entry.getFieldName(), xmldoc);
         } catch (IOException | XPathExpressionException e) {
             log.warn("Error adding field {}: {}", entry.getFieldName(), e);
@@ -261,54 +447,41 @@ public class CswToBuilderMapper implements Mapper {
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("mapping", this.mapper)
-                .add("defaultTransformer", this.defaultTransformer)
+                .add("stripspace", this.stripspaceTemplates.isPresent())
+                .add("plan", this.plan)
                 .omitNullValues()
                 .toString();
     }
 
-    private void handleSuggest(XContentBuilder builder, Map<String, Object> suggestDef, List<EvalResult> mappingEntries) throws IOException {
-        Map<String, Object> suggest = (Map<String, Object>) suggestDef.get("mappingConfiguration");
-        List<String> inputs = new ArrayList<>();
-
-        Boolean singleWords = extractValue(suggest, "input_as_single_words", true);
-        String splitSep = extractValue(suggest, "split", " ");
-        Boolean fullOutput = extractValue(suggest, "full_output", true);
-        List<String> inputExlucdes = extractValue(suggest, "input_exlucdes", Collections.emptyList());
-        List<String> inputRemoves = extractValue(suggest, "input_remove", Collections.emptyList());
-        Integer weight = extractValue(suggest, "weight", 1);
-        List<String> entries = extractValue(suggest, "entries", Collections.emptyList());
-
-        List<Map<String, Object>> suggestEntries = entries.stream()
-                .map(fieldName -> {
-                    Optional<Object> fieldValue = mappingEntries.stream()
-                            .filter(me -> fieldName.equals(me.getName()))
-                            .map(me -> me.getValue())
-                            .findFirst();
-
-                    if (!fieldValue.isPresent() || !(fieldValue.get() instanceof String)) {
-                        return null;
-                    }
+    private void handleSuggest(XContentBuilder builder, MappingPlan.Suggest suggest, MappingPlan.Scratch scratch) throws IOException {
+        Object[] values = scratch.suggestValues;
+        for (EvalResult er : scratch.mappedEntries) {
+            int index = suggest.indexOf(er.getName());
+            if (index >= 0 && values[index] == null) {
+                values[index] = er.getValue();
+            }
+        }
+
+        List<Map<String, Object>> suggestEntries = new ArrayList<>(values.length);
+        for (int i = 0; i < suggest.fields.length; i++) {
+            Object fieldValue = values[suggest.firstIndexOf(i)];
+            if (!(fieldValue instanceof String)) {
+                continue;
+            }
 
-                    String[] fieldArray = fieldValue.get().toString().split(splitSep);
-                    List<String> inputList = Arrays.asList(fieldArray).stream()
-                            .filter(s -> {
-                                return inputExlucdes.stream().noneMatch((ex) -> (s.equalsIgnoreCase(ex) || s.matches(ex)));
-                            })
-                            .map(s -> {
-                                for (String inputRemove : inputRemoves) {
-                                    s = s.replace(inputRemove, "");
-                                }
-                                return s.trim();
-                            })
-                            .collect(Collectors.toList());
-                    Map<String, Object> map = new HashMap<>();
-                    map.put("inputs", inputList);
-                    map.put("weight", weight);
-                    map.put("output", fieldValue.get());
-                    return map;
-                })
-                .filter(e -> e != null)
-                .collect(Collectors.toList());
+            String[] fieldArray = suggest.splitPattern.split(fieldValue.toString());
+            List<String> inputList = new ArrayList<>(fieldArray.length);
+            for (String input : fieldArray) {
+                if (!suggest.isExcluded(input)) {
+                    inputList.add(suggest.inputRemover.apply(input).trim());
+                }
+            }
+            Map<String, Object> map = new HashMap<>();
+            map.put("inputs", inputList);
+            map.put("weight", suggest.weight);
+            map.put("output", fieldValue);
+            suggestEntries.add(map);
+        }
 
         if (suggestEntries.isEmpty()) {
             return;
@@ -332,15 +505,10 @@ public class CswToBuilderMapper implements Mapper {
         }
     }
 
-    private <V> V extractValue(Map<String, Object> map, String key, V defaultValue) {
-        V value = (V) map.get(key);
-        return value == null ? defaultValue : value;
-    }
-
     /**
      * this method can be used by sub-classes to apply a filter on entries.
      *
-     * @param mappedEntries input entries
+     * @param mappedEntries input entries, the list is reused for the next record mapped by the same thread
      * @return if the record passed the filter and should be considered for ingestion
      */
     public boolean assessFilter(List<EvalResult> mappedEntries) {
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
+import org.n52.youngs.exception.MappingError;
+
+/**
+ * Rewrites descendant-axis steps at the start of a path, <code>//p:name</code>,
+ * to the root-anchored path <code>/r:Root/p:name</code> if the element is
+ * declared to only occur as a child of the root element of the records. The
+ * rewrite is only provably safe given that declaration, which follows from the
+ * schema of the records, so steps of other elements, steps within a path or
+ * predicate, and steps with an axis or a node test are left as they are.
+ *
+ * The applicability of a mapping also accepts records in which the root
+ * element is wrapped by other elements, so the rewritten step keeps the
+ * original step for records with another document element:
+ * <code>(/r:Root/p:name | /self::node()[not(r:Root)]//p:name)</code>. The
+ * second branch selects nothing without searching the record if the document
+ * element is the root element. Predicates of the step are applied in both
+ * branches.
+ *
+ * The cost of an expression is estimated in nodes visited per record: a
+ * descendant step visits the whole record, a child step the children of a
+ * node.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+final class DescendantAxisRewriter {
+
+    static final int RECORD_NODES = 1000;
+
+    static final int CHILD_NODES = 10;
+
+    private static final Pattern APPLICABILITY_ROOT = Pattern.compile("local-name\\(\\)\\s*=\\s*['\"]([^'\"]+)['\"]");
+
+    private final Map<String, String> namespaces;
+
+    private final Set<String> rootChildren = new TreeSet<>();
+
+    private final Optional<String> rootTest;
+
+    /**
+     * @param namespaces the namespaces of the mapping, used to compare the
+     * names of elements independent of their prefix
+     * @param rootChildren the prefixed names of elements that only occur as
+     * children of the root element
+     * @param rootElements the root elements of the mapping, if known
+     * @param applicabilityXPath the applicability expression of the mapping,
+     * without root elements the local name of the root element is taken from
+     * its first <code>local-name()</code> test
+     */
+    DescendantAxisRewriter(Map<String, String> namespaces, Collection<String> rootChildren,
+            Collection<QName> rootElements, String applicabilityXPath) {
+        this.namespaces = namespaces;
+        for (String name : rootChildren) {
+            String expanded = expand(name);
+            if (expanded == null) {
+                throw new MappingError("Root child '%s' uses an undeclared namespace prefix", name);
+            }
+            this.rootChildren.add(expanded);
+        }
+
+        if (!rootElements.isEmpty()) {
+            this.rootTest = Optional.of(rootTest(rootElements));
+        } else {
+            Matcher matcher = APPLICABILITY_ROOT.matcher(applicabilityXPath == null ? "" : applicabilityXPath);
+            this.rootTest = matcher.find()
+                    ? Optional.of("*[local-name() = " + literal(matcher.group(1)) + "]")
+                    : Optional.empty();
+        }
+    }
+
+    /**
+     * @return a node test for the root elements, the prefixed name of a
+     * single root element with a declared namespace, or else a test of the
+     * local names and namespaces
+     */
+    private String rootTest(Collection<QName> rootElements) {
+        if (rootElements.size() == 1) {
+            QName rootElement = rootElements.iterator().next();
+            for (Map.Entry<String, String> namespace : namespaces.entrySet()) {
+                if (namespace.getValue().equals(rootElement.getNamespaceURI()) && !namespace.getKey().isEmpty()) {
+                    return namespace.getKey() + ":" + rootElement.getLocalPart();
+                }
+            }
+        }
+        return rootElements.stream()
+                .map(r -> String.format("(local-name() = %s and namespace-uri() = %s)", literal(r.getLocalPart()),
+                        literal(r.getNamespaceURI())))
+                .collect(Collectors.joining(" or ", "*[", "]"));
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    boolean hasRootChildren() {
+        return !rootChildren.isEmpty();
+    }
+
+    /**
+     * @return the analysis of the expression, including the rewritten
+     * expression
+     */
+    XPathCostReport.FieldCost analyze(String field, String expression) {
+        StringBuilder rewritten = new StringBuilder(expression.length());
+        int descendantSteps = 0;
+        int childSteps = 0;
+        int rewrites = 0;
+        int predicateDepth = 0;
+        char quote = 0;
+        char previous = 0;
+
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+                rewritten.append(c);
+                i++;
+                continue;
+            }
+
+            if (c == '/' && i + 1 < expression.length() && expression.charAt(i + 1) == '/') {
+                descendantSteps++;
+                int end = nameEnd(expression, i + 2);
+                String name = expression.substring(i + 2, end);
+                String expanded = expand(name);
+                if (rootTest.isPresent() && predicateDepth == 0 && isPathStart(previous) && expanded != null
+                        && isStepEnd(expression, end) && rootChildren.contains(expanded)) {
+                    int stepEnd = predicatesEnd(expression, end);
+                    String step = name + expression.substring(end, stepEnd);
+                    rewritten.append("(/").append(rootTest.get()).append("/").append(step)
+                            .append(" | /self::node()[not(").append(rootTest.get()).append(")]//").append(step)
+                            .append(")");
+                    rewrites++;
+                    previous = ')';
+                    i = stepEnd;
+                } else {
+                    rewritten.append("//");
+                    previous = '/';
+                    i += 2;
+                }
+                continue;
+            }
+
+            if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                predicateDepth++;
+            } else if (c == ']') {
+                predicateDepth--;
+            } else if (c == '/') {
+                childSteps++;
+            }
+            rewritten.append(c);
+            if (!Character.isWhitespace(c)) {
+                previous = c;
+            }
+            i++;
+        }
+
+        int costBefore = descendantSteps * RECORD_NODES + childSteps * CHILD_NODES;
+        int costAfter = (descendantSteps - rewrites) * RECORD_NODES + (childSteps + 2 * rewrites) * CHILD_NODES;
+        return new XPathCostReport.FieldCost(field, expression, rewritten.toString(), descendantSteps - rewrites,
+                costBefore, costAfter);
+    }
+
+    /**
+     * @return true if a step starting after the given character starts a new
+     * path, and is not a step within a path or after an operator keyword
+     */
+    private static boolean isPathStart(char previous) {
+        return previous == 0 || previous == '(' || previous == '|' || previous == ',' || previous == '=';
+    }
+
+    /**
+     * @return the end of the name test starting at the given position, which
+     * is the start if there is no name test
+     */
+    private static int nameEnd(String expression, int start) {
+        int i = start;
+        boolean prefixed = false;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.') {
+                i++;
+            } else if (c == ':' && !prefixed && i > start && i + 1 < expression.length()
+                    && Character.isLetter(expression.charAt(i + 1))) {
+                prefixed = true;
+                i++;
+            } else {
+                break;
+            }
+        }
+        if (i > start && !Character.isLetter(expression.charAt(start)) && expression.charAt(start) != '_') {
+            return start;
+        }
+        return i;
+    }
+
+    /**
+     * @return the end of the predicates following the given position, which
+     * is the position if there are none
+     */
+    private static int predicatesEnd(String expression, int start) {
+        int i = start;
+        while (i < expression.length() && expression.charAt(i) == '[') {
+            int depth = 0;
+            char quote = 0;
+            do {
+                char c = expression.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '\'' || c == '"') {
+                    quote = c;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+                i++;
+            } while (depth > 0 && i < expression.length());
+        }
+        return i;
+    }
+
+    /**
+     * @return true if the name test ends the step, and is not the name of an
+     * axis, a function or a node test
+     */
+    private static boolean isStepEnd(String expression, int end) {
+        if (end == expression.length()) {
+            return true;
+        }
+        char c = expression.charAt(end);
+        return c == '/' || c == '[' || c == ')' || c == '|' || c == ',' || Character.isWhitespace(c);
+    }
+
+    private String expand(String name) {
+        int colon = name.indexOf(':');
+        if (colon < 0) {
+            return name.isEmpty() ? null : "{}" + name;
+        }
+        String namespace = namespaces.get(name.substring(0, colon));
+        return namespace == null ? null : "{" + namespace + "}" + name.substring(colon + 1);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("root", rootTest.orElse(null))
+                .add("rootChildren", rootChildren)
+                .omitNullValues()
+                .toString();
+    }
+
+}
@@ -21,7 +21,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import java.io.StringWriter;
-import java.util.ArrayList;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,8 +30,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.dom.DOMSource;
@@ -39,7 +41,9 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
+import net.sf.saxon.om.NodeInfo;
 import org.n52.youngs.transform.MappingEntry;
+import org.n52.youngs.transform.impl.EntryResultTypes.ResultType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Node;
@@ -60,47 +64,88 @@ public class EntryMapper {
 
     private final Optional<Transformer> stripspaceTransformer;
     private final Transformer defaultTransformer;
+    private final EntryResultTypes resultTypes;
 
     public EntryMapper() {
         this(Optional.empty(), null);
     }
 
     public EntryMapper(Optional<Transformer> stripspaceTransformer, Transformer defaultTransformer) {
+        this(stripspaceTransformer, defaultTransformer, new EntryResultTypes());
+    }
+
+    /**
+     * @param resultTypes the result types of the entries, shared by the entry
+     * mappers of the threads of a mapper
+     */
+    EntryMapper(Optional<Transformer> stripspaceTransformer, Transformer defaultTransformer,
+            EntryResultTypes resultTypes) {
         this.stripspaceTransformer = stripspaceTransformer;
         this.defaultTransformer = defaultTransformer;
+        this.resultTypes = resultTypes;
     }
 
     public Optional<EvalResult> mapEntry(MappingEntry entry, final Node node) {
+        return evaluateEntry(entry, node);
+    }
+
+    /**
+     * @param tree a record built with the configuration of
+     * {@link org.n52.youngs.impl.SaxonHelper}, the XPath expressions of the
+     * entry must be created with the same configuration
+     */
+    public Optional<EvalResult> mapEntry(MappingEntry entry, final NodeInfo tree) {
+        return evaluateEntry(entry, tree);
+    }
+
+    /**
+     * @param node a DOM node or a Saxon tree
+     */
+    private Optional<EvalResult> evaluateEntry(MappingEntry entry, final Object node) {
         log.trace("Applying field mapping '{}' to node: {}", entry.getFieldName(), node);
 
-        Optional<EvalResult> result = Optional.empty();
-        // try nodeset first
-        try {
-            if (entry.hasCondition() && !assertCondition(node, entry.getCondition())) {
-                log.info("Condition '{}' not matched, skipping", entry.getCondition());
-                return Optional.empty();
+        if (entry.hasCondition()) {
+            try {
+                if (!assertCondition(node, entry.getCondition())) {
+                    log.info("Condition '{}' not matched, skipping", entry.getCondition());
+                    return Optional.empty();
+                }
+            } catch (XPathExpressionException e) {
+                log.debug("Error evaluating condition of field {}, ignoring it: {}", entry.getFieldName(),
+                        e.getMessage());
             }
+        }
 
-            Object nodesetResult = entry.getXPath().evaluate(node, XPathConstants.NODESET);
+        Optional<EvalResult> result = Optional.empty();
+        boolean evaluateString = true;
+        if (resultTypes.get(entry) != ResultType.STRING) {
+            // try nodeset first
+            try {
+                Object nodesetResult = entry.getXPath().evaluate(node, XPathConstants.NODESET);
+                resultTypes.nodeset(entry);
 
-            if (entry.getChildren() != null && !entry.getChildren().isEmpty()) {
-                result = mapChildren(nodesetResult, entry);
-            }
-            else {
-                result = Optional.ofNullable(handleEvaluationResult(nodesetResult, entry.getFieldName()));
-            }
+                if (entry.getChildren() != null && !entry.getChildren().isEmpty()) {
+                    result = mapChildren(nodesetResult, entry);
+                }
+                else {
+                    result = Optional.ofNullable(handleEvaluationResult(nodesetResult, entry.getFieldName()));
+                }
 
-            if (result.isPresent()) {
-                log.trace("Found nodeset result: {}", result.get());
+                if (result.isPresent()) {
+                    log.trace("Found nodeset result: {}", result.get());
+                }
+                // the string value of an empty node set is empty as well
+                evaluateString = !result.isPresent() && !asNodes(nodesetResult).isEmpty();
+            } catch (XPathExpressionException e) {
+                resultTypes.fallback(entry);
+                log.debug("Error selecting field {} as nodeset, could be XPath 2.0 expression... trying evaluation to string."
+                        + " Error was: {}", entry.getFieldName(), e.getMessage());
+                log.trace("Error selecting field {} as nodeset", entry.getFieldName(), e);
             }
-        } catch (XPathExpressionException e) {
-            log.debug("Error selecting field {} as nodeset, could be XPath 2.0 expression... trying evaluation to string."
-                    + " Error was: {}", entry.getFieldName(), e.getMessage());
-            log.trace("Error selecting field {} as nodeset", entry.getFieldName(), e);
         }
 
         // try string eval if nodeset did not work
-        if (!result.isPresent()) {
+        if (evaluateString) {
             try {
                 String stringResult = (String) entry.getXPath().evaluate(node, XPathConstants.STRING);
                 result = Optional.ofNullable(handleEvaluationResult(stringResult, entry.getFieldName()));
@@ -132,16 +177,12 @@ public class EntryMapper {
         Optional<EvalResult> result;
 
         // special case: children --> nested object
-        List<Node> nodes;
-        if (nodesetResult instanceof NodeList) {
-            NodeList tmp = (NodeList) nodesetResult;
-            nodes = new ArrayList<>(tmp.getLength());
-            for (int i = 0; i < tmp.getLength(); i++) {
-                nodes.add(tmp.item(i));
-            }
+        List<?> nodes;
+        if (nodesetResult instanceof NodeList || nodesetResult instanceof List) {
+            nodes = asNodes(nodesetResult);
         }
-        else if (nodesetResult instanceof Node) {
-            nodes = Collections.singletonList((Node) nodesetResult);
+        else if (nodesetResult instanceof Node || nodesetResult instanceof NodeInfo) {
+            nodes = Collections.singletonList(nodesetResult);
         }
         else {
             log.warn("nodesetResult type {} not supported", nodesetResult.getClass());
@@ -152,7 +193,7 @@ public class EntryMapper {
         List<Map<String, Object>> value = nodes.stream()
                 .map(n -> entry.getChildren().stream()
                     //use the common mapEntry method
-                    .map(me -> mapEntry(me, n).orElse(null))
+                    .map(me -> evaluateEntry(me, n).orElse(null))
                     .filter(me -> me != null)
                     //but map to a default Map<String, Object>
                     .collect(Collectors.toMap(EvalResult::getName, EvalResult::getValue)))
@@ -174,8 +215,8 @@ public class EntryMapper {
 
     private EvalResult handleReplacements(MappingEntry entry, EvalResult er) {
         EvalResult result = null;
-        Map<String, String> replacements = entry.getReplacements();
-        log.trace("Applying replacements in {}: {}", er.name, Arrays.toString(replacements.entrySet().toArray()));
+        UnaryOperator<String> replacements = entry.getReplacementFunction();
+        log.trace("Applying replacements in {}: {}", er.name, replacements);
         if (er.value instanceof String) {
             result = new EvalResult(er.name, applyReplacements(replacements, (String) er.value));
         } else if (er.value instanceof String[]) {
@@ -203,19 +244,15 @@ public class EntryMapper {
         return er;
     }
 
-    private String applyReplacements(Map<String, String> replacements, String in) {
-        String out = in;
-        for (Map.Entry<String, String> replacement : replacements.entrySet()) {
-            out = out.replace(replacement.getKey(), replacement.getValue());
-        }
-        return out.trim();
+    private String applyReplacements(UnaryOperator<String> replacements, String in) {
+        return replacements.apply(in).trim();
     }
 
     private EvalResult handleSplit(MappingEntry entry, EvalResult er) {
         if (er.value instanceof String) {
             String value = (String) er.value;
             log.trace("Applying split in field {} with '{}' on {}", entry.getFieldName(), entry.getSplit(), value);
-            String[] split = value.split(entry.getSplit());
+            String[] split = entry.getSplitPattern().split(value);
 
             List<String> list = Arrays.asList(split).stream().map((String t) -> {
                 return t.trim();
@@ -229,7 +266,7 @@ public class EntryMapper {
         }
     }
 
-    private boolean assertCondition(Node node, XPathExpression condition) throws XPathExpressionException {
+    private boolean assertCondition(Object node, XPathExpression condition) throws XPathExpressionException {
         Object nodesetResult = condition.evaluate(node, XPathConstants.NODESET);
         Optional<EvalResult> result = Optional.ofNullable(handleEvaluationResult(nodesetResult, "condition"));
         if (!result.isPresent()) {
@@ -251,17 +288,16 @@ public class EntryMapper {
             } else {
                 log.debug("Evaluation returned empty string for entry {}", name);
             }
-        } else if (evalutationResult instanceof NodeList) {
-            NodeList nodeList = (NodeList) evalutationResult;
+        } else if (evalutationResult instanceof NodeList || evalutationResult instanceof List) {
+            List<?> nodeList = asNodes(evalutationResult);
             Optional<Object> value = Optional.empty();
 
-            if (nodeList.getLength() < 1) {
+            if (nodeList.isEmpty()) {
                 log.debug("Evaluation returned no results for entry {}", name);
             } else {
                 Set<String> contents = Sets.newHashSet();
-                for (int i = 0; i < nodeList.getLength(); i++) {
-                    Node n = nodeList.item(i);
-                    String textContent = n.getTextContent();
+                for (Object n : nodeList) {
+                    String textContent = textContent(n);
                     if (textContent != null && !textContent.isEmpty()) {
                         contents.add(textContent);
                     }
@@ -294,9 +330,49 @@ public class EntryMapper {
     }
 
 
+    /**
+     * Saxon returns the nodes of a tree as a list, the ones of a DOM as a node
+     * list.
+     */
+    static List<?> asNodes(Object nodesetResult) {
+        if (nodesetResult instanceof List) {
+            return (List<?>) nodesetResult;
+        }
+        NodeList nodeList = (NodeList) nodesetResult;
+        return new AbstractList<Node>() {
+            @Override
+            public Node get(int index) {
+                return nodeList.item(index);
+            }
+
+            @Override
+            public int size() {
+                return nodeList.getLength();
+            }
+        };
+    }
+
+    static String textContent(Object node) {
+        if (node instanceof NodeInfo) {
+            return ((NodeInfo) node).getStringValue();
+        }
+        if (node instanceof Node) {
+            return ((Node) node).getTextContent();
+        }
+        return node == null ? null : node.toString();
+    }
+
     public String mapRawEntry(MappingEntry entry, Node node) throws XPathExpressionException {
+        return evaluateRawEntry(entry, node);
+    }
+
+    public String mapRawEntry(MappingEntry entry, NodeInfo tree) throws XPathExpressionException {
+        return evaluateRawEntry(entry, tree);
+    }
+
+    private String evaluateRawEntry(MappingEntry entry, Object node) throws XPathExpressionException {
         // handle full xml
-        Node nodesetResult = (Node) entry.getXPath().evaluate(node, XPathConstants.NODE);
+        Object nodesetResult = entry.getXPath().evaluate(node, XPathConstants.NODE);
         Map<String, String> outputProperties = Maps.newHashMap();
         outputProperties.putAll(DEFAULT_OUTPUT_PROPERTIES);
         if (entry.hasOutputProperties()) {
@@ -308,7 +384,7 @@ public class EntryMapper {
         return xmldoc;
     }
 
-    private String asString(Node node, Map<String, String> outputProperties) {
+    private String asString(Object node, Map<String, String> outputProperties) {
         log.debug("Converting node {} to string using properties {}", node, Arrays.toString(outputProperties.entrySet().toArray()));
 
         StringWriter sw = new StringWriter();
@@ -321,11 +397,14 @@ public class EntryMapper {
                 t = defaultTransformer;
             }
 
+            // transformers are reused, so properties of a previous entry must not apply
+            t.setOutputProperties(null);
             for (Map.Entry<String, String> op : outputProperties.entrySet()) {
                 t.setOutputProperty(op.getKey(), op.getValue());
             }
 
-            t.transform(new DOMSource(node), new StreamResult(sw));
+            Source source = node instanceof NodeInfo ? (NodeInfo) node : new DOMSource((Node) node);
+            t.transform(source, new StreamResult(sw));
         } catch (TransformerException e) {
             log.warn("Problem getting node {} as string", node, e);
         }
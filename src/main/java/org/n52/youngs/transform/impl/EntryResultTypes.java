@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Maps;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.n52.youngs.impl.SaxonXPathExpression;
+import org.n52.youngs.transform.MappingEntry;
+
+/**
+ * The result types of the expressions of mapping entries, so that an entry is
+ * evaluated only once per record. The type is taken from the static type of
+ * the compiled expression, or learned from the first evaluation if the
+ * expression has no static type: an expression that cannot be evaluated as
+ * a node set before it ever could is evaluated as a string from then on. A
+ * static or learned node set type is kept if the evaluation fails for a
+ * single record. The types are shared by the threads of a mapper.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+final class EntryResultTypes {
+
+    public static final String FALLBACK_STATISTIC_PREFIX = "mapping.fallbacks.";
+
+    enum ResultType {
+        NODESET,
+        STRING,
+        UNKNOWN
+    }
+
+    private final ConcurrentMap<MappingEntry, ResultType> types = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, LongAdder> fallbacks = new ConcurrentHashMap<>();
+
+    ResultType get(MappingEntry entry) {
+        ResultType type = types.get(entry);
+        if (type == null) {
+            type = staticType(entry);
+            if (type != ResultType.UNKNOWN) {
+                types.putIfAbsent(entry, type);
+            }
+        }
+        return type;
+    }
+
+    /**
+     * The entry was evaluated as a node set.
+     */
+    void nodeset(MappingEntry entry) {
+        types.putIfAbsent(entry, ResultType.NODESET);
+    }
+
+    /**
+     * The entry could not be evaluated as a node set and was evaluated as a
+     * string instead, which is only learned if the entry has no type yet.
+     */
+    void fallback(MappingEntry entry) {
+        types.putIfAbsent(entry, ResultType.STRING);
+        fallbacks.computeIfAbsent(entry.getFieldName(), f -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return the number of fallbacks per field, named with the prefix
+     * {@value #FALLBACK_STATISTIC_PREFIX}
+     */
+    Map<String, Number> getStatistics() {
+        if (fallbacks.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, Number> statistics = Maps.newTreeMap();
+        fallbacks.forEach((field, count) -> statistics.put(FALLBACK_STATISTIC_PREFIX + field, count.sum()));
+        return statistics;
+    }
+
+    private static ResultType staticType(MappingEntry entry) {
+        if (entry.getXPath() instanceof SaxonXPathExpression) {
+            Boolean nodes = ((SaxonXPathExpression) entry.getXPath()).isNodeSequence();
+            if (nodes != null) {
+                return nodes ? ResultType.NODESET : ResultType.STRING;
+            }
+        }
+        return ResultType.UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("types", types.size())
+                .add("fallbacks", getStatistics())
+                .toString();
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The expression of a {@link LightweightMappingEntry} compiled to its steps,
+ * so that records are resolved without processing the expression.
+ *
+ * A node path <code>/a/b/c</code> selects the fields one after the other and
+ * the first item of an array between two steps. A list path
+ * <code>/list//a/b</code> selects the node path <code>a/b</code> in every
+ * item of the field <code>list</code>.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public final class JsonPathAccessor {
+
+    private static final Logger log = LoggerFactory.getLogger(JsonPathAccessor.class);
+
+    private static final String STEP_SEPARATOR = "/";
+
+    private static final String LIST_SEPARATOR = "//";
+
+    private static final JsonPathAccessor MISSING = new JsonPathAccessor(null, null);
+
+    private final String[] steps;
+
+    private final String list;
+
+    private JsonPathAccessor(String list, String[] steps) {
+        this.list = list;
+        this.steps = steps;
+    }
+
+    /**
+     * @param expression a path of field names
+     * @return the accessor of the node selected by the path
+     */
+    public static JsonPathAccessor node(String expression) {
+        if (expression == null) {
+            return MISSING;
+        }
+        return new JsonPathAccessor(null, stripLeadingSlash(expression).split(STEP_SEPARATOR));
+    }
+
+    /**
+     * @param expression the list field and the path of the values of its
+     * items, separated by <code>//</code>
+     * @return the accessor of the values of the list, or an accessor that
+     * never selects a node if the expression does not contain exactly one
+     * list separator
+     */
+    public static JsonPathAccessor list(String expression) {
+        if (expression == null) {
+            return MISSING;
+        }
+        String[] parts = stripLeadingSlash(expression).split(LIST_SEPARATOR);
+        if (parts.length > 2) {
+            log.error("At maximum one list indicator ({}) is supported: {}", LIST_SEPARATOR, expression);
+        }
+        if (parts.length != 2) {
+            return MISSING;
+        }
+        return new JsonPathAccessor(parts[0], parts[1].split(STEP_SEPARATOR));
+    }
+
+    /**
+     * @param source the record
+     * @return the selected node, an array of the selected values of a list,
+     * or a missing node
+     */
+    public JsonNode resolve(JsonNode source) {
+        if (steps == null) {
+            return MissingNode.getInstance();
+        }
+        if (list == null) {
+            return resolveSteps(source);
+        }
+
+        ArrayNode values = null;
+        for (JsonNode item : source.path(list)) {
+            JsonNode value = resolveSteps(item);
+            if (!value.isMissingNode()) {
+                if (values == null) {
+                    values = new ArrayNode(JsonNodeFactory.instance);
+                }
+                values.add(value);
+            }
+        }
+        return values == null ? MissingNode.getInstance() : values;
+    }
+
+    private JsonNode resolveSteps(JsonNode node) {
+        JsonNode current = node.path(steps[0]);
+        for (int i = 1; i < steps.length; i++) {
+            if (current.isArray()) {
+                current = current.path(0);
+            }
+            current = current.path(steps[i]);
+        }
+        return current;
+    }
+
+    private static String stripLeadingSlash(String expression) {
+        return expression.startsWith(STEP_SEPARATOR) ? expression.substring(1) : expression;
+    }
+
+    @Override
+    public String toString() {
+        return list == null ? Arrays.toString(steps) : list + LIST_SEPARATOR + Arrays.toString(steps);
+    }
+
+}
@@ -15,17 +15,15 @@
  */
 package org.n52.youngs.transform.impl;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
-import org.elasticsearch.common.xcontent.DeprecationHandler;
-import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.XContentBuilder;
-import org.elasticsearch.common.xcontent.XContentParser;
-import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.joda.time.DateTime;
 import org.n52.youngs.harvest.JsonNodeSourceRecord;
 import org.n52.youngs.harvest.SourceRecord;
@@ -40,8 +38,6 @@ import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.MissingNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
@@ -51,32 +47,14 @@ public class JsonToBuilderMapper implements Mapper {
     private static final Logger log = LoggerFactory.getLogger(JsonToBuilderMapper.class);
 
     private final LightweightYamlMappingConfiguration mapper;
-    private final DeprecationHandler deprecationHandler;
 
     private ObjectWriter objectWriter;
 
+    private final ContentBuilderFactory builders = new ContentBuilderFactory();
+
     public JsonToBuilderMapper(LightweightYamlMappingConfiguration mapper) {
         this.mapper = mapper;
         objectWriter = new ObjectMapper().writer();
-        this.deprecationHandler = new DeprecationHandler() {
-
-            @Override
-            public void usedDeprecatedName(String usedName, String modernName) {
-                log.info("Deprecated name: {}, modernName: {}", usedName, modernName);
-            }
-
-            @Override
-            public void usedDeprecatedField(String usedName, String replacedWith) {
-                log.info("Deprecated field: {}, replacedWith: {}", usedName, replacedWith);
-            }
-
-            @Override
-            public void deprecated(String message, Object... params) {
-                // TODO Auto-generated method stub
-
-            }
-
-        };
     }
 
     @Override
@@ -84,6 +62,26 @@ public class JsonToBuilderMapper implements Mapper {
         return this.mapper;
     }
 
+    /**
+     * @param contentType the type of the content of the records, JSON by
+     * default, SMILE or CBOR reduce the size of the bulk requests
+     * @return this mapper
+     */
+    public JsonToBuilderMapper setContentType(XContentType contentType) {
+        builders.setContentType(contentType);
+        return this;
+    }
+
+    /**
+     * @param prettyPrint true to indent the content of the records for
+     * debugging, false by default
+     * @return this mapper
+     */
+    public JsonToBuilderMapper setPrettyPrint(boolean prettyPrint) {
+        builders.setPrettyPrint(prettyPrint);
+        return this;
+    }
+
     @Override
     public SinkRecord map(SourceRecord sourceRecord) {
         Objects.nonNull(sourceRecord);
@@ -91,7 +89,6 @@ public class JsonToBuilderMapper implements Mapper {
             log.error("Record not instance of JsonNodeSourceRecord. Instead is of class: " + sourceRecord.getClass());
             return null;
         }
-        XContentParser parser;
         try {
             JsonNode metadataNode = ((JsonNodeSourceRecord) sourceRecord).getRecord();
             String id = "";
@@ -110,20 +107,81 @@ public class JsonToBuilderMapper implements Mapper {
                     log.trace("Metadata node: \n" + metadataNode);
                 }
             }
+            // the record is serialized once for the fulltext, the document is written from the tree
             addFulltext((ObjectNode) metadataNode, objectWriter.writeValueAsString(metadataNode));
-            byte[] bytes = objectWriter.writeValueAsBytes(metadataNode);
-            parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY,
-                                                            this.deprecationHandler,
-                                                            new ByteArrayInputStream(bytes));
-            XContentBuilder xContentBuilder = JsonXContent.contentBuilder()
-                                                          .copyCurrentStructure(parser);
+            XContentBuilder xContentBuilder = builders.newBuilder();
+            writeNode(metadataNode, xContentBuilder);
+            xContentBuilder.close();
+            builders.completed(xContentBuilder);
             return new BuilderRecord(id, xContentBuilder);
         } catch (IOException e) {
-            log.error("Could not create XContentBuilder from InputStream.", e);
+            log.error("Could not create XContentBuilder from record.", e);
             return null;
         }
     }
 
+    /**
+     * Writes a tree to the builder in one pass. The values are written as if
+     * the serialized tree was parsed, so decimals are written as doubles.
+     */
+    private static void writeNode(JsonNode node, XContentBuilder builder) throws IOException {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                builder.startObject();
+                Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> field = fields.next();
+                    builder.field(field.getKey());
+                    writeNode(field.getValue(), builder);
+                }
+                builder.endObject();
+                break;
+            case ARRAY:
+                builder.startArray();
+                for (JsonNode item : node) {
+                    writeNode(item, builder);
+                }
+                builder.endArray();
+                break;
+            case STRING:
+                builder.value(node.textValue());
+                break;
+            case NUMBER:
+                writeNumber(node, builder);
+                break;
+            case BOOLEAN:
+                builder.value(node.booleanValue());
+                break;
+            case NULL:
+                builder.nullValue();
+                break;
+            default:
+                // binary and POJO nodes are serialized as text
+                builder.value(node.asText());
+                break;
+        }
+    }
+
+    private static void writeNumber(JsonNode node, XContentBuilder builder) throws IOException {
+        switch (node.numberType()) {
+            case INT:
+                builder.value(node.intValue());
+                break;
+            case LONG:
+                builder.value(node.longValue());
+                break;
+            case BIG_INTEGER:
+                builder.value(node.bigIntegerValue());
+                break;
+            case FLOAT:
+                builder.value(node.floatValue());
+                break;
+            default:
+                builder.value(node.doubleValue());
+                break;
+        }
+    }
+
     private void addFulltext(ObjectNode metadataNode, String fulltext) {
         metadataNode.put(JsonConstants.FIELDNAME_FULL_TEXT, fulltext);
     }
@@ -148,57 +206,14 @@ public class JsonToBuilderMapper implements Mapper {
                 }
                 return result;
             case NODE:
-                expression = stripPreceedingSlash(expression);
-                result = resolveValue(sourceNode, expression);
-                return result;
+            case LIST:
+                return mappingEntry.getAccessor().resolve(sourceNode);
             case STRING:
                 result = new TextNode(expression);
                 return result;
-            case LIST:
-                expression = stripPreceedingSlash(expression);
-                String[] pathArrayForList = expression.split("//");
-                if (pathArrayForList.length == 2) {
-                    JsonNode arrayNode = sourceNode.path(pathArrayForList[0]);
-                    ArrayNode valuesArrayNode = new ArrayNode(JsonNodeFactory.instance);
-                    for (JsonNode itemNode : arrayNode) {
-                        JsonNode valueNode = resolveValue(itemNode, pathArrayForList[1]);
-                        if (!valueNode.isMissingNode()) {
-                            valuesArrayNode.add(valueNode);
-                        }
-                    }
-                    if (valuesArrayNode.size() > 0) {
-                        result = valuesArrayNode;
-                    }
-                }
-
-                if (pathArrayForList.length > 2) {
-                    throw new IllegalStateException("At maximum one list indicator (//) is supported: " + expression);
-                }
-                return result;
             default:
                 log.warn("Entry could not be resolved." + mappingEntry.toString());
                 return result;
         }
     }
-
-    private String stripPreceedingSlash(String expression) {
-        return expression != null
-                && expression.matches("^/{1}.*$")
-                        ? expression.substring(1, expression.length())
-                        : expression;
-    }
-
-    private JsonNode resolveValue(JsonNode sourceNode, String expression) {
-        JsonNode result;
-        String[] pathArray = expression.split("/");
-        JsonNode currentNode = sourceNode.path(pathArray[0]);
-        for (int i = 1; i < pathArray.length; i++) {
-            if (currentNode instanceof ArrayNode) {
-                currentNode = ((ArrayNode) currentNode).path(0);// TODO check if applicable
-            }
-            currentNode = currentNode.path(pathArray[i]);
-        }
-        result = currentNode;
-        return result;
-    }
 }
@@ -15,63 +15,129 @@
  */
 package org.n52.youngs.transform.impl;
 
-import java.io.ByteArrayInputStream;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import java.io.BufferedReader;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.net.URI;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.stream.Stream;
 
-import javax.xml.transform.Source;
-import javax.xml.transform.URIResolver;
 import javax.xml.transform.stream.StreamSource;
 
 import org.apache.xmlbeans.XmlException;
-import org.apache.xmlbeans.XmlObject;
+import org.n52.youngs.exception.MappingError;
+import org.n52.youngs.impl.SaxonHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import net.sf.saxon.Configuration;
-import net.sf.saxon.lib.UnparsedTextURIResolver;
 import net.sf.saxon.s9api.Processor;
 import net.sf.saxon.s9api.QName;
 import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmAtomicValue;
 import net.sf.saxon.s9api.Xslt30Transformer;
-import net.sf.saxon.s9api.XsltCompiler;
 import net.sf.saxon.s9api.XsltExecutable;
-import net.sf.saxon.trans.XPathException;
 
+/**
+ * Transforms JSON records to ISO metadata with the pn-json stylesheet. The
+ * stylesheet is compiled once and shared by all transformers, which are safe
+ * to use from several threads. The JSON of a record is passed as the
+ * parameter <code>json</code> of the stylesheet.
+ */
 public class JsonTransformer {
 
     private static final Logger log = LoggerFactory.getLogger(JsonTransformer.class);
 
-    // uses a stream to feed the JSON to the XSLT
-    // uses the Saxon API to call a named template of the stylesheet
+    private static final String STYLESHEET = "xslt/pn-json/stream.xsl";
+
+    private static final QName JSON_PARAMETER = new QName("json");
+
+    private static final QName INITIAL_TEMPLATE = new QName("http://www.w3.org/1999/XSL/Transform",
+            "initial-template");
+
+    private static final Supplier<XsltExecutable> EXECUTABLE = Suppliers.memoize(JsonTransformer::compile);
+
+    private final Processor processor;
+
+    private final XsltExecutable executable;
+
+    public JsonTransformer() {
+        this.processor = SaxonHelper.getProcessor();
+        this.executable = EXECUTABLE.get();
+    }
+
+    private static XsltExecutable compile() {
+        try (InputStream is = JsonTransformer.class.getClassLoader().getResourceAsStream(STYLESHEET)) {
+            XsltExecutable executable = SaxonHelper.getProcessor().newXsltCompiler().compile(new StreamSource(is));
+            log.debug("Compiled stylesheet {}", STYLESHEET);
+            return executable;
+        } catch (SaxonApiException | IOException e) {
+            throw new MappingError(e, "Could not compile stylesheet %s: %s", STYLESHEET, e.getMessage());
+        }
+    }
+
+    /**
+     * @param jsonImput the JSON record
+     * @return the ISO metadata document
+     * @throws SaxonApiException if the record cannot be transformed
+     * @throws XmlException never, kept for compatibility
+     */
     public String transformWithStream(String jsonImput) throws SaxonApiException, XmlException {
-        log.trace("Transform with stream: {}", jsonImput);
-        log.trace("------------------------- \n");
-        Processor processor = new Processor(false);
-
-        // configure custom resolver to load the JSON stream
-        processor.getUnderlyingConfiguration().setUnparsedTextURIResolver(new UnparsedTextURIResolver() {
-            @Override
-            public Reader resolve(URI uri, String s, Configuration configuration) throws XPathException {
-                // feed your stream to the transformation
-                return new InputStreamReader(new ByteArrayInputStream(jsonImput.getBytes()),
-                        StandardCharsets.UTF_8);
-            }
-        });
+        return transform(jsonImput);
+    }
+
+    /**
+     * @param json the JSON record
+     * @return the ISO metadata document
+     * @throws SaxonApiException if the record cannot be transformed
+     */
+    public String transform(String json) throws SaxonApiException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        transform(json, output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
 
-        XsltCompiler compiler = processor.newXsltCompiler();
-        XsltExecutable stylesheet = compiler.compile(new StreamSource(getClass().getClassLoader().getResourceAsStream("xslt/pn-json/stream.xsl")));
-        Xslt30Transformer transformer = stylesheet.load30();
+    /**
+     * @param json the JSON record
+     * @param output the stream the ISO metadata document is written to
+     * @throws SaxonApiException if the record cannot be transformed
+     */
+    public void transform(String json, OutputStream output) throws SaxonApiException {
+        log.trace("Transform JSON: {}", json);
+        // the global variables of a transformer are evaluated once, so every record needs its own
+        Xslt30Transformer transformer = executable.load30();
+        transformer.setStylesheetParameters(Collections.singletonMap(JSON_PARAMETER, new XdmAtomicValue(json)));
+        transformer.callTemplate(INITIAL_TEMPLATE, processor.newSerializer(output));
+    }
 
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    /**
+     * Transforms the records lazily as the returned stream is consumed.
+     *
+     * @param records the JSON records
+     * @return the ISO metadata documents
+     * @throws MappingError if a record cannot be transformed
+     */
+    public Stream<String> transform(Stream<String> records) {
+        return records.map(json -> {
+            try {
+                return transform(json);
+            } catch (SaxonApiException e) {
+                throw new MappingError(e, "Could not transform record %s: %s", json, e.getMessage());
+            }
+        });
+    }
 
-        // call named template "xsl:initial-template" in the xsl file
-        transformer.callTemplate(new QName("http://www.w3.org/1999/XSL/Transform", "initial-template"),
-                processor.newSerializer(byteArrayOutputStream));
-        return byteArrayOutputStream.toString();
+    /**
+     * @param ndjson newline delimited JSON, one record per line, empty lines
+     * are skipped
+     * @return the ISO metadata documents
+     * @throws MappingError if a record cannot be transformed
+     */
+    public Stream<String> transformLines(BufferedReader ndjson) {
+        return transform(ndjson.lines().filter(line -> !line.trim().isEmpty()));
     }
 
 }
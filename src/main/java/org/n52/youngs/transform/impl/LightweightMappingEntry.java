@@ -30,6 +30,8 @@ public class LightweightMappingEntry implements MappingEntry {
 
     private MappingType type;
 
+    private JsonPathAccessor accessor;
+
     public LightweightMappingEntry(String fieldName, String expression) {
         this.fieldName = fieldName;
         this.expression = expression;
@@ -47,6 +49,17 @@ public class LightweightMappingEntry implements MappingEntry {
         return this.type;
     }
 
+    public void setAccessor(JsonPathAccessor accessor) {
+        this.accessor = accessor;
+    }
+
+    /**
+     * @return the compiled expression of a node or list entry
+     */
+    public JsonPathAccessor getAccessor() {
+        return this.accessor;
+    }
+
     @Override
     public XPathExpression getXPath() {
         // TODO Auto-generated method stub
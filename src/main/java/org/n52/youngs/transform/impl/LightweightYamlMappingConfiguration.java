@@ -103,7 +103,13 @@ public class LightweightYamlMappingConfiguration implements MappingConfiguration
         LightweightMappingEntry lightweightYamlEntry = new LightweightMappingEntry(fieldName, expression);
         YamlNode propertiesNode = yamlNode.get(PROPERTIES_KEY);
         YamlNode typeNode = propertiesNode.get(TYPE_KEY);
-        lightweightYamlEntry.setType(MappingType.fromString(typeNode.asTextValue()));
+        MappingType mappingType = MappingType.fromString(typeNode.asTextValue());
+        lightweightYamlEntry.setType(mappingType);
+        if (mappingType == MappingType.NODE) {
+            lightweightYamlEntry.setAccessor(JsonPathAccessor.node(expression));
+        } else if (mappingType == MappingType.LIST) {
+            lightweightYamlEntry.setAccessor(JsonPathAccessor.list(expression));
+        }
         entries.put(fieldName, lightweightYamlEntry);
     }
 
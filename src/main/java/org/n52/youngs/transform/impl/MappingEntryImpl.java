@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.regex.Pattern;
 import javax.xml.xpath.XPathExpression;
 import org.n52.youngs.transform.MappingEntry;
 
@@ -43,6 +44,14 @@ public class MappingEntryImpl implements MappingEntry {
 
     private Optional<String> coordinatesType = Optional.empty();
 
+    private XPathExpression coordinatesList;
+
+    private boolean coordinatesLatLon = true;
+
+    private double coordinatesTolerance = 0;
+
+    private int coordinatesPrecision = -1;
+
     private Optional<Boolean> raw = Optional.empty();
 
     private Optional<Map<String, String>> replacements = Optional.empty();
@@ -51,6 +60,10 @@ public class MappingEntryImpl implements MappingEntry {
 
     private Optional<String> split = Optional.empty();
 
+    private Replacements replacementFunction;
+
+    private Pattern splitPattern;
+
     private final List<MappingEntry> children;
 
     private final String fieldName;
@@ -164,6 +177,46 @@ public class MappingEntryImpl implements MappingEntry {
         return this;
     }
 
+    @Override
+    public XPathExpression getCoordinatesListXPath() {
+        return coordinatesList;
+    }
+
+    public MappingEntryImpl setCoordinatesListXPath(XPathExpression coordinatesList) {
+        this.coordinatesList = coordinatesList;
+        return this;
+    }
+
+    @Override
+    public boolean isCoordinatesLatLon() {
+        return coordinatesLatLon;
+    }
+
+    public MappingEntryImpl setCoordinatesLatLon(boolean latLon) {
+        this.coordinatesLatLon = latLon;
+        return this;
+    }
+
+    @Override
+    public double getCoordinatesTolerance() {
+        return coordinatesTolerance;
+    }
+
+    public MappingEntryImpl setCoordinatesTolerance(double tolerance) {
+        this.coordinatesTolerance = tolerance;
+        return this;
+    }
+
+    @Override
+    public int getCoordinatesPrecision() {
+        return coordinatesPrecision;
+    }
+
+    public MappingEntryImpl setCoordinatesPrecision(int precision) {
+        this.coordinatesPrecision = precision;
+        return this;
+    }
+
     @Override
     public boolean isRawXml() {
         return raw.isPresent() && raw.get();
@@ -194,8 +247,17 @@ public class MappingEntryImpl implements MappingEntry {
         return replacements.get();
     }
 
+    /**
+     * @return the replacements compiled when they were set
+     */
+    @Override
+    public Replacements getReplacementFunction() {
+        return replacementFunction;
+    }
+
     public MappingEntryImpl setReplacements(Map<String, String> replacements) {
         this.replacements = Optional.of(replacements);
+        this.replacementFunction = Replacements.compile(replacements);
         return this;
     }
 
@@ -223,8 +285,17 @@ public class MappingEntryImpl implements MappingEntry {
         return split.get();
     }
 
+    /**
+     * @return the split expression compiled when it was set
+     */
+    @Override
+    public Pattern getSplitPattern() {
+        return splitPattern;
+    }
+
     public MappingEntryImpl setSplit(String split) {
         this.split = Optional.of(split);
+        this.splitPattern = Pattern.compile(split);
         return this;
     }
 
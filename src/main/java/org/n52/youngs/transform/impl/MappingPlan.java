@@ -0,0 +1,273 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import javax.xml.transform.Transformer;
+import org.n52.youngs.transform.MappingConfiguration;
+import org.n52.youngs.transform.MappingEntry;
+import org.n52.youngs.transform.impl.EntryMapper.EvalResult;
+
+/**
+ * The entries of a mapping configuration sorted into the steps of
+ * {@link CswToBuilderMapper} once, so that mapping a record does not have to
+ * filter the entries again. The plan is immutable except for the scratch
+ * state, which is kept per thread.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+final class MappingPlan {
+
+    private final MappingEntry identifier;
+
+    private final MappingEntry[] fieldEntries;
+
+    private final MappingEntry[] spatialEntries;
+
+    private final MappingEntry[] rawEntries;
+
+    private final Suggest suggest;
+
+    private final boolean tinyTreeSupported;
+
+    private final EntryResultTypes resultTypes = new EntryResultTypes();
+
+    private final ThreadLocal<Scratch> scratch;
+
+    MappingPlan(MappingConfiguration configuration, Supplier<Optional<Transformer>> stripspaceTransformer,
+            Supplier<Transformer> defaultTransformer) {
+        Collection<MappingEntry> entries = configuration.getEntries();
+        List<MappingEntry> fields = new ArrayList<>(entries.size());
+        List<MappingEntry> spatial = new ArrayList<>();
+        List<MappingEntry> raw = new ArrayList<>();
+        MappingEntry id = null;
+
+        for (MappingEntry entry : entries) {
+            if (id == null && entry.isIdentifier()) {
+                id = entry;
+            }
+            if (entry.isRawXml()) {
+                raw.add(entry);
+            } else if (entry.hasCoordinates()) {
+                spatial.add(entry);
+            } else {
+                fields.add(entry);
+            }
+        }
+
+        this.identifier = id;
+        this.fieldEntries = fields.toArray(new MappingEntry[fields.size()]);
+        this.spatialEntries = spatial.toArray(new MappingEntry[spatial.size()]);
+        this.rawEntries = raw.toArray(new MappingEntry[raw.size()]);
+        this.suggest = configuration.hasSuggest() ? new Suggest(configuration.getSuggest()) : null;
+        this.tinyTreeSupported = configuration.isTinyTreeSupported();
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(
+                new EntryMapper(stripspaceTransformer.get(), defaultTransformer.get(), this.resultTypes),
+                this.fieldEntries.length,
+                this.suggest == null ? 0 : this.suggest.fields.length));
+    }
+
+    /**
+     * @return the first identifier entry, or null if the mapping has none
+     */
+    MappingEntry getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * @return the entries that are neither spatial nor raw XML, in the order of the configuration
+     */
+    MappingEntry[] getFieldEntries() {
+        return fieldEntries;
+    }
+
+    MappingEntry[] getSpatialEntries() {
+        return spatialEntries;
+    }
+
+    MappingEntry[] getRawEntries() {
+        return rawEntries;
+    }
+
+    boolean hasSuggest() {
+        return suggest != null;
+    }
+
+    Suggest getSuggest() {
+        return suggest;
+    }
+
+    /**
+     * @return true if the entries can be evaluated on Saxon trees directly
+     */
+    boolean isTinyTreeSupported() {
+        return tinyTreeSupported;
+    }
+
+    /**
+     * @return the number of entries per field that were evaluated as a string
+     * after failing to evaluate as a node set
+     */
+    Map<String, Number> getStatistics() {
+        return resultTypes.getStatistics();
+    }
+
+    /**
+     * @return the cleared scratch state of the current thread
+     */
+    Scratch scratch() {
+        Scratch s = scratch.get();
+        s.clear();
+        return s;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("identifier", identifier == null ? null : identifier.getFieldName())
+                .add("fields", fieldEntries.length)
+                .add("spatial", spatialEntries.length)
+                .add("raw", rawEntries.length)
+                .add("suggest", suggest)
+                .add("tinyTree", tinyTreeSupported)
+                .omitNullValues()
+                .toString();
+    }
+
+    /**
+     * The objects a thread reuses for every record it maps.
+     */
+    static final class Scratch {
+
+        final EntryMapper entryMapper;
+
+        final List<EvalResult> mappedEntries;
+
+        final Object[] suggestValues;
+
+        private Scratch(EntryMapper entryMapper, int fields, int suggestFields) {
+            this.entryMapper = entryMapper;
+            this.mappedEntries = new ArrayList<>(fields);
+            this.suggestValues = new Object[suggestFields];
+        }
+
+        private void clear() {
+            mappedEntries.clear();
+            Arrays.fill(suggestValues, null);
+        }
+
+    }
+
+    /**
+     * The suggest settings of the mapping, read once.
+     */
+    static final class Suggest {
+
+        final String[] fields;
+
+        final String split;
+
+        final List<String> inputExcludes;
+
+        final List<String> inputRemoves;
+
+        final Pattern splitPattern;
+
+        final Pattern[] inputExcludePatterns;
+
+        final Replacements inputRemover;
+
+        final Integer weight;
+
+        private final Map<String, Integer> fieldIndex;
+
+        @SuppressWarnings("unchecked")
+        private Suggest(Map<String, Object> suggestDef) {
+            Map<String, Object> suggest = (Map<String, Object>) suggestDef.get("mappingConfiguration");
+            this.split = extractValue(suggest, "split", " ");
+            this.inputExcludes = extractValue(suggest, "input_exlucdes", Collections.emptyList());
+            this.inputRemoves = extractValue(suggest, "input_remove", Collections.emptyList());
+            this.splitPattern = Pattern.compile(split);
+            this.inputExcludePatterns = inputExcludes.stream()
+                    .map(Pattern::compile)
+                    .toArray(Pattern[]::new);
+            this.inputRemover = Replacements.compile(inputRemoves.stream()
+                    .map(remove -> new AbstractMap.SimpleImmutableEntry<>(remove, ""))
+                    .collect(Collectors.toList()));
+            this.weight = extractValue(suggest, "weight", 1);
+
+            List<String> entries = extractValue(suggest, "entries", Collections.emptyList());
+            this.fields = entries.toArray(new String[entries.size()]);
+            this.fieldIndex = new HashMap<>();
+            for (int i = 0; i < fields.length; i++) {
+                fieldIndex.putIfAbsent(fields[i], i);
+            }
+        }
+
+        /**
+         * @return true if the input is equal to an exclude, ignoring case, or
+         * matches it as a pattern
+         */
+        boolean isExcluded(String input) {
+            for (int i = 0; i < inputExcludePatterns.length; i++) {
+                if (input.equalsIgnoreCase(inputExcludes.get(i)) || inputExcludePatterns[i].matcher(input).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return the position of the field in the suggest entries, or -1 if it is not used for suggestions
+         */
+        int indexOf(String field) {
+            Integer index = fieldIndex.get(field);
+            return index == null ? -1 : index;
+        }
+
+        /**
+         * @return the position of the first suggest entry with the same field
+         */
+        int firstIndexOf(int position) {
+            return fieldIndex.get(fields[position]);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> V extractValue(Map<String, Object> map, String key, V defaultValue) {
+            V value = (V) map.get(key);
+            return value == null ? defaultValue : value;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(fields);
+        }
+
+    }
+
+}
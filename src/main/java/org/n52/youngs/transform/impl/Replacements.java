@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Literal replacement rules, applied one after the other like
+ * {@link String#replace(CharSequence, CharSequence)}. If the result does not
+ * depend on the order of the rules, they are compiled to an Aho-Corasick
+ * automaton of the replaced strings and applied in one pass over the value.
+ *
+ * The order does not matter if no two replaced strings overlap or contain
+ * each other, and no replacement can form or complete a replaced string of a
+ * later rule: it must not overlap or contain such a string, and an empty
+ * replacement, which joins the text around it, is only allowed before rules
+ * that replace single characters.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public final class Replacements implements UnaryOperator<String> {
+
+    private final String[] targets;
+
+    private final String[] replacements;
+
+    private final Automaton automaton;
+
+    private Replacements(String[] targets, String[] replacements) {
+        this.targets = targets;
+        this.replacements = replacements;
+        this.automaton = isOrderIndependent(targets, replacements) ? new Automaton(targets) : null;
+    }
+
+    /**
+     * @param rules the strings to replace and their replacements, in the order
+     * they are applied
+     * @return the compiled rules
+     */
+    public static Replacements compile(Collection<Map.Entry<String, String>> rules) {
+        String[] targets = new String[rules.size()];
+        String[] replacements = new String[rules.size()];
+        int i = 0;
+        for (Map.Entry<String, String> rule : rules) {
+            targets[i] = rule.getKey();
+            replacements[i] = rule.getValue();
+            i++;
+        }
+        return new Replacements(targets, replacements);
+    }
+
+    /**
+     * @param rules the strings to replace and their replacements, in the
+     * iteration order of the map
+     * @return the compiled rules
+     */
+    public static Replacements compile(Map<String, String> rules) {
+        return compile(rules.entrySet());
+    }
+
+    /**
+     * @return true if the rules are applied in one pass
+     */
+    public boolean isSinglePass() {
+        return automaton != null;
+    }
+
+    @Override
+    public String apply(String value) {
+        if (automaton != null) {
+            return automaton.replace(value, replacements);
+        }
+        String out = value;
+        for (int i = 0; i < targets.length; i++) {
+            out = out.replace(targets[i], replacements[i]);
+        }
+        return out;
+    }
+
+    private static boolean isOrderIndependent(String[] targets, String[] replacements) {
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] == null || targets[i].isEmpty() || replacements[i] == null) {
+                return false;
+            }
+        }
+        for (int i = 0; i < targets.length; i++) {
+            for (int j = i + 1; j < targets.length; j++) {
+                if (overlap(targets[i], targets[j])) {
+                    return false;
+                }
+                if (replacements[i].isEmpty() ? targets[j].length() > 1 : overlap(replacements[i], targets[j])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if one string contains the other, or the end of one
+     * string is the start of the other
+     */
+    static boolean overlap(String a, String b) {
+        if (a.contains(b) || b.contains(a)) {
+            return true;
+        }
+        int max = Math.min(a.length(), b.length());
+        for (int length = 1; length < max; length++) {
+            if (a.regionMatches(a.length() - length, b, 0, length)
+                    || b.regionMatches(b.length() - length, a, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("targets", Arrays.toString(targets))
+                .add("singlePass", isSinglePass())
+                .toString();
+    }
+
+    /**
+     * The trie of the replaced strings with failure links. No replaced string
+     * is a suffix of another one, so a state matches at most the string that
+     * ends in it, and the matches do not overlap except for matches of the
+     * same string.
+     */
+    private static final class Automaton {
+
+        private final char[][] labels;
+
+        private final int[][] children;
+
+        private final int[] failure;
+
+        private final int[] match;
+
+        private final int[] lengths;
+
+        Automaton(String[] targets) {
+            List<StringBuilder> stateLabels = new ArrayList<>();
+            List<List<Integer>> stateChildren = new ArrayList<>();
+            List<Integer> stateMatch = new ArrayList<>();
+            stateLabels.add(new StringBuilder());
+            stateChildren.add(new ArrayList<>());
+            stateMatch.add(-1);
+
+            lengths = new int[targets.length];
+            for (int t = 0; t < targets.length; t++) {
+                String target = targets[t];
+                lengths[t] = target.length();
+                int state = 0;
+                for (int i = 0; i < target.length(); i++) {
+                    int index = stateLabels.get(state).indexOf(String.valueOf(target.charAt(i)));
+                    if (index < 0) {
+                        stateLabels.get(state).append(target.charAt(i));
+                        stateChildren.get(state).add(stateLabels.size());
+                        stateLabels.add(new StringBuilder());
+                        stateChildren.add(new ArrayList<>());
+                        stateMatch.add(-1);
+                        state = stateLabels.size() - 1;
+                    } else {
+                        state = stateChildren.get(state).get(index);
+                    }
+                }
+                stateMatch.set(state, t);
+            }
+
+            int states = stateLabels.size();
+            labels = new char[states][];
+            children = new int[states][];
+            match = new int[states];
+            for (int s = 0; s < states; s++) {
+                labels[s] = stateLabels.get(s).toString().toCharArray();
+                children[s] = stateChildren.get(s).stream().mapToInt(Integer::intValue).toArray();
+                match[s] = stateMatch.get(s);
+            }
+
+            // the failure links, breadth first so that the links of shorter prefixes are known
+            failure = new int[states];
+            int[] queue = new int[states];
+            int head = 0;
+            int tail = 0;
+            for (int child : children[0]) {
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (int i = 0; i < labels[state].length; i++) {
+                    int child = children[state][i];
+                    failure[child] = next(failure[state], labels[state][i]);
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        private int next(int state, char c) {
+            int s = state;
+            while (true) {
+                char[] l = labels[s];
+                for (int i = 0; i < l.length; i++) {
+                    if (l[i] == c) {
+                        return children[s][i];
+                    }
+                }
+                if (s == 0) {
+                    return 0;
+                }
+                s = failure[s];
+            }
+        }
+
+        String replace(String value, String[] replacements) {
+            StringBuilder out = null;
+            int copied = 0;
+            int state = 0;
+            for (int i = 0; i < value.length(); i++) {
+                state = next(state, value.charAt(i));
+                int t = match[state];
+                if (t >= 0) {
+                    int start = i + 1 - lengths[t];
+                    // like String.replace, a match overlapping the previous one is skipped
+                    if (start >= copied) {
+                        if (out == null) {
+                            out = new StringBuilder(value.length());
+                        }
+                        out.append(value, copied, start).append(replacements[t]);
+                        copied = i + 1;
+                    }
+                }
+            }
+            if (out == null) {
+                return value;
+            }
+            return out.append(value, copied, value.length()).toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
+import net.sf.saxon.om.NodeInfo;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.transform.Mapper;
+import org.n52.youngs.transform.MappingConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * A mapper that maps each record with one of several mappers, so that one
+ * harvest can load a catalog with records of different types, e.g.
+ * <code>gmd:MD_Metadata</code> and <code>csw:Record</code>.
+ *
+ * The records are dispatched on the name of their root element with a table
+ * of the root elements of the mappings, see
+ * {@link MappingConfiguration#getRootElements()}. The applicability
+ * expressions of the mappings are only evaluated if several mappings declare
+ * the root element of a record, or if no mapping declares it. An
+ * applicability expression can also accept records with another root
+ * element, e.g. one that wraps the declared root element, so if none of the
+ * mappings that declare the root element applies, all other mappings are
+ * tested in the given order. A record is thus mapped with a mapping that is
+ * applicable to it whenever there is one. Records that are not XML are
+ * mapped by the first mapping without root elements.
+ *
+ * The sink is prepared with the mapping of the first mapper, so all mappings
+ * must store their records in the same index.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class RoutingMapper implements Mapper {
+
+    private static final Logger log = LoggerFactory.getLogger(RoutingMapper.class);
+
+    private final List<Mapper> mappers;
+
+    private final List<String> names;
+
+    private final Map<QName, List<Integer>> byRootElement = new HashMap<>();
+
+    private final List<Integer> withoutRootElements = new ArrayList<>();
+
+    private final LongAdder[] counts;
+
+    private final LongAdder unmatched = new LongAdder();
+
+    private final LongAdder applicabilityTests = new LongAdder();
+
+    public RoutingMapper(Mapper... mappers) {
+        this(Arrays.asList(mappers));
+    }
+
+    /**
+     * @param mappers the mappers in the order in which their mappings are
+     * tested for records that several mappings apply to
+     */
+    public RoutingMapper(List<Mapper> mappers) {
+        if (mappers.isEmpty()) {
+            throw new IllegalArgumentException("At least one mapper is required");
+        }
+        this.mappers = new ArrayList<>(mappers);
+        this.names = new ArrayList<>(mappers.size());
+        this.counts = new LongAdder[mappers.size()];
+
+        Set<String> usedNames = new HashSet<>();
+        for (int i = 0; i < mappers.size(); i++) {
+            MappingConfiguration mapping = mappers.get(i).getMapper();
+            String name = Strings.isNullOrEmpty(mapping.getName()) ? "mapping" : mapping.getName();
+            names.add(usedNames.add(name) ? name : name + "-" + i);
+            counts[i] = new LongAdder();
+
+            Set<QName> rootElements = mapping.getRootElements();
+            if (rootElements.isEmpty()) {
+                withoutRootElements.add(i);
+            }
+            for (QName rootElement : rootElements) {
+                // QName equality ignores the prefix
+                byRootElement.computeIfAbsent(rootElement, k -> new ArrayList<>()).add(i);
+            }
+        }
+        log.info("Routing records by root element {} and to {} mappings without root elements",
+                byRootElement.entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey,
+                                e -> e.getValue().stream().map(names::get).collect(Collectors.toList()))),
+                withoutRootElements.size());
+    }
+
+    public List<Mapper> getMappers() {
+        return Collections.unmodifiableList(mappers);
+    }
+
+    /**
+     * @return the mapping of the first mapper
+     */
+    @Override
+    public MappingConfiguration getMapper() {
+        return mappers.get(0).getMapper();
+    }
+
+    @Override
+    public SinkRecord map(SourceRecord record) {
+        Objects.requireNonNull(record);
+        int index = route(record);
+        if (index < 0) {
+            log.debug("No mapping is applicable to record {}", record);
+            unmatched.increment();
+            return null;
+        }
+
+        counts[index].increment();
+        log.trace("Mapping record {} with {}", record, names.get(index));
+        return mappers.get(index).map(record);
+    }
+
+    /**
+     * @return the index of the mapper for the record, or -1 if no mapping is
+     * applicable
+     */
+    private int route(SourceRecord record) {
+        if (!(record instanceof NodeSourceRecord)) {
+            return withoutRootElements.isEmpty() ? -1 : withoutRootElements.get(0);
+        }
+
+        List<Integer> candidates = byRootElement.getOrDefault(rootElement((NodeSourceRecord) record),
+                Collections.emptyList());
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        for (Integer candidate : candidates) {
+            if (isApplicable(candidate, (NodeSourceRecord) record)) {
+                return candidate;
+            }
+        }
+        for (int i = 0; i < mappers.size(); i++) {
+            if (!candidates.contains(i) && isApplicable(i, (NodeSourceRecord) record)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Trees are evaluated natively if the mapping supports them, so that no
+     * DOM copy of the record is built.
+     */
+    private boolean isApplicable(int index, NodeSourceRecord record) {
+        applicabilityTests.increment();
+        MappingConfiguration mapping = mappers.get(index).getMapper();
+        if (record instanceof TinyTreeSourceRecord && mapping.isTinyTreeSupported()) {
+            return mapping.isApplicableToTree(((TinyTreeSourceRecord) record).getTree());
+        }
+        Node node = record.getRecord();
+        Document document = node instanceof Document ? (Document) node : node.getOwnerDocument();
+        return mapping.isApplicable(document);
+    }
+
+    private static QName rootElement(NodeSourceRecord record) {
+        if (record instanceof TinyTreeSourceRecord) {
+            NodeInfo tree = ((TinyTreeSourceRecord) record).getTree();
+            return new QName(tree.getURI(), tree.getLocalPart());
+        }
+
+        Node node = record.getRecord();
+        if (node instanceof Document) {
+            node = ((Document) node).getDocumentElement();
+        }
+        if (node == null) {
+            return null;
+        }
+        return new QName(Strings.nullToEmpty(node.getNamespaceURI()),
+                node.getLocalName() == null ? node.getNodeName() : node.getLocalName());
+    }
+
+    /**
+     * @return true if all mappers are thread-safe
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return mappers.stream().allMatch(Mapper::isThreadSafe);
+    }
+
+    /**
+     * @return the number of records mapped with each mapping, of records no
+     * mapping is applicable to, and of evaluated applicability expressions,
+     * followed by the statistics of the mappers prefixed with the name of
+     * their mapping
+     */
+    @Override
+    public Map<String, Number> getStatistics() {
+        Map<String, Number> statistics = new LinkedHashMap<>();
+        for (int i = 0; i < mappers.size(); i++) {
+            statistics.put("routing." + names.get(i) + ".records", counts[i].sum());
+        }
+        statistics.put("routing.unmatched", unmatched.sum());
+        statistics.put("routing.applicability_tests", applicabilityTests.sum());
+        for (int i = 0; i < mappers.size(); i++) {
+            String prefix = names.get(i) + ".";
+            mappers.get(i).getStatistics().forEach((key, value) -> statistics.put(prefix + key, value));
+        }
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("mappings", names)
+                .add("rootElements", byRootElement.keySet())
+                .toString();
+    }
+
+}
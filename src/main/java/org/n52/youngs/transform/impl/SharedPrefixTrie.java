@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.MoreObjects;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import net.sf.saxon.s9api.XPathCompiler;
+import org.n52.youngs.impl.SharedPrefixXPathExpression;
+import org.n52.youngs.impl.SharedPrefixXPathExpression.Prefix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A trie of the steps of the absolute path expressions of a mapping. Every
+ * prefix that is shared by several paths, and by more paths than the next
+ * shorter shared prefix, becomes a node of the trie that is evaluated once
+ * per record. The paths are then evaluated relative to the nodes selected by
+ * their longest shared prefix, and the prefixes relative to their parents.
+ *
+ * Only expressions that consist of steps with name or kind tests and
+ * predicates are split, all others are compiled as they are. The first step
+ * may be a parenthesized union of such paths, as which
+ * {@link DescendantAxisRewriter} rewrites descendant steps of root children,
+ * and is then a prefix on its own.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+final class SharedPrefixTrie {
+
+    private static final Logger log = LoggerFactory.getLogger(SharedPrefixTrie.class);
+
+    private static final Pattern STEP = Pattern.compile(
+            "(@|[a-z-]+::)?(\\*|\\.|\\.\\.|[\\w.-]+(:[\\w.-]+|:\\*)?(\\(\\))?)(\\[.*\\])*");
+
+    private static final Joiner STEP_JOINER = Joiner.on('/');
+
+    private final XPathCompiler compiler;
+
+    private final Map<String, Integer> counts = new HashMap<>();
+
+    private final Map<String, Prefix> prefixes = new HashMap<>();
+
+    /**
+     * @param expressions the expressions of the mapping
+     * @param compiler the compiler with the namespaces of the mapping
+     * declared, the variable of the prefixes is declared on it
+     */
+    SharedPrefixTrie(Collection<String> expressions, XPathCompiler compiler) {
+        this.compiler = compiler;
+        for (String expression : new LinkedHashSet<>(expressions)) {
+            List<String> steps = steps(expression);
+            if (steps == null) {
+                continue;
+            }
+            for (int length = shortestPrefix(steps); length < steps.size(); length++) {
+                if (!steps.get(length - 1).isEmpty()) {
+                    counts.merge(STEP_JOINER.join(steps.subList(0, length)), 1, Integer::sum);
+                }
+            }
+        }
+        counts.values().removeIf(count -> count < 2);
+    }
+
+    /**
+     * @return the number of prefixes shared by several expressions
+     */
+    int size() {
+        return counts.size();
+    }
+
+    /**
+     * @param expression the expression
+     * @param completePath the expression compiled on its own
+     * @return the expression evaluated relative to its longest shared prefix,
+     * or empty if it does not share a prefix with other expressions
+     * @throws XPathExpressionException if the rest of the path or a prefix
+     * cannot be compiled
+     */
+    Optional<XPathExpression> compile(String expression, XPathExpression completePath)
+            throws XPathExpressionException {
+        List<String> steps = steps(expression);
+        if (steps == null) {
+            return Optional.empty();
+        }
+        int length = longestSharedPrefix(steps, steps.size(), 1);
+        if (length < 0) {
+            return Optional.empty();
+        }
+
+        Prefix prefix = prefix(steps, length);
+        String relativePath = STEP_JOINER.join(steps.subList(length, steps.size()));
+        log.trace("Evaluating '{}' relative to shared prefix '{}'", expression, prefix.getPath());
+        return Optional.of(new SharedPrefixXPathExpression(expression, prefix, relativePath, compiler,
+                completePath));
+    }
+
+    private Prefix prefix(List<String> steps, int length) throws XPathExpressionException {
+        String path = STEP_JOINER.join(steps.subList(0, length));
+        Prefix prefix = prefixes.get(path);
+        if (prefix == null) {
+            int parentLength = longestSharedPrefix(steps, length, counts.get(path));
+            if (parentLength < 0) {
+                prefix = new Prefix(path, compiler);
+            } else {
+                prefix = new Prefix(path, prefix(steps, parentLength),
+                        STEP_JOINER.join(steps.subList(parentLength, length)), compiler);
+            }
+            prefixes.put(path, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * @return the length of the longest shared prefix shorter than the given
+     * length that is shared by more expressions than given, or -1
+     */
+    private int longestSharedPrefix(List<String> steps, int shorterThan, int sharedByMoreThan) {
+        for (int length = shorterThan - 1; length >= shortestPrefix(steps); length--) {
+            Integer count = counts.get(STEP_JOINER.join(steps.subList(0, length)));
+            if (count != null && count > sharedByMoreThan) {
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of steps of the shortest prefix, which is the root
+     * node and the first step of an absolute path, or the union of paths
+     */
+    private static int shortestPrefix(List<String> steps) {
+        return steps.get(0).isEmpty() ? 2 : 1;
+    }
+
+    /**
+     * @return the steps of an absolute path, the first step is empty or a
+     * parenthesized union of absolute paths, and descendant steps are empty
+     * steps, or null if the expression is not such a path
+     */
+    static List<String> steps(String expression) {
+        if (expression == null) {
+            return null;
+        }
+        if (!expression.startsWith("(")) {
+            return pathSteps(expression);
+        }
+
+        int end = groupEnd(expression);
+        if (end < 0 || end == expression.length() || expression.charAt(end) != '/') {
+            return null;
+        }
+        List<String> branches = branches(expression.substring(1, end - 1));
+        if (branches == null || branches.stream().anyMatch(b -> pathSteps(b) == null)) {
+            return null;
+        }
+        List<String> steps = pathSteps(expression.substring(end));
+        if (steps != null) {
+            steps.set(0, expression.substring(0, end));
+        }
+        return steps;
+    }
+
+    /**
+     * @return the end of the parenthesized group at the start of the
+     * expression, or -1 if it is not closed
+     */
+    private static int groupEnd(String expression) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i + 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the trimmed branches of a union, or null if a branch is empty
+     */
+    private static List<String> branches(String union) {
+        List<String> branches = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i <= union.length(); i++) {
+            char c = i < union.length() ? union.charAt(i) : '|';
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                String branch = union.substring(start, i).trim();
+                if (branch.isEmpty()) {
+                    return null;
+                }
+                branches.add(branch);
+                start = i + 1;
+            }
+        }
+        return branches;
+    }
+
+    private static List<String> pathSteps(String expression) {
+        if (!expression.startsWith("/")) {
+            return null;
+        }
+
+        List<String> steps = new ArrayList<>();
+        int depth = 0;
+        char quote = 0;
+        int start = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[' || c == '(') {
+                depth++;
+            } else if (c == ']' || c == ')') {
+                depth--;
+            } else if (c == '/' && depth == 0) {
+                steps.add(expression.substring(start, i));
+                start = i + 1;
+            }
+        }
+        steps.add(expression.substring(start));
+
+        if (quote != 0 || depth != 0 || steps.get(steps.size() - 1).isEmpty()) {
+            return null;
+        }
+        for (String step : steps.subList(1, steps.size())) {
+            if (!step.isEmpty() && !STEP.matcher(step).matches()) {
+                return null;
+            }
+        }
+        return steps;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("shared", counts.size())
+                .add("compiled", prefixes.keySet())
+                .toString();
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The estimated per-record cost of the expressions of a mapping before and
+ * after rewriting descendant-axis steps, see
+ * {@link YamlMappingConfiguration#getXPathCostReport()}. The cost is given in
+ * nodes visited, a descendant step is estimated to visit
+ * {@value DescendantAxisRewriter#RECORD_NODES} nodes and a child step
+ * {@value DescendantAxisRewriter#CHILD_NODES} nodes.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class XPathCostReport {
+
+    private final List<FieldCost> fields;
+
+    public XPathCostReport(List<FieldCost> fields) {
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    public List<FieldCost> getFields() {
+        return fields;
+    }
+
+    public int getCostBefore() {
+        return fields.stream().mapToInt(FieldCost::getCostBefore).sum();
+    }
+
+    public int getCostAfter() {
+        return fields.stream().mapToInt(FieldCost::getCostAfter).sum();
+    }
+
+    /**
+     * @return the fields with expressions that were rewritten
+     */
+    public List<String> getRewrittenFields() {
+        return fields.stream()
+                .filter(FieldCost::isRewritten)
+                .map(FieldCost::getField)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the fields with expressions that still contain descendant-axis
+     * steps
+     */
+    public List<String> getDescendantFields() {
+        return fields.stream()
+                .filter(f -> f.getDescendantSteps() > 0)
+                .map(FieldCost::getField)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return one line per field with the estimated costs and the rewritten
+     * expression, and the total costs
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        for (FieldCost field : fields) {
+            sb.append(String.format("%-30s %6d -> %6d  %s%n", field.getField(), field.getCostBefore(),
+                    field.getCostAfter(), field.getExpression()));
+        }
+        sb.append(String.format("%-30s %6d -> %6d", "total", getCostBefore(), getCostAfter()));
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("fields", fields.size())
+                .add("rewritten", getRewrittenFields().size())
+                .add("costBefore", getCostBefore())
+                .add("costAfter", getCostAfter())
+                .toString();
+    }
+
+    /**
+     * The analysis of the expression of one field.
+     */
+    public static class FieldCost {
+
+        private final String field;
+
+        private final String original;
+
+        private final String expression;
+
+        private final int descendantSteps;
+
+        private final int costBefore;
+
+        private final int costAfter;
+
+        public FieldCost(String field, String original, String expression, int descendantSteps, int costBefore,
+                int costAfter) {
+            this.field = field;
+            this.original = original;
+            this.expression = expression;
+            this.descendantSteps = descendantSteps;
+            this.costBefore = costBefore;
+            this.costAfter = costAfter;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        /**
+         * @return the expression of the mapping file
+         */
+        public String getOriginal() {
+            return original;
+        }
+
+        /**
+         * @return the expression that is evaluated
+         */
+        public String getExpression() {
+            return expression;
+        }
+
+        public boolean isRewritten() {
+            return !original.equals(expression);
+        }
+
+        /**
+         * @return the number of descendant-axis steps left in the expression
+         */
+        public int getDescendantSteps() {
+            return descendantSteps;
+        }
+
+        public int getCostBefore() {
+            return costBefore;
+        }
+
+        public int getCostAfter() {
+            return costAfter;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("field", field)
+                    .add("expression", expression)
+                    .add("costBefore", costBefore)
+                    .add("costAfter", costAfter)
+                    .toString();
+        }
+
+    }
+
+}
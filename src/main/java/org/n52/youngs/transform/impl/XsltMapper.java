@@ -0,0 +1,230 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmItem;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XdmNodeKind;
+import net.sf.saxon.s9api.XdmValue;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.Xslt30Transformer;
+import net.sf.saxon.s9api.streams.Steps;
+import org.elasticsearch.common.xcontent.LoggingDeprecationHandler;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.n52.youngs.exception.MappingError;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.impl.SaxonHelper;
+import org.n52.youngs.load.impl.BuilderRecord;
+import org.n52.youngs.transform.Mapper;
+import org.n52.youngs.transform.MappingConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Maps records with an XSLT 3.0 stylesheet compiled from the mapping
+ * configuration, so that a record is mapped in one transformation instead of
+ * evaluating every entry on its own. The output is the same as the one of
+ * {@link CswToBuilderMapper}, except for the order of values in arrays.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class XsltMapper implements Mapper {
+
+    private static final Logger log = LoggerFactory.getLogger(XsltMapper.class);
+
+    private static final QName RECORD_TEMPLATE = new QName(XsltMappingCompiler.YOUNGS_NAMESPACE,
+            XsltMappingCompiler.RECORD_TEMPLATE);
+
+    private final YamlMappingConfiguration mapper;
+
+    private final Processor processor;
+
+    private final String stylesheet;
+
+    private final XsltExecutable executable;
+
+    private final ContentBuilderFactory builders = new ContentBuilderFactory();
+
+    public XsltMapper(YamlMappingConfiguration mapper) {
+        this.mapper = mapper;
+        this.processor = SaxonHelper.getProcessor();
+        this.stylesheet = new XsltMappingCompiler(mapper).compile();
+
+        List<String> errors = Lists.newArrayList();
+        XsltCompiler compiler = processor.newXsltCompiler();
+        compiler.setErrorListener(new ErrorListener() {
+            @Override
+            public void warning(TransformerException exception) {
+                log.debug("Warning compiling stylesheet for mapping {}: {}", mapper.getName(),
+                        exception.getMessageAndLocation());
+            }
+
+            @Override
+            public void error(TransformerException exception) {
+                errors.add(exception.getMessageAndLocation());
+            }
+
+            @Override
+            public void fatalError(TransformerException exception) {
+                errors.add(exception.getMessageAndLocation());
+            }
+        });
+
+        try {
+            this.executable = compiler.compile(new StreamSource(new StringReader(stylesheet)));
+        } catch (SaxonApiException e) {
+            log.error("Could not compile stylesheet for mapping {}:\n{}", mapper.getName(), stylesheet, e);
+            throw new MappingError(e, "Could not compile stylesheet for mapping %s: %s", mapper.getName(),
+                    Arrays.toString(errors.toArray()));
+        }
+        log.info("Compiled mapping {} to XSLT", mapper.getName());
+    }
+
+    @Override
+    public MappingConfiguration getMapper() {
+        return mapper;
+    }
+
+    /**
+     * @return true, the compiled stylesheet is shared and every record is
+     * transformed by its own transformer
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * @param contentType the type of the content of the records, JSON by
+     * default, SMILE or CBOR reduce the size of the bulk requests
+     * @return this mapper
+     */
+    public XsltMapper setContentType(XContentType contentType) {
+        builders.setContentType(contentType);
+        return this;
+    }
+
+    /**
+     * @param prettyPrint true to indent the content of the records for
+     * debugging, false by default
+     * @return this mapper
+     */
+    public XsltMapper setPrettyPrint(boolean prettyPrint) {
+        builders.setPrettyPrint(prettyPrint);
+        return this;
+    }
+
+    /**
+     * @return the stylesheet compiled from the mapping configuration
+     */
+    public String getStylesheet() {
+        return stylesheet;
+    }
+
+    @Override
+    public BuilderRecord map(SourceRecord sourceRecord) {
+        Objects.nonNull(sourceRecord);
+
+        if (!(sourceRecord instanceof NodeSourceRecord)) {
+            log.warn("The SourceRecord class {} is not supported", sourceRecord.getClass().getName());
+            return null;
+        }
+
+        try {
+            Xslt30Transformer transformer = executable.load30();
+            transformer.setGlobalContextItem(contextItem((NodeSourceRecord) sourceRecord));
+            XdmValue result = transformer.callTemplate(RECORD_TEMPLATE);
+            if (result.size() < 2) {
+                log.warn("No ID present, skipping");
+                return null;
+            }
+
+            String id = result.itemAt(0).getStringValue();
+            XContentBuilder builder = builders.newBuilder();
+            try (XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                    LoggingDeprecationHandler.INSTANCE, result.itemAt(1).getStringValue())) {
+                builder.copyCurrentStructure(parser);
+            }
+            builder.close();
+            builders.completed(builder);
+
+            log.trace("Created content for id '{}'", id);
+            return new BuilderRecord(id, builder);
+        } catch (SaxonApiException e) {
+            throw new MappingError(e, "Could not transform record %s: %s", sourceRecord, e.getMessage());
+        } catch (IOException e) {
+            log.warn("Error mapping the source {}", sourceRecord, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the tree of the record, or the record copied to a Saxon tree,
+     * which is evaluated faster than the DOM
+     */
+    private XdmItem contextItem(NodeSourceRecord record) throws SaxonApiException {
+        if (record instanceof TinyTreeSourceRecord) {
+            return new XdmNode(((TinyTreeSourceRecord) record).getTree());
+        }
+
+        Node node = record.getRecord();
+        if (node.getNodeType() == Node.DOCUMENT_NODE) {
+            return processor.newDocumentBuilder().build(new DOMSource(node));
+        }
+
+        // only documents can be copied, so an element that is not the root is imported into its own document
+        Document document = node.getOwnerDocument();
+        if (document.getDocumentElement() != node) {
+            Document recordDocument = document.getImplementation().createDocument(null, null, null);
+            recordDocument.appendChild(recordDocument.importNode(node, true));
+            document = recordDocument;
+        }
+        XdmNode root = processor.newDocumentBuilder().build(new DOMSource(document));
+        return root.select(Steps.child().where(n -> n.getNodeKind() == XdmNodeKind.ELEMENT))
+                .findFirst()
+                .orElse(root);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("mapping", this.mapper)
+                .toString();
+    }
+
+}
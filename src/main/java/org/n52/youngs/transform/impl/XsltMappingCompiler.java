@@ -0,0 +1,450 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.escape.Escaper;
+import com.google.common.xml.XmlEscapers;
+import java.util.List;
+import java.util.Map;
+import javax.xml.transform.OutputKeys;
+import javax.xml.xpath.XPathExpression;
+import org.n52.youngs.api.XPathConstants;
+import org.n52.youngs.exception.MappingError;
+import org.n52.youngs.impl.SaxonXPathExpression;
+import org.n52.youngs.impl.ThreadLocalXPathExpression;
+import org.n52.youngs.transform.MappingEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compiles a {@link YamlMappingConfiguration} into an XSLT 3.0 stylesheet that
+ * maps a record in one transformation. The named template
+ * {@link #RECORD_TEMPLATE} returns the identifier and the JSON document of the
+ * record, or nothing if the record has no identifier. The stylesheet follows
+ * the behaviour of {@link CswToBuilderMapper} and {@link EntryMapper}.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+class XsltMappingCompiler {
+
+    private static final Logger log = LoggerFactory.getLogger(XsltMappingCompiler.class);
+
+    static final String YOUNGS_NAMESPACE = "http://52north.org/youngs/mapping";
+
+    static final String RECORD_TEMPLATE = "record";
+
+    private static final String XSL_NAMESPACE = "http://www.w3.org/1999/XSL/Transform";
+
+    private static final String XS_NAMESPACE = "http://www.w3.org/2001/XMLSchema";
+
+    private static final String JSON_NAMESPACE = "http://www.w3.org/2005/xpath-functions";
+
+    private static final String OUTPUT_NAMESPACE = "http://www.w3.org/2010/xslt-xquery-serialization";
+
+    private static final Escaper ATTRIBUTE = XmlEscapers.xmlAttributeEscaper();
+
+    private static final Escaper CONTENT = XmlEscapers.xmlContentEscaper();
+
+    private final YamlMappingConfiguration configuration;
+
+    private final boolean xpath10;
+
+    private final StringBuilder xsl = new StringBuilder();
+
+    private final Map<MappingEntry, String> fieldVariables = Maps.newHashMap();
+
+    private int variables = 0;
+
+    private int rawParameters = 0;
+
+    private final StringBuilder globals = new StringBuilder();
+
+    XsltMappingCompiler(YamlMappingConfiguration configuration) {
+        this.configuration = configuration;
+        this.xpath10 = XPathConstants.XPATH_10.equals(configuration.getXPathVersion());
+    }
+
+    /**
+     * @return the stylesheet for the configuration
+     */
+    String compile() {
+        MappingPlan plan = new MappingPlan(configuration, () -> null, () -> null);
+        MappingEntry identifier = plan.getIdentifier();
+        if (identifier == null) {
+            throw new MappingError("Mapping %s has no identifier, cannot compile it to XSLT", configuration.getName());
+        }
+
+        StringBuilder body = new StringBuilder();
+        body.append("<xsl:template name=\"youngs:").append(RECORD_TEMPLATE).append("\">\n");
+        userVariable(body, "id", "(" + expression(identifier.getXPath()) + ")[1]");
+        body.append("<xsl:variable name=\"youngs-id\" select=\"youngs:trim(string($id))\"/>\n");
+        body.append("<xsl:if test=\"$youngs-id != ''\">\n");
+        body.append("<xsl:sequence select=\"$youngs-id\"/>\n");
+        body.append("<xsl:variable name=\"youngs-doc\">\n<json:map>\n");
+
+        for (MappingEntry entry : plan.getFieldEntries()) {
+            String variable = fieldValue(body, entry);
+            fieldVariables.putIfAbsent(entry, variable);
+        }
+        for (MappingEntry entry : plan.getFieldEntries()) {
+            emitField(body, entry, fieldVariables.get(entry));
+        }
+        for (MappingEntry entry : plan.getSpatialEntries()) {
+            spatialField(body, entry);
+        }
+        for (MappingEntry entry : plan.getRawEntries()) {
+            rawField(body, entry);
+        }
+        if (plan.hasSuggest()) {
+            suggest(body, plan);
+        }
+
+        body.append("</json:map>\n</xsl:variable>\n");
+        body.append("<xsl:sequence select=\"xml-to-json($youngs-doc)\"/>\n");
+        body.append("</xsl:if>\n</xsl:template>\n");
+
+        xsl.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xsl.append("<xsl:stylesheet version=\"3.0\"");
+        namespaces().forEach((prefix, uri) -> xsl.append("\n    xmlns:").append(prefix).append("=\"")
+                .append(ATTRIBUTE.escape(uri)).append("\""));
+        xsl.append("\n    exclude-result-prefixes=\"#all\">\n");
+        functions();
+        xsl.append(globals);
+        xsl.append(body);
+        xsl.append("</xsl:stylesheet>\n");
+
+        String stylesheet = xsl.toString();
+        log.trace("Compiled mapping {} to stylesheet:\n{}", configuration.getName(), stylesheet);
+        return stylesheet;
+    }
+
+    private Map<String, String> namespaces() {
+        Map<String, String> namespaces = Maps.newLinkedHashMap();
+        namespaces.put("xsl", XSL_NAMESPACE);
+        namespaces.put("xs", XS_NAMESPACE);
+        namespaces.put("json", JSON_NAMESPACE);
+        namespaces.put("output", OUTPUT_NAMESPACE);
+        namespaces.put("youngs", YOUNGS_NAMESPACE);
+        configuration.getNamespaces().forEach((prefix, uri) -> {
+            String reserved = namespaces.putIfAbsent(prefix, uri);
+            if (reserved != null && !reserved.equals(uri)) {
+                log.warn("Namespace prefix {} of mapping {} is used by the stylesheet and cannot be bound to {}",
+                        prefix, configuration.getName(), uri);
+            }
+        });
+        return namespaces;
+    }
+
+    private void functions() {
+        // String.trim()
+        xsl.append("<xsl:function name=\"youngs:trim\" as=\"xs:string\">\n"
+                + "<xsl:param name=\"s\" as=\"xs:string\"/>\n"
+                + "<xsl:sequence select=\"replace($s, '^[\\s\\p{Cc}]+|[\\s\\p{Cc}]+$', '')\"/>\n"
+                + "</xsl:function>\n");
+        // String.split(regex), which removes trailing empty strings
+        xsl.append("<xsl:function name=\"youngs:split\" as=\"xs:string*\">\n"
+                + "<xsl:param name=\"s\" as=\"xs:string\"/>\n"
+                + "<xsl:param name=\"regex\" as=\"xs:string\"/>\n"
+                + "<xsl:variable name=\"tokens\" select=\"tokenize($s, $regex)\"/>\n"
+                + "<xsl:variable name=\"last\" select=\"(for $i in reverse(1 to count($tokens)) return $i[$tokens[$i] != ''], 0)[1]\"/>\n"
+                + "<xsl:sequence select=\"if ($s = '') then '' else subsequence($tokens, 1, $last)\"/>\n"
+                + "</xsl:function>\n");
+        xsl.append("<xsl:function name=\"youngs:number\" as=\"element()\">\n"
+                + "<xsl:param name=\"n\" as=\"xs:double\"/>\n"
+                + "<xsl:choose>\n"
+                + "<xsl:when test=\"$n = $n and abs($n) != xs:double('INF')\"><json:number><xsl:value-of select=\"$n\"/></json:number></xsl:when>\n"
+                + "<xsl:otherwise><json:null/></xsl:otherwise>\n"
+                + "</xsl:choose>\n"
+                + "</xsl:function>\n");
+        xsl.append("<xsl:variable name=\"youngs:empty\" as=\"document-node()\"><xsl:document/></xsl:variable>\n");
+        // stripspace.xslt as a mode
+        xsl.append("<xsl:template match=\"@*|node()\" mode=\"youngs:strip\">\n"
+                + "<xsl:copy><xsl:apply-templates select=\"@*|node()\" mode=\"youngs:strip\"/></xsl:copy>\n"
+                + "</xsl:template>\n"
+                + "<xsl:template match=\"text()[not(normalize-space())]\" mode=\"youngs:strip\"/>\n");
+    }
+
+    /**
+     * Declares the value of a field entry as a variable: a sequence of
+     * strings, or map elements for an entry with children.
+     *
+     * @return the name of the variable
+     */
+    private String fieldValue(StringBuilder out, MappingEntry entry) {
+        int n = ++variables;
+        String result = "r" + n;
+        String value = "v" + n;
+
+        out.append("<xsl:variable name=\"").append(value).append("\" as=\"item()*\">\n");
+        if (entry.hasCondition()) {
+            userVariable(out, "c" + n, expression(entry.getCondition()));
+            out.append("<xsl:if test=\"some $c in $c").append(n).append(" satisfies string($c) != ''\">\n");
+        }
+
+        userVariable(out, result, expression(entry.getXPath()));
+        out.append("<xsl:variable name=\"s").append(n).append("\" as=\"item()*\">\n<xsl:choose>\n");
+        out.append("<xsl:when test=\"$").append(result).append(" instance of node()*\">\n");
+        if (entry.getChildren() != null && !entry.getChildren().isEmpty()) {
+            // the children are returned as map elements, not strings
+            out.append("<xsl:for-each select=\"$").append(result).append("\">\n<json:map>\n");
+            List<String> childVariables = Lists.newArrayListWithCapacity(entry.getChildren().size());
+            for (MappingEntry child : entry.getChildren()) {
+                childVariables.add(fieldValue(out, child));
+            }
+            int i = 0;
+            for (MappingEntry child : entry.getChildren()) {
+                emitField(out, child, childVariables.get(i++));
+            }
+            out.append("</json:map>\n</xsl:for-each>\n");
+        } else {
+            out.append("<xsl:sequence select=\"distinct-values($").append(result)
+                    .append(" ! string(.))[. != '']\"/>\n");
+        }
+        out.append("</xsl:when>\n<xsl:otherwise>\n");
+        out.append("<xsl:sequence select=\"string(($").append(result).append(")[1])[. != '']\"/>\n");
+        out.append("</xsl:otherwise>\n</xsl:choose>\n</xsl:variable>\n");
+
+        String sequence = "$s" + n;
+        if (entry.hasReplacements() && !entry.getReplacements().isEmpty()) {
+            String replaced = ".";
+            for (Map.Entry<String, String> replacement : entry.getReplacements().entrySet()) {
+                replaced = "replace(" + replaced + ", " + literal(replacement.getKey()) + ", "
+                        + literal(replacement.getValue()) + ", 'q')";
+            }
+            sequence = "$s" + n + " ! (if (. instance of xs:string) then youngs:trim(" + replaced + ") else .)";
+        }
+        out.append("<xsl:sequence select=\"").append(ATTRIBUTE.escape(sequence)).append("\"/>\n");
+
+        if (entry.hasCondition()) {
+            out.append("</xsl:if>\n");
+        }
+        out.append("</xsl:variable>\n");
+        return value;
+    }
+
+    /**
+     * Writes the field of a value declared by {@link #fieldValue(StringBuilder, MappingEntry)}:
+     * a single value as is, several values as an array and a split value as an array of the parts.
+     */
+    private void emitField(StringBuilder out, MappingEntry entry, String variable) {
+        String v = "$" + variable;
+        String key = avt(entry.getFieldName());
+        out.append("<xsl:choose>\n");
+        out.append("<xsl:when test=\"empty(").append(v).append(")\"/>\n");
+        out.append("<xsl:when test=\"").append(v).append("[1] instance of element()\">\n");
+        out.append("<xsl:choose>\n");
+        out.append("<xsl:when test=\"count(").append(v).append(") = 1\"><json:map key=\"").append(key)
+                .append("\"><xsl:copy-of select=\"").append(v).append("/*\"/></json:map></xsl:when>\n");
+        out.append("<xsl:otherwise><json:array key=\"").append(key).append("\"><xsl:copy-of select=\"")
+                .append(v).append("\"/></json:array></xsl:otherwise>\n");
+        out.append("</xsl:choose>\n</xsl:when>\n");
+        if (entry.hasSplit()) {
+            out.append("<xsl:when test=\"count(").append(v).append(") = 1\"><json:array key=\"").append(key)
+                    .append("\"><xsl:for-each select=\"youngs:split(").append(v).append(", ")
+                    .append(ATTRIBUTE.escape(literal(entry.getSplit())))
+                    .append(")\"><json:string><xsl:value-of select=\"youngs:trim(.)\"/></json:string>"
+                            + "</xsl:for-each></json:array></xsl:when>\n");
+        }
+        out.append("<xsl:when test=\"count(").append(v).append(") = 1\"><json:string key=\"").append(key)
+                .append("\"><xsl:value-of select=\"").append(v).append("\"/></json:string></xsl:when>\n");
+        out.append("<xsl:otherwise><json:array key=\"").append(key).append("\"><xsl:for-each select=\"")
+                .append(v).append("\"><json:string><xsl:value-of select=\".\"/></json:string>"
+                        + "</xsl:for-each></json:array></xsl:otherwise>\n");
+        out.append("</xsl:choose>\n");
+    }
+
+    /**
+     * @throws MappingError if the field has a coordinate list, which the
+     * stylesheet cannot parse and simplify like {@link Coordinates}, so that
+     * no documents without the shape are created
+     */
+    private void spatialField(StringBuilder out, MappingEntry entry) {
+        if (entry.getCoordinatesListXPath() != null) {
+            throw new MappingError("Field %s of mapping %s has a coordinate list (pos_list), which is not supported by"
+                    + " the XSLT mapping", entry.getFieldName(), configuration.getName());
+        }
+        String geoType = (String) entry.getIndexPropery(MappingEntry.IndexProperties.TYPE);
+        List<XPathExpression[]> points = entry.getCoordinatesXPaths();
+        if (points.isEmpty() || geoType == null || geoType.isEmpty() || entry.getFieldName().isEmpty()
+                || !entry.hasCoordinatesType()) {
+            log.warn("Mapping '{}' has coordinates but is missing one of the other required settings, not adding field",
+                    entry.getFieldName());
+            return;
+        }
+
+        int n = ++variables;
+        userVariable(out, "n" + n, "(" + expression(entry.getXPath()) + ")[1]");
+        out.append("<xsl:for-each select=\"$n").append(n).append("[. instance of node()]\">\n");
+        out.append("<json:map key=\"").append(avt(entry.getFieldName())).append("\">\n");
+        out.append("<json:string key=\"type\">").append(CONTENT.escape(entry.getCoordinatesType()))
+                .append("</json:string>\n");
+        out.append("<json:array key=\"coordinates\">\n");
+        for (XPathExpression[] point : points) {
+            // GeoJSON order [lon, lat]
+            out.append("<json:array>\n");
+            number(out, expression(point[1]), entry.getCoordinatesPrecision());
+            number(out, expression(point[0]), entry.getCoordinatesPrecision());
+            out.append("</json:array>\n");
+        }
+        out.append("</json:array>\n</json:map>\n</xsl:for-each>\n");
+    }
+
+    /**
+     * @param precision the number of decimal places, rounded half to even
+     * like {@link Coordinates#round(double[], int)}, or -1
+     */
+    private void number(StringBuilder out, String expression, int precision) {
+        int n = ++variables;
+        userVariable(out, "p" + n, "(" + expression + ")[1]");
+        String number = "number($p" + n + ")";
+        if (precision >= 0) {
+            String scale = "xs:double('" + Math.pow(10, precision) + "')";
+            number = "round-half-to-even(" + number + " * " + scale + ") div " + scale;
+        }
+        out.append("<xsl:sequence select=\"youngs:number(").append(number).append(")\"/>\n");
+    }
+
+    private void rawField(StringBuilder out, MappingEntry entry) {
+        Map<String, String> outputProperties = Maps.newLinkedHashMap();
+        outputProperties.put(OutputKeys.OMIT_XML_DECLARATION, "no");
+        outputProperties.put(OutputKeys.INDENT, "no");
+        outputProperties.put(OutputKeys.ENCODING, Charsets.UTF_8.name());
+        if (entry.hasOutputProperties()) {
+            outputProperties.putAll(entry.getOutputProperties());
+        }
+
+        String parameters = "youngs:raw-" + ++rawParameters;
+        globals.append("<xsl:variable name=\"").append(parameters).append("\" as=\"element()\">\n")
+                .append("<output:serialization-parameters>\n");
+        outputProperties.forEach((name, value) -> {
+            if (name.startsWith("{")) {
+                log.warn("Output property {} of field {} is not supported by the XSLT mapping, ignoring it",
+                        name, entry.getFieldName());
+            } else {
+                globals.append("<output:").append(name).append(" value=\"").append(ATTRIBUTE.escape(value))
+                        .append("\"/>\n");
+            }
+        });
+        globals.append("</output:serialization-parameters>\n</xsl:variable>\n");
+
+        int n = ++variables;
+        String x = "$x" + n;
+        userVariable(out, "x" + n, "(" + expression(entry.getXPath()) + ")[1]");
+        out.append("<xsl:choose>\n");
+        // a missing node is serialized as an empty document
+        out.append("<xsl:when test=\"empty(").append(x).append(")\"><json:string key=\"")
+                .append(avt(entry.getFieldName())).append("\"><xsl:value-of select=\"serialize($youngs:empty, $")
+                .append(parameters).append(")\"/></json:string></xsl:when>\n");
+        out.append("<xsl:when test=\"").append(x).append(" instance of node()\"><json:string key=\"")
+                .append(avt(entry.getFieldName())).append("\">");
+        if ("no".equals(outputProperties.get(OutputKeys.INDENT))) {
+            out.append("<xsl:variable name=\"stripped\"><xsl:apply-templates select=\"").append(x)
+                    .append("\" mode=\"youngs:strip\"/></xsl:variable>");
+            out.append("<xsl:value-of select=\"serialize($stripped, $").append(parameters).append(")\"/>");
+        } else {
+            out.append("<xsl:value-of select=\"serialize(").append(x).append(", $").append(parameters)
+                    .append(")\"/>");
+        }
+        out.append("</json:string></xsl:when>\n</xsl:choose>\n");
+    }
+
+    private void suggest(StringBuilder out, MappingPlan plan) {
+        MappingPlan.Suggest suggest = plan.getSuggest();
+
+        out.append("<xsl:variable name=\"youngs-suggest\" as=\"element()*\">\n");
+        for (String field : suggest.fields) {
+            MappingEntry entry = findFieldEntry(plan, field);
+            if (entry == null || entry.hasSplit()
+                    || (entry.getChildren() != null && !entry.getChildren().isEmpty())) {
+                // only single string values are suggested
+                continue;
+            }
+
+            String v = "$" + fieldVariables.get(entry);
+            StringBuilder filter = new StringBuilder();
+            for (String exclude : suggest.inputExcludes) {
+                filter.append("[not(lower-case(.) = ").append(literal(exclude.toLowerCase()))
+                        .append(" or matches(., ").append(literal("^(?:" + exclude + ")$")).append("))]");
+            }
+            String input = ".";
+            for (String remove : suggest.inputRemoves) {
+                input = "replace(" + input + ", " + literal(remove) + ", '', 'q')";
+            }
+
+            out.append("<xsl:for-each select=\"").append(v).append("[count(").append(v).append(") = 1]\">\n");
+            out.append("<json:map>\n<json:array key=\"input\"><xsl:for-each select=\"")
+                    .append(ATTRIBUTE.escape("youngs:split(., " + literal(suggest.split) + ")" + filter))
+                    .append("\"><json:string><xsl:value-of select=\"")
+                    .append(ATTRIBUTE.escape("youngs:trim(" + input + ")"))
+                    .append("\"/></json:string></xsl:for-each></json:array>\n");
+            out.append("<json:string key=\"output\"><xsl:value-of select=\".\"/></json:string>\n");
+            out.append("<json:number key=\"weight\">").append(suggest.weight).append("</json:number>\n");
+            out.append("</json:map>\n</xsl:for-each>\n");
+        }
+        out.append("</xsl:variable>\n");
+        out.append("<xsl:choose>\n"
+                + "<xsl:when test=\"count($youngs-suggest) = 1\"><json:map key=\"suggest\">"
+                + "<xsl:copy-of select=\"$youngs-suggest/*\"/></json:map></xsl:when>\n"
+                + "<xsl:when test=\"count($youngs-suggest) &gt; 1\"><json:array key=\"suggest\">"
+                + "<xsl:copy-of select=\"$youngs-suggest\"/></json:array></xsl:when>\n"
+                + "</xsl:choose>\n");
+    }
+
+    private MappingEntry findFieldEntry(MappingPlan plan, String field) {
+        for (MappingEntry entry : plan.getFieldEntries()) {
+            if (field.equals(entry.getFieldName())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Declares a variable with an expression of the mapping, which is
+     * evaluated in backwards compatible mode for XPath 1.0 mappings.
+     */
+    private void userVariable(StringBuilder out, String name, String expression) {
+        out.append("<xsl:variable name=\"").append(name).append("\" select=\"")
+                .append(ATTRIBUTE.escape(expression)).append("\"");
+        if (xpath10) {
+            out.append(" version=\"1.0\"");
+        }
+        out.append("/>\n");
+    }
+
+    private static String expression(XPathExpression xpath) {
+        if (xpath instanceof SaxonXPathExpression) {
+            return ((SaxonXPathExpression) xpath).getExpression();
+        }
+        if (xpath instanceof ThreadLocalXPathExpression) {
+            return ((ThreadLocalXPathExpression) xpath).getExpression();
+        }
+        throw new MappingError("Expression %s was not created by a YamlMappingConfiguration, cannot compile it to XSLT",
+                xpath);
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static String avt(String value) {
+        return ATTRIBUTE.escape(value.replace("{", "{{").replace("}", "}}"));
+    }
+
+}
@@ -26,6 +26,7 @@ import com.github.autermann.yaml.nodes.YamlTextNode;
 import com.google.common.base.Joiner;
 import com.google.common.base.MoreObjects;
 import org.n52.youngs.transform.MappingEntry;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
@@ -36,21 +37,32 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.XPathCompiler;
 import org.n52.youngs.exception.MappingError;
+import org.n52.youngs.impl.NamespaceContextImpl;
+import org.n52.youngs.impl.SaxonHelper;
+import org.n52.youngs.impl.SaxonXPathExpression;
+import org.n52.youngs.impl.ThreadLocalXPathExpression;
 import org.n52.youngs.impl.XPathHelper;
 import org.n52.youngs.transform.MappingConfiguration;
 import org.slf4j.Logger;
@@ -64,6 +76,27 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
 
     private static final Logger log = LoggerFactory.getLogger(YamlMappingConfiguration.class);
 
+    /**
+     * The applicability expression of the mapping files, which is true for
+     * records that contain the given element anywhere, not only as their root
+     * element. The element is taken as the root element of the records, so
+     * consumers of {@link #getRootElements()} must still evaluate the
+     * applicability for records with another root element.
+     */
+    private static final Pattern ROOT_APPLICABILITY = Pattern.compile(
+            "\\s*boolean\\(//\\*\\[local-name\\(\\)\\s*=\\s*(['\"])([^'\"]+)\\1\\]\\)\\s+and\\s+"
+            + "boolean\\(namespace-uri\\(//\\*\\[local-name\\(\\)\\s*=\\s*(['\"])\\2\\3\\]\\)\\s*=\\s*"
+            + "(['\"])([^'\"]*)\\4\\)\\s*");
+
+    private static final Set<String> AXIS_ORDERS = ImmutableSet.of("lat_lon", "lon_lat");
+
+    /**
+     * The coordinate types that are created from the positions of coordinate
+     * lists.
+     */
+    private static final Set<String> COORDINATE_LIST_TYPES = ImmutableSet.of("point", "multipoint", "linestring",
+            "multilinestring", "polygon", "multipolygon", "envelope");
+
     List<MappingEntry> entries = Lists.newArrayList();
 
     private String xpathVersion = DEFAULT_XPATH_VERSION;
@@ -74,8 +107,12 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
 
     private XPathFactory xpathFactory;
 
+    private XPathCompiler xpathCompiler;
+
     private Optional<XPathExpression> applicabilityExpression = Optional.empty();
 
+    private Set<QName> rootElements = Collections.emptySet();
+
     private String type = DEFAULT_TYPE;
 
     private String index = DEFAULT_INDEX;
@@ -93,6 +130,16 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
     private Optional<String> locationField = Optional.empty();
     private Map<String, Object> suggest;
 
+    private Map<String, String> namespaces = Collections.emptyMap();
+
+    private DescendantAxisRewriter descendantAxisRewriter;
+
+    private final List<XPathCostReport.FieldCost> fieldCosts = Lists.newArrayList();
+
+    private XPathCostReport xpathCostReport = new XPathCostReport(Collections.emptyList());
+
+    private SharedPrefixTrie sharedPrefixes;
+
     public YamlMappingConfiguration(String fileName, XPathHelper xpathHelper) throws IOException {
         this(Resources.asByteSource(Resources.getResource(fileName)).openStream(), xpathHelper);
         log.info("Created configuration from filename {}", fileName);
@@ -100,7 +147,6 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
 
     public YamlMappingConfiguration(InputStream input, XPathHelper xpathHelper) {
         this.xpathHelper = xpathHelper;
-        this.xpathFactory = xpathHelper.newXPathFactory();
 
         Yaml yaml = new Yaml();
         YamlNode configurationNodes = yaml.load(input);
@@ -110,6 +156,14 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
             log.trace("Read configuration file with the root elements {}", Joiner.on(" ").join(configurationNodes));
 
             NamespaceContext nsContext = parseNamespaceContext(configurationNodes);
+            if (nsContext instanceof NamespaceContextImpl) {
+                this.namespaces = ((NamespaceContextImpl) nsContext).getNamespaces();
+            }
+            this.xpathFactory = xpathHelper.newXPathFactory();
+            if (SaxonHelper.isSharedConfiguration(xpathFactory)) {
+                // supports XPath 1.0 and 2.0 without a test evaluation
+                this.xpathCompiler = xpathHelper.newXPathCompiler(this.namespaces);
+            }
             init(configurationNodes, nsContext);
         }
 
@@ -132,22 +186,62 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
             }
         }
 
-        if (!this.xpathHelper.isVersionSupported(xpathFactory, xpathVersion)) {
-            throw new MappingError("Provided factory {} does not support version {}", xpathFactory, xpathVersion);
+        if (xpathCompiler != null) {
+            log.debug("Using XPath compiler of the shared processor");
+        } else {
+            if (!this.xpathHelper.isVersionSupported(xpathFactory, xpathVersion)) {
+                throw new MappingError("Provided factory {} does not support version {}", xpathFactory, xpathVersion);
+            }
+            log.debug("Using XPathFactory {}", xpathFactory);
         }
-        log.debug("Using XPathFactory {}", xpathFactory);
 
         String applicabilityXPathString = configurationNodes
                 .path("applicability_xpath").asTextValue(DEFAULT_APPLICABILITY_PATH);
-        XPath path = newXPath(nsContext);
         try {
-            applicabilityExpression = Optional.of(path.compile(applicabilityXPathString));
+            applicabilityExpression = Optional.of(compile(applicabilityXPathString, nsContext));
         } catch (XPathExpressionException e) {
             log.error("Could not compile applicability xpath, will always evalute to true", e);
         }
 
+        if (configurationNodes.hasNotNull("root_elements")) {
+            this.rootElements = configurationNodes.path("root_elements").asSequence().stream()
+                    .map(YamlNode::asTextValue)
+                    .map(this::qualifiedName)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+        } else if (this.applicabilityExpression.isPresent()) {
+            Matcher matcher = ROOT_APPLICABILITY.matcher(applicabilityXPathString);
+            if (matcher.matches()) {
+                this.rootElements = Collections.singleton(new QName(matcher.group(5), matcher.group(2)));
+            }
+        }
+        log.debug("Root elements of the records the mapping is applicable to: {}", this.rootElements);
+
+        List<String> rootChildren = Collections.emptyList();
+        if (configurationNodes.hasNotNull("root_children")) {
+            rootChildren = configurationNodes.path("root_children").asSequence().stream()
+                    .map(YamlNode::asTextValue)
+                    .collect(Collectors.toList());
+        }
+        this.descendantAxisRewriter = new DescendantAxisRewriter(this.namespaces, rootChildren,
+                this.rootElements, applicabilityXPathString);
+
         if (configurationNodes.hasNotNull("mappings")) {
             YamlMapNode mappingsNode = configurationNodes.path("mappings").asMap();
+            if (xpathCompiler != null && configurationNodes.path("shared_prefixes").asBooleanValue(true)) {
+                List<String> expressions = Lists.newArrayList();
+                mappingsNode.entries().forEach(entry -> {
+                    String expression = entry.getValue().path("xpath").asTextValue();
+                    if (expression != null) {
+                        expressions.add(this.descendantAxisRewriter.analyze(entry.getKey().asTextValue(),
+                                expression).getExpression());
+                    }
+                });
+                this.sharedPrefixes = new SharedPrefixTrie(expressions,
+                        this.xpathHelper.newXPathCompiler(this.namespaces));
+                log.debug("Evaluating {} shared prefixes once per record: {}", this.sharedPrefixes.size(),
+                        this.sharedPrefixes);
+            }
+
             this.entries = Lists.newArrayList();
             for (Entry<YamlNode, YamlNode> entry : mappingsNode.entries()) { // use old-style loop to forward exception
                 MappingEntry e = createEntry(entry.getKey().asTextValue(),
@@ -190,6 +284,18 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
                 log.warn("No field is marked as 'location'.");
             }
 
+            this.xpathCostReport = new XPathCostReport(fieldCosts);
+            log.info("Estimated XPath cost per record of mapping '{}' with {}: {}", this.name,
+                    this.descendantAxisRewriter, this.xpathCostReport);
+            log.debug("Estimated XPath cost per record of mapping '{}':\n{}", this.name,
+                    this.xpathCostReport.format());
+            List<String> descendantFields = this.xpathCostReport.getDescendantFields();
+            if (!descendantFields.isEmpty()) {
+                log.warn("Descendant-axis expressions of mapping '{}' could not be rewritten, add their elements to "
+                        + "'root_children' if they only occur as children of the root element: {}", this.name,
+                        descendantFields);
+            }
+
             // sort list by field name
             Collections.sort(entries, (me1, me2) -> {
                 return me1.getFieldName().compareTo(me2.getFieldName());
@@ -272,15 +378,22 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
             boolean isXml = mapNode.path("raw_xml").asBooleanValue(false);
 
             String expression = mapNode.path("xpath").asTextValue();
+            if (expression != null) {
+                XPathCostReport.FieldCost cost = descendantAxisRewriter.analyze(id, expression);
+                fieldCosts.add(cost);
+                if (cost.isRewritten()) {
+                    log.debug("Rewrote expression '{}' of field {} to '{}'", expression, id, cost.getExpression());
+                    expression = cost.getExpression();
+                }
+            }
 
-            XPath xPath = newXPath(nsContext);
             try {
-                XPathExpression compiledExpression = xPath.compile(expression);
+                XPathExpression compiledExpression = compileShared(expression, nsContext);
 
                 XPathExpression condition = null;
                 if (mapNode.has("condition")) {
                     String conditionString = mapNode.path("condition").asTextValue();
-                    condition = newXPath(nsContext).compile(conditionString);
+                    condition = compile(conditionString, nsContext);
                 }
 
                 List<MappingEntry> children = createChildren(node, expression, nsContext);
@@ -298,37 +411,59 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
                 // geo types
                 if (mapNode.hasNotNull("coordinates")) {
                     String coordsType = mapNode.path("coordinates_type").asTextValue();
-                    boolean points = mapNode.path("coordinates").has("points");
-                    if (coordsType == null || !points) {
-                        log.error("Missing properties for field {} for coordinates type: coordinates_type = {}, coordinates.points contained = {}",
-                                entry.getFieldName(), coordsType, points);
-                        throw new MappingError("Missing properties in field %s for coordinates type: coordinates_type = %s, coordinatesEyxpression = %s, coordinates contained = {}",
-                                entry.getFieldName(), coordsType, points);
+                    YamlNode coordsNode = mapNode.path("coordinates");
+                    boolean points = coordsNode.has("points");
+                    boolean posList = coordsNode.has("pos_list");
+                    if (coordsType == null || !(points || posList)) {
+                        log.error("Missing properties for field {} for coordinates type: coordinates_type = {}, coordinates.points or pos_list contained = {}",
+                                entry.getFieldName(), coordsType, points || posList);
+                        throw new MappingError("Missing properties in field %s for coordinates type: coordinates_type = %s, coordinates.points or pos_list contained = %s",
+                                entry.getFieldName(), coordsType, points || posList);
                     }
 
-                    YamlSeqNode pointsMap = (YamlSeqNode) mapNode.path("coordinates").path("points");
-
-//                    log.trace("Adding type '{}' coordinates xpath: {}", coordsType, coordsExpression);
-                    List<XPathExpression[]> pointExpressions = pointsMap.value().stream().filter(n -> n instanceof YamlMapNode)
-                            .map(n -> (YamlMapNode) n)
-                            .map(mn -> {
-                                String expressionStringLat = mn.path("lat").asTextValue();
-                                String expressionStringLon = mn.path("lon").asTextValue();
-                                try {
-                                    XPathExpression compiledLat = newXPath(nsContext).compile(expressionStringLat);
-                                    XPathExpression compiledLon = newXPath(nsContext).compile(expressionStringLon);
-                                    return new XPathExpression[]{compiledLat, compiledLon};
-                                } catch (XPathExpressionException e) {
-                                    log.warn("Error creating xpath '{}' or '{}' for point in field {}: {}",
-                                            expressionStringLat, expressionStringLon, id, e.getMessage());
-                                    return null;
-                                }
-                            })
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList());
+                    String axisOrder = coordsNode.path("axis_order").asTextValue("lat_lon");
+                    if (!AXIS_ORDERS.contains(axisOrder)) {
+                        throw new MappingError("Unsupported axis_order '%s' in field %s, expected one of %s",
+                                axisOrder, id, AXIS_ORDERS);
+                    }
+                    entry.setCoordinatesLatLon("lat_lon".equals(axisOrder))
+                            .setCoordinatesTolerance(coordsNode.path("simplify").asDoubleValue(0d))
+                            .setCoordinatesPrecision(coordsNode.path("precision").asIntValue(-1));
+
+                    if (posList) {
+                        if (!COORDINATE_LIST_TYPES.contains(coordsType)) {
+                            throw new MappingError("Unsupported coordinates_type '%s' for pos_list in field %s, expected one of %s",
+                                    coordsType, id, COORDINATE_LIST_TYPES);
+                        }
+                        String posListString = coordsNode.path("pos_list").asTextValue();
+                        log.trace("Adding type '{}' coordinate list xpath: {}", coordsType, posListString);
+                        entry.setCoordinatesListXPath(compile(posListString, nsContext))
+                                .setCoordinatesXPaths(Collections.emptyList())
+                                .setCoordinatesType(coordsType);
+                    } else {
+                        YamlSeqNode pointsMap = (YamlSeqNode) mapNode.path("coordinates").path("points");
+
+                        List<XPathExpression[]> pointExpressions = pointsMap.value().stream().filter(n -> n instanceof YamlMapNode)
+                                .map(n -> (YamlMapNode) n)
+                                .map(mn -> {
+                                    String expressionStringLat = mn.path("lat").asTextValue();
+                                    String expressionStringLon = mn.path("lon").asTextValue();
+                                    try {
+                                        XPathExpression compiledLat = compile(expressionStringLat, nsContext);
+                                        XPathExpression compiledLon = compile(expressionStringLon, nsContext);
+                                        return new XPathExpression[]{compiledLat, compiledLon};
+                                    } catch (XPathExpressionException e) {
+                                        log.warn("Error creating xpath '{}' or '{}' for point in field {}: {}",
+                                                expressionStringLat, expressionStringLon, id, e.getMessage());
+                                        return null;
+                                    }
+                                })
+                                .filter(Objects::nonNull)
+                                .collect(Collectors.toList());
 
-                    log.trace("Created {} points for {}", pointExpressions.size(), id);
-                    entry.setCoordinatesXPaths(pointExpressions).setCoordinatesType(coordsType);
+                        log.trace("Created {} points for {}", pointExpressions.size(), id);
+                        entry.setCoordinatesXPaths(pointExpressions).setCoordinatesType(coordsType);
+                    }
                 }
 
                 if (mapNode.hasNotNull("replacements")) {
@@ -381,11 +516,39 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
     }
 
     private XPath newXPath(NamespaceContext nsContext) {
-        XPath xPath = xpathFactory.newXPath();
+        XPath xPath;
+        synchronized (xpathFactory) {
+            xPath = xpathFactory.newXPath();
+        }
         xPath.setNamespaceContext(nsContext);
         return xPath;
     }
 
+    /**
+     * @return the expression evaluated relative to its shared prefix, if it
+     * shares one with other expressions of the mapping
+     */
+    private XPathExpression compileShared(String expression, NamespaceContext nsContext)
+            throws XPathExpressionException {
+        XPathExpression compiled = compile(expression, nsContext);
+        if (sharedPrefixes != null) {
+            return sharedPrefixes.compile(expression, compiled).orElse(compiled);
+        }
+        return compiled;
+    }
+
+    /**
+     * Expressions of the shared processor are immutable, the ones of a factory
+     * are compiled per thread, so that the configuration can be used by
+     * concurrent mappers.
+     */
+    private XPathExpression compile(String expression, NamespaceContext nsContext) throws XPathExpressionException {
+        if (xpathCompiler != null) {
+            return new SaxonXPathExpression(expression, xpathCompiler);
+        }
+        return new ThreadLocalXPathExpression(expression, () -> newXPath(nsContext));
+    }
+
     private Map<String, Object> createIndexProperties(String id, YamlNode node) {
         Map<String, Object> props = Maps.newHashMap();
 
@@ -484,6 +647,20 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
         return this.xpathVersion;
     }
 
+    /**
+     * @return the estimated cost of the expressions of the entries before and
+     * after rewriting descendant-axis steps with the elements declared as
+     * <code>root_children</code>
+     */
+    public XPathCostReport getXPathCostReport() {
+        return xpathCostReport;
+    }
+
+    @Override
+    public boolean isTinyTreeSupported() {
+        return xpathCompiler != null || SaxonHelper.isSharedConfiguration(xpathFactory);
+    }
+
     @Override
     public String getType() {
         return this.type;
@@ -496,6 +673,22 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
 
     @Override
     public boolean isApplicable(Document doc) {
+        return evaluateApplicability(doc);
+    }
+
+    /**
+     * The expression is evaluated on the root of the tree, like on the
+     * document of a DOM record.
+     */
+    @Override
+    public boolean isApplicableToTree(NodeInfo tree) {
+        return evaluateApplicability(tree.getRoot());
+    }
+
+    /**
+     * @param doc a DOM document or the root of a Saxon tree
+     */
+    private boolean evaluateApplicability(Object doc) {
         if (!this.applicabilityExpression.isPresent()) {
             log.debug("No applicability xpath provided, returning TRUE.");
             return true;
@@ -513,6 +706,23 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
         return result;
     }
 
+    @Override
+    public Set<QName> getRootElements() {
+        return Collections.unmodifiableSet(rootElements);
+    }
+
+    private QName qualifiedName(String name) {
+        int colon = name.indexOf(':');
+        if (colon < 0) {
+            return new QName(name);
+        }
+        String namespace = this.namespaces.get(name.substring(0, colon));
+        if (namespace == null) {
+            throw new MappingError("Root element '%s' uses an undeclared namespace prefix", name);
+        }
+        return new QName(namespace, name.substring(colon + 1), name.substring(0, colon));
+    }
+
     @Override
     public boolean isIndexCreationEnabled() {
         return indexCreationEnabled;
@@ -584,6 +794,13 @@ public class YamlMappingConfiguration extends NamespacedYamlConfiguration implem
         return Collections.emptyList();
     }
 
+    /**
+     * @return the namespace prefixes and namespaces declared by the mapping
+     */
+    public Map<String, String> getNamespaces() {
+        return namespaces;
+    }
+
     @Override
     public boolean hasSuggest() {
         return this.suggest != null && !this.suggest.isEmpty();
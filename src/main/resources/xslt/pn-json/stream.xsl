@@ -6,7 +6,9 @@
 
     <xsl:import href="classpath:xslt/pn-json/pn2eum.xsl"/>
 
-    <xsl:variable name="metadata" select="json-to-xml(unparsed-text(('json')))"/>
+    <xsl:param name="json" as="xs:string" required="yes"/>
+
+    <xsl:variable name="metadata" select="json-to-xml($json)"/>
 
     <xsl:template name="xsl:initial-template">
         <xsl:apply-templates select="$metadata/j:map" mode="metadata"/>
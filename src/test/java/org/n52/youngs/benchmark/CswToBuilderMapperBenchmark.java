@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.benchmark;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.n52.youngs.harvest.FileSource;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.ReportImpl;
+import org.n52.youngs.impl.SourceRecordHelper;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.XsltMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Maps the gmd and gmi test records with the gmd mapping, using XPath
+ * expressions per entry on DOM records and on TinyTree records, with and
+ * without shared prefixes, and the compiled stylesheet, run with
+ * <code>java -cp target/test-classes:target/classes:&lt;test classpath&gt;
+ * org.n52.youngs.benchmark.CswToBuilderMapperBenchmark</code>.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CswToBuilderMapperBenchmark {
+
+    private static final String[] RECORDS = new String[]{
+        "records/gmd/metadata_1000.xml",
+        "records/gmd/metadata_1000b.xml",
+        "records/gmd/metadata_fulltext.xml",
+        "records/gmd/metadata_fulltext_oneline.xml",
+        "records/gmi/metadata_10.xml",
+        "records/gmi/metadata_81.xml",
+        "records/gmi/metadata_91.xml"};
+
+    /**
+     * Evaluate prefixes shared by the expressions once per record, or every
+     * expression on its own.
+     */
+    @Param({"true", "false"})
+    public boolean sharedPrefixes;
+
+    private CswToBuilderMapper mapper;
+
+    private XsltMapper xsltMapper;
+
+    private List<SourceRecord> records;
+
+    private List<SourceRecord> treeRecords;
+
+    @Setup
+    public void setup() throws Exception {
+        String yaml = Resources.toString(Resources.getResource("mappings/gmd-metadata.yml"), StandardCharsets.UTF_8)
+                + "\nshared_prefixes: " + sharedPrefixes + "\n";
+        try (InputStream is = new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8))) {
+            YamlMappingConfiguration configuration = new YamlMappingConfiguration(is, new XPathHelper());
+            mapper = new CswToBuilderMapper(configuration);
+            xsltMapper = new XsltMapper(configuration);
+        }
+
+        records = Lists.newArrayList();
+        treeRecords = Lists.newArrayList();
+        for (String file : RECORDS) {
+            records.add(SourceRecordHelper.getSourceRecordFromFile(file));
+            treeRecords.addAll(new FileSource(Paths.get(Resources.getResource(file).toURI()))
+                    .setTinyTree(true)
+                    .getRecords(new ReportImpl()));
+        }
+    }
+
+    @Benchmark
+    public void mapRecords(Blackhole blackhole) {
+        for (SourceRecord record : records) {
+            blackhole.consume(mapper.map(record));
+        }
+    }
+
+    @Benchmark
+    public void mapTreeRecords(Blackhole blackhole) {
+        for (SourceRecord record : treeRecords) {
+            blackhole.consume(mapper.map(record));
+        }
+    }
+
+    @Benchmark
+    public void mapRecordsXslt(Blackhole blackhole) {
+        for (SourceRecord record : records) {
+            blackhole.consume(xsltMapper.map(record));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CswToBuilderMapperBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.n52.youngs.harvest.JsonNodeSourceRecord;
+import org.n52.youngs.transform.impl.JsonToBuilderMapper;
+import org.n52.youngs.transform.impl.LightweightMappingEntry;
+import org.n52.youngs.transform.impl.LightweightYamlMappingConfiguration;
+import org.n52.youngs.transform.impl.MappingType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Resolves the node and list entries of the JSON mapping in the JSON test
+ * records with the compiled accessors and by splitting the expressions per
+ * record, and maps the records, run with
+ * <code>java -cp target/test-classes:target/classes:&lt;test classpath&gt;
+ * org.n52.youngs.benchmark.JsonToBuilderMapperBenchmark</code>.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonToBuilderMapperBenchmark {
+
+    private static final String[] RECORDS = new String[]{
+        "records/json/record.json",
+        "records/json/record2.json",
+        "records/json/record_enum.json",
+        "records/json/EO EUM DAT METOP IASSND02.json"};
+
+    private JsonToBuilderMapper mapper;
+
+    private List<LightweightMappingEntry> entries;
+
+    private List<JsonNode> records;
+
+    @Setup
+    public void setup() throws Exception {
+        LightweightYamlMappingConfiguration configuration = new LightweightYamlMappingConfiguration(
+                "mappings/json-record.yml");
+        mapper = new JsonToBuilderMapper(configuration);
+        entries = Lists.newArrayList();
+        for (LightweightMappingEntry entry : configuration.getLightweightEntries()) {
+            if (entry.getType() == MappingType.NODE || entry.getType() == MappingType.LIST) {
+                entries.add(entry);
+            }
+        }
+
+        ObjectMapper json = new ObjectMapper();
+        records = Lists.newArrayList();
+        for (String file : RECORDS) {
+            records.add(json.readTree(Resources.getResource(file)));
+        }
+    }
+
+    @Benchmark
+    public void resolveAccessors(Blackhole blackhole) {
+        for (JsonNode record : records) {
+            for (LightweightMappingEntry entry : entries) {
+                blackhole.consume(entry.getAccessor().resolve(record));
+            }
+        }
+    }
+
+    @Benchmark
+    public void resolveSplitExpressions(Blackhole blackhole) {
+        for (JsonNode record : records) {
+            for (LightweightMappingEntry entry : entries) {
+                blackhole.consume(resolveSplit(entry, record));
+            }
+        }
+    }
+
+    /**
+     * The records are changed by the mapping, so each record is copied.
+     */
+    @Benchmark
+    public void mapRecords(Blackhole blackhole) {
+        for (JsonNode record : records) {
+            blackhole.consume(mapper.map(new JsonNodeSourceRecord(record.deepCopy(), "")));
+        }
+    }
+
+    /**
+     * Resolves the expression as the mapper did before the expressions were
+     * compiled.
+     */
+    private static JsonNode resolveSplit(LightweightMappingEntry entry, JsonNode record) {
+        String expression = entry.getExpression();
+        expression = expression.matches("^/{1}.*$") ? expression.substring(1) : expression;
+        if (entry.getType() == MappingType.NODE) {
+            return resolveSplitValue(record, expression);
+        }
+
+        String[] pathArrayForList = expression.split("//");
+        if (pathArrayForList.length == 2) {
+            ArrayNode valuesArrayNode = new ArrayNode(JsonNodeFactory.instance);
+            for (JsonNode itemNode : record.path(pathArrayForList[0])) {
+                JsonNode valueNode = resolveSplitValue(itemNode, pathArrayForList[1]);
+                if (!valueNode.isMissingNode()) {
+                    valuesArrayNode.add(valueNode);
+                }
+            }
+            if (valuesArrayNode.size() > 0) {
+                return valuesArrayNode;
+            }
+        }
+        return MissingNode.getInstance();
+    }
+
+    private static JsonNode resolveSplitValue(JsonNode sourceNode, String expression) {
+        String[] pathArray = expression.split("/");
+        JsonNode currentNode = sourceNode.path(pathArray[0]);
+        for (int i = 1; i < pathArray.length; i++) {
+            if (currentNode instanceof ArrayNode) {
+                currentNode = ((ArrayNode) currentNode).path(0);
+            }
+            currentNode = currentNode.path(pathArray[i]);
+        }
+        return currentNode;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonToBuilderMapperBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+}
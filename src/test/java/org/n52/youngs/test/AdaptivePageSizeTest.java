@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.util.List;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.control.impl.AdaptivePageSize;
+import org.n52.youngs.control.impl.SingleThreadBulkRunner;
+import org.n52.youngs.impl.ReportImpl;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class AdaptivePageSizeTest {
+
+    @Test
+    public void failuresHalveSize() {
+        AdaptivePageSize size = new AdaptivePageSize(100, 10, 500);
+        ReportImpl report = new ReportImpl();
+
+        assertThat("halved", size.update(100, 0, 50, true, report), is(50l));
+        assertThat("empty page halves", size.update(50, 0, 50, false, report), is(25l));
+        assertThat("lower bound", size.update(25, 0, 50, true, report), is(12l));
+        assertThat("lower bound", size.update(12, 0, 50, true, report), is(10l));
+        assertThat("error rate", size.getErrorRate(), is(1d));
+    }
+
+    @Test
+    public void slowPagesShrinkSize() {
+        AdaptivePageSize size = new AdaptivePageSize(100, 10, 500, 1000);
+        assertThat("halved", size.update(100, 100, 5000, false, new ReportImpl()), is(50l));
+    }
+
+    @Test
+    public void growsWhileThroughputHolds() {
+        AdaptivePageSize size = new AdaptivePageSize(100, 10, 200);
+        ReportImpl report = new ReportImpl();
+
+        // constant latency, so throughput grows with the page size
+        long current = size.getSize();
+        for (int i = 0; i < 10; i++) {
+            current = size.update(current, current, 100, false, report);
+        }
+        assertThat("upper bound", current, is(200l));
+        assertThat("changes reported", report.getMessages().size(), greaterThan(0));
+    }
+
+    @Test
+    public void reversesWhenThroughputDrops() {
+        AdaptivePageSize size = new AdaptivePageSize(100, 10, 500);
+        ReportImpl report = new ReportImpl();
+
+        assertThat("grows", size.update(100, 100, 100, false, report), is(125l));
+        assertThat("shrinks after throughput drop", size.update(125, 125, 1000, false, report), is(93l));
+    }
+
+    @Test
+    public void runnerUsesAdaptiveSizes() throws IOException {
+        CswToBuilderMapper mapper = new CswToBuilderMapper(new YamlMappingConfiguration(
+                Resources.asByteSource(Resources.getResource("mappings/csw-record.yml")).openStream(),
+                new XPathHelper()));
+        // a delay per request makes larger pages faster, without it the throughput is only noise
+        SyntheticCswSource source = new SyntheticCswSource(100, 20);
+        CollectingSink sink = new CollectingSink();
+
+        Report report = new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setAdaptiveBulkSize(4, 20)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("all records stored", sink.getRecords().size(), is(100));
+        assertThat("all records reported", report.getNumberOfRecordsAdded(), is(100));
+
+        List<long[]> requests = source.getRequests();
+        long next = 1;
+        for (long[] request : requests) {
+            assertThat("pages are contiguous", request[0], is(next));
+            assertThat("page size within bounds", request[1], allOf(greaterThanOrEqualTo(1l),
+                    lessThanOrEqualTo(20l)));
+            next += request[1];
+        }
+        assertThat("fewer pages than with fixed size", requests.size(), lessThan(20));
+        assertThat("statistics", report.getStatistics(), hasKey("paging.size.largest"));
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Collectors;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.control.impl.CheckpointJournal;
+import org.n52.youngs.control.impl.SingleThreadBulkRunner;
+import org.n52.youngs.control.impl.SingleThreadBulkRunner.ResumeMode;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class CheckpointJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CswToBuilderMapper mapper;
+
+    private Path checkpoint;
+
+    @Before
+    public void setUp() throws IOException {
+        mapper = new CswToBuilderMapper(new YamlMappingConfiguration(
+                Resources.asByteSource(Resources.getResource("mappings/csw-record.yml")).openStream(),
+                new XPathHelper()));
+        checkpoint = folder.getRoot().toPath().resolve("harvest.checkpoint.json");
+    }
+
+    @Test
+    public void journalRecordsFailures() throws IOException {
+        SyntheticCswSource source = new SyntheticCswSource(15, 0).failAt(6, 1);
+        CollectingSink sink = new CollectingSink().reject("record-3");
+
+        new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        CheckpointJournal journal = CheckpointJournal.read(checkpoint).get();
+        assertThat("last stored position before failed page", journal.getLastStoredPosition(), is(5l));
+        assertThat("last processed position", journal.getLastProcessedPosition(), is(15l));
+        assertThat("failed record", journal.getFailedRecords().keySet(), contains("record-3"));
+        assertThat("failed record page", journal.getFailedRecords().get("record-3").getPageStart(), is(1l));
+        assertThat("failed page", journal.getFailedPages().stream().map(CheckpointJournal.FailedRecord::getPageStart)
+                .collect(Collectors.toList()), contains(6l));
+        assertThat("mapping matches", journal.matches(source.getEndpoint().toString(), mapper.getMapper()), is(true));
+    }
+
+    @Test
+    public void retryFailedOnly() throws IOException {
+        SyntheticCswSource source = new SyntheticCswSource(15, 0).failAt(6, 1);
+        new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .harvest(source)
+                .transform(mapper)
+                .load(new CollectingSink().reject("record-3"));
+
+        CollectingSink sink = new CollectingSink();
+        Report report = new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .setResumeMode(ResumeMode.RETRY_FAILED)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("failed record and page stored", sink.getRecords().stream().map(SinkRecord::getId)
+                .collect(Collectors.toList()), containsInAnyOrder("record-3", "record-6", "record-7", "record-8",
+                "record-9", "record-10"));
+        assertThat("report", report.getNumberOfRecordsSuccesful(), is(6));
+        CheckpointJournal journal = CheckpointJournal.read(checkpoint).get();
+        assertThat("no failed records left", journal.getFailedRecords().keySet(), is(empty()));
+        assertThat("no failed pages left", journal.getFailedPages(), is(empty()));
+    }
+
+    @Test
+    public void retryFailedByIdentifierAndUpdateFingerprints() throws IOException {
+        Path fingerprints = folder.getRoot().toPath().resolve("harvest.fingerprints");
+        SyntheticCswSource source = new SyntheticCswSource(10, 0);
+        new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .setFingerprintFile(fingerprints)
+                .harvest(source)
+                .transform(mapper)
+                .load(new CollectingSink().error("record-7"));
+
+        assertThat("failure keyed by identifier", CheckpointJournal.read(checkpoint).get().getFailedRecords()
+                .keySet(), contains("record-7"));
+        assertThat("fingerprints of stored records", Files.readAllLines(fingerprints), hasSize(9));
+
+        CollectingSink sink = new CollectingSink();
+        new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .setFingerprintFile(fingerprints)
+                .setResumeMode(ResumeMode.RETRY_FAILED)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("failed record stored", sink.getRecords().stream().map(SinkRecord::getId)
+                .collect(Collectors.toList()), contains("record-7"));
+        assertThat("no failed records left", CheckpointJournal.read(checkpoint).get().getFailedRecords().keySet(),
+                is(empty()));
+        assertThat("fingerprint of retried record", Files.readAllLines(fingerprints), hasSize(10));
+    }
+
+    @Test
+    public void continueFromFailedPage() throws IOException {
+        SyntheticCswSource source = new SyntheticCswSource(15, 0).failAt(6, 1);
+        new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .harvest(source)
+                .transform(mapper)
+                .load(new CollectingSink());
+
+        CollectingSink sink = new CollectingSink();
+        new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .setResumeMode(ResumeMode.CONTINUE)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("first stored record", sink.getRecords().get(0).getId(), is("record-6"));
+        CheckpointJournal journal = CheckpointJournal.read(checkpoint).get();
+        assertThat("no failed pages left", journal.getFailedPages(), is(empty()));
+        assertThat("checkpoint at end", journal.getLastStoredPosition(), is(15l));
+    }
+
+    @Test
+    public void continueAfterAbort() throws IOException {
+        SyntheticCswSource source = new SyntheticCswSource(20, 0).crashAt(11);
+        try {
+            new SingleThreadBulkRunner()
+                    .setBulkSize(5)
+                    .setCheckpointFile(checkpoint)
+                    .harvest(source)
+                    .transform(mapper)
+                    .load(new CollectingSink());
+            fail("harvest should be aborted");
+        } catch (Error e) {
+            // expected
+        }
+        assertThat("checkpoint after second page", CheckpointJournal.read(checkpoint).get().getLastStoredPosition(),
+                is(10l));
+
+        CollectingSink sink = new CollectingSink();
+        Report report = new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setCheckpointFile(checkpoint)
+                .setResumeMode(ResumeMode.CONTINUE)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("remaining records stored", report.getNumberOfRecordsSuccesful(), is(equalTo(10)));
+        assertThat("first stored record", sink.getRecords().get(0).getId(), is("record-11"));
+        assertThat("checkpoint at end", CheckpointJournal.read(checkpoint).get().getLastStoredPosition(), is(20l));
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.n52.youngs.exception.SinkError;
+import org.n52.youngs.load.Sink;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.transform.MappingConfiguration;
+
+/**
+ * A sink for tests that keeps all stored records in memory.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class CollectingSink implements Sink {
+
+    private final List<SinkRecord> records = new CopyOnWriteArrayList<>();
+
+    private final Set<String> rejectedIds = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> errorIds = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, AtomicInteger> crashes = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean prepare(MappingConfiguration mapping) throws SinkError {
+        return true;
+    }
+
+    @Override
+    public boolean store(SinkRecord record) throws SinkError {
+        AtomicInteger crash = crashes.get(record.getId());
+        if (crash != null && crash.getAndDecrement() > 0) {
+            throw new IllegalStateException("Crash storing record " + record.getId());
+        }
+        if (errorIds.contains(record.getId())) {
+            throw new SinkError("Error storing record %s", record.getId());
+        }
+        if (rejectedIds.contains(record.getId())) {
+            return false;
+        }
+        return records.add(record);
+    }
+
+    @Override
+    public boolean store(Collection<SinkRecord> records) throws SinkError {
+        return this.records.addAll(records);
+    }
+
+    @Override
+    public boolean clear(MappingConfiguration mapping) {
+        records.clear();
+        return true;
+    }
+
+    /**
+     * @param ids identifiers of records that are not stored
+     */
+    public CollectingSink reject(String... ids) {
+        rejectedIds.addAll(Arrays.asList(ids));
+        return this;
+    }
+
+    /**
+     * @param ids identifiers of records that fail with an error
+     */
+    public CollectingSink error(String... ids) {
+        errorIds.addAll(Arrays.asList(ids));
+        return this;
+    }
+
+    /**
+     * @param id identifier of a record that fails with a runtime exception
+     * @param times how often storing the record fails
+     */
+    public CollectingSink crash(String id, int times) {
+        crashes.put(id, new AtomicInteger(times));
+        return this;
+    }
+
+    public List<SinkRecord> getRecords() {
+        return records;
+    }
+
+}
@@ -21,21 +21,29 @@ import org.n52.youngs.impl.SourceRecordHelper;
 import com.google.common.io.Resources;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
 import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.lessThan;
 import org.junit.Assert;
 import static org.junit.Assert.assertThat;
 import org.junit.Before;
 import org.junit.Test;
+import org.n52.youngs.harvest.NodeSourceRecord;
 import org.n52.youngs.harvest.SourceRecord;
 import org.n52.youngs.impl.XPathHelper;
 import org.n52.youngs.load.impl.BuilderRecord;
 import org.n52.youngs.transform.impl.CswToBuilderMapper;
 import org.n52.youngs.transform.impl.YamlMappingConfiguration;
 import static org.n52.youngs.util.JsonMatchers.hasJsonPath;
+import org.w3c.dom.Document;
 
 /**
  *
@@ -174,6 +182,32 @@ public class CswToBuilderMapperTest {
                         containsString("[[-11.1,14.0],[12.22,-13.0]]")));
     }
 
+    @Test
+    public void polygonFromPosList() throws Exception {
+        YamlMappingConfiguration c = new YamlMappingConfiguration(
+                Resources.asByteSource(Resources.getResource("mappings/testmapping-gmd-polygon.yml")).openStream(),
+                new XPathHelper());
+        CswToBuilderMapper m = new CswToBuilderMapper(c);
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(
+                Resources.asByteSource(Resources.getResource("records/gmd/polygon.xml")).openStream());
+        BuilderRecord mappedRecord = m.map(new NodeSourceRecord(document.getDocumentElement(), "dom"));
+        String mappedRecordString = Strings.toString(mappedRecord.getBuilder());
+
+        mapper.disable(SerializationFeature.INDENT_OUTPUT);
+        mappedRecordString = mapper.readTree(mappedRecordString).toString();
+
+        assertThat("Mapped record contains simplified polygons with hole", mappedRecordString,
+                allOf(containsString("\"type\":\"multipolygon\""),
+                        containsString("[[[[7.0,50.0],[9.0,50.0],[9.0,51.0],[7.0,51.0],[7.0,50.0]],"
+                                + "[[7.2,50.2],[7.4,50.2],[7.4,50.4],[7.2,50.2]]],"
+                                + "[[[10.0,52.0],[11.0,52.0],[11.0,53.0],[10.0,52.0]]]]")));
+        assertThat("Mapped record contains envelope of all lists", mappedRecordString,
+                containsString("\"extent\":{\"type\":\"envelope\",\"coordinates\":[[7.0,53.0],[11.0,50.0]]}"));
+    }
+
     @Test
     public void removeWhitespace() throws Exception {
         YamlMappingConfiguration c = new YamlMappingConfiguration(
@@ -229,4 +263,43 @@ public class CswToBuilderMapperTest {
                 not(containsString("<?xml")));
     }
 
+    @Test
+    public void compactByDefault() throws Exception {
+        SourceRecord record = SourceRecordHelper.getSourceRecordFromFile("records/csw/Record_ab42a8c4-95e8-4630-bf79-33e59241605a.xml");
+        String compact = Strings.toString(cswMapper.map(record).getBuilder());
+        String pretty = Strings.toString(new CswToBuilderMapper(cswConfiguration).setPrettyPrint(true)
+                .map(record).getBuilder());
+
+        assertThat("Compact record has no indentation", compact, not(containsString("\n  \"")));
+        assertThat("Pretty record is indented", pretty, containsString("\n  \"id\" : "));
+        assertThat("Compact record is smaller", compact.length(), lessThan(pretty.length()));
+        assertThat("Compact and pretty records have the same content", content(compact, XContentType.JSON),
+                is(content(pretty, XContentType.JSON)));
+    }
+
+    @Test
+    public void binaryContentTypes() throws Exception {
+        SourceRecord record = SourceRecordHelper.getSourceRecordFromFile("records/csw/Record_ab42a8c4-95e8-4630-bf79-33e59241605a.xml");
+        Map<String, Object> json = content(cswMapper.map(record), XContentType.JSON);
+
+        for (XContentType type : new XContentType[]{XContentType.SMILE, XContentType.CBOR}) {
+            BuilderRecord mappedRecord = new CswToBuilderMapper(cswConfiguration).setContentType(type).map(record);
+            assertThat("Builder has content type " + type, mappedRecord.getBuilder().contentType(), is(type));
+            assertThat("Content of " + type + " equals JSON", content(mappedRecord, type), is(json));
+        }
+    }
+
+    private static Map<String, Object> content(BuilderRecord record, XContentType type) {
+        Map<String, Object> content = XContentHelper.convertToMap(BytesReference.bytes(record.getBuilder()), false,
+                type).v2();
+        content.remove("youngs_created_on");
+        return content;
+    }
+
+    private static Map<String, Object> content(String json, XContentType type) {
+        Map<String, Object> content = XContentHelper.convertToMap(type.xContent(), json, false);
+        content.remove("youngs_created_on");
+        return content;
+    }
+
 }
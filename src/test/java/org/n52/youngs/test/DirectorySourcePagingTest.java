@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.base.Charsets;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.youngs.harvest.DirectorySource;
+import org.n52.youngs.harvest.JsonDirectorySource;
+import org.n52.youngs.harvest.JsonNodeSourceRecord;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.ReportImpl;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class DirectorySourcePagingTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path xmlDirectory;
+
+    private Path jsonDirectory;
+
+    @Before
+    public void createFiles() throws IOException {
+        xmlDirectory = folder.newFolder("xml").toPath();
+        jsonDirectory = folder.newFolder("json").toPath();
+        // written in reverse order, so that the listing order is unlikely to be sorted already
+        for (int i = 20; i > 0; i--) {
+            String name = String.format("record-%02d", i);
+            Files.write(xmlDirectory.resolve(name + ".xml"),
+                    String.format("<record><id>%s</id></record>", name).getBytes(Charsets.UTF_8));
+            Files.write(jsonDirectory.resolve(name + ".json"),
+                    String.format("{\"id\": \"%s\"}", name).getBytes(Charsets.UTF_8));
+        }
+    }
+
+    private static class CountingDirectorySource extends DirectorySource {
+
+        private final AtomicInteger parsed = new AtomicInteger(0);
+
+        CountingDirectorySource(Path directory) {
+            super(directory);
+        }
+
+        @Override
+        protected SourceRecord readRecordFromFile(File f) throws IOException {
+            parsed.incrementAndGet();
+            return super.readRecordFromFile(f);
+        }
+
+    }
+
+    private static List<String> ids(Collection<SourceRecord> records) {
+        return records.stream()
+                .map(r -> r instanceof NodeSourceRecord
+                        ? ((NodeSourceRecord) r).getRecord().getTextContent()
+                        : ((JsonNodeSourceRecord) r).getRecord().get("id").asText())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void onlyRequestedPageIsParsed() throws SourceException {
+        CountingDirectorySource source = new CountingDirectorySource(xmlDirectory);
+
+        assertThat("count", source.getRecordCount(), is(20l));
+        assertThat("nothing parsed for count", source.parsed.get(), is(0));
+
+        Collection<SourceRecord> page = source.getRecords(6, 3, new ReportImpl());
+        assertThat("sorted page", ids(page), contains("record-06", "record-07", "record-08"));
+        assertThat("only page parsed", source.parsed.get(), is(3));
+
+        assertThat("last page", ids(source.getRecords(19, 10, new ReportImpl())), contains("record-19", "record-20"));
+        assertThat("beyond end", source.getRecords(25, 10, new ReportImpl()).size(), is(0));
+    }
+
+    @Test
+    public void parallelParsingKeepsOrder() throws SourceException {
+        DirectorySource sequential = new DirectorySource(xmlDirectory);
+        DirectorySource parallel = new DirectorySource(xmlDirectory);
+        parallel.setParallelism(4);
+
+        assertThat("same records", ids(parallel.getRecords(3, 15, new ReportImpl())),
+                is(ids(sequential.getRecords(3, 15, new ReportImpl()))));
+        assertThat("all records", parallel.getRecords(new ReportImpl()).size(), is(20));
+    }
+
+    @Test
+    public void jsonPages() throws SourceException {
+        JsonDirectorySource source = new JsonDirectorySource(jsonDirectory);
+        source.setParallelism(2);
+
+        assertThat("count", source.getRecordCount(), is(20l));
+        assertThat("sorted page", ids(source.getRecords(1, 2, new ReportImpl())), contains("record-01", "record-02"));
+    }
+
+    @Test
+    public void unparseableFileFailsPage() throws IOException, SourceException {
+        Files.write(xmlDirectory.resolve("record-10.xml"), "<record>".getBytes(Charsets.UTF_8));
+        DirectorySource source = new DirectorySource(xmlDirectory);
+        source.setParallelism(2);
+
+        assertThat("other pages", source.getRecords(1, 5, new ReportImpl()).size(), is(5));
+        try {
+            source.getRecords(6, 5, new ReportImpl());
+            fail("page with unparseable file must fail");
+        } catch (SourceException e) {
+            assertThat("file named", e.getMessage().contains("record-10.xml"), is(true));
+        }
+    }
+
+}
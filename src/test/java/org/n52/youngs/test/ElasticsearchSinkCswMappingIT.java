@@ -20,11 +20,13 @@ import org.n52.youngs.impl.SourceRecordHelper;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.apache.http.client.fluent.Request;
 import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import org.junit.After;
@@ -32,6 +34,7 @@ import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.ReportImpl;
 import org.n52.youngs.impl.XPathHelper;
 import org.n52.youngs.load.Sink;
 import org.n52.youngs.load.SinkRecord;
@@ -108,6 +111,27 @@ public class ElasticsearchSinkCswMappingIT {
         assertThat("record is found", recordResponse, hasJsonPath("_source.type", is("series")));
     }
 
+    @Test
+    public void storeBulk() throws Exception {
+        Collection<SourceRecord> records = SourceRecordHelper.loadGetRecordsResponse(Resources.asByteSource(Resources.getResource("responses/dab-records-csw.xml")).openStream());
+        List<SinkRecord> mappedRecords = records.stream().map(mapper::map).collect(Collectors.toList());
+
+        ElasticsearchClientSink bulkSink = (ElasticsearchClientSink) new ElasticsearchClientSink(server.getClient(),
+                "elasticsearch", mapping.getIndex(), mapping.getType())
+                .setBulkEnabled(true)
+                .setBulkActions(3)
+                .setBulkConcurrentRequests(2);
+        ReportImpl report = new ReportImpl();
+        mappedRecords.forEach(r -> bulkSink.storeBulk(r, report));
+        boolean flushed = bulkSink.flush(10, TimeUnit.SECONDS);
+
+        assertThat("bulks completed", flushed);
+        assertThat("all records reported as stored", report.getNumberOfRecordsSuccesful(), is(mappedRecords.size()));
+        assertThat("no records failed", report.getNumberOfRecordsFailed(), is(0));
+        assertThat("ids reported", report.getAddedIds(),
+                hasItem("urn:x-wmo:md:int.eumetsat::EO:EUM:DAT:METOP:ORBITVIEW"));
+    }
+
     @Test
     public void mapAndStoreFile() throws Exception {
         SourceRecord sourceRecord = SourceRecordHelper.getSourceRecordFromFile("records/csw/Record_94bc9c83-97f6-4b40-9eb8-a8e8787a5c63.xml");
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.stream.StreamSource;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.control.impl.FingerprintStore;
+import org.n52.youngs.control.impl.SingleThreadBulkRunner;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.impl.SaxonHelper;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.transform.MappingConfiguration;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class FingerprintStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String mapping;
+
+    private Path fingerprints;
+
+    @Before
+    public void setUp() throws IOException {
+        mapping = Resources.toString(Resources.getResource("mappings/csw-record.yml"), StandardCharsets.UTF_8);
+        fingerprints = folder.getRoot().toPath().resolve("harvest.fingerprints");
+    }
+
+    @Test
+    public void unchangedRecordsAreSkipped() throws IOException {
+        CollectingSink sink = new CollectingSink().reject("record-3");
+        Report first = harvest(new SyntheticCswSource(15, 0), mapping, sink);
+
+        assertThat("stored in first run", first.getNumberOfRecordsSuccesful(), is(14));
+        assertThat("skipped in first run", first.getNumberOfRecordsSkipped(), is(0));
+        assertThat("fingerprints", Files.readAllLines(fingerprints), hasSize(14));
+
+        sink = new CollectingSink();
+        Report second = harvest(new SyntheticCswSource(15, 0), mapping, sink);
+
+        assertThat("failed record is stored again", sink.getRecords().stream().map(SinkRecord::getId)
+                .collect(Collectors.toList()), contains("record-3"));
+        assertThat("skipped in second run", second.getNumberOfRecordsSkipped(), is(14));
+        assertThat("fingerprints", Files.readAllLines(fingerprints), hasSize(15));
+
+        sink = new CollectingSink();
+        Report third = harvest(new SyntheticCswSource(15, 0), mapping, sink);
+
+        assertThat("stored in third run", sink.getRecords(), hasSize(0));
+        assertThat("skipped in third run", third.getNumberOfRecordsSkipped(), is(15));
+        assertThat("statistic", third.getStatistics().get("fingerprints.updated"), is(0));
+    }
+
+    @Test
+    public void changedMappingVersionStoresAllRecords() throws IOException {
+        harvest(new SyntheticCswSource(10, 0), mapping, new CollectingSink());
+
+        CollectingSink sink = new CollectingSink();
+        Report report = harvest(new SyntheticCswSource(10, 0), mapping.replaceFirst("version: 1", "version: 2"), sink);
+
+        assertThat("stored", sink.getRecords(), hasSize(10));
+        assertThat("skipped", report.getNumberOfRecordsSkipped(), is(0));
+    }
+
+    @Test
+    public void canonicalFormIgnoresPrefixesAttributeOrderAndWhitespace() throws Exception {
+        MappingConfiguration config = configuration(mapping);
+        String a = fingerprint("<csw:Record xmlns:csw=\"http://www.opengis.net/cat/csw/2.0.2\" a=\"1\" b=\"2\">"
+                + "<csw:title>Title</csw:title></csw:Record>", config);
+        String b = fingerprint("<Record xmlns=\"http://www.opengis.net/cat/csw/2.0.2\" b=\"2\" a=\"1\">\n  "
+                + "<title><![CDATA[Ti]]>tle</title>\n  <!-- comment -->\n</Record>", config);
+        String c = fingerprint("<Record xmlns=\"http://www.opengis.net/cat/csw/2.0.2\" b=\"2\" a=\"1\">"
+                + "<title>Title 2</title></Record>", config);
+
+        assertThat("same record", b, is(equalTo(a)));
+        assertThat("changed text", c, is(not(equalTo(a))));
+
+        String xml = "<Record xmlns=\"http://www.opengis.net/cat/csw/2.0.2\" a=\"1\"><title>Title</title></Record>";
+        TinyTreeSourceRecord tree = new TinyTreeSourceRecord(SaxonHelper.documentElement(
+                SaxonHelper.buildTree(new StreamSource(new StringReader(xml)))), "tree");
+        assertThat("tree and DOM", FingerprintStore.fingerprint(tree, config),
+                is(equalTo(Optional.of(fingerprint(xml, config)))));
+    }
+
+    private Report harvest(SyntheticCswSource source, String mapping, CollectingSink sink) throws IOException {
+        return new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setFingerprintFile(fingerprints)
+                .harvest(source)
+                .transform(new CswToBuilderMapper(configuration(mapping)))
+                .load(sink);
+    }
+
+    private static YamlMappingConfiguration configuration(String mapping) throws IOException {
+        return new YamlMappingConfiguration(new ByteArrayInputStream(mapping.getBytes(StandardCharsets.UTF_8)),
+                new XPathHelper());
+    }
+
+    private static String fingerprint(String xml, MappingConfiguration config) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Element element = factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)))
+                .getDocumentElement();
+        return FingerprintStore.fingerprint(new NodeSourceRecord(element, "dom"), config).get();
+    }
+
+}
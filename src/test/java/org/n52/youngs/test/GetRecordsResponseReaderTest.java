@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.n52.youngs.harvest.GetRecordsResponseReader;
+import org.n52.youngs.harvest.GetRecordsResponseReader.SearchResults;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.NamespaceContextImpl;
+import org.w3c.dom.Element;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class GetRecordsResponseReaderTest {
+
+    private final GetRecordsResponseReader reader = new GetRecordsResponseReader();
+
+    @Test
+    public void readCswRecords() throws IOException, SourceException, XPathExpressionException {
+        Collection<SourceRecord> records;
+        try (InputStream is = Resources.asByteSource(Resources.getResource("responses/dab-records-csw.xml"))
+                .openStream()) {
+            records = reader.readRecords(is);
+        }
+
+        assertThat("record count", records.size(), is(17));
+        NodeSourceRecord first = (NodeSourceRecord) records.iterator().next();
+        assertThat("protocol identifier", first.getProtocolIdentifier(), is("csw-record-0"));
+        assertThat("own document", first.getRecord().getOwnerDocument().getDocumentElement(),
+                is(first.getRecord()));
+        assertThat("record element", first.getRecord().getLocalName(), is("Record"));
+
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        xpath.setNamespaceContext(NamespaceContextImpl.create());
+        assertThat("identifier", xpath.evaluate("/csw:Record/dc:identifier", first.getRecord()),
+                is("urn:x-wmo:md:int.eumetsat::EO:EUM:DAT:METOP:ORBITVIEW"));
+        assertThat("inherited namespace declared", ((Element) first.getRecord())
+                .getAttribute("xmlns:xsi"), is("http://www.w3.org/2001/XMLSchema-instance"));
+    }
+
+    @Test
+    public void readSearchResults() throws IOException, SourceException {
+        List<Element> elements = Lists.newArrayList();
+        SearchResults results;
+        try (InputStream is = Resources.asByteSource(Resources.getResource("responses/dab-records-iso.xml"))
+                .openStream()) {
+            results = reader.read(is, elements::add);
+        }
+
+        assertThat("matched", results.getNumberOfRecordsMatched(), is(911624l));
+        assertThat("returned", results.getNumberOfRecordsReturned(), is(10l));
+        assertThat("records", results.getRecords(), is(10));
+        assertThat("elements", elements.size(), is(10));
+        assertThat("namespace", elements.get(0).getNamespaceURI(), is("http://www.isotc211.org/2005/gmd"));
+    }
+
+    @Test
+    public void readRecordsMatched() throws IOException, SourceException {
+        try (InputStream is = Resources.asByteSource(Resources.getResource("responses/dab-records-csw.xml"))
+                .openStream()) {
+            assertThat("matched", reader.readRecordsMatched(is), is(909727l));
+        }
+    }
+
+    @Test
+    public void exceptionReport() throws IOException {
+        String report = "<ows:ExceptionReport xmlns:ows=\"http://www.opengis.net/ows\" version=\"1.0.0\">"
+                + "<ows:Exception exceptionCode=\"InvalidParameterValue\">"
+                + "<ows:ExceptionText>startPosition is invalid</ows:ExceptionText>"
+                + "</ows:Exception></ows:ExceptionReport>";
+        try {
+            reader.readRecords(new ByteArrayInputStream(report.getBytes(Charsets.UTF_8)));
+            fail("exception report must fail");
+        } catch (SourceException e) {
+            assertThat("exception text", e.getMessage(), containsString("startPosition is invalid"));
+        }
+    }
+
+}
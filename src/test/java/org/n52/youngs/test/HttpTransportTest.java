@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Resources;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import org.apache.http.client.HttpResponseException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.youngs.harvest.CswSource;
+import org.n52.youngs.harvest.HttpTransport;
+import org.n52.youngs.harvest.KvpCswSource;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.NamespaceContextImpl;
+import org.n52.youngs.impl.ReportImpl;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class HttpTransportTest {
+
+    private HttpServer server;
+
+    private HttpTransport transport;
+
+    private final List<String> acceptEncodings = Lists.newCopyOnWriteArrayList();
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private byte[] response;
+
+    @Before
+    public void startServer() throws IOException {
+        response = Resources.toByteArray(Resources.getResource("responses/dab-records-csw.xml"));
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/csw", exchange -> {
+            acceptEncodings.add(String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")));
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            try (InputStream in = exchange.getRequestBody()) {
+                ByteStreams.toByteArray(in);
+            }
+            byte[] body = response;
+            String encoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (encoding != null && encoding.contains("gzip")) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (OutputStream gzip = new GZIPOutputStream(bytes)) {
+                    gzip.write(body);
+                }
+                body = bytes.toByteArray();
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/missing", exchange -> {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        transport = new HttpTransport();
+    }
+
+    @After
+    public void stopServer() throws IOException {
+        transport.close();
+        server.stop(0);
+    }
+
+    private String url(String path) {
+        return String.format("http://localhost:%s%s", server.getAddress().getPort(), path);
+    }
+
+    @Test
+    public void compressedResponseIsDecoded() throws IOException {
+        try (InputStream in = transport.get(url("/csw"))) {
+            assertThat("decompressed body", ByteStreams.toByteArray(in), is(response));
+        }
+        assertThat("compression requested", acceptEncodings.get(0), is("gzip, deflate"));
+    }
+
+    @Test
+    public void compressionCanBeDisabled() throws IOException {
+        transport.setCompression(false);
+        try (InputStream in = transport.get(url("/csw"))) {
+            assertThat("body", ByteStreams.toByteArray(in), is(response));
+        }
+        assertThat("no compression requested", acceptEncodings.get(0), is("null"));
+    }
+
+    @Test
+    public void connectionsAreReused() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            try (InputStream in = transport.get(url("/csw"))) {
+                ByteStreams.toByteArray(in);
+            }
+        }
+        assertThat("one persistent connection", clientPorts.size(), is(1));
+    }
+
+    @Test
+    public void errorStatusFails() throws IOException {
+        try (InputStream in = transport.get(url("/missing"))) {
+            fail("error status must fail");
+        } catch (HttpResponseException e) {
+            assertThat("status", e.getStatusCode(), is(404));
+        }
+    }
+
+    @Test
+    public void sourceUsesTransport() throws Exception {
+        CswSource source = new KvpCswSource(new URL(url("/csw")),
+                (Collection<String>) ImmutableList.of("http://www.opengis.net/cat/csw/2.0.2"),
+                NamespaceContextImpl.create(), "csw:Record", "http://www.opengis.net/cat/csw/2.0.2")
+                .setTransport(transport);
+
+        Collection<SourceRecord> records = source.getRecords(1, 17, new ReportImpl());
+        assertThat("records", records.size(), is(17));
+        assertThat("record count", source.getRecordCount(), is(909727l));
+    }
+
+    @Test(expected = SourceException.class)
+    public void sourceFailsOnErrorStatus() throws Exception {
+        CswSource source = new KvpCswSource(new URL(url("/missing")),
+                (Collection<String>) ImmutableList.of("http://www.opengis.net/cat/csw/2.0.2"),
+                NamespaceContextImpl.create(), "csw:Record", "http://www.opengis.net/cat/csw/2.0.2")
+                .setTransport(transport);
+
+        source.getRecords(1, 17, new ReportImpl());
+    }
+
+}
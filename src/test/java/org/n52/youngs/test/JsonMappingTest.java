@@ -15,10 +15,12 @@
  */
 package org.n52.youngs.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
@@ -34,6 +36,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.n52.youngs.harvest.JsonNodeSourceRecord;
 import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.json.JsonConstants;
 import org.n52.youngs.load.SinkRecord;
 import org.n52.youngs.load.impl.BuilderRecord;
 import org.n52.youngs.transform.impl.JsonToBuilderMapper;
@@ -43,6 +46,7 @@ import org.n52.youngs.transform.impl.LightweightYamlMappingConfiguration;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 
 public class JsonMappingTest {
@@ -146,6 +150,27 @@ public class JsonMappingTest {
         checkAvailableFormats(mappedRecordJsonNode);
     }
 
+    @Test
+    public void testDocumentIsRecordWithFulltext() throws IOException {
+        LightweightYamlMappingConfiguration mapper = new LightweightYamlMappingConfiguration(getClass().getClassLoader().getResourceAsStream("mappings/json-record.yml"));
+        ObjectNode record = (ObjectNode) objectMapper.readTree(getClass().getClassLoader().getResourceAsStream("records/json/record2.json"));
+        record.remove(JsonConstants.FIELDNAME_FULL_TEXT);
+        record.put("int", 1)
+              .put("long", 10000000000L)
+              .put("double", 0.1)
+              .put("bigInteger", new BigInteger("123456789012345678901234567890"))
+              .put("boolean", true)
+              .putNull("null");
+
+        BuilderRecord mappedRecord = (BuilderRecord) new JsonToBuilderMapper(mapper).map(new JsonNodeSourceRecord(record, ""));
+        JsonNode document = objectMapper.readTree(Strings.toString(mappedRecord.getBuilder()));
+        assertEquals("Document equals the mapped record", record, document);
+
+        JsonNode fulltext = objectMapper.readTree(document.path(JsonConstants.FIELDNAME_FULL_TEXT).asText());
+        ((ObjectNode) document).remove(JsonConstants.FIELDNAME_FULL_TEXT);
+        assertEquals("Fulltext is the serialized document", document, fulltext);
+    }
+
     private void checkTypicalFilenames(JsonNode mappedRecordJsonNode) {
         JsonNode typicalFileNameNode = mappedRecordJsonNode.findPath(FIELDNAME_TYPICAL_FILENAME);
         assertTrue(String.format("Node not instanceof ArrayNode. Is instance of %s.", typicalFileNameNode.getClass().getCanonicalName()), typicalFileNameNode instanceof ArrayNode);
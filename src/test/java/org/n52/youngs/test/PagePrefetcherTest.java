@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.stream.Collectors;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.control.impl.PagePrefetcher;
+import org.n52.youngs.control.impl.SingleThreadBulkRunner;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.ReportImpl;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class PagePrefetcherTest {
+
+    @Test
+    public void pagesReturnedInOrderAndRequestedAhead() throws Exception {
+        SyntheticCswSource source = new SyntheticCswSource(20, 20);
+        try (PagePrefetcher prefetcher = new PagePrefetcher(source, 3, 100, new ReportImpl())) {
+            for (long start = 1; start <= 20; start += 5) {
+                Collection<SourceRecord> records = prefetcher.getRecords(start, 5, 5, 20);
+                assertThat("page content", records.stream().map(SourceRecord::getProtocolIdentifier)
+                        .collect(Collectors.toList()).get(0), is(equalTo("synthetic-" + start)));
+                assertThat("page size", records.size(), is(5));
+            }
+        }
+
+        assertThat("every page requested once", source.getRequests().stream().map(r -> r[0])
+                .collect(Collectors.toList()), containsInAnyOrder(1l, 6l, 11l, 16l));
+        assertThat("requests overlap", source.getMaxConcurrentRequests(), is(greaterThan(1)));
+    }
+
+    @Test
+    public void bufferedRecordsAreCapped() throws Exception {
+        SyntheticCswSource source = new SyntheticCswSource(100, 50);
+        try (PagePrefetcher prefetcher = new PagePrefetcher(source, 10, 20, new ReportImpl())) {
+            prefetcher.getRecords(1, 10, 10, 100);
+            assertThat("only pages within the cap requested", source.getRequests().size(),
+                    is(lessThanOrEqualTo(3)));
+        }
+    }
+
+    @Test
+    public void runnerWithLookahead() throws IOException {
+        SyntheticCswSource source = new SyntheticCswSource(23, 10);
+        CswToBuilderMapper mapper = new CswToBuilderMapper(new YamlMappingConfiguration(
+                Resources.asByteSource(Resources.getResource("mappings/csw-record.yml")).openStream(),
+                new XPathHelper()));
+        CollectingSink sink = new CollectingSink();
+
+        Report report = new SingleThreadBulkRunner()
+                .setBulkSize(5)
+                .setPageLookahead(2)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("all records stored", report.getNumberOfRecordsSuccesful(), is(23));
+        assertThat("every page requested once", source.getRequests().size(), is(5));
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import org.elasticsearch.common.Strings;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.control.impl.RecordProcessor;
+import org.n52.youngs.control.impl.SingleThreadBulkRunner;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.ReportImpl;
+import org.n52.youngs.impl.SourceRecordHelper;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.load.impl.BuilderRecord;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class ParallelMappingTest {
+
+    private static final int THREADS = 8;
+
+    private static final int REPETITIONS = 10;
+
+    private static final String[] GMI_FILES = new String[]{
+        "records/gmi/metadata_10.xml",
+        "records/gmi/metadata_81.xml",
+        "records/gmi/metadata_91.xml",
+        "records/gmi/EO EUM DAT METOP IASSND02.xml"};
+
+    private static final String[] GMD_FILES = new String[]{
+        "records/gmd/metadata_1000.xml",
+        "records/gmd/metadata_1000b.xml",
+        "records/gmd/metadata_fulltext.xml",
+        "records/gmi/metadata_10.xml",
+        "records/gmi/metadata_81.xml"};
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    private CswToBuilderMapper createMapper(String mapping) throws IOException {
+        try (InputStream is = Resources.asByteSource(Resources.getResource(mapping)).openStream()) {
+            return new CswToBuilderMapper(new YamlMappingConfiguration(is, new XPathHelper()));
+        }
+    }
+
+    private List<SourceRecord> loadRecords(String... files) throws Exception {
+        List<SourceRecord> records = Lists.newArrayList();
+        try (InputStream is = Resources.asByteSource(Resources.getResource("responses/dab-records-iso.xml"))
+                .openStream()) {
+            records.addAll(SourceRecordHelper.loadGetRecordsResponse(is));
+        }
+        for (String file : files) {
+            records.add(SourceRecordHelper.getSourceRecordFromFile(file));
+        }
+        return records;
+    }
+
+    private JsonNode toJson(SinkRecord record) throws IOException {
+        JsonNode node = json.readTree(Strings.toString(((BuilderRecord) record).getBuilder()));
+        // the only value that depends on the time of mapping
+        ((ObjectNode) node).remove("youngs_created_on");
+        return node;
+    }
+
+    private void assertConcurrentMappingMatchesSequential(String mapping, String... files) throws Exception {
+        CswToBuilderMapper mapper = createMapper(mapping);
+        assertThat("thread-safe", mapper.isThreadSafe(), is(true));
+        List<SourceRecord> records = loadRecords(files);
+
+        List<JsonNode> expected = Lists.newArrayList();
+        for (SourceRecord record : records) {
+            expected.add(toJson(mapper.map(record)));
+        }
+
+        List<Integer> work = Lists.newArrayList();
+        for (int r = 0; r < REPETITIONS; r++) {
+            for (int i = 0; i < records.size(); i++) {
+                work.add(i);
+            }
+        }
+        Collections.shuffle(work);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Callable<JsonNode[]>> tasks = work.stream()
+                    .map(i -> (Callable<JsonNode[]>) () -> new JsonNode[]{
+                expected.get(i), toJson(mapper.map(records.get(i)))})
+                    .collect(Collectors.toList());
+            for (Future<JsonNode[]> result : executor.invokeAll(tasks)) {
+                JsonNode[] pair = result.get();
+                assertThat("concurrent mapping equals sequential mapping", pair[1], is(pair[0]));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void gmdMappingConcurrently() throws Exception {
+        assertConcurrentMappingMatchesSequential("mappings/gmd-metadata.yml", GMD_FILES);
+    }
+
+    @Test
+    public void rawXmlMappingConcurrently() throws Exception {
+        assertConcurrentMappingMatchesSequential("mappings/eum-default.yml", GMI_FILES);
+    }
+
+    @Test
+    public void processorKeepsOrder() throws Exception {
+        CswToBuilderMapper mapper = createMapper("mappings/gmd-metadata.yml");
+        List<SourceRecord> records = loadRecords(GMD_FILES);
+
+        List<SinkRecord> sequential = new RecordProcessor(mapper, null, null).map(records, new ReportImpl());
+        List<SinkRecord> parallel;
+        try (RecordProcessor processor = new RecordProcessor(mapper, null, null).setMappingParallelism(4)) {
+            parallel = processor.map(records, new ReportImpl());
+        }
+
+        assertThat("same number", parallel.size(), is(sequential.size()));
+        for (int i = 0; i < sequential.size(); i++) {
+            assertThat("same order", parallel.get(i).getId(), is(sequential.get(i).getId()));
+            assertThat("same content", toJson(parallel.get(i)), is(toJson(sequential.get(i))));
+        }
+    }
+
+    @Test
+    public void runnerStopsMappingThreads() throws Exception {
+        CswToBuilderMapper mapper = createMapper("mappings/csw-record.yml");
+
+        Report report = new SingleThreadBulkRunner()
+                .setBulkSize(10)
+                .setMappingParallelism(4)
+                .harvest(new SyntheticCswSource(30, 0))
+                .transform(mapper)
+                .load(new CollectingSink());
+
+        assertThat("records stored", report.getNumberOfRecordsAdded(), is(30));
+        long running = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t instanceof ForkJoinWorkerThread)
+                .map(t -> ((ForkJoinWorkerThread) t).getPool())
+                .filter(pool -> pool != ForkJoinPool.commonPool() && !pool.isShutdown())
+                .count();
+        assertThat("mapping threads of the run stopped", running, is(0l));
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.control.impl.PartitionedBulkRunner;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class PartitionedBulkRunnerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CswToBuilderMapper mapper;
+
+    @Before
+    public void setUp() throws IOException {
+        mapper = new CswToBuilderMapper(new YamlMappingConfiguration(
+                Resources.asByteSource(Resources.getResource("mappings/csw-record.yml")).openStream(),
+                new XPathHelper()));
+    }
+
+    @Test
+    public void partitionsAreHarvestedConcurrently() {
+        SyntheticCswSource source = new SyntheticCswSource(100, 20);
+        CollectingSink sink = new CollectingSink();
+
+        Report report = new PartitionedBulkRunner()
+                .setBulkSize(10)
+                .setConcurrency(4)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("all records stored", sink.getRecords().size(), is(100));
+        assertThat("all records reported", report.getNumberOfRecordsAdded(), is(100));
+        assertThat("identified records", report.getIdentifiedRecordCount(), is(100));
+        assertThat("pages requested once", source.getRequests().size(), is(10));
+        assertThat("concurrent requests", source.getMaxConcurrentRequests(), greaterThan(1));
+        assertThat("concurrency limit", source.getMaxConcurrentRequests(), lessThanOrEqualTo(4));
+        assertThat("partition statistics", report.getStatistics(), hasKey("partition.3.records"));
+    }
+
+    @Test
+    public void endpointConcurrency() {
+        SyntheticCswSource source = new SyntheticCswSource(60, 20);
+        CollectingSink sink = new CollectingSink();
+
+        new PartitionedBulkRunner()
+                .setBulkSize(10)
+                .setConcurrency(6)
+                .setConcurrency("localhost", 2)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("all records stored", sink.getRecords().size(), is(60));
+        assertThat("endpoint concurrency limit", source.getMaxConcurrentRequests(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    public void failedPartitionIsRetried() {
+        SyntheticCswSource source = new SyntheticCswSource(100, 0).failAt(41, 2);
+        CollectingSink sink = new CollectingSink();
+
+        Report report = new PartitionedBulkRunner()
+                .setBulkSize(10)
+                .setConcurrency(4)
+                .setPartitionRetries(2)
+                .setRetryBackoff(10, TimeUnit.MILLISECONDS)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("all records stored", sink.getRecords().size(), is(100));
+        assertThat("attempts", report.getStatistics().get("partition.1.attempts"), is(3));
+        assertThat("other partitions", report.getStatistics().get("partition.0.attempts"), is(1));
+    }
+
+    @Test
+    public void failedPartitionIsGivenUp() {
+        SyntheticCswSource source = new SyntheticCswSource(100, 0).failAt(41, 5);
+        CollectingSink sink = new CollectingSink();
+
+        Report report = new PartitionedBulkRunner()
+                .setBulkSize(10)
+                .setConcurrency(4)
+                .setPartitionRetries(1)
+                .setRetryBackoff(10, TimeUnit.MILLISECONDS)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("records of other partitions and before failure stored", sink.getRecords().size(), is(80));
+        assertThat("error reported", report.getMessages().stream()
+                .anyMatch(m -> m.getMessage().contains("giving up records 41 to 60")), is(true));
+    }
+
+    @Test
+    public void eachPageHasItsOwnRetries() {
+        SyntheticCswSource source = new SyntheticCswSource(40, 0).failAt(11, 1).failAt(21, 1).failAt(31, 1);
+
+        Report report = new PartitionedBulkRunner()
+                .setBulkSize(10)
+                .setPartitions(1)
+                .setPartitionRetries(1)
+                .setRetryBackoff(10, TimeUnit.MILLISECONDS)
+                .harvest(source)
+                .transform(mapper)
+                .load(new CollectingSink());
+
+        assertThat("all records stored", report.getNumberOfRecordsAdded(), is(40));
+        assertThat("attempts", report.getStatistics().get("partition.0.attempts"), is(4));
+    }
+
+    @Test
+    public void retriedPageIsCountedOnce() throws IOException {
+        Path fingerprints = folder.getRoot().toPath().resolve("harvest.fingerprints");
+        SyntheticCswSource source = new SyntheticCswSource(100, 0);
+        new PartitionedBulkRunner()
+                .setBulkSize(10)
+                .setFingerprintFile(fingerprints)
+                .harvest(source)
+                .transform(mapper)
+                .load(new CollectingSink().reject("record-45"));
+
+        CollectingSink sink = new CollectingSink().crash("record-45", 1);
+        Report report = new PartitionedBulkRunner()
+                .setBulkSize(10)
+                .setFingerprintFile(fingerprints)
+                .setRetryBackoff(10, TimeUnit.MILLISECONDS)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("changed record stored", sink.getRecords().size(), is(1));
+        assertThat("identified records", report.getIdentifiedRecordCount(), is(100));
+        assertThat("skipped records", report.getSkippedIds().size(), is(99));
+        assertThat("skipped once", new HashSet<>(report.getSkippedIds()).size(), is(99));
+        assertThat("page not requested again", source.getRequests().size(), is(20));
+    }
+
+}
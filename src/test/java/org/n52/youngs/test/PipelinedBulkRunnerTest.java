@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Collectors;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItems;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.control.impl.PipelinedBulkRunner;
+import org.n52.youngs.harvest.DirectorySource;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class PipelinedBulkRunnerTest {
+
+    private DirectorySource source;
+
+    private CswToBuilderMapper mapper;
+
+    @Before
+    public void setUp() throws URISyntaxException, IOException {
+        Path directory = Paths.get(Resources.getResource("records/csw").toURI());
+        source = new DirectorySource(directory, f -> f.getName().endsWith(".xml"));
+
+        YamlMappingConfiguration configuration = new YamlMappingConfiguration(
+                Resources.asByteSource(Resources.getResource("mappings/csw-record.yml")).openStream(),
+                new XPathHelper());
+        mapper = new CswToBuilderMapper(configuration);
+    }
+
+    @Test
+    public void allRecordsStoredThroughPipeline() {
+        CollectingSink sink = new CollectingSink();
+        Report report = new PipelinedBulkRunner()
+                .setBulkSize(5)
+                .setQueueCapacity(1)
+                .setHarvestWorkers(2)
+                .setSinkWorkers(2)
+                .harvest(source)
+                .transform(mapper)
+                .load(sink);
+
+        assertThat("all records stored", sink.getRecords().size(), is(equalTo(12)));
+        assertThat("all records reported", report.getNumberOfRecordsSuccesful(), is(equalTo(12)));
+        assertThat("ids reported", report.getAddedIds(), hasItems(
+                "urn:uuid:19887a8a-f6b0-4a63-ae56-7fba0e17801f",
+                "urn:uuid:e9330592-0932-474b-be34-c3a3bb67c7db"));
+        assertThat("no duplicates", sink.getRecords().stream().map(SinkRecord::getId)
+                .collect(Collectors.toSet()).size(), is(equalTo(12)));
+    }
+
+    @Test
+    public void stageStatisticsReported() {
+        Report report = new PipelinedBulkRunner()
+                .setBulkSize(4)
+                .setRecordsLimit(7)
+                .harvest(source)
+                .transform(mapper)
+                .load(new CollectingSink());
+
+        assertThat("limit applied", report.getNumberOfRecordsSuccesful(), is(equalTo(8)));
+        assertThat("harvested records", report.getStatistics().get("stage.harvest.records"), is(equalTo(8l)));
+        assertThat("stored records", report.getStatistics().get("stage.sink.records"), is(equalTo(8l)));
+        assertThat("sink workers", report.getStatistics().get("stage.sink.workers"), is(equalTo(1)));
+    }
+
+}
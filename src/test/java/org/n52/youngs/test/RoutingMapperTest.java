@@ -0,0 +1,187 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import javax.xml.parsers.DocumentBuilderFactory;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.youngs.harvest.GetRecordsResponseReader;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.impl.SourceRecordHelper;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.load.SinkRecord;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.RoutingMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class RoutingMapperTest {
+
+    private CswToBuilderMapper cswMapper;
+
+    private CswToBuilderMapper gmdMapper;
+
+    private CswToBuilderMapper gmiMapper;
+
+    private List<SourceRecord> cswRecords;
+
+    private List<SourceRecord> gmdRecords;
+
+    @Before
+    public void setUp() throws Exception {
+        cswMapper = createMapper(Resources.toString(Resources.getResource("mappings/csw-record.yml"),
+                StandardCharsets.UTF_8));
+        gmdMapper = createMapper(Resources.toString(Resources.getResource("mappings/gmd-metadata.yml"),
+                StandardCharsets.UTF_8));
+        gmiMapper = createMapper(Resources.toString(Resources.getResource("mappings/eum-default.yml"),
+                StandardCharsets.UTF_8));
+        cswRecords = loadRecords("responses/dab-records-csw.xml");
+        gmdRecords = loadRecords("responses/dab-records-iso.xml");
+    }
+
+    private static CswToBuilderMapper createMapper(String mapping) {
+        return new CswToBuilderMapper(new YamlMappingConfiguration(
+                new ByteArrayInputStream(mapping.getBytes(StandardCharsets.UTF_8)), new XPathHelper()));
+    }
+
+    private static List<SourceRecord> loadRecords(String response) throws Exception {
+        try (InputStream is = Resources.asByteSource(Resources.getResource(response)).openStream()) {
+            return Lists.newArrayList(SourceRecordHelper.loadGetRecordsResponse(is));
+        }
+    }
+
+    private static List<String> ids(List<SinkRecord> records) {
+        return records.stream().map(r -> r == null ? null : r.getId()).collect(Collectors.toList());
+    }
+
+    @Test
+    public void recordsAreDispatchedOnRootElement() {
+        RoutingMapper router = new RoutingMapper(gmiMapper, cswMapper, gmdMapper);
+        List<SourceRecord> records = Lists.newArrayList(cswRecords);
+        records.addAll(gmdRecords);
+
+        List<SinkRecord> routed = records.stream().map(router::map).collect(Collectors.toList());
+        List<SinkRecord> expected = cswRecords.stream().map(cswMapper::map).collect(Collectors.toList());
+        gmdRecords.stream().map(gmdMapper::map).forEach(expected::add);
+
+        assertThat("ids", ids(routed), is(equalTo(ids(expected))));
+        Map<String, Number> statistics = router.getStatistics();
+        assertThat("csw records", statistics.get("routing.CSW Record Mapping.records"), is(17l));
+        assertThat("gmd records", statistics.get("routing.GMD Record Mapping.records"), is(10l));
+        assertThat("gmi records", statistics.get("routing.GMI Record Mapping.records"), is(0l));
+        assertThat("no applicability tests", statistics.get("routing.applicability_tests"), is(0l));
+        assertThat("thread-safe", router.isThreadSafe(), is(true));
+    }
+
+    @Test
+    public void ambiguousRootElementsAreTestedWithApplicability() throws IOException {
+        String gmd = Resources.toString(Resources.getResource("mappings/gmd-metadata.yml"), StandardCharsets.UTF_8);
+        CswToBuilderMapper services = createMapper(gmd
+                .replaceFirst("name: .*", "name: \"GMD Service Mapping\"")
+                .replaceFirst("applicability_xpath: .*", "applicability_xpath: \"boolean(//gmd:hierarchyLevel"
+                        + "/gmd:MD_ScopeCode[@codeListValue = 'service'])\"\nroot_elements:\n    - gmd:MD_Metadata"));
+        RoutingMapper router = new RoutingMapper(services, gmdMapper);
+
+        long mapped = gmdRecords.stream().map(router::map).filter(Objects::nonNull).count();
+
+        Map<String, Number> statistics = router.getStatistics();
+        assertThat("mapped", mapped, is(10l));
+        assertThat("service records", statistics.get("routing.GMD Service Mapping.records"), is(4l));
+        assertThat("gmd records", statistics.get("routing.GMD Record Mapping.records"), is(6l));
+        assertThat("applicability tests, the second mapping only for records that are no services",
+                statistics.get("routing.applicability_tests"), is(16l));
+    }
+
+    @Test
+    public void applicabilityIsEvaluatedOnTrees() throws Exception {
+        String gmd = Resources.toString(Resources.getResource("mappings/gmd-metadata.yml"), StandardCharsets.UTF_8);
+        CswToBuilderMapper services = createMapper(gmd
+                .replaceFirst("name: .*", "name: \"GMD Service Mapping\"")
+                .replaceFirst("applicability_xpath: .*", "applicability_xpath: \"boolean(//gmd:hierarchyLevel"
+                        + "/gmd:MD_ScopeCode[@codeListValue = 'service'])\"\nroot_elements:\n    - gmd:MD_Metadata"));
+        RoutingMapper router = new RoutingMapper(services, gmdMapper);
+        List<SourceRecord> trees;
+        try (InputStream is = Resources.asByteSource(Resources.getResource("responses/dab-records-iso.xml"))
+                .openStream()) {
+            trees = new GetRecordsResponseReader(true).readRecords(is).stream()
+                    .map(r -> new TinyTreeSourceRecord(((TinyTreeSourceRecord) r).getTree(),
+                            r.getProtocolIdentifier()) {
+                        @Override
+                        public Node getRecord() {
+                            throw new AssertionError("DOM copy of " + getProtocolIdentifier());
+                        }
+                    })
+                    .collect(Collectors.toList());
+        }
+
+        long mapped = trees.stream().map(router::map).filter(Objects::nonNull).count();
+
+        Map<String, Number> statistics = router.getStatistics();
+        assertThat("mapped", mapped, is(10l));
+        assertThat("service records", statistics.get("routing.GMD Service Mapping.records"), is(4l));
+        assertThat("gmd records", statistics.get("routing.GMD Record Mapping.records"), is(6l));
+    }
+
+    @Test
+    public void recordsWithUndeclaredRootElementAreTestedWithAllMappings() throws Exception {
+        RoutingMapper router = new RoutingMapper(cswMapper, gmdMapper);
+        NodeSourceRecord record = (NodeSourceRecord) gmdRecords.get(0);
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element wrapper = document.createElement("wrapper");
+        document.appendChild(wrapper);
+        wrapper.appendChild(document.importNode(record.getRecord(), true));
+
+        SinkRecord mapped = router.map(new NodeSourceRecord(document, record.getProtocolIdentifier()));
+
+        Map<String, Number> statistics = router.getStatistics();
+        assertThat("id", mapped.getId(), is(equalTo(gmdMapper.map(record).getId())));
+        assertThat("gmd records", statistics.get("routing.GMD Record Mapping.records"), is(1l));
+        assertThat("unmatched", statistics.get("routing.unmatched"), is(0l));
+        assertThat("applicability tests", statistics.get("routing.applicability_tests"), is(2l));
+    }
+
+    @Test
+    public void recordsWithoutApplicableMappingAreNotMapped() {
+        RoutingMapper router = new RoutingMapper(gmdMapper);
+
+        assertThat("csw record", router.map(cswRecords.get(0)), is(nullValue()));
+        assertThat("unmatched", router.getStatistics().get("routing.unmatched"), is(1l));
+        assertThat("sink is prepared with first mapping", router.getMapper(), is(gmdMapper.getMapper()));
+    }
+
+}
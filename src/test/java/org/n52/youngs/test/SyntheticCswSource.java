@@ -0,0 +1,168 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.google.common.collect.Lists;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.Source;
+import org.n52.youngs.harvest.SourceException;
+import org.n52.youngs.harvest.SourceRecord;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * A source for tests that creates csw:Record documents with the identifier
+ * "record-&lt;position&gt;" on request, records the requested pages and can
+ * fail requests for a start position a number of times.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class SyntheticCswSource implements Source {
+
+    private static final String CSW = "http://www.opengis.net/cat/csw/2.0.2";
+
+    private static final String DC = "http://purl.org/dc/elements/1.1/";
+
+    private final long count;
+
+    private final long delayMillis;
+
+    private final List<long[]> requests = new CopyOnWriteArrayList<>();
+
+    private final Map<Long, AtomicInteger> failures = new ConcurrentHashMap<>();
+
+    private final Map<Long, AtomicInteger> crashes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger running = new AtomicInteger(0);
+
+    private final AtomicInteger maxConcurrent = new AtomicInteger(0);
+
+    public SyntheticCswSource(long count, long delayMillis) {
+        this.count = count;
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * @param startPosition the start position of requests that fail
+     * @param times the number of failures before requests succeed
+     */
+    public SyntheticCswSource failAt(long startPosition, int times) {
+        failures.put(startPosition, new AtomicInteger(times));
+        return this;
+    }
+
+    /**
+     * @param startPosition the start position of the request that throws an
+     * error to simulate an aborted harvest, only the first request fails
+     */
+    public SyntheticCswSource crashAt(long startPosition) {
+        crashes.put(startPosition, new AtomicInteger(1));
+        return this;
+    }
+
+    @Override
+    public URL getEndpoint() {
+        try {
+            return new URL("http://localhost/synthetic/csw");
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long getRecordCount() {
+        return count;
+    }
+
+    @Override
+    public Collection<SourceRecord> getRecords(Report report) throws SourceException {
+        return getRecords(1, count, report);
+    }
+
+    @Override
+    public Collection<SourceRecord> getRecords(long startPosition, long maxRecords, Report report)
+            throws SourceException {
+        requests.add(new long[]{startPosition, maxRecords});
+        maxConcurrent.accumulateAndGet(running.incrementAndGet(), Math::max);
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            AtomicInteger crash = crashes.get(startPosition);
+            if (crash != null && crash.getAndDecrement() > 0) {
+                throw new Error("Synthetic crash at " + startPosition);
+            }
+            AtomicInteger failure = failures.get(startPosition);
+            if (failure != null && failure.getAndDecrement() > 0) {
+                throw new SourceException("Synthetic failure at " + startPosition, new RuntimeException());
+            }
+
+            List<SourceRecord> records = Lists.newArrayList();
+            for (long i = startPosition; i < startPosition + maxRecords && i <= count; i++) {
+                records.add(new NodeSourceRecord(createRecord(i), "synthetic-" + i));
+            }
+            return records;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SourceException("Interrupted", e);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return start position and size of all requests in the order they were
+     * made
+     */
+    public List<long[]> getRequests() {
+        return requests;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrent.get();
+    }
+
+    private Element createRecord(long position) throws SourceException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            Document doc = factory.newDocumentBuilder().newDocument();
+            Element record = doc.createElementNS(CSW, "csw:Record");
+            doc.appendChild(record);
+            Element identifier = doc.createElementNS(DC, "dc:identifier");
+            identifier.setTextContent("record-" + position);
+            record.appendChild(identifier);
+            Element title = doc.createElementNS(DC, "dc:title");
+            title.setTextContent("Record " + position);
+            record.appendChild(title);
+            return record;
+        } catch (ParserConfigurationException e) {
+            throw new SourceException("Could not create record", e);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.elasticsearch.common.Strings;
+import static org.hamcrest.CoreMatchers.endsWith;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.n52.youngs.api.Report;
+import org.n52.youngs.harvest.FileSource;
+import org.n52.youngs.harvest.GetRecordsResponseReader;
+import org.n52.youngs.harvest.NodeSourceRecord;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.harvest.TinyTreeSourceRecord;
+import org.n52.youngs.impl.ReportImpl;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.load.impl.BuilderRecord;
+import org.n52.youngs.transform.Mapper;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.XsltMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+import org.w3c.dom.Node;
+
+/**
+ * Maps records parsed into Saxon TinyTrees and compares the output with the
+ * one of the same records parsed into DOM documents. Records with several
+ * attributes on an element are not compared, because a DOM orders attributes
+ * by name and a tree keeps the document order.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class TinyTreeMappingTest {
+
+    private static final String CSW_RECORD = "records/csw/Record_ab42a8c4-95e8-4630-bf79-33e59241605a.xml";
+
+    private static final Pattern NAMESPACE_DECLARATIONS = Pattern.compile("(\\s+xmlns(:[\\w.-]+)?=\"[^\"]*\")+");
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    public void treeRecordsFromSources() throws Exception {
+        List<SourceRecord> records = loadRecords(true, "responses/dab-records-iso.xml", "records/gmd/metadata_1000.xml");
+        assertThat(records.size(), is(11));
+        for (SourceRecord record : records) {
+            assertThat(record, instanceOf(TinyTreeSourceRecord.class));
+            TinyTreeSourceRecord tree = (TinyTreeSourceRecord) record;
+            assertThat(tree.getTree().getLocalPart(), endsWith("_Metadata"));
+
+            // validators get a DOM copy
+            Node dom = tree.getRecord();
+            assertThat(dom.getLocalName(), is(tree.getTree().getLocalPart()));
+            assertThat(dom.getNamespaceURI(), is(tree.getTree().getURI()));
+            assertThat(tree.getRecord(), is(dom));
+        }
+    }
+
+    @Test
+    public void gmdMetadata() throws Exception {
+        assertTreeMappingMatchesDom("mappings/gmd-metadata.yml", "responses/dab-records-iso.xml",
+                "records/gmd/metadata_1000.xml",
+                "records/gmd/metadata_1000b.xml",
+                "records/gmd/metadata_fulltext.xml",
+                "records/gmi/metadata_10.xml");
+    }
+
+    @Test
+    public void cswRecord() throws Exception {
+        assertTreeMappingMatchesDom("mappings/csw-record.yml", "responses/dab-records-csw.xml", CSW_RECORD);
+    }
+
+    @Test
+    public void rawXml() throws Exception {
+        assertTreeMappingMatchesDom("mappings/eum-default.yml", null,
+                "records/gmi/metadata_10.xml",
+                "records/gmi/metadata_81.xml",
+                "records/gmi/metadata_91.xml");
+        assertTreeMappingMatchesDom("mappings/testmapping-raw-outputproperties.yml", null, CSW_RECORD);
+    }
+
+    @Test
+    public void childrenSplitAndSuggest() throws Exception {
+        assertTreeMappingMatchesDom("mappings/testmapping-nested-object.yml", null, "records/gmd/metadata_1000.xml");
+        assertTreeMappingMatchesDom("mappings/testmapping-split.yml", null, "records/gmi/metadata_10.xml");
+        assertTreeMappingMatchesDom("mappings/testmapping-suggest.yml", null, "records/gmd/metadata_1000b.xml");
+    }
+
+    @Test
+    public void coordinates() throws Exception {
+        assertTreeMappingMatchesDom("mappings/testmapping-gmd-bbox.yml", "responses/dab-records-iso.xml");
+    }
+
+    private void assertTreeMappingMatchesDom(String mapping, String response, String... files) throws Exception {
+        YamlMappingConfiguration configuration;
+        try (InputStream is = Resources.asByteSource(Resources.getResource(mapping)).openStream()) {
+            configuration = new YamlMappingConfiguration(is, new XPathHelper());
+        }
+        assertThat("tree supported", configuration.isTinyTreeSupported(), is(true));
+
+        List<SourceRecord> domRecords = loadRecords(false, response, files);
+        List<SourceRecord> treeRecords = loadRecords(true, response, files);
+        assertThat(treeRecords.size(), is(domRecords.size()));
+
+        for (Mapper mapper : new Mapper[]{new CswToBuilderMapper(configuration), new XsltMapper(configuration)}) {
+            for (int i = 0; i < domRecords.size(); i++) {
+                BuilderRecord expected = (BuilderRecord) mapper.map(domRecords.get(i));
+                BuilderRecord actual = (BuilderRecord) mapper.map(treeRecords.get(i));
+                String message = mapping + " " + mapper.getClass().getSimpleName() + " record " + i;
+                if (expected == null) {
+                    assertThat(message, actual, is(nullValue()));
+                    continue;
+                }
+                assertThat(message, actual.getId(), is(expected.getId()));
+                assertThat(message, toJson(actual), is(toJson(expected)));
+            }
+        }
+    }
+
+    private List<SourceRecord> loadRecords(boolean tinyTree, String response, String... files) throws Exception {
+        Report report = new ReportImpl();
+        List<SourceRecord> records = Lists.newArrayList();
+        if (response != null) {
+            try (InputStream is = Resources.asByteSource(Resources.getResource(response)).openStream()) {
+                records.addAll(new GetRecordsResponseReader(tinyTree).readRecords(is));
+            }
+        }
+        for (String file : files) {
+            Path path = Paths.get(Resources.getResource(file).toURI());
+            records.addAll(new FileSource(path).setTinyTree(tinyTree).getRecords(report));
+        }
+        records.forEach(r -> assertThat(r instanceof TinyTreeSourceRecord, is(tinyTree)));
+        records.forEach(r -> assertThat(r, instanceOf(NodeSourceRecord.class)));
+        return records;
+    }
+
+    private JsonNode toJson(BuilderRecord record) throws IOException {
+        JsonNode node = json.readTree(Strings.toString(record.getBuilder()));
+        // the values that depend on the time of mapping
+        ((ObjectNode) node).remove("youngs_created_on");
+        ((ObjectNode) node).remove("created_on");
+        node.fields().forEachRemaining(field -> {
+            if (field.getValue().isTextual() && field.getValue().textValue().startsWith("<")) {
+                field.setValue(JsonNodeFactory.instance.textNode(
+                        sortNamespaceDeclarations(field.getValue().textValue())));
+            }
+        });
+        return node;
+    }
+
+    /**
+     * Namespaces inherited from the response are declared in different order.
+     */
+    private String sortNamespaceDeclarations(String xml) {
+        Matcher matcher = NAMESPACE_DECLARATIONS.matcher(xml);
+        StringBuffer sorted = new StringBuffer();
+        while (matcher.find()) {
+            List<String> declarations = Lists.newArrayList(matcher.group().trim().split("\\s+"));
+            Collections.sort(declarations);
+            matcher.appendReplacement(sorted, Matcher.quoteReplacement(" " + String.join(" ", declarations)));
+        }
+        matcher.appendTail(sorted);
+        return sorted.toString();
+    }
+
+}
@@ -15,11 +15,33 @@
  */
 package org.n52.youngs.test;
 
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
+import net.sf.saxon.om.NodeInfo;
+import net.sf.saxon.s9api.XPathCompiler;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.junit.Assert.fail;
 import org.junit.Test;
+import org.n52.youngs.impl.SaxonHelper;
+import org.n52.youngs.impl.SaxonXPathExpression;
 import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
 
 /**
  *
@@ -27,6 +49,9 @@ import org.n52.youngs.impl.XPathHelper;
  */
 public class XPathHelperTest {
 
+    private static final String XPATH_FACTORY_PROPERTY = "javax.xml.xpath.XPathFactory:"
+            + "http://saxon.sf.net/jaxp/xpath/om";
+
     @Test
     public void defaultFactory() {
         XPathHelper helper = new XPathHelper();
@@ -41,6 +66,46 @@ public class XPathHelperTest {
         XPathFactory factory = helper.newXPathFactory();
         assertThat("default factory supports 1.0", helper.isXPath10Supported(factory));
         assertThat("default factory supports 2.0", helper.isXPath20Supported(factory));
+        assertThat("factory of shared processor", SaxonHelper.isSharedConfiguration(factory));
+    }
+
+    @Test
+    public void configurationUsesSharedProcessor() throws Exception {
+        YamlMappingConfiguration config = new YamlMappingConfiguration("mappings/testmapping.yml", new XPathHelper());
+        assertThat("no system property", System.getProperty(XPATH_FACTORY_PROPERTY), is(nullValue()));
+        assertThat("trees supported", config.isTinyTreeSupported(), is(true));
+        config.getEntries().forEach(e -> assertThat(e.getXPath(), instanceOf(SaxonXPathExpression.class)));
+    }
+
+    @Test
+    public void expressionOfCompiler() throws Exception {
+        XPathCompiler compiler = new XPathHelper().newXPathCompiler(
+                Collections.singletonMap("t", "http://test"));
+        String xml = "<t:r xmlns:t=\"http://test\"><t:a>1</t:a><t:a>2</t:a></t:r>";
+
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        Document document = dbf.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        NodeInfo tree = SaxonHelper.buildTree(new StreamSource(new StringReader(xml)));
+
+        XPathExpression nodes = new SaxonXPathExpression("//t:a", compiler);
+        NodeList domNodes = (NodeList) nodes.evaluate(document, XPathConstants.NODESET);
+        assertThat(domNodes.getLength(), is(2));
+        assertThat(domNodes.item(1).getTextContent(), is("2"));
+        assertThat((List<?>) nodes.evaluate(tree, XPathConstants.NODESET), hasSize(2));
+        assertThat(nodes.evaluate(tree, XPathConstants.NODE), instanceOf(NodeInfo.class));
+        assertThat(nodes.evaluate(document), is("1"));
+        assertThat(nodes.evaluate(tree, XPathConstants.NUMBER), is(1d));
+        assertThat(nodes.evaluate(tree, XPathConstants.BOOLEAN), is(true));
+
+        XPathExpression values = new SaxonXPathExpression("for $a in //t:a return string($a)", compiler);
+        assertThat(values.evaluate(tree), is("1"));
+        try {
+            values.evaluate(tree, XPathConstants.NODESET);
+            fail("atomic values are not a node set");
+        } catch (XPathExpressionException e) {
+            assertThat(e.getMessage(), containsString("not a node"));
+        }
     }
 
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.elasticsearch.common.Strings;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.SourceRecordHelper;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.exception.MappingError;
+import org.n52.youngs.load.impl.BuilderRecord;
+import org.n52.youngs.transform.impl.CswToBuilderMapper;
+import org.n52.youngs.transform.impl.XsltMapper;
+import org.n52.youngs.transform.impl.YamlMappingConfiguration;
+
+/**
+ * Compares the output of the {@link XsltMapper} with the one of the
+ * {@link CswToBuilderMapper}. Arrays are compared as sets, because the
+ * latter does not keep the document order of values, and numbers by value.
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class XsltMapperConformanceTest {
+
+    private static final String CSW_RECORD = "records/csw/Record_ab42a8c4-95e8-4630-bf79-33e59241605a.xml";
+
+    private static final Pattern NAMESPACE_DECLARATIONS = Pattern.compile("(\\s+xmlns(:[\\w.-]+)?=\"[^\"]*\")+");
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    public void gmdMetadata() throws Exception {
+        assertConformance("mappings/gmd-metadata.yml", "responses/dab-records-iso.xml",
+                "records/gmd/metadata_1000.xml",
+                "records/gmd/metadata_1000b.xml",
+                "records/gmd/metadata_fulltext.xml",
+                "records/gmi/metadata_10.xml");
+    }
+
+    @Test
+    public void cswRecord() throws Exception {
+        assertConformance("mappings/csw-record.yml", "responses/dab-records-csw.xml",
+                "records/csw/Record_1ef30a8b-876d-4828-9246-c37ab4510bbd.xml",
+                "records/csw/Record_829babb0-b2f1-49e1-8cd5-7b489fe71a1e.xml",
+                CSW_RECORD);
+    }
+
+    @Test
+    public void eumDefault() throws Exception {
+        assertConformance("mappings/eum-default.yml", null,
+                "records/gmi/metadata_10.xml",
+                "records/gmi/metadata_81.xml",
+                "records/gmi/metadata_91.xml",
+                "records/gmi/EO EUM DAT METOP IASSND02.xml");
+    }
+
+    @Test
+    public void children() throws Exception {
+        assertConformance("mappings/testmapping-nested-object.yml", null,
+                "records/gmd/metadata_1000.xml", "records/gmd/metadata_1000b.xml");
+    }
+
+    @Test
+    public void conditionsAndReplacements() throws Exception {
+        assertConformance("mappings/testmapping-doi.yml", null,
+                "records/gmd/metadata_1000.xml", "records/gmd/metadata_1000b.xml");
+    }
+
+    @Test
+    public void split() throws Exception {
+        assertConformance("mappings/testmapping-split.yml", null, "records/gmi/metadata_10.xml");
+    }
+
+    @Test
+    public void suggest() throws Exception {
+        assertConformance("mappings/testmapping-suggest.yml", null,
+                "records/gmd/metadata_1000.xml", "records/gmd/metadata_1000b.xml");
+    }
+
+    @Test
+    public void coordinates() throws Exception {
+        assertConformance("mappings/testmapping-gmd-bbox.yml", "responses/dab-records-iso.xml");
+    }
+
+    @Test
+    public void coordinatePrecision() throws Exception {
+        String yaml = Resources.toString(Resources.getResource("mappings/testmapping-gmd-bbox.yml"),
+                StandardCharsets.UTF_8)
+                .replace("        coordinates_type: envelope", "            precision: 1\n        coordinates_type: envelope");
+        assertConformance(load(yaml), "responses/dab-records-iso.xml");
+    }
+
+    @Test(expected = MappingError.class)
+    public void coordinateListsAreNotSupported() throws Exception {
+        try (InputStream is = Resources.asByteSource(Resources.getResource("mappings/testmapping-gmd-polygon.yml"))
+                .openStream()) {
+            new XsltMapper(new YamlMappingConfiguration(is, new XPathHelper()));
+        }
+    }
+
+    @Test
+    public void rawXml() throws Exception {
+        assertConformance("mappings/testmapping-raw-outputproperties.yml", null, CSW_RECORD);
+        assertConformance("mappings/testmapping_fulltext.yml", null, "records/gmd/metadata_fulltext_oneline.xml");
+    }
+
+    @Test
+    public void xpathValues() throws Exception {
+        assertConformance("mappings/testmapping-xpath-values.yml", null, CSW_RECORD);
+    }
+
+    private void assertConformance(String mapping, String response, String... files) throws Exception {
+        try (InputStream is = Resources.asByteSource(Resources.getResource(mapping)).openStream()) {
+            assertConformance(new YamlMappingConfiguration(is, new XPathHelper()), response, files);
+        }
+    }
+
+    private static YamlMappingConfiguration load(String yaml) {
+        return new YamlMappingConfiguration(new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)),
+                new XPathHelper());
+    }
+
+    private void assertConformance(YamlMappingConfiguration configuration, String response, String... files)
+            throws Exception {
+        String mapping = configuration.getName();
+        CswToBuilderMapper expected = new CswToBuilderMapper(configuration);
+        XsltMapper actual = new XsltMapper(configuration);
+
+        List<SourceRecord> records = Lists.newArrayList();
+        if (response != null) {
+            try (InputStream is = Resources.asByteSource(Resources.getResource(response)).openStream()) {
+                records.addAll(SourceRecordHelper.loadGetRecordsResponse(is));
+            }
+        }
+        for (String file : files) {
+            records.add(SourceRecordHelper.getSourceRecordFromFile(file));
+        }
+
+        for (SourceRecord record : records) {
+            BuilderRecord expectedRecord = expected.map(record);
+            BuilderRecord actualRecord = actual.map(record);
+            if (expectedRecord == null) {
+                assertThat(mapping + " " + record, actualRecord, is(nullValue()));
+                continue;
+            }
+            assertThat(mapping + " " + record, actualRecord, is(notNullValue()));
+            assertThat(mapping + " id", actualRecord.getId(), is(expectedRecord.getId()));
+            assertThat(mapping + " " + expectedRecord.getId(), normalize(toJson(actualRecord)),
+                    is(normalize(toJson(expectedRecord))));
+        }
+    }
+
+    private JsonNode toJson(BuilderRecord record) throws IOException {
+        JsonNode node = json.readTree(Strings.toString(record.getBuilder()));
+        // the values that depend on the time of mapping
+        ((ObjectNode) node).remove("youngs_created_on");
+        ((ObjectNode) node).remove("created_on");
+        return node;
+    }
+
+    private JsonNode normalize(JsonNode node) {
+        if (node.isNumber()) {
+            return JsonNodeFactory.instance.numberNode(node.doubleValue());
+        }
+        if (node.isTextual() && node.textValue().startsWith("<?xml")) {
+            return JsonNodeFactory.instance.textNode(sortNamespaceDeclarations(node.textValue()));
+        }
+        if (node.isObject()) {
+            // sorted keys, so that the string representation used to sort arrays is the same
+            ObjectNode normalized = JsonNodeFactory.instance.objectNode();
+            List<String> names = Lists.newArrayList(node.fieldNames());
+            Collections.sort(names);
+            names.forEach(name -> normalized.set(name, normalize(node.get(name))));
+            return normalized;
+        }
+        if (node.isArray()) {
+            List<JsonNode> elements = Lists.newArrayList();
+            node.forEach(element -> elements.add(normalize(element)));
+            elements.sort(Comparator.comparing(JsonNode::toString));
+            ArrayNode normalized = JsonNodeFactory.instance.arrayNode();
+            normalized.addAll(elements);
+            return normalized;
+        }
+        return node;
+    }
+
+    /**
+     * The serializers declare the namespaces of an element in different order.
+     */
+    private String sortNamespaceDeclarations(String xml) {
+        Matcher matcher = NAMESPACE_DECLARATIONS.matcher(xml);
+        StringBuffer sorted = new StringBuffer();
+        while (matcher.find()) {
+            List<String> declarations = Lists.newArrayList(matcher.group().trim().split("\\s+"));
+            Collections.sort(declarations);
+            matcher.appendReplacement(sorted, Matcher.quoteReplacement(" " + String.join(" ", declarations)));
+        }
+        matcher.appendTail(sorted);
+        return sorted.toString();
+    }
+
+}
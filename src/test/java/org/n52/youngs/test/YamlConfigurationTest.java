@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.stream.Collectors;
+import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.xpath.XPathConstants;
@@ -35,6 +36,8 @@ import static org.hamcrest.CoreMatchers.allOf;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import org.junit.Before;
@@ -44,6 +47,7 @@ import org.n52.youngs.exception.MappingError;
 import org.n52.youngs.impl.XPathHelper;
 import org.n52.youngs.transform.MappingConfiguration;
 import org.n52.youngs.transform.MappingEntry;
+import org.n52.youngs.transform.impl.XPathCostReport;
 import org.n52.youngs.transform.impl.YamlMappingConfiguration;
 import org.w3c.dom.Document;
 import org.xml.sax.InputSource;
@@ -389,6 +393,56 @@ public class YamlConfigurationTest {
         assertThat("id field is set", idField, is(equalTo("id")));
     }
 
+    @Test
+    public void rootElementIsTakenFromApplicability() throws IOException {
+        YamlMappingConfiguration csw = new YamlMappingConfiguration("mappings/csw-record.yml", helper);
+        assertThat("csw root", csw.getRootElements(),
+                contains(new QName("http://www.opengis.net/cat/csw/2.0.2", "Record")));
+        assertThat("no root for true()", config.getRootElements(), is(empty()));
+    }
+
+    @Test
+    public void descendantAxisIsRewrittenForRootChildren() throws IOException {
+        YamlMappingConfiguration gmd = new YamlMappingConfiguration("mappings/gmd-metadata.yml", helper);
+        XPathCostReport report = gmd.getXPathCostReport();
+
+        Map<String, XPathCostReport.FieldCost> fields = report.getFields().stream()
+                .collect(Collectors.toMap(XPathCostReport.FieldCost::getField, f -> f, (f1, f2) -> f2));
+        assertThat("root child is rewritten", fields.get("id").getExpression(),
+                is("(/gmd:MD_Metadata/gmd:fileIdentifier | /self::node()[not(gmd:MD_Metadata)]//gmd:fileIdentifier)"
+                        + "/gco:CharacterString"));
+        assertThat("rewritten expression is compiled", gmd.getEntry("id").getXPath().toString(),
+                containsString("/gmd:MD_Metadata/gmd:fileIdentifier"));
+        assertThat("element that also occurs deeper is not rewritten", fields.get("language").isRewritten(),
+                is(false));
+        assertThat("not rewritten fields are reported", report.getDescendantFields(),
+                CoreMatchers.hasItem("language"));
+        assertThat("element that is not declared is not rewritten", fields.get("extent_begin").isRewritten(),
+                is(false));
+        assertThat("cost is reduced", report.getCostAfter() < report.getCostBefore(), is(true));
+    }
+
+    @Test
+    public void rewrittenExpressionMatchesWrappedRecords() throws Exception {
+        YamlMappingConfiguration gmd = new YamlMappingConfiguration("mappings/gmd-metadata.yml", helper);
+        XPathExpression id = gmd.getEntry("id").getXPath();
+        String record = "<gmd:MD_Metadata xmlns:gmd=\"http://www.isotc211.org/2005/gmd\" "
+                + "xmlns:gco=\"http://www.isotc211.org/2005/gco\"><gmd:fileIdentifier>"
+                + "<gco:CharacterString>wrapped-id</gco:CharacterString></gmd:fileIdentifier></gmd:MD_Metadata>";
+
+        assertThat("record", id.evaluate(getNamespaceAwareDocument(record)), is("wrapped-id"));
+        assertThat("wrapped record", id.evaluate(getNamespaceAwareDocument("<wrapper><content>" + record
+                + "</content></wrapper>")), is("wrapped-id"));
+    }
+
+    @Test
+    public void descendantAxisIsNotRewrittenWithoutRootChildren() {
+        XPathCostReport report = config.getXPathCostReport();
+
+        assertThat("no field is rewritten", report.getRewrittenFields().isEmpty(), is(true));
+        assertThat("cost is unchanged", report.getCostAfter(), is(report.getCostBefore()));
+    }
+
     private Document getDocument(String xmlString) throws Exception {
         DocumentBuilder db = DocumentBuilderFactory.newInstance().newDocumentBuilder();
         InputSource is = new InputSource();
@@ -397,6 +451,12 @@ public class YamlConfigurationTest {
         return doc;
     }
 
+    private Document getNamespaceAwareDocument(String xmlString) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xmlString)));
+    }
+
     private static class XPathHelperTest10 extends XPathHelper {
 
         public XPathHelperTest10() {
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class CoordinatesTest {
+
+    @Test
+    public void posListIsReadAsLatLon() {
+        double[] xy = Coordinates.parse(" 50.0 7.0\n  51.5 -8.25 ", 2, true);
+        assertArrayEquals(new double[]{7.0, 50.0, -8.25, 51.5}, xy, 0);
+    }
+
+    @Test
+    public void posListHeightIsDropped() {
+        double[] xy = Coordinates.parse("7 50 100 8 51 200", 3, false);
+        assertArrayEquals(new double[]{7, 50, 8, 51}, xy, 0);
+    }
+
+    @Test
+    public void coordinatesTuplesAreRead() {
+        double[] xy = Coordinates.parse("7.0,50.0 8.0,51.0,12.5", 2, false);
+        assertArrayEquals(new double[]{7, 50, 8, 51}, xy, 0);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void incompletePositionIsRejected() {
+        Coordinates.parse("50 7 51", 2, true);
+    }
+
+    @Test
+    public void collinearPointsAreSimplified() {
+        double[] line = {0, 0, 1, 0.0001, 2, 0, 2, 1, 2, 2};
+        assertArrayEquals(new double[]{0, 0, 2, 0, 2, 2}, Coordinates.simplify(line, 0.01), 0);
+        assertThat(Coordinates.simplify(line, 0), sameInstance(line));
+    }
+
+    @Test
+    public void ringKeepsItsMinimumPositions() {
+        double[] ring = {0, 0, 1, 0.00001, 0, 0.00002, 0, 0};
+        assertThat(Coordinates.simplifyLine(ring, 2, -1, true).length, is(8));
+        assertThat(Coordinates.simplifyLine(ring, 2, -1, false).length, is(4));
+    }
+
+    @Test
+    public void roundingRemovesRepeatedPoints() {
+        double[] line = {7.12345, 50.00001, 7.12349, 50.00002, 8.5, 51};
+        assertArrayEquals(new double[]{7.123, 50, 8.5, 51}, Coordinates.simplifyLine(line, 0, 3, false), 0);
+        assertArrayEquals(new double[]{7.12, 50, 7.12, 50, 8.5, 51}, Coordinates.round(line, 2), 0);
+    }
+
+    @Test
+    public void envelopeIsUpperLeftAndLowerRight() {
+        double[] xy = {7, 50, 9, 51, 8, 49};
+        assertArrayEquals(new double[]{7, 51, 9, 49}, Coordinates.envelope(xy), 0);
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import net.sf.saxon.s9api.XPathCompiler;
+import static org.hamcrest.CoreMatchers.is;
+import org.junit.Assert;
+import static org.junit.Assert.assertThat;
+import org.junit.Before;
+import org.junit.Test;
+import org.n52.youngs.impl.NamespaceContextImpl;
+import org.n52.youngs.impl.SaxonXPathExpression;
+import org.n52.youngs.impl.XPathHelper;
+import org.n52.youngs.transform.impl.EntryResultTypes.ResultType;
+import org.w3c.dom.Node;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class EntryResultTypesTest {
+
+    private static final Map<String, String> NAMESPACES = ImmutableMap.of(
+            "gmd", "http://www.isotc211.org/2005/gmd",
+            "gco", "http://www.isotc211.org/2005/gco");
+
+    private static final String IDENTIFIER = "/*/gmd:fileIdentifier/gco:CharacterString";
+
+    private static final String NUMERIC_IDENTIFIER = IDENTIFIER + "[xs:integer(.) > 0]";
+
+    private Node node;
+
+    private EntryResultTypes types;
+
+    private EntryMapper mapper;
+
+    @Before
+    public void setUp() throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        node = factory.newDocumentBuilder().parse(getClass().getResourceAsStream("/records/gmd/metadata_1000.xml"));
+        types = new EntryResultTypes();
+        mapper = new EntryMapper(Optional.empty(), null, types);
+    }
+
+    @Test
+    public void staticTypeOfCompiledExpression() throws Exception {
+        XPathCompiler compiler = new XPathHelper().newXPathCompiler(NAMESPACES);
+        MappingEntryImpl nodes = entry("id", new SaxonXPathExpression(IDENTIFIER, compiler));
+        MappingEntryImpl string = entry("id_upper", new SaxonXPathExpression("upper-case(" + IDENTIFIER + ")", compiler));
+
+        assertThat(types.get(nodes), is(ResultType.NODESET));
+        assertThat(types.get(string), is(ResultType.STRING));
+
+        assertThat(mapper.mapEntry(nodes, node).get().value, is("EO:EUM:CM:MULT:SARAH_V001"));
+        assertThat(mapper.mapEntry(string, node).get().value, is("EO:EUM:CM:MULT:SARAH_V001"));
+        assertThat("no fallbacks", types.getStatistics().isEmpty(), is(true));
+    }
+
+    @Test
+    public void fallbackIsLearnedOnFirstEvaluation() throws Exception {
+        XPath xpath = new XPathHelper().newXPathFactory().newXPath();
+        xpath.setNamespaceContext(new NamespaceContextImpl(NAMESPACES));
+        MappingEntryImpl entry = entry("id_upper", xpath.compile("upper-case(" + IDENTIFIER + ")"));
+
+        assertThat(types.get(entry), is(ResultType.UNKNOWN));
+        for (int i = 0; i < 3; i++) {
+            assertThat(mapper.mapEntry(entry, node).get().value, is("EO:EUM:CM:MULT:SARAH_V001"));
+        }
+
+        assertThat(types.get(entry), is(ResultType.STRING));
+        assertThat(types.getStatistics().get(EntryResultTypes.FALLBACK_STATISTIC_PREFIX + "id_upper"),
+                is((Number) 1L));
+    }
+
+    @Test
+    public void emptyNodesetIsNotEvaluatedAgain() throws Exception {
+        XPath xpath = new XPathHelper().newXPathFactory().newXPath();
+        xpath.setNamespaceContext(new NamespaceContextImpl(NAMESPACES));
+        MappingEntryImpl entry = entry("missing", xpath.compile("/*/gmd:missing"));
+
+        Assert.assertFalse(mapper.mapEntry(entry, node).isPresent());
+        assertThat(types.get(entry), is(ResultType.NODESET));
+    }
+
+    @Test
+    public void dynamicErrorKeepsStaticNodesetType() throws Exception {
+        XPathCompiler compiler = new XPathHelper().newXPathCompiler(namespacesWithXs());
+        MappingEntryImpl entry = entry("number", new SaxonXPathExpression(NUMERIC_IDENTIFIER, compiler));
+
+        Assert.assertFalse("cast error", mapper.mapEntry(entry, node).isPresent());
+
+        assertThat(types.get(entry), is(ResultType.NODESET));
+        assertThat(mapper.mapEntry(entry, numericRecord()).get().value, is("42"));
+    }
+
+    @Test
+    public void dynamicErrorKeepsLearnedNodesetType() throws Exception {
+        XPath xpath = new XPathHelper().newXPathFactory().newXPath();
+        xpath.setNamespaceContext(new NamespaceContextImpl(namespacesWithXs()));
+        MappingEntryImpl entry = entry("number", xpath.compile(NUMERIC_IDENTIFIER));
+        Node numeric = numericRecord();
+
+        assertThat(mapper.mapEntry(entry, numeric).get().value, is("42"));
+        Assert.assertFalse("cast error", mapper.mapEntry(entry, node).isPresent());
+
+        assertThat(types.get(entry), is(ResultType.NODESET));
+        assertThat(mapper.mapEntry(entry, numeric).get().value, is("42"));
+    }
+
+    private static Map<String, String> namespacesWithXs() {
+        return ImmutableMap.<String, String>builder()
+                .putAll(NAMESPACES)
+                .put("xs", XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .build();
+    }
+
+    private Node numericRecord() throws Exception {
+        XPath xpath = new XPathHelper().newXPathFactory().newXPath();
+        xpath.setNamespaceContext(new NamespaceContextImpl(NAMESPACES));
+        Node record = node.cloneNode(true);
+        ((Node) xpath.evaluate(IDENTIFIER, record, XPathConstants.NODE)).setTextContent("42");
+        return record;
+    }
+
+    private static MappingEntryImpl entry(String field, XPathExpression xpath) {
+        return new MappingEntryImpl(field, xpath, Collections.singletonMap("type", "string"), false, false, false);
+    }
+
+}
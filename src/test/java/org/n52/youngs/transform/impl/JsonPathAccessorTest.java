@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class JsonPathAccessorTest {
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    private final JsonNode record;
+
+    public JsonPathAccessorTest() throws IOException {
+        record = json.readTree("{\"a\": {\"b\": \"c\"},"
+                + " \"items\": [{\"v\": 1, \"n\": {\"w\": \"x\"}}, {\"u\": 2}, {\"v\": 3, \"n\": [{\"w\": \"y\"}, {\"w\": \"z\"}]}],"
+                + " \"map\": {\"first\": {\"v\": 4}, \"second\": {\"v\": 5}}}");
+    }
+
+    @Test
+    public void nodePaths() throws IOException {
+        assertThat(JsonPathAccessor.node("/a/b").resolve(record), is(json.readTree("\"c\"")));
+        assertThat("without leading slash", JsonPathAccessor.node("a/b").resolve(record), is(json.readTree("\"c\"")));
+        assertThat("object", JsonPathAccessor.node("/a").resolve(record), is(json.readTree("{\"b\": \"c\"}")));
+        assertThat("first item of arrays", JsonPathAccessor.node("/items/n/w").resolve(record),
+                is(json.readTree("\"x\"")));
+        assertThat("missing", JsonPathAccessor.node("/a/c").resolve(record).isMissingNode(), is(true));
+        assertThat("empty step", JsonPathAccessor.node("/a//b").resolve(record).isMissingNode(), is(true));
+    }
+
+    @Test
+    public void listPaths() throws IOException {
+        assertThat(JsonPathAccessor.list("/items//v").resolve(record), is(json.readTree("[1, 3]")));
+        assertThat("first item of arrays in items", JsonPathAccessor.list("/items//n/w").resolve(record),
+                is(json.readTree("[\"x\", \"y\"]")));
+        assertThat("values of objects", JsonPathAccessor.list("/map//v").resolve(record), is(json.readTree("[4, 5]")));
+        assertThat("no values", JsonPathAccessor.list("/items//none").resolve(record).isMissingNode(), is(true));
+        assertThat("no list", JsonPathAccessor.list("/items/v").resolve(record).isMissingNode(), is(true));
+        assertThat("two lists", JsonPathAccessor.list("/items//n//w").resolve(record).isMissingNode(), is(true));
+        assertThat("list field is a single step", JsonPathAccessor.list("/a/b//c").resolve(record).isMissingNode(),
+                is(true));
+    }
+
+}
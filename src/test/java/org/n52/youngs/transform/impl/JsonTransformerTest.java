@@ -15,15 +15,19 @@
  */
 package org.n52.youngs.transform.impl;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.xmlbeans.XmlException;
@@ -40,6 +44,8 @@ import org.isotc211.x2005.gmi.MIMetadataType;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class JsonTransformerTest {
 
     public static final String CODELIST_SCOPECODE = "http://standards.iso.org/ittf/PubliclyAvailableStandards/ISO_19139_Schemas/resources/Codelist/gmxCodelists.xml#MD_ScopeCode";
@@ -170,6 +176,28 @@ public class JsonTransformerTest {
 
     }
 
+    @Test
+    public void testTransformLines() throws Exception {
+        String json = new ObjectMapper().readTree(getClass().getClassLoader()
+                .getResourceAsStream("records/json/EO EUM DAT METOP IASSND02.json")).toString();
+        JsonTransformer transformer = new JsonTransformer();
+        String expected = transformer.transform(json);
+
+        List<String> documents = transformer.transformLines(new BufferedReader(new StringReader(json + "\n\n" + json + "\n")))
+                .collect(Collectors.toList());
+        assertEquals("Every line is transformed", 2, documents.size());
+        for (String document : documents) {
+            // generated identifiers differ between documents
+            assertEquals("Line is transformed like a single record", withoutIds(expected), withoutIds(document));
+            assertTrue("Line is transformed to a MIMetadataDocument",
+                    XmlObject.Factory.parse(document) instanceof MIMetadataDocument);
+        }
+    }
+
+    private static String withoutIds(String document) {
+        return document.replaceAll("\"d\\d+e\\d+\"", "\"\"");
+    }
+
     private void checkLanguage(MIMetadataType miMetadata) {
         try {
             LanguageCodeDocument mappedLanguage =
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class ReplacementsTest {
+
+    @Test
+    public void independentRulesAreAppliedInOnePass() {
+        Replacements replacements = Replacements.compile(rules("&amp;", "&", "\n", " ", "  ", " "));
+        assertThat(replacements.isSinglePass(), is(false));
+
+        replacements = Replacements.compile(rules("&lt;", "<", "&gt;", ">", "\n", " "));
+        assertThat(replacements.isSinglePass(), is(true));
+        assertThat(replacements.apply("a &lt;&gt;\nb &lt"), is("a <> b &lt"));
+        assertThat("unchanged", replacements.apply("abc"), is("abc"));
+    }
+
+    @Test
+    public void dependentRulesAreAppliedOneAfterTheOther() {
+        assertThat("overlapping", Replacements.compile(rules("ab", "x", "bc", "y")).isSinglePass(), is(false));
+        assertThat("contained", Replacements.compile(rules("abc", "x", "b", "y")).isSinglePass(), is(false));
+        assertThat("replacement forms later target", Replacements.compile(rules("a", "b", "bc", "y")).isSinglePass(),
+                is(false));
+        assertThat("replacement is part of later target",
+                Replacements.compile(rules("&amp;", "&", "&lt;", "<")).isSinglePass(), is(false));
+        assertThat("removal joins later target", Replacements.compile(rules("x", "", "ab", "y")).isSinglePass(),
+                is(false));
+        assertThat("empty target", Replacements.compile(rules("", "y")).isSinglePass(), is(false));
+
+        Replacements replacements = Replacements.compile(rules("ab", "x", "bc", "y"));
+        assertThat(replacements.apply("abc"), is("xc"));
+    }
+
+    @Test
+    public void sameResultAsReplacingOneAfterTheOther() {
+        Random random = new Random(42);
+        int singlePass = 0;
+        for (int run = 0; run < 20000; run++) {
+            List<Map.Entry<String, String>> rules = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            for (int i = 0; i < count; i++) {
+                rules.add(new AbstractMap.SimpleImmutableEntry<>(randomString(random, 1, 3),
+                        randomString(random, 0, 3)));
+            }
+            Replacements replacements = Replacements.compile(rules);
+            if (replacements.isSinglePass()) {
+                singlePass++;
+            }
+
+            String value = randomString(random, 0, 12);
+            String expected = value;
+            for (Map.Entry<String, String> rule : rules) {
+                expected = expected.replace(rule.getKey(), rule.getValue());
+            }
+            assertThat(rules + " on '" + value + "'", replacements.apply(value), is(expected));
+        }
+        assertThat(singlePass, greaterThan(1000));
+    }
+
+    private static String randomString(Random random, int min, int max) {
+        int length = min + random.nextInt(max - min + 1);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append("abcde".charAt(random.nextInt(5)));
+        }
+        return sb.toString();
+    }
+
+    private static List<Map.Entry<String, String>> rules(String... targetsAndReplacements) {
+        List<Map.Entry<String, String>> rules = new ArrayList<>();
+        for (int i = 0; i < targetsAndReplacements.length; i += 2) {
+            rules.add(new AbstractMap.SimpleImmutableEntry<>(targetsAndReplacements[i], targetsAndReplacements[i + 1]));
+        }
+        return rules;
+    }
+
+}
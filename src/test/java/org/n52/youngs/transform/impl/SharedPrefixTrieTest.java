@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2023 52°North Spatial Information Research GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.n52.youngs.transform.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import javax.xml.xpath.XPathExpression;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+import org.n52.youngs.harvest.SourceRecord;
+import org.n52.youngs.impl.SharedPrefixXPathExpression;
+import org.n52.youngs.impl.SourceRecordHelper;
+import org.n52.youngs.impl.XPathHelper;
+
+/**
+ *
+ * @author <a href="mailto:d.nuest@52north.org">Daniel Nüst</a>
+ */
+public class SharedPrefixTrieTest {
+
+    private static final String[] RECORDS = new String[]{
+        "records/gmd/metadata_1000.xml",
+        "records/gmd/metadata_fulltext.xml",
+        "records/gmi/metadata_10.xml",
+        "records/gmi/metadata_81.xml"};
+
+    private final ObjectMapper json = new ObjectMapper();
+
+    @Test
+    public void steps() {
+        assertThat(SharedPrefixTrie.steps("/*/a:b[c/d = 'e/f']/g//h/text()"),
+                is(Arrays.asList("", "*", "a:b[c/d = 'e/f']", "g", "", "h", "text()")));
+        assertThat("union", SharedPrefixTrie.steps("/a/b | /a/c"), is(nullValue()));
+        assertThat("function", SharedPrefixTrie.steps("/a/string-join(b, ',')"), is(nullValue()));
+        assertThat("relative", SharedPrefixTrie.steps("a/b"), is(nullValue()));
+        assertThat("rewritten root child", SharedPrefixTrie.steps("(/*/a:b | /self::node()[not(*)]//a:b)/c[d]"),
+                is(Arrays.asList("(/*/a:b | /self::node()[not(*)]//a:b)", "c[d]")));
+        assertThat("group without path", SharedPrefixTrie.steps("(/a/b | /a/c)"), is(nullValue()));
+        assertThat("group of a function", SharedPrefixTrie.steps("(string(/a))/b"), is(nullValue()));
+    }
+
+    @Test
+    public void longestPrefixIsShared() throws Exception {
+        SharedPrefixTrie trie = new SharedPrefixTrie(Arrays.asList("/*/a:b/a:c/a:d", "/*/a:b/a:c/a:e", "/*/a:b/a:f",
+                "/*/a:g", "string(/*/a:b)"),
+                new XPathHelper().newXPathCompiler(ImmutableMap.of("a", "http://a")));
+
+        Optional<XPathExpression> d = trie.compile("/*/a:b/a:c/a:d", null);
+        assertThat(d.get(), instanceOf(SharedPrefixXPathExpression.class));
+        SharedPrefixXPathExpression.Prefix prefix = ((SharedPrefixXPathExpression) d.get()).getPrefix();
+        assertThat(prefix.getPath(), is("/*/a:b/a:c"));
+        assertThat(prefix.getParent().getPath(), is("/*/a:b"));
+        assertThat(prefix.getParent().getParent().getPath(), is("/*"));
+        assertThat(((SharedPrefixXPathExpression) trie.compile("/*/a:b/a:c/a:e", null).get()).getPrefix(),
+                is(prefix));
+        assertThat("not a path", trie.compile("string(/*/a:b)", null).isPresent(), is(false));
+    }
+
+    @Test
+    public void rewrittenRootChildrenArePrefixes() throws Exception {
+        String rootChild = "(/*/a:b | /self::node()[not(*)]//a:b)";
+        SharedPrefixTrie trie = new SharedPrefixTrie(Arrays.asList(rootChild + "/a:c/a:d", rootChild + "/a:c/a:e",
+                rootChild + "/a:f"),
+                new XPathHelper().newXPathCompiler(ImmutableMap.of("a", "http://a")));
+
+        SharedPrefixXPathExpression.Prefix prefix = ((SharedPrefixXPathExpression) trie
+                .compile(rootChild + "/a:c/a:d", null).get()).getPrefix();
+        assertThat(prefix.getPath(), is(rootChild + "/a:c"));
+        assertThat(prefix.getParent().getPath(), is(rootChild));
+    }
+
+    @Test
+    public void rewrittenMappingUsesSharedPrefixes() throws Exception {
+        YamlMappingConfiguration configuration = load("mappings/gmd-metadata.yml", "");
+
+        long shared = configuration.getEntries().stream()
+                .filter(e -> e.getXPath() instanceof SharedPrefixXPathExpression)
+                .count();
+        assertThat("entries with shared prefix", shared, is(20l));
+        SharedPrefixXPathExpression title = (SharedPrefixXPathExpression) configuration.getEntry("title").getXPath();
+        assertThat(title.getPrefix().getPath(), is("(/gmd:MD_Metadata/gmd:identificationInfo"
+                + " | /self::node()[not(gmd:MD_Metadata)]//gmd:identificationInfo)/*"));
+    }
+
+    @Test
+    public void sharedPrefixesMapLikeIndependentExpressions() throws Exception {
+        for (String mapping : new String[]{"mappings/gmd-metadata.yml", "mappings/eum-default.yml"}) {
+            CswToBuilderMapper shared = new CswToBuilderMapper(load(mapping, ""));
+            CswToBuilderMapper independent = new CswToBuilderMapper(load(mapping, "\nshared_prefixes: false\n"));
+
+            for (String file : RECORDS) {
+                SourceRecord record = SourceRecordHelper.getSourceRecordFromFile(file);
+                assertThat(mapping + " " + file, toJson(shared.map(record).getBuilder()),
+                        is(toJson(independent.map(record).getBuilder())));
+            }
+        }
+    }
+
+    private static YamlMappingConfiguration load(String mapping, String suffix) throws IOException {
+        String yaml = Resources.toString(Resources.getResource(mapping), StandardCharsets.UTF_8) + suffix;
+        return new YamlMappingConfiguration(new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)),
+                new XPathHelper());
+    }
+
+    private JsonNode toJson(XContentBuilder builder) throws IOException {
+        JsonNode node = json.readTree(Strings.toString(builder));
+        // the values that depend on the time of mapping
+        ((ObjectNode) node).remove("youngs_created_on");
+        ((ObjectNode) node).remove("created_on");
+        return node;
+    }
+
+}